@@ -28,6 +28,9 @@ package com.dabomstew.pkrandom;
 import java.util.StringJoiner;
 
 public class BatchRandomizationSettings implements Cloneable {
+    // about what a worker randomizing one of the largest (3DS) ROMs needs
+    private static final long HEAP_PER_THREAD = 1024L * 1024 * 1024;
+
     private Boolean batchRandomizationEnabled;
     private Boolean generateLogFile;
     private Boolean autoAdvanceStartingIndex;
@@ -35,6 +38,7 @@ public class BatchRandomizationSettings implements Cloneable {
     private Integer startingIndex;
     private String fileNamePrefix;
     private String outputDirectory;
+    private Integer numberOfThreads;
 
     public BatchRandomizationSettings() {
         batchRandomizationEnabled = false;
@@ -44,6 +48,7 @@ public class BatchRandomizationSettings implements Cloneable {
         startingIndex = 0;
         fileNamePrefix = "random";
         outputDirectory = SysConstants.ROOT_PATH;
+        numberOfThreads = getDefaultNumberOfThreads();
     }
 
     public boolean isBatchRandomizationEnabled() {
@@ -102,6 +107,23 @@ public class BatchRandomizationSettings implements Cloneable {
         this.outputDirectory = outputDirectory;
     }
 
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+    }
+
+    /**
+     * Returns one thread per processor, but no more than the heap has room for, so a batch doesn't run out of memory
+     * with the default settings.
+     */
+    public static int getDefaultNumberOfThreads() {
+        long threadsInHeap = Runtime.getRuntime().maxMemory() / HEAP_PER_THREAD;
+        return (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), threadsInHeap));
+    }
+
     @Override
     public String toString() {
         StringJoiner sj = new StringJoiner(SysConstants.LINE_SEP);
@@ -112,6 +134,7 @@ public class BatchRandomizationSettings implements Cloneable {
         sj.add("batchrandomization.startingindex=" + startingIndex.toString());
         sj.add("batchrandomization.filenameprefix=" + fileNamePrefix);
         sj.add("batchrandomization.outputdirectory=" + outputDirectory);
+        sj.add("batchrandomization.numberofthreads=" + numberOfThreads.toString());
         return sj.toString();
     }
 
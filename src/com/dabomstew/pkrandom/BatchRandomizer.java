@@ -0,0 +1,357 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  Part of "Universal Pokemon Randomizer ZX" by the UPR-ZX team          --*/
+/*--  Originally part of "Universal Pokemon Randomizer" by Dabomstew        --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2020.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import com.dabomstew.pkrandom.random.SeedPicker;
+import com.dabomstew.pkrandom.romhandlers.Abstract3DSRomHandler;
+import com.dabomstew.pkrandom.romhandlers.AbstractDSRomHandler;
+import com.dabomstew.pkrandom.romhandlers.AbstractGBRomHandler;
+import com.dabomstew.pkrandom.romhandlers.RomHandler;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.ResourceBundle;
+import java.util.concurrent.*;
+
+/**
+ * Headless batch randomization of a single source ROM, as described by a {@link BatchRandomizationSettings}.
+ * <br><br>
+ * Every output ROM is produced by its own {@link GameRandomizer#randomize(String, PrintStream, long)} call.
+ * The seeds are all picked before any randomization starts, so the ROM, log and check value produced for a given
+ * seed are the same as if the seeds were randomized one after another. The calls themselves are run on a bounded
+ * pool of worker threads, each of which works with its own {@link RomHandler}.
+ * <br><br>
+ * The source ROM is only loaded once per worker thread, the first time by the caller. After each ROM is done, its
+ * RomHandler is put back to the freshly loaded state with {@link RomHandler#restoreSnapshot(RomHandler.Snapshot)},
+ * and reused for the next seed.
+ */
+public class BatchRandomizer {
+
+    /**
+     * Notified each time a single ROM of the batch is done, successfully or not.
+     * May be called from any of the worker threads.
+     */
+    public interface ProgressListener {
+        void romFinished(Result result, int finishedCount, int totalCount);
+    }
+
+    /**
+     * The outcome of randomizing a single ROM of the batch.
+     */
+    public static class Result {
+        private final int index;
+        private final String filename;
+        private final long seed;
+        private final int checkValue;
+        private final Exception exception;
+
+        private Result(int index, String filename, long seed, int checkValue, Exception exception) {
+            this.index = index;
+            this.filename = filename;
+            this.seed = seed;
+            this.checkValue = checkValue;
+            this.exception = exception;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public int getCheckValue() {
+            return checkValue;
+        }
+
+        /**
+         * Returns the exception that made this ROM fail, or null if it was randomized successfully.
+         */
+        public Exception getException() {
+            return exception;
+        }
+
+        public boolean isSuccessful() {
+            return exception == null;
+        }
+    }
+
+    private final RomHandler.Factory factory;
+    private final String sourceFilename;
+    private final String gameUpdateFilename;
+    private final Settings settings;
+    private final BatchRandomizationSettings batchSettings;
+    private final ResourceBundle bundle;
+    private final boolean saveAsDirectory;
+
+    private final LoadedHandler firstHandler;
+    private final String defaultExtension;
+    private final Queue<LoadedHandler> idleHandlers = new ConcurrentLinkedQueue<>();
+
+    private boolean incrementalRomfsRebuild;
+    private boolean fastCodeCompression;
+    private boolean verifyFreedSpace = true;
+
+    /**
+     * @param factory A {@link RomHandler.Factory} which can load the source ROM.
+     * @param romHandler A RomHandler made by the factory, with the source ROM (and game update) already loaded.
+     *                   Used by the first worker thread.
+     * @param gameUpdateFilename The path of the 3DS game update loaded into romHandler, or null.
+     * @param settings The {@link Settings} to randomize every ROM with, already tweaked for the ROM with
+     *                 {@link Settings#tweakForRom(RomHandler)}. Not modified.
+     * @param batchSettings Decides the number of ROMs, their names, and the number of worker threads.
+     * @param bundle The bundle passed on to each {@link GameRandomizer}.
+     * @param saveAsDirectory Whether to save the ROMs as directories (LayeredFS) instead of files.
+     */
+    public BatchRandomizer(RomHandler.Factory factory, RomHandler romHandler, String gameUpdateFilename,
+                           Settings settings, BatchRandomizationSettings batchSettings, ResourceBundle bundle,
+                           boolean saveAsDirectory) {
+        this.factory = factory;
+        this.sourceFilename = romHandler.loadedFilename();
+        this.firstHandler = new LoadedHandler(romHandler, romHandler.createSnapshot());
+        this.defaultExtension = romHandler.getDefaultExtension();
+        this.gameUpdateFilename = gameUpdateFilename;
+        this.settings = settings;
+        this.batchSettings = batchSettings.clone();
+        this.bundle = bundle;
+        this.saveAsDirectory = saveAsDirectory;
+    }
+
+    /**
+     * Sets whether 3DS ROMs are saved with an incremental romfs rebuild, see
+     * {@link Abstract3DSRomHandler#setIncrementalRomfsRebuild(boolean)}. Ignored for other ROMs.
+     */
+    public void setIncrementalRomfsRebuild(boolean incrementalRomfsRebuild) {
+        this.incrementalRomfsRebuild = incrementalRomfsRebuild;
+        if (firstHandler.romHandler instanceof Abstract3DSRomHandler) {
+            ((Abstract3DSRomHandler) firstHandler.romHandler).setIncrementalRomfsRebuild(incrementalRomfsRebuild);
+        }
+    }
+
+    /**
+     * Sets whether the arm9, overlays and .code of DS/3DS ROMs are compressed in the fast BLZ mode, see
+     * {@link AbstractDSRomHandler#setFastCodeCompression(boolean)} and
+     * {@link Abstract3DSRomHandler#setFastCodeCompression(boolean)}. Ignored for other ROMs.
+     */
+    public void setFastCodeCompression(boolean fastCodeCompression) {
+        this.fastCodeCompression = fastCodeCompression;
+        applyFastCodeCompression(firstHandler.romHandler);
+    }
+
+    /**
+     * Sets whether GB/GBA ROMs check freed space before reusing it, see
+     * {@link AbstractGBRomHandler#setVerifyFreedSpace(boolean)}. Ignored for other ROMs.
+     */
+    public void setVerifyFreedSpace(boolean verifyFreedSpace) {
+        this.verifyFreedSpace = verifyFreedSpace;
+        applyVerifyFreedSpace(firstHandler.romHandler);
+    }
+
+    private void applyVerifyFreedSpace(RomHandler romHandler) {
+        if (romHandler instanceof AbstractGBRomHandler) {
+            ((AbstractGBRomHandler) romHandler).setVerifyFreedSpace(verifyFreedSpace);
+        }
+    }
+
+    private void applyFastCodeCompression(RomHandler romHandler) {
+        if (romHandler instanceof AbstractDSRomHandler) {
+            ((AbstractDSRomHandler) romHandler).setFastCodeCompression(fastCodeCompression);
+        } else if (romHandler instanceof Abstract3DSRomHandler) {
+            ((Abstract3DSRomHandler) romHandler).setFastCodeCompression(fastCodeCompression);
+        }
+    }
+
+    /**
+     * Randomizes {@link BatchRandomizationSettings#getNumberOfRandomizedROMs()} ROMs, with freshly picked seeds.
+     */
+    public List<Result> randomize(ProgressListener listener) throws InterruptedException {
+        long[] seeds = new long[batchSettings.getNumberOfRandomizedROMs()];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = SeedPicker.pickSeed();
+        }
+        return randomize(seeds, listener);
+    }
+
+    /**
+     * Randomizes one ROM per given seed. The ROM made with seeds[i] gets index
+     * {@link BatchRandomizationSettings#getStartingIndex()} + i.
+     *
+     * @return The {@link Result}s, in the same order as the seeds.
+     */
+    public List<Result> randomize(long[] seeds, ProgressListener listener) throws InterruptedException {
+        idleHandlers.clear();
+        idleHandlers.add(firstHandler);
+
+        int threads = Math.max(1, Math.min(batchSettings.getNumberOfThreads(), seeds.length));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "BatchRandomizer worker");
+            t.setDaemon(true);
+            return t;
+        });
+        CompletionService<Result> completion = new ExecutorCompletionService<>(executor);
+        Result[] results = new Result[seeds.length];
+
+        try {
+            int startingIndex = batchSettings.getStartingIndex();
+            for (int i = 0; i < seeds.length; i++) {
+                int index = startingIndex + i;
+                long seed = seeds[i];
+                completion.submit(() -> randomizeOne(index, seed));
+            }
+            for (int finished = 1; finished <= seeds.length; finished++) {
+                Result result = completion.take().get();
+                results[result.getIndex() - startingIndex] = result;
+                if (listener != null) {
+                    listener.romFinished(result, finished, seeds.length);
+                }
+            }
+        } catch (ExecutionException e) {
+            // randomizeOne() catches everything itself, so this can't happen
+            throw new IllegalStateException(e);
+        } finally {
+            executor.shutdownNow();
+            for (LoadedHandler loaded : idleHandlers) {
+                unload(loaded);
+            }
+            idleHandlers.clear();
+        }
+        return Arrays.asList(results);
+    }
+
+    private Result randomizeOne(int index, long seed) {
+        String filename = getOutputFilename(index);
+        LoadedHandler loaded = null;
+        boolean reused = false;
+        try {
+            loaded = takeHandler();
+            RomHandler romHandler = loaded.romHandler;
+            if (saveAsDirectory) {
+                new File(filename).mkdirs();
+            }
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            PrintStream log = new PrintStream(baos, false, "UTF-8");
+            int checkValue = new GameRandomizer(settings, romHandler, bundle, saveAsDirectory)
+                    .randomize(filename, log, seed);
+            log.close();
+
+            // only handlers which finished cleanly are reused, a failed one may be left in an odd state
+            idleHandlers.add(loaded);
+            reused = true;
+
+            if (batchSettings.shouldGenerateLogFile()) {
+                writeLogFile(filename, baos.toByteArray());
+            }
+            return new Result(index, filename, seed, checkValue, null);
+        } catch (Exception e) {
+            if (loaded != null && !reused) {
+                unload(loaded);
+            }
+            return new Result(index, filename, seed, 0, e);
+        }
+    }
+
+    /**
+     * Unloads the ROM of a handler this BatchRandomizer loaded itself, releasing its temp files.
+     * The first handler belongs to the caller, so it is left alone.
+     */
+    private void unload(LoadedHandler loaded) {
+        if (loaded == firstHandler) {
+            return;
+        }
+        try {
+            loaded.romHandler.unloadRom();
+        } catch (RuntimeException e) {
+            // the ROM has been randomized (or failed to) already, so failing to clean up after it is no error
+        }
+    }
+
+    /**
+     * Returns an idle RomHandler restored to its freshly loaded state, or loads a new one if there is none.
+     */
+    private LoadedHandler takeHandler() {
+        LoadedHandler loaded = idleHandlers.poll();
+        if (loaded == null) {
+            return loadHandler();
+        }
+        loaded.romHandler.restoreSnapshot(loaded.snapshot);
+        return loaded;
+    }
+
+    private LoadedHandler loadHandler() {
+        RomHandler romHandler = factory.create();
+        if (romHandler instanceof Abstract3DSRomHandler) {
+            ((Abstract3DSRomHandler) romHandler).setIncrementalRomfsRebuild(incrementalRomfsRebuild);
+        }
+        applyFastCodeCompression(romHandler);
+        applyVerifyFreedSpace(romHandler);
+        if (!romHandler.loadRom(sourceFilename)) {
+            throw new IllegalStateException("Could not load " + sourceFilename);
+        }
+        // only 3DS games have game updates
+        if (gameUpdateFilename != null && (romHandler.generationOfPokemon() == 6
+                || romHandler.generationOfPokemon() == 7)) {
+            romHandler.loadGameUpdate(gameUpdateFilename);
+        }
+        return new LoadedHandler(romHandler, romHandler.createSnapshot());
+    }
+
+    private static class LoadedHandler {
+        private final RomHandler romHandler;
+        private final RomHandler.Snapshot snapshot;
+
+        private LoadedHandler(RomHandler romHandler, RomHandler.Snapshot snapshot) {
+            this.romHandler = romHandler;
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * Returns the absolute path the ROM with the given index is saved to.
+     */
+    public String getOutputFilename(int index) {
+        String filename = batchSettings.getOutputDirectory() + File.separator + batchSettings.getFileNamePrefix()
+                + index;
+        if (!saveAsDirectory) {
+            filename += '.' + defaultExtension;
+        }
+        return new File(filename).getAbsolutePath();
+    }
+
+    private static void writeLogFile(String filename, byte[] log) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(filename + ".log")) {
+            fos.write(0xEF);
+            fos.write(0xBB);
+            fos.write(0xBF);
+            fos.write(log);
+        }
+    }
+
+}
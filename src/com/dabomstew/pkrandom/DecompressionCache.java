@@ -0,0 +1,216 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  DecompressionCache.java - cache of BLZ-decoded code binaries.         --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer ZX" by the UPR-ZX team          --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2020.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import cuecompressors.BLZCoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of BLZ-decoded data (arm9, overlays and .code), keyed by the CRC32 and length of the encoded data.
+ * <br><br>
+ * Loading the same ROM again, like each worker of a {@link BatchRandomizer} does, then gets the decoded data from
+ * here instead of decoding it again. Entries are kept in memory up to a total size, evicting the least recently used
+ * ones, and can optionally also be kept in a directory on disk, so they survive between runs.
+ * <br><br>
+ * The cache is thread-safe. Arrays going in and out are always copied, so callers are free to modify them.
+ */
+public class DecompressionCache {
+
+    private static final long DEFAULT_MAX_MEMORY_BYTES = 128L * 1024 * 1024;
+
+    private static final DecompressionCache shared = new DecompressionCache(DEFAULT_MAX_MEMORY_BYTES, null);
+
+    /**
+     * The cache used by NDSRom and NCCH when loading ROMs. There is only one per JVM, so all the handlers of a
+     * {@link BatchRandomizer} share the same cached data, whichever thread they run on.
+     */
+    public static DecompressionCache getShared() {
+        return shared;
+    }
+
+    private final Map<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Object> decodeLocks = new HashMap<>();
+    private long maxMemoryBytes;
+    private long memoryBytes;
+    private File diskDirectory;
+    private int hits, misses;
+
+    /**
+     * @param maxMemoryBytes The most decoded data to keep in memory. 0 keeps nothing in memory.
+     * @param diskDirectory A directory to also keep the decoded data in, or null to only use memory.
+     */
+    public DecompressionCache(long maxMemoryBytes, File diskDirectory) {
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.diskDirectory = diskDirectory;
+    }
+
+    /**
+     * Sets the most decoded data to keep in memory, evicting the least recently used entries if there is more.
+     */
+    public synchronized void setMaxMemoryBytes(long maxMemoryBytes) {
+        this.maxMemoryBytes = maxMemoryBytes;
+        evict();
+    }
+
+    /**
+     * Sets a directory to also keep the decoded data in, or null to only use memory.
+     */
+    public synchronized void setDiskDirectory(File diskDirectory) {
+        this.diskDirectory = diskDirectory;
+    }
+
+    /**
+     * Returns the BLZ-decoded contents of encoded, taking them from the cache if they are there.
+     *
+     * @param encoded The encoded data.
+     * @param crc The CRC32 of encoded, which the caller has usually already calculated.
+     * @param reference Passed on to {@link BLZCoder#BLZ_DecodePub(byte[], String)}.
+     * @return The decoded data, or null if it could not be decoded.
+     */
+    public byte[] decode(byte[] encoded, long crc, String reference) {
+        String key = String.format("%08X_%08X", crc, encoded.length);
+        // Loads of the same data at the same time (like the first load of each batch worker) wait for a single
+        // decode, instead of each decoding the data and caching their own copy of it.
+        Object lock;
+        synchronized (this) {
+            lock = decodeLocks.computeIfAbsent(key, k -> new Object());
+        }
+        try {
+            synchronized (lock) {
+                byte[] decoded = get(key);
+                if (decoded != null) {
+                    return decoded;
+                }
+                decoded = new BLZCoder(null).BLZ_DecodePub(encoded, reference);
+                if (decoded != null) {
+                    put(key, decoded);
+                }
+                return decoded;
+            }
+        } finally {
+            synchronized (this) {
+                decodeLocks.remove(key, lock);
+            }
+        }
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the total size of the decoded data kept in memory.
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        memoryBytes = 0;
+    }
+
+    private byte[] get(String key) {
+        File diskFile;
+        synchronized (this) {
+            byte[] decoded = entries.get(key);
+            if (decoded != null) {
+                hits++;
+                return Arrays.copyOf(decoded, decoded.length);
+            }
+            diskFile = diskDirectory == null ? null : new File(diskDirectory, key + ".bin");
+        }
+        if (diskFile != null && diskFile.isFile()) {
+            try {
+                byte[] decoded = Files.readAllBytes(diskFile.toPath());
+                synchronized (this) {
+                    hits++;
+                    putInMemory(key, decoded);
+                }
+                return Arrays.copyOf(decoded, decoded.length);
+            } catch (IOException e) {
+                // a broken cache file is treated like a missing one
+            }
+        }
+        synchronized (this) {
+            misses++;
+        }
+        return null;
+    }
+
+    private void put(String key, byte[] decoded) {
+        File directory;
+        synchronized (this) {
+            putInMemory(key, Arrays.copyOf(decoded, decoded.length));
+            directory = diskDirectory;
+        }
+        if (directory != null) {
+            // written under another name first, so a concurrent reader never sees a partial file
+            try {
+                directory.mkdirs();
+                Path tmp = Files.createTempFile(directory.toPath(), key, ".tmp");
+                Files.write(tmp, decoded);
+                Files.move(tmp, new File(directory, key + ".bin").toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // the disk cache is only an optimization, so failing to write to it is not an error
+            }
+        }
+    }
+
+    private void putInMemory(String key, byte[] decoded) {
+        if (decoded.length > maxMemoryBytes) {
+            return;
+        }
+        byte[] old = entries.put(key, decoded);
+        if (old != null) {
+            memoryBytes -= old.length;
+        }
+        memoryBytes += decoded.length;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<byte[]> it = entries.values().iterator();
+        while (memoryBytes > maxMemoryBytes && it.hasNext()) {
+            memoryBytes -= it.next().length;
+            it.remove();
+        }
+    }
+
+}
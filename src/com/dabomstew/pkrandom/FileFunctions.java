@@ -262,6 +262,15 @@ public class FileFunctions {
         return checksum.getValue();
     }
 
+    /**
+     * Returns the CRC32 of the remaining bytes of the buffer, without changing its position.
+     */
+    public static long getCRC32(ByteBuffer data) {
+        CRC32 checksum = new CRC32();
+        checksum.update(data.duplicate());
+        return checksum.getValue();
+    }
+
     private static byte[] getCodeTweakFile(String filename) throws IOException {
         System.out.println(filename);
         InputStream is = FileFunctions.class.getResourceAsStream("/com/dabomstew/pkrandom/patches/" + filename);
@@ -151,7 +151,7 @@ public class GameRandomizer {
 
         log.println("Randomizer Version: " + Version.VERSION_STRING);
         log.println("Random Seed: " + seed);
-        log.println("Settings String: " + Version.VERSION + settings.toString());
+        log.println("Settings String: " + settings.toVersionedString());
         log.println();
 
         // Limit Pokemon
@@ -660,6 +660,7 @@ public class GameRandomizer {
 
         if (settings.getPokemonPalettesMod() == Settings.PokemonPalettesMod.RANDOM) {
             paletteRandomizer.randomizePokemonPalettes();
+            romHandler.clearPokemonImageCache();
         }
 
         if (settings.getCustomPlayerGraphicsMod() == Settings.CustomPlayerGraphicsMod.RANDOM) {
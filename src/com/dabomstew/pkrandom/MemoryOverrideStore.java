@@ -0,0 +1,119 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  MemoryOverrideStore.java - an OverrideStore in (heap/direct) memory.  --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer ZX" by the UPR-ZX team          --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2020.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An {@link OverrideStore} which keeps contents in memory, on the heap or in direct buffers, until they add up to the
+ * memory budget. Contents that would go over it are put in a {@link TempFileOverrideStore} instead, which is only
+ * made once it's needed.
+ */
+class MemoryOverrideStore extends OverrideStore {
+
+    private final String name;
+    private final boolean direct;
+    private final long memoryBudget;
+    private final Map<String, ByteBuffer> entries = new HashMap<>();
+    private long memoryBytes;
+
+    private TempFileOverrideStore spill;
+    private boolean spillUnavailable;
+    private final Set<String> spilledKeys = new HashSet<>();
+
+    MemoryOverrideStore(String name, boolean direct, long memoryBudget) {
+        this.name = name;
+        this.direct = direct;
+        this.memoryBudget = memoryBudget;
+    }
+
+    @Override
+    public synchronized byte[] get(String key) throws IOException {
+        ByteBuffer entry = entries.get(key);
+        if (entry != null) {
+            byte[] data = new byte[entry.capacity()];
+            // cast to Buffer, since ByteBuffer.clear() only returns a ByteBuffer from Java 9 on
+            ByteBuffer view = entry.duplicate();
+            ((Buffer) view).clear();
+            view.get(data);
+            return data;
+        }
+        return spilledKeys.contains(key) ? spill.get(key) : null;
+    }
+
+    @Override
+    public synchronized void put(String key, byte[] data) throws IOException {
+        remove(key);
+        if (memoryBytes + data.length > memoryBudget && getSpill() != null) {
+            spill.put(key, data);
+            spilledKeys.add(key);
+            return;
+        }
+        ByteBuffer entry = direct ? ByteBuffer.allocateDirect(data.length) : ByteBuffer.allocate(data.length);
+        entry.put(data);
+        entries.put(key, entry);
+        memoryBytes += data.length;
+    }
+
+    @Override
+    public synchronized void remove(String key) throws IOException {
+        ByteBuffer old = entries.remove(key);
+        if (old != null) {
+            memoryBytes -= old.capacity();
+        }
+        if (spilledKeys.remove(key)) {
+            spill.remove(key);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        entries.clear();
+        memoryBytes = 0;
+        spilledKeys.clear();
+        if (spill != null) {
+            spill.close();
+            spill = null;
+        }
+    }
+
+    private TempFileOverrideStore getSpill() {
+        if (spill == null && !spillUnavailable) {
+            try {
+                spill = new TempFileOverrideStore(name);
+            } catch (IOException e) {
+                // going over the budget beats failing
+                spillUnavailable = true;
+            }
+        }
+        return spill;
+    }
+
+}
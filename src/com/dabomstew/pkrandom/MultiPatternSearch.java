@@ -0,0 +1,406 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  MultiPatternSearch.java - finds several byte patterns in one pass.    --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer ZX" by the UPR-ZX team          --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2020.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.util.*;
+
+/**
+ * An Aho-Corasick automaton, which finds all occurrences of any number of needles in a single pass over a haystack.
+ * <br><br>
+ * For each needle, the occurrences found are the same as {@link RomFunctions#search(byte[], int, int, byte[])}
+ * finds: in order, and never overlapping one another, i.e. the search for the next one starts after the end of the
+ * previous one.
+ * <br><br>
+ * For a single needle, {@link RomFunctions#search(byte[], byte[])} is cheaper; building the automaton only pays off
+ * when several needles are looked for at once. Searches repeated on the same loaded buffers, like for each seed of a
+ * batch, can be sped up with a {@link Cache}.
+ */
+public class MultiPatternSearch {
+
+    private final byte[][] needles;
+    private final int maxNeedleLength;
+    // transitions[state * 256 + b] is the state after reading byte b, with the failure links already followed
+    private final int[] transitions;
+    // the needles ending at each state, including those of the states its failure links lead to
+    private final int[][] outputs;
+
+    public MultiPatternSearch(byte[]... needles) {
+        this(Arrays.asList(needles));
+    }
+
+    public MultiPatternSearch(List<byte[]> needles) {
+        this.needles = new byte[needles.size()][];
+        int maxStates = 1;
+        int maxNeedleLength = 0;
+        for (int i = 0; i < this.needles.length; i++) {
+            byte[] needle = needles.get(i);
+            if (needle.length == 0) {
+                throw new IllegalArgumentException("Can't search for an empty needle.");
+            }
+            this.needles[i] = needle;
+            maxStates += needle.length;
+            maxNeedleLength = Math.max(maxNeedleLength, needle.length);
+        }
+        this.maxNeedleLength = maxNeedleLength;
+
+        // build the trie
+        int[] trie = new int[maxStates * 256];
+        Arrays.fill(trie, -1);
+        List<List<Integer>> ends = new ArrayList<>();
+        ends.add(new ArrayList<>());
+        int states = 1;
+        for (int i = 0; i < this.needles.length; i++) {
+            int state = 0;
+            for (byte b : this.needles[i]) {
+                int next = trie[state * 256 + (b & 0xFF)];
+                if (next == -1) {
+                    next = states++;
+                    trie[state * 256 + (b & 0xFF)] = next;
+                    ends.add(new ArrayList<>());
+                }
+                state = next;
+            }
+            ends.get(state).add(i);
+        }
+
+        // turn it into the automaton, breadth first so failure links always lead to finished states
+        transitions = Arrays.copyOf(trie, states * 256);
+        outputs = new int[states][];
+        int[] fail = new int[states];
+        int[] queue = new int[states];
+        int head = 0, tail = 0;
+        outputs[0] = toArray(ends.get(0));
+        for (int b = 0; b < 256; b++) {
+            int next = transitions[b];
+            if (next == -1) {
+                transitions[b] = 0;
+            } else {
+                fail[next] = 0;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            int[] own = toArray(ends.get(state));
+            int[] inherited = outputs[fail[state]];
+            int[] combined = Arrays.copyOf(own, own.length + inherited.length);
+            System.arraycopy(inherited, 0, combined, own.length, inherited.length);
+            outputs[state] = combined;
+            for (int b = 0; b < 256; b++) {
+                int next = transitions[state * 256 + b];
+                if (next == -1) {
+                    transitions[state * 256 + b] = transitions[fail[state] * 256 + b];
+                } else {
+                    fail[next] = transitions[fail[state] * 256 + b];
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        return list.stream().mapToInt(i -> i).toArray();
+    }
+
+    /**
+     * Returns the occurrences of each needle in the whole haystack, in the same order as the needles.
+     */
+    public List<List<Integer>> search(byte[] haystack) {
+        return search(haystack, 0, haystack.length);
+    }
+
+    /**
+     * Returns the occurrences of each needle which are entirely within [beginOffset, endOffset) of the haystack,
+     * in the same order as the needles.
+     */
+    public List<List<Integer>> search(byte[] haystack, int beginOffset, int endOffset) {
+        List<List<Integer>> results = new ArrayList<>(needles.length);
+        for (int i = 0; i < needles.length; i++) {
+            results.add(new ArrayList<>());
+        }
+        // the first offset each needle may be found at, so occurrences don't overlap
+        int[] nextAllowed = new int[needles.length];
+        Arrays.fill(nextAllowed, beginOffset);
+
+        int state = 0;
+        for (int i = beginOffset; i < endOffset; i++) {
+            state = transitions[state * 256 + (haystack[i] & 0xFF)];
+            for (int needle : outputs[state]) {
+                int start = i - needles[needle].length + 1;
+                if (start >= nextAllowed[needle]) {
+                    results.get(needle).add(start);
+                    nextAllowed[needle] = i + 1;
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Like {@link #search(byte[], int, int)}, but also returns the occurrences which overlap earlier ones.
+     */
+    private List<List<Integer>> searchOverlapping(byte[] haystack, int beginOffset, int endOffset) {
+        List<List<Integer>> results = new ArrayList<>(needles.length);
+        for (int i = 0; i < needles.length; i++) {
+            results.add(new ArrayList<>());
+        }
+        int state = 0;
+        for (int i = beginOffset; i < endOffset; i++) {
+            state = transitions[state * 256 + (haystack[i] & 0xFF)];
+            for (int needle : outputs[state]) {
+                int start = i - needles[needle].length + 1;
+                if (start >= beginOffset) {
+                    results.get(needle).add(start);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the first offset from beginOffset on where any of the needles occurs, or -1 if none does.
+     */
+    public int searchForFirst(byte[] haystack, int beginOffset) {
+        int state = 0;
+        int first = -1;
+        for (int i = beginOffset; i < haystack.length; i++) {
+            // an occurrence ending here or later can't start before the one already found
+            if (first != -1 && i - maxNeedleLength + 1 >= first) {
+                break;
+            }
+            state = transitions[state * 256 + (haystack[i] & 0xFF)];
+            for (int needle : outputs[state]) {
+                int start = i - needles[needle].length + 1;
+                if (first == -1 || start < first) {
+                    first = start;
+                }
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Remembers the results of searches through the buffers of a loaded ROM, so doing the same search again, like
+     * after the ROM is restored to its loaded state for the next seed of a batch, does not go through the whole
+     * buffer again.
+     * <br><br>
+     * Buffers are keyed by the CRC32 the caller got for them when loading, so they are never hashed again. The first
+     * search through a buffer keeps a copy of it, and all needles are searched for in that copy. Later searches compare
+     * the buffer with the copy in blocks, and only search again where it was written to since, so occurrences which
+     * writes removed or created are always accounted for. Comparing is much cheaper than searching, but the copy costs
+     * as much memory as the buffer.
+     * <br><br>
+     * Not thread-safe; meant to be owned by a single RomHandler.
+     */
+    public static class Cache {
+
+        private static final int BLOCK_SIZE = 4096;
+
+        private final Map<BufferKey, CachedBuffer> buffers = new HashMap<>();
+
+        /**
+         * Like {@code new MultiPatternSearch(needles).search(haystack)}.
+         *
+         * @param loadCRC The CRC32 of the haystack buffer when it was loaded.
+         */
+        public List<List<Integer>> search(long loadCRC, byte[] haystack, List<byte[]> needles) {
+            CachedBuffer cached = buffers.computeIfAbsent(new BufferKey(loadCRC, haystack.length),
+                    k -> new CachedBuffer(haystack.clone()));
+
+            List<byte[]> uncached = new ArrayList<>();
+            for (byte[] needle : needles) {
+                if (!cached.occurrences.containsKey(new NeedleKey(needle))) {
+                    uncached.add(needle);
+                }
+            }
+            if (!uncached.isEmpty()) {
+                List<List<Integer>> searched = new MultiPatternSearch(uncached)
+                        .searchOverlapping(cached.copy, 0, cached.copy.length);
+                for (int i = 0; i < uncached.size(); i++) {
+                    cached.occurrences.put(new NeedleKey(uncached.get(i).clone()), toArray(searched.get(i)));
+                }
+            }
+
+            List<int[]> changed = RomFunctions.findChangedBlocks(cached.copy, haystack, BLOCK_SIZE);
+            List<List<Integer>> rescanned = changed.isEmpty() ? null : rescan(haystack, needles, changed);
+            List<List<Integer>> found = new ArrayList<>(needles.size());
+            for (int i = 0; i < needles.size(); i++) {
+                byte[] needle = needles.get(i);
+                int[] occurrences = cached.occurrences.get(new NeedleKey(needle));
+                if (rescanned != null) {
+                    occurrences = patch(occurrences, needle.length, changed, rescanned.get(i));
+                }
+                found.add(withoutOverlaps(occurrences, needle.length));
+            }
+            return found;
+        }
+
+        /**
+         * Returns the occurrences of each needle in the haystack which overlap any of the changed ranges.
+         */
+        private static List<List<Integer>> rescan(byte[] haystack, List<byte[]> needles, List<int[]> changed) {
+            int maxNeedleLength = 0;
+            for (byte[] needle : needles) {
+                maxNeedleLength = Math.max(maxNeedleLength, needle.length);
+            }
+            // any occurrence overlapping a changed range lies entirely within the range widened by a needle length
+            List<int[]> windows = new ArrayList<>();
+            for (int[] range : changed) {
+                int begin = Math.max(0, range[0] - maxNeedleLength + 1);
+                int end = Math.min(haystack.length, range[1] + maxNeedleLength - 1);
+                int[] last = windows.isEmpty() ? null : windows.get(windows.size() - 1);
+                if (last != null && last[1] >= begin) {
+                    last[1] = end;
+                } else {
+                    windows.add(new int[]{begin, end});
+                }
+            }
+
+            MultiPatternSearch search = new MultiPatternSearch(needles);
+            List<List<Integer>> rescanned = new ArrayList<>(needles.size());
+            for (int i = 0; i < needles.size(); i++) {
+                rescanned.add(new ArrayList<>());
+            }
+            for (int[] window : windows) {
+                List<List<Integer>> inWindow = search.searchOverlapping(haystack, window[0], window[1]);
+                for (int i = 0; i < needles.size(); i++) {
+                    int length = needles.get(i).length;
+                    for (int start : inWindow.get(i)) {
+                        if (overlapsAny(changed, start, start + length)) {
+                            rescanned.get(i).add(start);
+                        }
+                    }
+                }
+            }
+            return rescanned;
+        }
+
+        /**
+         * Replaces the occurrences which overlap the changed ranges with the rescanned ones.
+         */
+        private static int[] patch(int[] occurrences, int length, List<int[]> changed, List<Integer> rescanned) {
+            List<Integer> patched = new ArrayList<>(occurrences.length + rescanned.size());
+            int next = 0;
+            for (int start : occurrences) {
+                if (overlapsAny(changed, start, start + length)) {
+                    continue;
+                }
+                while (next < rescanned.size() && rescanned.get(next) < start) {
+                    patched.add(rescanned.get(next++));
+                }
+                patched.add(start);
+            }
+            while (next < rescanned.size()) {
+                patched.add(rescanned.get(next++));
+            }
+            return toArray(patched);
+        }
+
+        private static boolean overlapsAny(List<int[]> ranges, int start, int end) {
+            // the last range starting before end is the only one which can overlap
+            int low = 0, high = ranges.size() - 1, candidate = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (ranges.get(mid)[0] < end) {
+                    candidate = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return candidate != -1 && ranges.get(candidate)[1] > start;
+        }
+
+        /**
+         * Picks the occurrences {@link MultiPatternSearch#search(byte[])} would find, going from the first one
+         * and skipping those which overlap the one picked before.
+         */
+        private static List<Integer> withoutOverlaps(int[] occurrences, int length) {
+            List<Integer> picked = new ArrayList<>(occurrences.length);
+            int nextAllowed = 0;
+            for (int start : occurrences) {
+                if (start >= nextAllowed) {
+                    picked.add(start);
+                    nextAllowed = start + length;
+                }
+            }
+            return picked;
+        }
+    }
+
+    private static class CachedBuffer {
+        private final byte[] copy;
+        // all occurrences of each needle in the copy, including overlapping ones
+        private final Map<NeedleKey, int[]> occurrences = new HashMap<>();
+
+        private CachedBuffer(byte[] copy) {
+            this.copy = copy;
+        }
+    }
+
+    private static class BufferKey {
+        private final long loadCRC;
+        private final int length;
+
+        private BufferKey(long loadCRC, int length) {
+            this.loadCRC = loadCRC;
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof BufferKey)) {
+                return false;
+            }
+            BufferKey other = (BufferKey) o;
+            return loadCRC == other.loadCRC && length == other.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(loadCRC, length);
+        }
+    }
+
+    private static class NeedleKey {
+        private final byte[] needle;
+        private final int hash;
+
+        private NeedleKey(byte[] needle) {
+            this.needle = needle;
+            this.hash = Arrays.hashCode(needle);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof NeedleKey && Arrays.equals(needle, ((NeedleKey) o).needle);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+}
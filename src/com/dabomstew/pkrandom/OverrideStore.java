@@ -0,0 +1,120 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  OverrideStore.java - holds the extracted/changed files of a ROM.      --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer ZX" by the UPR-ZX team          --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2020.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Holds the contents of the files NDSRom and NCCH have extracted from a ROM, and the changes written to them,
+ * until the ROM is saved.
+ * <br><br>
+ * Each NDSRom/NCCH gets its own store from {@link #create(String)}, of the {@link Kind} and memory budget set by
+ * {@link #setDefaults(Kind, long)}. Nothing is shared between stores, so any number of ROMs can be randomized at once
+ * in a single JVM.
+ * <br><br>
+ * Contents going in and out are always copied, so callers are free to modify the arrays.
+ */
+public abstract class OverrideStore implements Closeable {
+
+    public enum Kind {
+        /**
+         * Keeps contents in byte arrays on the Java heap, up to the memory budget, and spills the rest to temp files.
+         */
+        HEAP,
+        /**
+         * Keeps contents in direct (off-heap) buffers, up to the memory budget, and spills the rest to temp files.
+         */
+        DIRECT,
+        /**
+         * Keeps all contents in temp files.
+         */
+        TEMP_FILE
+    }
+
+    private static final long DEFAULT_MEMORY_BUDGET = 256L * 1024 * 1024;
+
+    private static volatile Kind defaultKind = Kind.HEAP;
+    private static volatile long defaultMemoryBudget = DEFAULT_MEMORY_BUDGET;
+
+    /**
+     * Sets the kind and memory budget of the stores made by later calls to {@link #create(String)}.
+     *
+     * @param memoryBudget The most bytes a single {@link Kind#HEAP}/{@link Kind#DIRECT} store keeps in memory before
+     *                     it starts spilling to temp files.
+     */
+    public static void setDefaults(Kind kind, long memoryBudget) {
+        defaultKind = kind;
+        defaultMemoryBudget = memoryBudget;
+    }
+
+    public static Kind getDefaultKind() {
+        return defaultKind;
+    }
+
+    public static long getDefaultMemoryBudget() {
+        return defaultMemoryBudget;
+    }
+
+    /**
+     * Makes a new, empty store of the default kind.
+     *
+     * @param name Used in the names of temp files, to tell which ROM they belong to.
+     */
+    public static OverrideStore create(String name) {
+        Kind kind = defaultKind;
+        switch (kind) {
+            case TEMP_FILE:
+                try {
+                    return new TempFileOverrideStore(name);
+                } catch (IOException e) {
+                    // no writable temp folder, so memory is all there is
+                    return new MemoryOverrideStore(name, false, Long.MAX_VALUE);
+                }
+            case DIRECT:
+                return new MemoryOverrideStore(name, true, defaultMemoryBudget);
+            default:
+                return new MemoryOverrideStore(name, false, defaultMemoryBudget);
+        }
+    }
+
+    /**
+     * Returns a copy of the contents stored under key, or null if there are none.
+     */
+    public abstract byte[] get(String key) throws IOException;
+
+    /**
+     * Stores a copy of data under key, replacing anything stored under it before.
+     */
+    public abstract void put(String key, byte[] data) throws IOException;
+
+    public abstract void remove(String key) throws IOException;
+
+    /**
+     * Drops all contents, and deletes any temp files. The store should not be used afterwards.
+     */
+    @Override
+    public abstract void close() throws IOException;
+
+}
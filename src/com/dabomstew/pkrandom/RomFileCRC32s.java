@@ -0,0 +1,151 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  RomFileCRC32s.java - CRC32s of the files inside ROMs, for validation. --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer ZX" by the UPR-ZX team          --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2020.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Calculates the CRC32s of files inside a ROM (overlays, romfs files etc.), as they are in the ROM file,
+ * for the RomHandlers to check against the expected ones when validating the ROM.
+ * <br><br>
+ * The files are read and checksummed in parallel, and the results are remembered by the identity of the ROM file(s),
+ * see {@link #identify(String...)}. So other handlers loading the same ROM, like each worker of a
+ * {@link BatchRandomizer} does, get them without reading anything.
+ * <br><br>
+ * The class is thread-safe.
+ */
+public class RomFileCRC32s {
+
+    private static final int MAX_REMEMBERED_CRC32S = 16384;
+
+    private static final Map<String, Long> remembered = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_REMEMBERED_CRC32S;
+        }
+    };
+
+    /**
+     * Reads the original contents of a file inside the ROM. May be called by several threads at once.
+     */
+    public interface FileReader {
+        ByteBuffer read() throws IOException;
+    }
+
+    private RomFileCRC32s() {
+    }
+
+    /**
+     * Returns a String which identifies the given ROM files, by their paths, sizes and times of last modification.
+     * If any of them is changed on disk, its identity changes too.
+     */
+    public static String identify(String... filenames) throws IOException {
+        StringBuilder identity = new StringBuilder();
+        for (String filename : filenames) {
+            File file = new File(filename);
+            identity.append(file.getCanonicalPath()).append('|').append(file.length()).append('|')
+                    .append(file.lastModified()).append('|');
+        }
+        return identity.toString();
+    }
+
+    /**
+     * Returns the CRC32 of each file, in the same order as the readers.
+     *
+     * @param romIdentity The identity of the ROM, from {@link #identify(String...)}.
+     * @param group       Tells apart files of the same ROM with the same key, e.g. "overlay" and "file".
+     * @param readers     The files to calculate the CRC32s of, by key.
+     */
+    public static <K> Map<K, Long> calculate(String romIdentity, String group, Map<K, FileReader> readers)
+            throws IOException {
+        Map<K, Long> crc32s = new LinkedHashMap<>();
+        List<K> toCalculate = new ArrayList<>();
+        synchronized (remembered) {
+            for (K key : readers.keySet()) {
+                Long crc32 = remembered.get(rememberedKey(romIdentity, group, key));
+                crc32s.put(key, crc32);
+                if (crc32 == null) {
+                    toCalculate.add(key);
+                }
+            }
+        }
+        if (toCalculate.isEmpty()) {
+            return crc32s;
+        }
+
+        List<Callable<Long>> tasks = new ArrayList<>(toCalculate.size());
+        for (K key : toCalculate) {
+            FileReader reader = readers.get(key);
+            tasks.add(() -> FileFunctions.getCRC32(reader.read()));
+        }
+        List<Future<Long>> calculated = ForkJoinPool.commonPool().invokeAll(tasks);
+        for (int i = 0; i < toCalculate.size(); i++) {
+            try {
+                crc32s.put(toCalculate.get(i), calculated.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while calculating CRC32s", e);
+            } catch (ExecutionException e) {
+                // the pool wraps checked exceptions, possibly more than once
+                for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+
+        synchronized (remembered) {
+            for (K key : toCalculate) {
+                remembered.put(rememberedKey(romIdentity, group, key), crc32s.get(key));
+            }
+        }
+        return crc32s;
+    }
+
+    private static String rememberedKey(String romIdentity, String group, Object key) {
+        return romIdentity + group + "/" + key;
+    }
+
+    /**
+     * Forgets all CRC32s calculated so far.
+     */
+    public static void clear() {
+        synchronized (remembered) {
+            remembered.clear();
+        }
+    }
+
+}
@@ -218,12 +218,54 @@ public class RomFunctions {
         return -1;
     }
 
+    /**
+     * Compares a and b, which must have the same length, in blocks of blockSize bytes, and returns the ranges
+     * of blocks which differ as {start, end} pairs, end exclusive. Runs of differing blocks are merged into one
+     * range, and the last block is cut off at the end of the arrays.
+     */
+    public static List<int[]> findChangedBlocks(byte[] a, byte[] b, int blockSize) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("a and b must have the same length.");
+        }
+        List<int[]> changed = new ArrayList<>();
+        for (int blockStart = 0; blockStart < a.length; blockStart += blockSize) {
+            int blockEnd = Math.min(blockStart + blockSize, a.length);
+            for (int i = blockStart; i < blockEnd; i++) {
+                if (a[i] != b[i]) {
+                    int[] last = changed.isEmpty() ? null : changed.get(changed.size() - 1);
+                    if (last != null && last[1] == blockStart) {
+                        last[1] = blockEnd;
+                    } else {
+                        changed.add(new int[]{blockStart, blockEnd});
+                    }
+                    break;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Makes to the same as from, which must have the same length, by copying only the blocks of blockSize bytes
+     * which differ (see {@link #findChangedBlocks(byte[], byte[], int)}). Returns the number of bytes copied.
+     */
+    public static int copyChangedBlocks(byte[] from, byte[] to, int blockSize) {
+        int copied = 0;
+        for (int[] range : findChangedBlocks(from, to, blockSize)) {
+            System.arraycopy(from, range[0], to, range[0], range[1] - range[0]);
+            copied += range[1] - range[0];
+        }
+        return copied;
+    }
+
     private static int[] buildKMPSearchTable(byte[] needle) {
         int[] stable = new int[needle.length];
         int pos = 2;
         int j = 0;
         stable[0] = -1;
-        stable[1] = 0;
+        if (needle.length > 1) {
+            stable[1] = 0;
+        }
         while (pos < needle.length) {
             if (needle[pos - 1] == needle[j]) {
                 stable[pos] = j + 1;
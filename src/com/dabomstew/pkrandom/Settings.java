@@ -51,6 +51,10 @@ import com.dabomstew.pkrandom.romhandlers.RomHandler;
 public class Settings {
 
     public static final int VERSION = Version.VERSION;
+    /**
+     * The last version the settings data layout changed in, see {@link SettingsUpdater#update(int, String)}.
+     */
+    private static final int LAST_LAYOUT_CHANGE_VERSION = Version.FVX_1_1_0.id;
 
     public static final int LENGTH_OF_SETTINGS_DATA = 62;
 
@@ -58,6 +62,8 @@ public class Settings {
 
     private String romName;
     private boolean updatedFromOldVersion = false;
+    // the version the settings were made with, which may be older if they were read from a file
+    private int version = VERSION;
     private GenRestrictions currentRestrictions;
     private int currentMiscTweaks;
 
@@ -381,7 +387,7 @@ public class Settings {
     public void write(FileOutputStream out) throws IOException {
         byte[] settings = toString().getBytes(StandardCharsets.UTF_8);
         ByteBuffer buf = ByteBuffer.allocate(settings.length + 8);
-        buf.putInt(VERSION);
+        buf.putInt(getVersionToWrite());
         buf.putInt(settings.length);
         buf.put(settings);
         out.write(buf.array());
@@ -398,9 +404,6 @@ public class Settings {
         if (((version >> 24) & 0xFF) > 0 && ((version >> 24) & 0xFF) <= 172) {
             throw new UnsupportedOperationException("The settings file is too old to update and cannot be loaded.");
         }
-        if (version > VERSION) {
-            throw new UnsupportedOperationException("Cannot read settings from a newer version of the randomizer.");
-        }
         nread = in.read(lengthBytes);
         if (nread < 4) {
             throw new UnsupportedOperationException("Error reading settings length from settings string.");
@@ -408,18 +411,71 @@ public class Settings {
         int length = ByteBuffer.wrap(lengthBytes).getInt();
         byte[] buffer = FileFunctions.readFullyIntoBuffer(in, length);
         String settings = new String(buffer, StandardCharsets.UTF_8);
-        boolean oldUpdate = false;
+        return fromString(version, settings);
+    }
+
+    /**
+     * Reads a settings string as the GUI shows it, i.e. starting with the 3-digit version it was made with.
+     * Settings strings from older versions are updated first, and keep their version, see {@link #getVersion()}.
+     */
+    public static Settings fromVersionedString(String versionedString) throws UnsupportedEncodingException,
+            IllegalArgumentException, UnsupportedOperationException {
+        return fromString(parseVersion(versionedString), versionedString.substring(3));
+    }
 
+    /**
+     * Returns the settings data of a versioned settings string (see {@link #fromVersionedString(String)}),
+     * updated to the current layout if it is from an older version.
+     */
+    public static String toCurrentLayout(String versionedString) throws IllegalArgumentException,
+            UnsupportedOperationException {
+        return toCurrentLayout(parseVersion(versionedString), versionedString.substring(3));
+    }
+
+    private static int parseVersion(String versionedString) {
+        if (versionedString.length() < 3) {
+            throw new IllegalArgumentException("Settings string is too short to have a version.");
+        }
+        return Integer.parseInt(versionedString.substring(0, 3));
+    }
+
+    private static String toCurrentLayout(int version, String settings) {
+        if (version > VERSION) {
+            throw new UnsupportedOperationException("Cannot read settings from a newer version of the randomizer.");
+        }
         if (version < VERSION) {
-            oldUpdate = true;
             settings = new SettingsUpdater().update(version, settings);
         }
+        return settings;
+    }
 
-        Settings settingsObj = fromString(settings);
-        settingsObj.setUpdatedFromOldVersion(oldUpdate);
+    /**
+     * Reads settings made with the given version, updating them first if they are older, see {@link #getVersion()}.
+     */
+    private static Settings fromString(int version, String settings) throws UnsupportedEncodingException {
+        Settings settingsObj = fromString(toCurrentLayout(version, settings));
+        settingsObj.setUpdatedFromOldVersion(version < VERSION);
+        settingsObj.setVersion(version);
         return settingsObj;
     }
 
+    /**
+     * Returns the settings string as the GUI shows it, starting with the version it reads back as,
+     * see {@link #fromVersionedString(String)}.
+     */
+    public String toVersionedString() {
+        return getVersionToWrite() + toString();
+    }
+
+    /**
+     * The version to write along with {@link #toString()}, so the settings read back with their own version.
+     * {@link #toString()} always has the current layout though, and the {@link SettingsUpdater} must not update it
+     * again, so this is never older than the last version the layout changed in.
+     */
+    private int getVersionToWrite() {
+        return Math.max(version, LAST_LAYOUT_CHANGE_VERSION);
+    }
+
     @Override
     public String toString() {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -1225,6 +1281,18 @@ public class Settings {
         this.updatedFromOldVersion = updatedFromOldVersion;
     }
 
+    /**
+     * Returns the version the settings were made with. Anything that depends on the version, other than the
+     * layout of the settings data, goes by this.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
     public GenRestrictions getCurrentRestrictions() {
         return currentRestrictions;
     }
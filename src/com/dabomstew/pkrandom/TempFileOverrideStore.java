@@ -0,0 +1,109 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  TempFileOverrideStore.java - an OverrideStore in temp files.          --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer ZX" by the UPR-ZX team          --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2020.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An {@link OverrideStore} which keeps each entry in a file of its own, in a temp folder only this store uses.
+ * <br><br>
+ * The folder is made under the randomizer's own folder if that is writable, and under the system's temp folder
+ * otherwise. It is deleted when the store is closed, which NDSRom and NCCH do when their ROM is unloaded, or at the
+ * latest when the JVM exits.
+ */
+class TempFileOverrideStore extends OverrideStore {
+
+    private static final Set<Path> liveFolders = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (Path folder : liveFolders) {
+                deleteFolder(folder);
+            }
+        }, "TempFileOverrideStore cleanup"));
+    }
+
+    private final Path folder;
+    private final Map<String, Path> files = new HashMap<>();
+    private int fileCount;
+
+    TempFileOverrideStore(String name) throws IOException {
+        String prefix = "tmp_" + name.replaceAll("[^A-Za-z0-9_]+", "") + "_";
+        File root = new File(SysConstants.ROOT_PATH);
+        Path parent = root.canWrite() ? root.toPath() : Paths.get(System.getProperty("java.io.tmpdir"));
+        folder = Files.createTempDirectory(parent, prefix);
+        liveFolders.add(folder);
+    }
+
+    @Override
+    public synchronized byte[] get(String key) throws IOException {
+        Path file = files.get(key);
+        return file == null ? null : Files.readAllBytes(file);
+    }
+
+    @Override
+    public synchronized void put(String key, byte[] data) throws IOException {
+        Path file = files.get(key);
+        if (file == null) {
+            // numbered, since two keys may look the same once sanitized
+            file = folder.resolve(fileCount++ + "_" + key.replaceAll("[^A-Za-z0-9_.]+", ""));
+            files.put(key, file);
+        }
+        Files.write(file, data);
+    }
+
+    @Override
+    public synchronized void remove(String key) throws IOException {
+        Path file = files.remove(key);
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        files.clear();
+        deleteFolder(folder);
+    }
+
+    private static void deleteFolder(Path folder) {
+        File[] contents = folder.toFile().listFiles();
+        if (contents != null) {
+            for (File file : contents) {
+                file.delete();
+            }
+        }
+        folder.toFile().delete();
+        liveFolders.remove(folder);
+    }
+
+}
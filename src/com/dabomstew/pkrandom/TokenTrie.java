@@ -0,0 +1,153 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  TokenTrie.java - finds the longest token at a position of a text.     --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer ZX" by the UPR-ZX team          --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2020.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A trie of String tokens, each with an int value, like the text of a character in a text table and its code.
+ * <br><br>
+ * {@link #match(CharSequence, int, int)} finds the longest token a text has at a given position, going through each
+ * char only once. Text codecs use this instead of trying each possible length with substring() and a Map lookup.
+ * <br><br>
+ * A TokenTrie can't be changed once created, so it can be shared between threads.
+ */
+public class TokenTrie {
+
+    // the children of node n are childChars/childNodes[childStart[n], childStart[n + 1]), sorted by char
+    private final int[] childStart;
+    private final char[] childChars;
+    private final int[] childNodes;
+    private final int[] depths;
+    // -1 for nodes which aren't the end of a token
+    private final int[] values;
+
+    /**
+     * @param tokens The tokens and their values. Values must not be negative. The empty token is ignored.
+     */
+    public TokenTrie(Map<String, Integer> tokens) {
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<Integer> depthList = new ArrayList<>();
+        List<Integer> valueList = new ArrayList<>();
+        children.add(new TreeMap<>());
+        depthList.add(0);
+        valueList.add(-1);
+        for (Map.Entry<String, Integer> token : tokens.entrySet()) {
+            String text = token.getKey();
+            if (text.isEmpty()) {
+                continue;
+            }
+            if (token.getValue() < 0) {
+                throw new IllegalArgumentException("Negative value for token " + text);
+            }
+            int node = 0;
+            for (int i = 0; i < text.length(); i++) {
+                Integer next = children.get(node).get(text.charAt(i));
+                if (next == null) {
+                    next = children.size();
+                    children.get(node).put(text.charAt(i), next);
+                    children.add(new TreeMap<>());
+                    depthList.add(i + 1);
+                    valueList.add(-1);
+                }
+                node = next;
+            }
+            valueList.set(node, token.getValue());
+        }
+
+        int nodes = children.size();
+        childStart = new int[nodes + 1];
+        childChars = new char[nodes - 1];
+        childNodes = new int[nodes - 1];
+        depths = new int[nodes];
+        values = new int[nodes];
+        int edge = 0;
+        for (int n = 0; n < nodes; n++) {
+            childStart[n] = edge;
+            for (Map.Entry<Character, Integer> child : children.get(n).entrySet()) {
+                childChars[edge] = child.getKey();
+                childNodes[edge] = child.getValue();
+                edge++;
+            }
+            depths[n] = depthList.get(n);
+            values[n] = valueList.get(n);
+        }
+        childStart[nodes] = edge;
+    }
+
+    /**
+     * Finds the longest token which text has at start, and which ends before end.
+     *
+     * @return A match to pass to {@link #getLength(int)} and {@link #getValue(int)}, or -1 if no token is there.
+     */
+    public int match(CharSequence text, int start, int end) {
+        int node = 0;
+        int found = -1;
+        for (int i = start; i < end; i++) {
+            node = child(node, text.charAt(i));
+            if (node == -1) {
+                break;
+            }
+            if (values[node] != -1) {
+                found = node;
+            }
+        }
+        return found;
+    }
+
+    private int child(int node, char c) {
+        int lo = childStart[node];
+        int hi = childStart[node + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char midChar = childChars[mid];
+            if (midChar < c) {
+                lo = mid + 1;
+            } else if (midChar > c) {
+                hi = mid - 1;
+            } else {
+                return childNodes[mid];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the length of the token of a match.
+     */
+    public int getLength(int match) {
+        return depths[match];
+    }
+
+    /**
+     * Returns the value of the token of a match.
+     */
+    public int getValue(int match) {
+        return values[match];
+    }
+
+}
@@ -1,8 +1,13 @@
 package com.dabomstew.pkrandom.cli;
 
+import com.dabomstew.pkrandom.BatchRandomizationSettings;
+import com.dabomstew.pkrandom.BatchRandomizer;
+import com.dabomstew.pkrandom.DecompressionCache;
 import com.dabomstew.pkrandom.FileFunctions;
 import com.dabomstew.pkrandom.GameRandomizer;
+import com.dabomstew.pkrandom.OverrideStore;
 import com.dabomstew.pkrandom.Settings;
+import com.dabomstew.pkrandom.ctr.NCCH;
 import com.dabomstew.pkrandom.romhandlers.*;
 
 import java.io.*;
@@ -18,7 +23,166 @@ public class CliRandomizer {
 
     private static boolean performDirectRandomization(String settingsFilePath, String sourceRomFilePath,
                                                       String destinationRomFilePath, boolean saveAsDirectory,
-                                                      String updateFilePath, boolean saveLog) {
+                                                      String updateFilePath, boolean saveLog,
+                                                      boolean incrementalRomfsRebuild, boolean fastCodeCompression,
+                                                      boolean verifyFreedSpace) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream log;
+        try {
+            log = new PrintStream(baos, false, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            log = new PrintStream(baos);
+        }
+
+        final PrintStream verboseLog = log;
+
+        try {
+            LoadedRom loaded = loadRom(settingsFilePath, sourceRomFilePath, saveAsDirectory, updateFilePath,
+                    incrementalRomfsRebuild, fastCodeCompression, verifyFreedSpace);
+            if (loaded == null) {
+                return false;
+            }
+            RomHandler romHandler = loaded.romHandler;
+            saveAsDirectory = loaded.saveAsDirectory;
+
+            File fh = new File(destinationRomFilePath);
+            if (!saveAsDirectory) {
+                List<String> extensions = new ArrayList<>(Arrays.asList("sgb", "gbc", "gba", "nds", "cxi"));
+                extensions.remove(romHandler.getDefaultExtension());
+
+                fh = FileFunctions.fixFilename(fh, romHandler.getDefaultExtension(), extensions);
+                if (romHandler instanceof AbstractDSRomHandler || romHandler instanceof Abstract3DSRomHandler) {
+                    String currentFN = romHandler.loadedFilename();
+                    if (currentFN.equals(fh.getAbsolutePath())) {
+                        printError(bundle.getString("GUI.cantOverwriteDS"));
+                        return false;
+                    }
+                }
+            }
+
+            String filename = fh.getAbsolutePath();
+
+            GameRandomizer randomizer = new GameRandomizer(loaded.settings, romHandler, bundle, saveAsDirectory);
+            randomizer.randomize(filename, verboseLog);
+            verboseLog.close();
+            if (incrementalRomfsRebuild && romHandler instanceof Abstract3DSRomHandler) {
+                NCCH.RomfsRebuildStats stats = ((Abstract3DSRomHandler) romHandler).getLastRomfsRebuildStats();
+                if (stats != null) {
+                    System.out.println("Romfs rebuild: " + stats);
+                }
+            }
+            romHandler.unloadRom();
+            byte[] out = baos.toByteArray();
+            if (saveLog) {
+                try {
+                    FileOutputStream fos = new FileOutputStream(filename + ".log");
+                    fos.write(0xEF);
+                    fos.write(0xBB);
+                    fos.write(0xBF);
+                    fos.write(out);
+                    fos.close();
+                } catch (IOException e) {
+                    printWarning("Could not write log.");
+                }
+            }
+            System.out.println("Randomized successfully!");
+            // this is the only successful exit, everything else will return false at the end of the function
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    private static boolean performBatchRandomization(String settingsFilePath, String sourceRomFilePath,
+                                                     String destinationRomFilePath, boolean saveAsDirectory,
+                                                     String updateFilePath, boolean saveLog,
+                                                     boolean incrementalRomfsRebuild, boolean fastCodeCompression,
+                                                     boolean verifyFreedSpace, int numberOfRoms, int numberOfThreads) {
+        try {
+            // the first RomHandler is loaded here, so the settings can be checked against it once
+            LoadedRom loaded = loadRom(settingsFilePath, sourceRomFilePath, saveAsDirectory, updateFilePath,
+                    incrementalRomfsRebuild, fastCodeCompression, verifyFreedSpace);
+            if (loaded == null) {
+                return false;
+            }
+            RomHandler romHandler = loaded.romHandler;
+            saveAsDirectory = loaded.saveAsDirectory;
+
+            // the destination path is used as a prefix, e.g. "out/random" gives "out/random0.gba", ...
+            File destination = new File(destinationRomFilePath).getAbsoluteFile();
+            BatchRandomizationSettings batchSettings = new BatchRandomizationSettings();
+            batchSettings.setBatchRandomizationEnabled(true);
+            batchSettings.setNumberOfRandomizedROMs(numberOfRoms);
+            batchSettings.setNumberOfThreads(numberOfThreads);
+            batchSettings.setStartingIndex(0);
+            batchSettings.setGenerateLogFile(saveLog);
+            batchSettings.setOutputDirectory(destination.getParent());
+            batchSettings.setFileNamePrefix(destination.getName());
+
+            BatchRandomizer batchRandomizer = new BatchRandomizer(loaded.factory, romHandler, loaded.updateFilePath,
+                    loaded.settings, batchSettings, bundle, saveAsDirectory);
+            batchRandomizer.setIncrementalRomfsRebuild(incrementalRomfsRebuild);
+            batchRandomizer.setFastCodeCompression(fastCodeCompression);
+            batchRandomizer.setVerifyFreedSpace(verifyFreedSpace);
+
+            if (!saveAsDirectory && (romHandler instanceof AbstractDSRomHandler
+                    || romHandler instanceof Abstract3DSRomHandler)) {
+                String currentFN = romHandler.loadedFilename();
+                for (int i = 0; i < numberOfRoms; i++) {
+                    if (currentFN.equals(batchRandomizer.getOutputFilename(i))) {
+                        printError(bundle.getString("GUI.cantOverwriteDS"));
+                        return false;
+                    }
+                }
+            }
+
+            List<BatchRandomizer.Result> results = batchRandomizer.randomize((result, finished, total) -> {
+                if (result.isSuccessful()) {
+                    System.out.printf("Randomized %s (%d/%d)%n", result.getFilename(), finished, total);
+                } else {
+                    printError(String.format("Could not randomize %s with seed %d (%d/%d)",
+                            result.getFilename(), result.getSeed(), finished, total));
+                    result.getException().printStackTrace();
+                }
+            });
+            romHandler.unloadRom();
+            return results.stream().allMatch(BatchRandomizer.Result::isSuccessful);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * A source ROM loaded by {@link #loadRom}, with the settings to randomize it with.
+     */
+    private static class LoadedRom {
+        private final RomHandler.Factory factory;
+        private final RomHandler romHandler;
+        private final Settings settings;
+        // null unless a game update was loaded
+        private final String updateFilePath;
+        private final boolean saveAsDirectory;
+
+        private LoadedRom(RomHandler.Factory factory, RomHandler romHandler, Settings settings,
+                          String updateFilePath, boolean saveAsDirectory) {
+            this.factory = factory;
+            this.romHandler = romHandler;
+            this.settings = settings;
+            this.updateFilePath = updateFilePath;
+            this.saveAsDirectory = saveAsDirectory;
+        }
+    }
+
+    /**
+     * Reads the settings file, and loads the source ROM with the first RomHandler which can, set up with the
+     * RomHandler options and the game update. Shared by direct and batch randomization, so each option is only
+     * handled here. Returns null, after printing why, if the settings can't be read or no RomHandler fits the ROM.
+     */
+    private static LoadedRom loadRom(String settingsFilePath, String sourceRomFilePath, boolean saveAsDirectory,
+                                     String updateFilePath, boolean incrementalRomfsRebuild,
+                                     boolean fastCodeCompression, boolean verifyFreedSpace) {
         // borrowed directly from RandomizerGUI()
         RomHandler.Factory[] checkHandlers = new RomHandler.Factory[] {
                 new Gen1RomHandler.Factory(),
@@ -40,85 +204,68 @@ public class CliRandomizer {
             fis.close();
         } catch (UnsupportedOperationException | IllegalArgumentException | IOException ex) {
             ex.printStackTrace();
-            return false;
+            return null;
         }
 
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        PrintStream log;
-        try {
-            log = new PrintStream(baos, false, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            log = new PrintStream(baos);
-        }
-
-        final PrintStream verboseLog = log;
-
-        try {
-            File romFileHandler = new File(sourceRomFilePath);
-            RomHandler romHandler;
-
-            for (RomHandler.Factory rhf : checkHandlers) {
-                if (rhf.isLoadable(romFileHandler.getAbsolutePath())) {
-                    romHandler = rhf.create();
-                    romHandler.loadRom(romFileHandler.getAbsolutePath());
-                    if (updateFilePath != null && (romHandler.generationOfPokemon() == 6 || romHandler.generationOfPokemon() == 7)) {
-                        romHandler.loadGameUpdate(updateFilePath);
-                        if (!saveAsDirectory) {
-                            printWarning("Forcing save as directory since a game update was supplied.");
-                        }
-                        saveAsDirectory = true;
-                    }
-                    if (saveAsDirectory && romHandler.generationOfPokemon() != 6 && romHandler.generationOfPokemon() != 7) {
-                        saveAsDirectory = false;
-                        printWarning("Saving as directory does not make sense for non-3DS games, ignoring \"-d\" flag...");
+        File romFileHandler = new File(sourceRomFilePath);
+        for (RomHandler.Factory rhf : checkHandlers) {
+            if (rhf.isLoadable(romFileHandler.getAbsolutePath())) {
+                RomHandler romHandler = rhf.create();
+                if (incrementalRomfsRebuild) {
+                    if (romHandler instanceof Abstract3DSRomHandler) {
+                        ((Abstract3DSRomHandler) romHandler).setIncrementalRomfsRebuild(true);
+                    } else {
+                        printWarning("Rebuilding the romfs only applies to 3DS games, ignoring \"-r\" flag...");
                     }
-
-                    CliRandomizer.displaySettingsWarnings(settings, romHandler);
-
-                    File fh = new File(destinationRomFilePath);
+                }
+                if (fastCodeCompression) {
+                    setFastCodeCompression(romHandler);
+                }
+                if (!verifyFreedSpace) {
+                    skipFreedSpaceVerification(romHandler);
+                }
+                romHandler.loadRom(romFileHandler.getAbsolutePath());
+                boolean is3DS = romHandler.generationOfPokemon() == 6 || romHandler.generationOfPokemon() == 7;
+                if (updateFilePath != null && is3DS) {
+                    romHandler.loadGameUpdate(updateFilePath);
                     if (!saveAsDirectory) {
-                        List<String> extensions = new ArrayList<>(Arrays.asList("sgb", "gbc", "gba", "nds", "cxi"));
-                        extensions.remove(romHandler.getDefaultExtension());
-
-                        fh = FileFunctions.fixFilename(fh, romHandler.getDefaultExtension(), extensions);
-                        if (romHandler instanceof AbstractDSRomHandler || romHandler instanceof Abstract3DSRomHandler) {
-                            String currentFN = romHandler.loadedFilename();
-                            if (currentFN.equals(fh.getAbsolutePath())) {
-                                printError(bundle.getString("GUI.cantOverwriteDS"));
-                                return false;
-                            }
-                        }
-                    }
-
-                    String filename = fh.getAbsolutePath();
-
-                    GameRandomizer randomizer = new GameRandomizer(settings, romHandler, bundle, saveAsDirectory);
-                    randomizer.randomize(filename, verboseLog);
-                    verboseLog.close();
-                    byte[] out = baos.toByteArray();
-                    if (saveLog) {
-                        try {
-                            FileOutputStream fos = new FileOutputStream(filename + ".log");
-                            fos.write(0xEF);
-                            fos.write(0xBB);
-                            fos.write(0xBF);
-                            fos.write(out);
-                            fos.close();
-                        } catch (IOException e) {
-                            printWarning("Could not write log.");
-                        }
+                        printWarning("Forcing save as directory since a game update was supplied.");
                     }
-                    System.out.println("Randomized successfully!");
-                    // this is the only successful exit, everything else will return false at the end of the function
-                    return true;
+                    saveAsDirectory = true;
                 }
+                if (!is3DS) {
+                    updateFilePath = null;
+                }
+                if (saveAsDirectory && !is3DS) {
+                    saveAsDirectory = false;
+                    printWarning("Saving as directory does not make sense for non-3DS games, ignoring \"-d\" flag...");
+                }
+
+                CliRandomizer.displaySettingsWarnings(settings, romHandler);
+                return new LoadedRom(rhf, romHandler, settings, updateFilePath, saveAsDirectory);
             }
-            // if we get here it means no rom handlers matched the ROM file
-            System.err.printf(bundle.getString("GUI.unsupportedRom") + "%n", romFileHandler.getName());
-        } catch (Exception e) {
-            e.printStackTrace();
         }
-        return false;
+        // if we get here it means no rom handlers matched the ROM file
+        System.err.printf(bundle.getString("GUI.unsupportedRom") + "%n", romFileHandler.getName());
+        return null;
+    }
+
+    private static void setFastCodeCompression(RomHandler romHandler) {
+        if (romHandler instanceof AbstractDSRomHandler) {
+            ((AbstractDSRomHandler) romHandler).setFastCodeCompression(true);
+        } else if (romHandler instanceof Abstract3DSRomHandler) {
+            ((Abstract3DSRomHandler) romHandler).setFastCodeCompression(true);
+        } else {
+            printWarning("Fast code compression only applies to DS and 3DS games, ignoring \"-f\" flag...");
+        }
+    }
+
+    private static void skipFreedSpaceVerification(RomHandler romHandler) {
+        if (romHandler instanceof AbstractGBRomHandler) {
+            ((AbstractGBRomHandler) romHandler).setVerifyFreedSpace(false);
+        } else {
+            printWarning("Checking freed space only applies to GB/GBA games, ignoring \"-nv\" flag...");
+        }
     }
 
     private static void displaySettingsWarnings(Settings settings, RomHandler romHandler) {
@@ -138,8 +285,18 @@ public class CliRandomizer {
         boolean saveAsDirectory = false;
         String updateFilePath = null;
         boolean saveLog = false;
+        boolean incrementalRomfsRebuild = false;
+        boolean fastCodeCompression = false;
+        boolean verifyFreedSpace = true;
+        int cacheMemoryMegabytes = 0;
+        String cacheDirectoryPath = null;
+        OverrideStore.Kind overrideStoreKind = OverrideStore.getDefaultKind();
+        long overrideStoreBudget = OverrideStore.getDefaultMemoryBudget();
+        int numberOfRoms = 0;
+        int numberOfThreads = BatchRandomizationSettings.getDefaultNumberOfThreads();
 
-        List<String> allowedFlags = Arrays.asList("-i", "-o", "-s", "-d", "-u", "-l", "--help");
+        List<String> allowedFlags = Arrays.asList("-i", "-o", "-s", "-d", "-u", "-l", "-r", "-f", "-nv", "-m", "-c", "-e", "-em", "-b",
+                "-t", "--help");
         for (int i = 0; i < args.length; i++) {
             if (allowedFlags.contains(args[i])) {
                 switch(args[i]) {
@@ -161,6 +318,60 @@ public class CliRandomizer {
                     case "-l":
                         saveLog = true;
                         break;
+                    case "-r":
+                        incrementalRomfsRebuild = true;
+                        break;
+                    case "-f":
+                        fastCodeCompression = true;
+                        break;
+                    case "-nv":
+                        verifyFreedSpace = false;
+                        break;
+                    case "-m":
+                        cacheMemoryMegabytes = parsePositiveInt(args, i);
+                        if (cacheMemoryMegabytes < 1) {
+                            printError("The cache size must be a positive whole number of megabytes");
+                            CliRandomizer.printUsage();
+                            return 1;
+                        }
+                        break;
+                    case "-c":
+                        cacheDirectoryPath = args[i + 1];
+                        break;
+                    case "-e":
+                        try {
+                            overrideStoreKind = OverrideStore.Kind.valueOf(args[i + 1].toUpperCase());
+                        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                            printError("The place to keep extracted files must be HEAP, DIRECT or TEMP_FILE");
+                            CliRandomizer.printUsage();
+                            return 1;
+                        }
+                        break;
+                    case "-em":
+                        int budgetMegabytes = parsePositiveInt(args, i);
+                        if (budgetMegabytes < 1) {
+                            printError("The memory for extracted files must be a positive whole number of megabytes");
+                            CliRandomizer.printUsage();
+                            return 1;
+                        }
+                        overrideStoreBudget = budgetMegabytes * 1024L * 1024L;
+                        break;
+                    case "-b":
+                        numberOfRoms = parsePositiveInt(args, i);
+                        if (numberOfRoms < 1) {
+                            printError("The number of ROMs must be a positive whole number");
+                            CliRandomizer.printUsage();
+                            return 1;
+                        }
+                        break;
+                    case "-t":
+                        numberOfThreads = parsePositiveInt(args, i);
+                        if (numberOfThreads < 1) {
+                            printError("The number of threads must be a positive whole number");
+                            CliRandomizer.printUsage();
+                            return 1;
+                        }
+                        break;
                     case "--help":
                         printUsage();
                         return 0;
@@ -198,14 +409,44 @@ public class CliRandomizer {
             return 1;
         }
 
-        boolean processResult = CliRandomizer.performDirectRandomization(
-                settingsFilePath,
-                sourceRomFilePath,
-                outputRomFilePath,
-                saveAsDirectory,
-                updateFilePath,
-                saveLog
-        );
+        DecompressionCache decompressionCache = DecompressionCache.getShared();
+        if (cacheMemoryMegabytes > 0) {
+            decompressionCache.setMaxMemoryBytes(cacheMemoryMegabytes * 1024L * 1024L);
+        }
+        if (cacheDirectoryPath != null) {
+            decompressionCache.setDiskDirectory(new File(cacheDirectoryPath));
+        }
+
+        OverrideStore.setDefaults(overrideStoreKind, overrideStoreBudget);
+
+        boolean processResult;
+        if (numberOfRoms > 0) {
+            processResult = CliRandomizer.performBatchRandomization(
+                    settingsFilePath,
+                    sourceRomFilePath,
+                    outputRomFilePath,
+                    saveAsDirectory,
+                    updateFilePath,
+                    saveLog,
+                    incrementalRomfsRebuild,
+                    fastCodeCompression,
+                    verifyFreedSpace,
+                    numberOfRoms,
+                    numberOfThreads
+            );
+        } else {
+            processResult = CliRandomizer.performDirectRandomization(
+                    settingsFilePath,
+                    sourceRomFilePath,
+                    outputRomFilePath,
+                    saveAsDirectory,
+                    updateFilePath,
+                    saveLog,
+                    incrementalRomfsRebuild,
+                    fastCodeCompression,
+                    verifyFreedSpace
+            );
+        }
         if (!processResult) {
             printError("Randomization failed");
             CliRandomizer.printUsage();
@@ -214,6 +455,19 @@ public class CliRandomizer {
         return 0;
     }
 
+    // returns the positive number following the flag at args[i], or -1 if there is none
+    private static int parsePositiveInt(String[] args, int i) {
+        if (i + 1 >= args.length) {
+            return -1;
+        }
+        try {
+            int value = Integer.parseInt(args[i + 1]);
+            return value > 0 ? value : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     private static void printError(String text) {
         System.err.println("ERROR: " + text);
     }
@@ -224,7 +478,23 @@ public class CliRandomizer {
 
     private static void printUsage() {
         System.err.println("Usage: java [-Xmx4096M] -jar PokeRandoFVX.jar cli -s <path to settings file> " +
-                "-i <path to source ROM> -o <path for new ROM> [-d][-u <path to 3DS game update>][-l]");
+                "-i <path to source ROM> -o <path for new ROM> [-d][-u <path to 3DS game update>][-l][-r][-f][-nv]" +
+                "[-m <cache size in MB>][-c <path to cache directory>]" +
+                "[-e <HEAP|DIRECT|TEMP_FILE>][-em <memory in MB>][-b <number of ROMs> [-t <number of threads>]]");
         System.err.println("-d: Save 3DS game as directory (LayeredFS)");
+        System.err.println("-r: Rebuild the romfs of a 3DS game incrementally, keeping unchanged files in place " +
+                "and reusing their hashes");
+        System.err.println("-f: Compress the code of DS/3DS games in the fast BLZ mode; saves faster, but the code " +
+                "takes a little more space");
+        System.err.println("-nv: Don't check that freed space in GB/GBA games is still unused before reusing it; " +
+                "saves a little time, but trusts the randomizer to have kept track of it");
+        System.err.println("-m: Most memory to keep decompressed DS/3DS code in between loads (default 128 MB)");
+        System.err.println("-c: Also keep decompressed DS/3DS code in this directory, so later runs can reuse it");
+        System.err.println("-e: Where to keep the files extracted from DS/3DS games until saving (default HEAP)");
+        System.err.println("-em: Most memory to keep extracted files in per game before spilling to temp files " +
+                "(default 256 MB)");
+        System.err.println("-b: Batch randomize; the path for new ROM is used as a prefix for the numbered ROMs");
+        System.err.println("-t: Number of ROMs to randomize at the same time in batch mode (default one per " +
+                "processor, but no more than one per GB of heap)");
     }
 }
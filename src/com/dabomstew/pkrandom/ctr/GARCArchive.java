@@ -23,13 +23,15 @@ package com.dabomstew.pkrandom.ctr;
 
 import cuecompressors.BLZCoder;
 
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
 
 public class GARCArchive {
 
@@ -47,6 +49,9 @@ public class GARCArchive {
     public List<Map<Integer,byte[]>> files = new ArrayList<>();
     private Map<Integer,Boolean> isCompressed = new TreeMap<>();
     private List<Boolean> compressThese = null;
+    // the compressed files as read, so unchanged ones can be written back without compressing them again
+    private Map<Integer,Map<Integer,CompressedFile>> originalCompressed = new HashMap<>();
+    private Set<Integer> dirtyFiles = new HashSet<>();
 
     private GARCFrame garc;
     private FATOFrame fato;
@@ -180,8 +185,11 @@ public class GARCArchive {
                 bbuf.get(file);
                 if (compressed) {
                     try {
-                        files.put(k,new BLZCoder(null).BLZ_DecodePub(file,"GARC"));
+                        byte[] decoded = new BLZCoder(null).BLZ_DecodePub(file,"GARC");
+                        files.put(k,decoded);
                         isCompressed.put(i,true);
+                        originalCompressed.computeIfAbsent(i, x -> new TreeMap<>())
+                                .put(k, new CompressedFile(file, decoded));
                     } catch (Exception e) {
                         e.printStackTrace();
                         return false;
@@ -198,131 +206,215 @@ public class GARCArchive {
 
     public void updateFiles(List<Map<Integer,byte[]>> files) {
         fimb.files = files;
+        dirtyFiles.clear();
     }
 
+    /**
+     * Returns a deep copy of the files, which can later be put back by {@link #restoreFiles(List)}.
+     */
+    public List<Map<Integer,byte[]>> copyFiles() {
+        return copyFiles(fimb.files);
+    }
+
+    /**
+     * Replaces the files with a deep copy of ones returned by {@link #copyFiles()}.
+     * Only the files which differ from the saved ones are copied.
+     */
+    public void restoreFiles(List<Map<Integer,byte[]>> saved) {
+        if (fimb.files.size() != saved.size()) {
+            fimb.files = copyFiles(saved);
+        } else {
+            for (int i = 0; i < saved.size(); i++) {
+                Map<Integer,byte[]> directory = fimb.files.get(i);
+                Map<Integer,byte[]> savedDirectory = saved.get(i);
+                if (!directory.keySet().equals(savedDirectory.keySet())) {
+                    fimb.files.set(i, copyDirectory(savedDirectory));
+                    continue;
+                }
+                for (Map.Entry<Integer,byte[]> file : savedDirectory.entrySet()) {
+                    if (!Arrays.equals(directory.get(file.getKey()), file.getValue())) {
+                        directory.put(file.getKey(), file.getValue().clone());
+                    }
+                }
+            }
+        }
+        files = fimb.files;
+        dirtyFiles.clear();
+    }
+
+    private static List<Map<Integer,byte[]>> copyFiles(List<Map<Integer,byte[]>> original) {
+        List<Map<Integer,byte[]>> copy = new ArrayList<>(original.size());
+        for (Map<Integer,byte[]> directory : original) {
+            copy.add(copyDirectory(directory));
+        }
+        return copy;
+    }
+
+    private static Map<Integer,byte[]> copyDirectory(Map<Integer,byte[]> directory) {
+        Map<Integer,byte[]> copy = new TreeMap<>();
+        for (Map.Entry<Integer,byte[]> file : directory.entrySet()) {
+            copy.put(file.getKey(), file.getValue().clone());
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the archive, with every compressed file compressed again.
+     * <br><br>
+     * Compressed files which are still the same as when they were read are written back as they were read, instead
+     * of being compressed again. A file counts as the same if it was not replaced by {@link #setFile(int, byte[])},
+     * and still has its original contents, so files which were changed in place are also caught.
+     * The files which did change are compressed in parallel.
+     */
     public byte[] getBytes() throws IOException {
+        List<Map<Integer,byte[]>> payload = getPayloadFiles();
+
         int garcHeaderSize = garc.version == VER_4 ? garcHeaderSize_4 : garcHeaderSize_6;
-        ByteBuffer garcBuf = ByteBuffer.allocate(garcHeaderSize);
-        garcBuf.order(ByteOrder.LITTLE_ENDIAN);
-        garcBuf.put(garcMagic.getBytes());
-        garcBuf.putInt(garcHeaderSize);
-        garcBuf.putShort((short)0xFEFF);
-        garcBuf.putShort(version == 4 ? (short)VER_4 : (short)VER_6);
-        garcBuf.putInt(4);
-
-        ByteBuffer fatoBuf = ByteBuffer.allocate(fato.headerSize);
-        fatoBuf.order(ByteOrder.LITTLE_ENDIAN);
-        fatoBuf.put(fatoMagic.getBytes());
-        fatoBuf.putInt(fato.headerSize);
-        fatoBuf.putShort((short)fato.entryCount);
-        fatoBuf.putShort((short)fato.padding);
-
-        ByteBuffer fatbBuf = ByteBuffer.allocate(fatb.headerSize);
-        fatbBuf.order(ByteOrder.LITTLE_ENDIAN);
-        fatbBuf.put(fatbMagic.getBytes());
-        fatbBuf.putInt(fatb.headerSize);
-        fatbBuf.putInt(fatb.fileCount);
-
-        ByteBuffer fimbHeaderBuf = ByteBuffer.allocate(fimb.headerSize);
-        fimbHeaderBuf.order(ByteOrder.LITTLE_ENDIAN);
-        fimbHeaderBuf.put(fimbMagic.getBytes());
-        fimbHeaderBuf.putInt(fimb.headerSize);
-
-        ByteArrayOutputStream fimbPayloadStream = new ByteArrayOutputStream(); // Unknown size, can't use ByteBuffer
+        int fatoSize = 12 + 4 * payload.size();
+        int fatbSize = 12 + 16 * payload.size();
+        int dataOffset = garcHeaderSize + fatoSize + fatbSize + fimb.headerSize;
+
+        int fimbSize = 0;
+        for (Map<Integer,byte[]> directory : payload) {
+            int totalLength = 0;
+            for (byte[] file : directory.values()) {
+                totalLength += file.length;
+            }
+            fimbSize += totalLength + getPaddingRequired(totalLength);
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(dataOffset + fimbSize);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        int fatoPosition = garcHeaderSize;
+        int fatbPosition = fatoPosition + fatoSize;
+        int fimbPosition = fatbPosition + fatbSize;
+
+        buf.position(fatoPosition);
+        buf.put(fatoMagic.getBytes());
+        buf.putInt(fato.headerSize);
+        buf.putShort((short)fato.entryCount);
+        buf.putShort((short)fato.padding);
+
+        buf.position(fatbPosition);
+        buf.put(fatbMagic.getBytes());
+        buf.putInt(fatb.headerSize);
+        buf.putInt(fatb.fileCount);
 
         int fimbOffset = 0;
         int largestSize = 0;
         int largestPadded = 0;
-        for (int i = 0; i < fimb.files.size(); i++) {
-            Map<Integer,byte[]> directory = fimb.files.get(i);
+        for (int i = 0; i < payload.size(); i++) {
+            Map<Integer,byte[]> directory = payload.get(i);
             int bitVector = 0;
             int totalLength = 0;
-            for (int k: directory.keySet()) {
-                bitVector |= (1 << k);
-                byte[] file = directory.get(k);
-                if (isCompressed.get(i)) {
-                    file = new BLZCoder(null).BLZ_EncodePub(file,false,false,"GARC");
-                }
-                fimbPayloadStream.write(file);
-                totalLength += file.length;
-            }
-
-            int paddingRequired = totalLength % garc.contentPadToNearest;
-            if (paddingRequired != 0) {
-                paddingRequired = garc.contentPadToNearest - paddingRequired;
+            buf.position(dataOffset + fimbOffset);
+            for (Map.Entry<Integer,byte[]> file : directory.entrySet()) {
+                bitVector |= (1 << file.getKey());
+                buf.put(file.getValue());
+                totalLength += file.getValue().length;
             }
 
+            int paddingRequired = getPaddingRequired(totalLength);
             if (totalLength > largestSize) {
                 largestSize = totalLength;
             }
             if (totalLength + paddingRequired > largestPadded) {
                 largestPadded = totalLength + paddingRequired;
             }
-
             for (int j = 0; j < paddingRequired; j++) {
-                fimbPayloadStream.write(fato.padding & 0xFF);
+                buf.put((byte)fato.padding);
             }
 
-            fatoBuf.putInt(fatbBuf.position() - 12);
-
-            fatbBuf.putInt(bitVector);
-            fatbBuf.putInt(fimbOffset);
-            fimbOffset = fimbPayloadStream.size();
-            fatbBuf.putInt(fimbOffset);
-            fatbBuf.putInt(totalLength);
+            int fatbEntryPosition = fatbPosition + 12 + 16 * i;
+            buf.putInt(fatoPosition + 12 + 4 * i, fatbEntryPosition - fatbPosition - 12);
+            buf.putInt(fatbEntryPosition, bitVector);
+            buf.putInt(fatbEntryPosition + 4, fimbOffset);
+            fimbOffset += totalLength + paddingRequired;
+            buf.putInt(fatbEntryPosition + 8, fimbOffset);
+            buf.putInt(fatbEntryPosition + 12, totalLength);
         }
 
-        int dataOffset = garcHeaderSize + fatoBuf.position() + fatbBuf.position() + fimb.headerSize;
-        garcBuf.putInt(dataOffset);
-        garcBuf.putInt(dataOffset + fimbOffset);
+        buf.position(0);
+        buf.put(garcMagic.getBytes());
+        buf.putInt(garcHeaderSize);
+        buf.putShort((short)0xFEFF);
+        buf.putShort(version == 4 ? (short)VER_4 : (short)VER_6);
+        buf.putInt(4);
+        buf.putInt(dataOffset);
+        buf.putInt(dataOffset + fimbOffset);
         if (garc.version == VER_4) {
-            garcBuf.putInt(largestSize);
+            buf.putInt(largestSize);
         } else if (garc.version == VER_6) {
-            garcBuf.putInt(largestPadded);
-            garcBuf.putInt(largestSize);
-            garcBuf.putInt(garc.contentPadToNearest);
+            buf.putInt(largestPadded);
+            buf.putInt(largestSize);
+            buf.putInt(garc.contentPadToNearest);
         }
-        fimbHeaderBuf.putInt(fimbPayloadStream.size());
-
-        garcBuf.flip();
-        fatoBuf.flip();
-        fatbBuf.flip();
-        fimbHeaderBuf.flip();
-
-        byte[] fullArray = new byte[garcBuf.limit() + fatoBuf.limit() + fatbBuf.limit() + fimbHeaderBuf.limit() + fimbPayloadStream.size()];
-        System.arraycopy(garcBuf.array(),
-                0,
-                fullArray,
-                0,
-                garcBuf.limit());
-        System.arraycopy(fatoBuf.array(),
-                0,
-                fullArray,
-                garcBuf.limit(),
-                fatoBuf.limit());
-        System.arraycopy(fatbBuf.array(),
-                0,
-                fullArray,
-                garcBuf.limit()+fatoBuf.limit(),
-                fatbBuf.limit());
-        System.arraycopy(fimbHeaderBuf.array(),
-                0,
-                fullArray,
-                garcBuf.limit()+fatoBuf.limit()+fatbBuf.limit(),
-                fimbHeaderBuf.limit());
-//        garcBuf.get(fullArray);
-//        fatoBuf.get(fullArray,garcBuf.limit(),fatoBuf.limit());
-//        fatbBuf.get(fullArray,garcBuf.limit()+fatoBuf.limit(),fatbBuf.limit());
-//        fimbHeaderBuf.get(fullArray,garcBuf.limit()+fatoBuf.limit()+fatbBuf.limit(),fimbHeaderBuf.limit());
-        System.arraycopy(fimbPayloadStream.toByteArray(),
-                0,
-                fullArray,
-                garcBuf.limit()+fatoBuf.limit()+fatbBuf.limit()+fimbHeaderBuf.limit(),
-                fimbPayloadStream.size());
-        return fullArray;
+
+        buf.position(fimbPosition);
+        buf.put(fimbMagic.getBytes());
+        buf.putInt(fimb.headerSize);
+        buf.putInt(fimbSize);
+        return buf.array();
     }
 
+    private int getPaddingRequired(int length) {
+        int paddingRequired = length % garc.contentPadToNearest;
+        if (paddingRequired != 0) {
+            paddingRequired = garc.contentPadToNearest - paddingRequired;
+        }
+        return paddingRequired;
+    }
 
+    /**
+     * Returns the files as they are to be written, i.e. compressed if they should be.
+     */
+    private List<Map<Integer,byte[]>> getPayloadFiles() throws IOException {
+        List<Map<Integer,byte[]>> payload = new ArrayList<>(fimb.files.size());
+        List<Map<Integer,byte[]>> toCompressDirectories = new ArrayList<>();
+        List<Integer> toCompressKeys = new ArrayList<>();
+        List<Callable<byte[]>> tasks = new ArrayList<>();
+        for (int i = 0; i < fimb.files.size(); i++) {
+            Map<Integer,byte[]> directory = fimb.files.get(i);
+            if (!Boolean.TRUE.equals(isCompressed.get(i))) {
+                payload.add(directory);
+                continue;
+            }
+            Map<Integer,byte[]> compressedDirectory = new TreeMap<>();
+            Map<Integer,CompressedFile> originals = dirtyFiles.contains(i) ? null : originalCompressed.get(i);
+            for (Map.Entry<Integer,byte[]> file : directory.entrySet()) {
+                CompressedFile original = originals == null ? null : originals.get(file.getKey());
+                if (original != null && original.matches(file.getValue())) {
+                    compressedDirectory.put(file.getKey(), original.compressed);
+                } else {
+                    // filled in once compressed
+                    compressedDirectory.put(file.getKey(), null);
+                    toCompressDirectories.add(compressedDirectory);
+                    toCompressKeys.add(file.getKey());
+                    byte[] decoded = file.getValue();
+                    tasks.add(() -> new BLZCoder(null).BLZ_EncodePub(decoded,false,false,"GARC"));
+                }
+            }
+            payload.add(compressedDirectory);
+        }
+
+        if (!tasks.isEmpty()) {
+            List<Future<byte[]>> compressed = ForkJoinPool.commonPool().invokeAll(tasks);
+            for (int t = 0; t < tasks.size(); t++) {
+                try {
+                    toCompressDirectories.get(t).put(toCompressKeys.get(t), compressed.get(t).get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while compressing GARC files", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new IOException(e.getCause());
+                }
+            }
+        }
+        return payload;
+    }
 
     public byte[] getFile(int index) {
         return fimb.files.get(index).get(0);
@@ -334,12 +426,41 @@ public class GARCArchive {
 
     public void setFile(int index, byte[] data) {
         fimb.files.get(index).put(0,data);
+        dirtyFiles.add(index);
     }
 
     public Map<Integer,byte[]> getDirectory(int index) {
         return fimb.files.get(index);
     }
 
+    private static class CompressedFile {
+        final byte[] compressed;
+        final int decodedLength;
+        final long decodedCRC;
+
+        CompressedFile(byte[] compressed, byte[] decoded) {
+            this.compressed = compressed;
+            this.decodedLength = decoded.length;
+            this.decodedCRC = crc(decoded);
+        }
+
+        /**
+         * Returns whether decoded is the same as what was compressed. The length and CRC32 rule out most changed files
+         * quickly; if they match, the original is decompressed again to compare every byte, since the CRC32 can
+         * match by chance.
+         */
+        boolean matches(byte[] decoded) {
+            return decoded.length == decodedLength && crc(decoded) == decodedCRC
+                    && Arrays.equals(new BLZCoder(null).BLZ_DecodePub(compressed, "GARC"), decoded);
+        }
+
+        private static long crc(byte[] data) {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            return crc.getValue();
+        }
+    }
+
     private class GARCFrame {
         int headerSize;
         int endianness;
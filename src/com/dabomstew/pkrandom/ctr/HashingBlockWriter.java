@@ -0,0 +1,353 @@
+package com.dabomstew.pkrandom.ctr;
+
+/*----------------------------------------------------------------------------*/
+/*--  HashingBlockWriter.java - writes a region of a file sequentially,     --*/
+/*--                            SHA-256 hashing it block by block.          --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer ZX" by the UPR-ZX team          --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2020.                                 --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Writes a region of a file from start to end, and computes the SHA-256 hash of each block of it on the way.
+ * <br><br>
+ * The data is gathered into chunks of whole blocks. Each full chunk is written to the file, and then hashed on a
+ * worker thread while the next one is gathered, so the region never has to be read back. The last block is hashed
+ * as if padded with zeros, matching a romfs level whose padding is left zeroed.
+ * <br><br>
+ * Optionally, the writer can be given the same region of a base file, along with its block hashes. Data copied
+ * with {@link #copyFromBase(long)} stays at the position it has in the base, and blocks made up only of such data
+ * (and gaps, which are then also filled from the base) get the base's hash instead of being hashed again.
+ */
+class HashingBlockWriter {
+
+    static final int HASH_SIZE = 0x20;
+
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private final RandomAccessFile out;
+    private final long startOffset;
+    private final int blockSize;
+    private final long regionSize;
+    private final byte[] hashes;
+    private final ExecutorService executor;
+    private final Semaphore chunksInFlight;
+    private final List<Future<?>> pending = new ArrayList<>();
+
+    private RandomAccessFile base;
+    private long baseStartOffset;
+    private long baseRegionSize;
+    private byte[] baseHashes;
+    private final BitSet dirtyBlocks = new BitSet();
+    private int reusedBlocks;
+
+    private byte[] chunk;
+    private int chunkLength;
+    private long chunkStart;
+
+    /**
+     * @param out The file to write to.
+     * @param startOffset Where in out the region starts.
+     * @param blockSize The size of the hashed blocks.
+     * @param regionSize The total size of the region; a hash is made for each (started) block of it.
+     * @param executor Runs the hashing.
+     */
+    HashingBlockWriter(RandomAccessFile out, long startOffset, int blockSize, long regionSize,
+                       ExecutorService executor) {
+        this.out = out;
+        this.startOffset = startOffset;
+        this.blockSize = blockSize;
+        this.regionSize = regionSize;
+        long blockCount = (regionSize + blockSize - 1) / blockSize;
+        this.hashes = new byte[Math.toIntExact(blockCount * HASH_SIZE)];
+        this.executor = executor;
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.chunksInFlight = new Semaphore(threads * 2);
+        this.chunk = newChunk();
+    }
+
+    /**
+     * Sets the base region, which lets unchanged blocks reuse its hashes. Must be called before writing anything.
+     *
+     * @param base The file holding the base region.
+     * @param baseStartOffset Where in base the region starts.
+     * @param baseRegionSize The size of the base region.
+     * @param baseHashes The hashes of the base region's blocks, in the same block size.
+     */
+    void setBase(RandomAccessFile base, long baseStartOffset, long baseRegionSize, byte[] baseHashes) {
+        if (position() != 0) {
+            throw new IllegalStateException("The base must be set before writing.");
+        }
+        this.base = base;
+        this.baseStartOffset = baseStartOffset;
+        this.baseRegionSize = baseRegionSize;
+        this.baseHashes = baseHashes;
+    }
+
+    /**
+     * The offset of the next byte to be written, relative to the start of the region.
+     */
+    long position() {
+        return chunkStart + chunkLength;
+    }
+
+    /**
+     * The number of blocks which got their hash from the base, so far.
+     */
+    int getReusedBlocks() {
+        return reusedBlocks;
+    }
+
+    int getBlockCount() {
+        return hashes.length / HASH_SIZE;
+    }
+
+    /**
+     * Writes data at the given offset relative to the start of the region. Offsets must never go backwards;
+     * anything skipped over is filled from the base if there is one, and with zeros otherwise.
+     */
+    void writeAt(long offset, byte[] data) throws IOException, InterruptedException {
+        if (offset < position()) {
+            throw new IllegalStateException("Can't write at " + offset + ", already at " + position());
+        }
+        skipTo(offset);
+        markDirty(position(), data.length);
+        write(data, 0, data.length);
+    }
+
+    /**
+     * Copies length bytes from the current file pointer of in to the end of the region.
+     */
+    void copyFrom(RandomAccessFile in, long length) throws IOException, InterruptedException {
+        markDirty(position(), length);
+        while (length > 0) {
+            int toRead = (int) Math.min(length, chunk.length - chunkLength);
+            in.readFully(chunk, chunkLength, toRead);
+            chunkLength += toRead;
+            length -= toRead;
+            flushIfFull();
+        }
+    }
+
+    /**
+     * Copies length bytes from the base region to the end of the region, from the same offset.
+     */
+    void copyFromBase(long length) throws IOException, InterruptedException {
+        if (base == null) {
+            throw new IllegalStateException("No base has been set.");
+        }
+        if (position() + length > baseRegionSize) {
+            throw new IllegalArgumentException("Can't copy past the end of the base region.");
+        }
+        base.seek(baseStartOffset + position());
+        while (length > 0) {
+            int toRead = (int) Math.min(length, chunk.length - chunkLength);
+            base.readFully(chunk, chunkLength, toRead);
+            chunkLength += toRead;
+            length -= toRead;
+            flushIfFull();
+        }
+    }
+
+    /**
+     * Fills the rest of the region like any other skipped part, writes whatever is still gathered, waits for all
+     * hashing to finish, and returns the hashes of all blocks, in order.
+     */
+    byte[] finish() throws IOException, InterruptedException {
+        skipTo(regionSize);
+        if (chunkLength > 0) {
+            flush();
+        }
+        try {
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return hashes;
+    }
+
+    private void skipTo(long offset) throws IOException, InterruptedException {
+        if (base != null && position() < Math.min(offset, baseRegionSize)) {
+            copyFromBase(Math.min(offset, baseRegionSize) - position());
+        }
+        if (position() < offset) {
+            markDirty(position(), offset - position());
+        }
+        while (position() < offset) {
+            int zeros = (int) Math.min(offset - position(), chunk.length - chunkLength);
+            // new chunks are already zeroed
+            chunkLength += zeros;
+            flushIfFull();
+        }
+    }
+
+    private void markDirty(long offset, long length) {
+        if (length > 0) {
+            dirtyBlocks.set((int) (offset / blockSize), (int) ((offset + length - 1) / blockSize) + 1);
+        }
+    }
+
+    private void write(byte[] data, int offset, int length) throws IOException, InterruptedException {
+        while (length > 0) {
+            int toCopy = Math.min(length, chunk.length - chunkLength);
+            System.arraycopy(data, offset, chunk, chunkLength, toCopy);
+            chunkLength += toCopy;
+            offset += toCopy;
+            length -= toCopy;
+            flushIfFull();
+        }
+    }
+
+    private void flushIfFull() throws IOException, InterruptedException {
+        if (chunkLength == chunk.length) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException, InterruptedException {
+        out.seek(startOffset + chunkStart);
+        out.write(chunk, 0, chunkLength);
+
+        // blocks whose contents (including zero padding) are the same as in the base get the base's hash
+        int firstBlock = (int) (chunkStart / blockSize);
+        int blockCount = (chunkLength + blockSize - 1) / blockSize;
+        BitSet toHash = new BitSet(blockCount);
+        for (int i = 0; i < blockCount; i++) {
+            if (isReusable(firstBlock + i)) {
+                int hashOffset = (firstBlock + i) * HASH_SIZE;
+                System.arraycopy(baseHashes, hashOffset, hashes, hashOffset, HASH_SIZE);
+                reusedBlocks++;
+            } else {
+                toHash.set(i);
+            }
+        }
+
+        if (!toHash.isEmpty()) {
+            byte[] data = chunk;
+            int dataLength = chunkLength;
+            chunksInFlight.acquire();
+            pending.add(executor.submit(() -> {
+                try {
+                    MessageDigest digest = newDigest();
+                    for (int i = toHash.nextSetBit(0); i >= 0; i = toHash.nextSetBit(i + 1)) {
+                        int offset = i * blockSize;
+                        hashBlock(digest, data, offset, Math.min(blockSize, dataLength - offset), blockSize,
+                                hashes, (firstBlock + i) * HASH_SIZE);
+                    }
+                } finally {
+                    chunksInFlight.release();
+                }
+            }));
+        }
+
+        chunkStart += chunkLength;
+        chunk = newChunk();
+        chunkLength = 0;
+    }
+
+    private boolean isReusable(int block) {
+        if (base == null || dirtyBlocks.get(block) || (long) (block + 1) * HASH_SIZE > baseHashes.length) {
+            return false;
+        }
+        long blockStart = (long) block * blockSize;
+        long blockEnd = blockStart + blockSize;
+        return Math.min(blockEnd, regionSize) == Math.min(blockEnd, baseRegionSize);
+    }
+
+    private byte[] newChunk() {
+        return new byte[Math.max(blockSize, CHUNK_SIZE / blockSize * blockSize)];
+    }
+
+    /**
+     * Hashes the first length bytes of data in blocks of blockSize, writing the hashes to out starting at
+     * outOffset. A last, partial block is hashed as if padded with zeros up to blockSize.
+     */
+    static void hashBlocks(byte[] data, int length, int blockSize, byte[] out, int outOffset) {
+        MessageDigest digest = newDigest();
+        for (int offset = 0; offset < length; offset += blockSize) {
+            hashBlock(digest, data, offset, Math.min(blockSize, length - offset), blockSize, out, outOffset);
+            outOffset += HASH_SIZE;
+        }
+    }
+
+    /**
+     * Like {@link #hashBlocks(byte[], int, int, byte[], int)}, but takes the hash from baseHashes for every block
+     * that is the same (including its zero padding) as the block at the same position in baseData.
+     *
+     * @return The number of blocks whose hash was taken from baseHashes.
+     */
+    static int hashBlocksReusing(byte[] data, int blockSize, byte[] out, byte[] baseData, byte[] baseHashes) {
+        MessageDigest digest = newDigest();
+        int reused = 0;
+        for (int offset = 0, outOffset = 0; offset < data.length; offset += blockSize, outOffset += HASH_SIZE) {
+            int inBlock = Math.min(blockSize, data.length - offset);
+            boolean same = outOffset + HASH_SIZE <= baseHashes.length
+                    && Math.min(blockSize, baseData.length - offset) == inBlock
+                    && rangeEquals(data, baseData, offset, inBlock);
+            if (same) {
+                System.arraycopy(baseHashes, outOffset, out, outOffset, HASH_SIZE);
+                reused++;
+            } else {
+                hashBlock(digest, data, offset, inBlock, blockSize, out, outOffset);
+            }
+        }
+        return reused;
+    }
+
+    private static boolean rangeEquals(byte[] a, byte[] b, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void hashBlock(MessageDigest digest, byte[] data, int offset, int inBlock, int blockSize,
+                                  byte[] out, int outOffset) {
+        digest.update(data, offset, inBlock);
+        if (inBlock < blockSize) {
+            digest.update(new byte[blockSize - inBlock]);
+        }
+        try {
+            digest.digest(out, outOffset, HASH_SIZE);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -21,18 +21,23 @@ package com.dabomstew.pkrandom.ctr;
 /*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
 /*----------------------------------------------------------------------------*/
 
+import com.dabomstew.pkrandom.DecompressionCache;
 import com.dabomstew.pkrandom.FileFunctions;
-import com.dabomstew.pkrandom.SysConstants;
+import com.dabomstew.pkrandom.OverrideStore;
 import com.dabomstew.pkrandom.exceptions.EncryptedROMException;
 import com.dabomstew.pkrandom.exceptions.RomIOException;
 import cuecompressors.BLZCoder;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.*;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class NCCH {
     private String romFilename;
@@ -48,10 +53,12 @@ public class NCCH {
     private List<FileMetadata> fileMetadataList;
     private Map<String, RomfsFile> romfsFiles;
     private boolean romOpen;
-    private String tmpFolder;
-    private boolean writingEnabled;
+    private final OverrideStore overrideStore;
     private boolean codeCompressed, codeOpen, codeChanged;
-    private byte[] codeRamstored;
+    private int codeModifications;
+    private boolean incrementalRomfsRebuild = false;
+    private BLZCoder.Mode codeCompressionMode = BLZCoder.Mode.BEST;
+    private RomfsRebuildStats lastRomfsRebuildStats;
 
     // Public so the base game can read it from the game update NCCH
     public long originalCodeCRC, originalRomfsHeaderCRC;
@@ -81,20 +88,8 @@ public class NCCH {
             this.version = this.readVersionFromFile();
         }
 
-        // TMP folder?
         String rawFilename = new File(filename).getName();
-        String dataFolder = "tmp_" + rawFilename.substring(0, rawFilename.lastIndexOf('.'));
-        // remove nonsensical chars
-        dataFolder = dataFolder.replaceAll("[^A-Za-z0-9_]+", "");
-        File tmpFolder = new File(SysConstants.ROOT_PATH + dataFolder);
-        tmpFolder.mkdirs();
-        if (tmpFolder.canWrite()) {
-            writingEnabled = true;
-            this.tmpFolder = SysConstants.ROOT_PATH + dataFolder + File.separator;
-            tmpFolder.deleteOnExit();
-        } else {
-            writingEnabled = false;
-        }
+        this.overrideStore = OverrideStore.create(rawFilename.substring(0, rawFilename.lastIndexOf('.')));
 
         // The below code handles things "wrong" with regards to encrypted ROMs. We just
         // blindly treat the ROM as decrypted and try to parse all of its data, when we
@@ -128,6 +123,15 @@ public class NCCH {
         }
     }
 
+    /**
+     * Closes the ROM file, and drops everything extracted from it, including any temp files of the
+     * {@link OverrideStore}. Unlike after {@link #closeROM()}, the NCCH can't be used afterwards.
+     */
+    public void close() throws IOException {
+        closeROM();
+        overrideStore.close();
+    }
+
     private void readFileSystem() throws IOException {
         exefsOffset = ncchStartingOffset + FileFunctions.readIntFromFile(baseRom, ncchStartingOffset + 0x1A0) * media_unit_size;
         romfsOffset = ncchStartingOffset + FileFunctions.readIntFromFile(baseRom, ncchStartingOffset + 0x1B0) * media_unit_size;
@@ -237,6 +241,7 @@ public class NCCH {
         RomfsFile file = new RomfsFile(this);
         file.offset = fileDataOffset + metadata.fileDataOffset;
         file.size = (int) metadata.fileDataLength;  // no Pokemon game has a file larger than unsigned int max
+        file.originalSize = file.size;
         file.fullPath = currentPath;
         metadata.file = file;
         fileMetadataList.add(metadata);
@@ -319,19 +324,12 @@ public class NCCH {
         fNew.write((int) newRomfsLength / media_unit_size);
 
         // Lastly, reconstruct the superblock hashes
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        int exefsHashRegionSize = FileFunctions.readIntFromFile(baseRom, ncchStartingOffset + 0x1A8) * media_unit_size;
-        byte[] exefsDataToHash = new byte[exefsHashRegionSize];
-        fNew.seek(newExefsOffset);
-        fNew.readFully(exefsDataToHash);
-        byte[] exefsSuperblockHash = digest.digest(exefsDataToHash);
+        long exefsHashRegionSize = (long) FileFunctions.readIntFromFile(baseRom, ncchStartingOffset + 0x1A8) * media_unit_size;
+        byte[] exefsSuperblockHash = hashFileRegion(fNew, newExefsOffset, exefsHashRegionSize);
         fNew.seek(0x1C0);
         fNew.write(exefsSuperblockHash);
-        int romfsHashRegionSize = FileFunctions.readIntFromFile(baseRom, ncchStartingOffset + 0x1B8) * media_unit_size;
-        byte[] romfsDataToHash = new byte[romfsHashRegionSize];
-        fNew.seek(newRomfsOffset);
-        fNew.readFully(romfsDataToHash);
-        byte[] romfsSuperblockHash = digest.digest(romfsDataToHash);
+        long romfsHashRegionSize = (long) FileFunctions.readIntFromFile(baseRom, ncchStartingOffset + 0x1B8) * media_unit_size;
+        byte[] romfsSuperblockHash = hashFileRegion(fNew, newRomfsOffset, romfsHashRegionSize);
         fNew.seek(0x1E0);
         fNew.write(romfsSuperblockHash);
 
@@ -347,7 +345,7 @@ public class NCCH {
         System.out.println("NCCH: Rebuilding exefs...");
         byte[] code = getCode();
         if (codeCompressed) {
-            code = new BLZCoder(null).BLZ_EncodePub(code, false, true, ".code");
+            code = new BLZCoder(null).BLZ_EncodePub(code, false, codeCompressionMode, ".code");
         }
 
         // Create a new ExefsFileHeader for our updated .code
@@ -430,72 +428,35 @@ public class NCCH {
         byte[] level3HeaderData = new byte[level3_header_size];
         baseRom.seek(level3Offset);
         baseRom.readFully(level3HeaderData);
-        fNew.seek(newLevel3Offset);
-        fNew.write(level3HeaderData);
 
-        // Write out both hash tables and the directory metadata table. Since we're not adding or removing
-        // any files/directories, we can just use what's in the base ROM for this.
+        // Both hash tables and the directory metadata table can also be used as they are in the base ROM.
+        // The file metadata table may need to be changed if any file grew or shrunk.
         int directoryHashTableOffset = FileFunctions.readFullInt(level3HeaderData, 0x04);
         int directoryHashTableLength = FileFunctions.readFullInt(level3HeaderData, 0x08);
         int directoryMetadataTableOffset = FileFunctions.readFullInt(level3HeaderData, 0x0C);
         int directoryMetadataTableLength = FileFunctions.readFullInt(level3HeaderData, 0x10);
         int fileHashTableOffset = FileFunctions.readFullInt(level3HeaderData, 0x14);
         int fileHashTableLength = FileFunctions.readFullInt(level3HeaderData, 0x18);
-        byte[] directoryHashTable = new byte[directoryHashTableLength];
-        baseRom.seek(level3Offset + directoryHashTableOffset);
-        baseRom.readFully(directoryHashTable);
-        fNew.seek(newLevel3Offset + directoryHashTableOffset);
-        fNew.write(directoryHashTable);
-        byte[] directoryMetadataTable = new byte[directoryMetadataTableLength];
-        baseRom.seek(level3Offset + directoryMetadataTableOffset);
-        baseRom.readFully(directoryMetadataTable);
-        fNew.seek(newLevel3Offset + directoryMetadataTableOffset);
-        fNew.write(directoryMetadataTable);
-        byte[] fileHashTable = new byte[fileHashTableLength];
-        baseRom.seek(level3Offset + fileHashTableOffset);
-        baseRom.readFully(fileHashTable);
-        fNew.seek(newLevel3Offset + fileHashTableOffset);
-        fNew.write(fileHashTable);
-
-        // Now reconstruct the file metadata table. It may need to be changed if any file grew or shrunk
         int fileMetadataTableOffset = FileFunctions.readFullInt(level3HeaderData, 0x1C);
         int fileMetadataTableLength = FileFunctions.readFullInt(level3HeaderData, 0x20);
-        byte[] newFileMetadataTable = updateFileMetadataTable(fileMetadataTableLength);
-        fNew.seek(newLevel3Offset + fileMetadataTableOffset);
-        fNew.write(newFileMetadataTable);
-
-        // Using the new file metadata table, output the file data
         int fileDataOffset = FileFunctions.readFullInt(level3HeaderData, 0x24);
-        long endOfFileDataOffset = 0;
+        TreeMap<Integer, byte[]> level3Tables = new TreeMap<>();
+        level3Tables.put(0, level3HeaderData);
+        level3Tables.put(directoryHashTableOffset,
+                readFromBaseRom(level3Offset + directoryHashTableOffset, directoryHashTableLength));
+        level3Tables.put(directoryMetadataTableOffset,
+                readFromBaseRom(level3Offset + directoryMetadataTableOffset, directoryMetadataTableLength));
+        level3Tables.put(fileHashTableOffset,
+                readFromBaseRom(level3Offset + fileHashTableOffset, fileHashTableLength));
+        level3Tables.put(fileMetadataTableOffset, updateFileMetadataTable(fileMetadataTableLength,
+                incrementalRomfsRebuild));
+
+        // The new file metadata table decides the size of level 3, so all hash levels can be sized up front
+        long newLevel3HashdataSize = fileDataOffset;
         for (FileMetadata metadata : fileMetadataList) {
-            System.out.println("NCCH: Writing file " + metadata.file.fullPath + " to romfs");
-            // Users have sent us bug reports with really bizarre errors here that seem to indicate
-            // broken metadata; do this in a try-catch solely so we can log the metadata if we fail
-            try {
-                byte[] fileData;
-                if (metadata.file.fileChanged) {
-                    fileData = metadata.file.getOverrideContents();
-                } else {
-                    fileData = new byte[metadata.file.size];
-                    baseRom.seek(metadata.file.offset);
-                    baseRom.readFully(fileData);
-                }
-                long currentDataOffset = newLevel3Offset + fileDataOffset + metadata.fileDataOffset;
-                fNew.seek(currentDataOffset);
-                fNew.write(fileData);
-                endOfFileDataOffset = currentDataOffset + fileData.length;
-            } catch (Exception e) {
-                String message = String.format("Error when building romfs: File: %s, offset: %s, size: %s",
-                        metadata.file.fullPath, metadata.offset, metadata.file.size);
-                throw new RomIOException(message, e);
-            }
+            newLevel3HashdataSize = Math.max(newLevel3HashdataSize,
+                    fileDataOffset + metadata.fileDataOffset + metadata.fileDataLength);
         }
-
-        // Now that level 3 (file data) is done, construct level 2 (hashes of file data)
-        // Note that in the ROM, level 1 comes *before* level 2, so we need to calculate
-        // level 1 length and offset as well.
-        long newLevel3EndingOffset = endOfFileDataOffset;
-        long newLevel3HashdataSize = newLevel3EndingOffset - newLevel3Offset;
         long numberOfLevel3HashBlocks = alignLong(newLevel3HashdataSize, level3HashBlockSize) / level3HashBlockSize;
         int level2HashBlockSize = 1 << FileFunctions.readFullInt(romfsHeaderData, 0x34);
         long newLevel2HashdataSize = numberOfLevel3HashBlocks * 0x20;
@@ -505,38 +466,103 @@ public class NCCH {
         long newLevel1Offset = newLevel3Offset + alignLong(newLevel3HashdataSize, level3HashBlockSize);
         long newLevel2Offset = newLevel1Offset + alignLong(newLevel1HashdataSize, level1HashBlockSize);
         long newFileEndingOffset = alignLong(newLevel2Offset + newLevel2HashdataSize, level2HashBlockSize);
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        byte[] dataToHash = new byte[level3HashBlockSize];
-        for (long i = 0; i < numberOfLevel3HashBlocks; i++) {
-            fNew.seek(newLevel3Offset + (i * level3HashBlockSize));
-            fNew.readFully(dataToHash);
-            byte[] hash = digest.digest(dataToHash);
-            fNew.seek(newLevel2Offset + (i * 0x20));
-            fNew.write(hash);
-        }
-        while (fNew.getFilePointer() != newFileEndingOffset) {
-            fNew.writeByte(0);
+        long numberOfLevel1HashBlocks = alignLong(newLevel1HashdataSize, level1HashBlockSize) / level1HashBlockSize;
+
+        // When rebuilding incrementally, the hashes of the base ROM's level 1 and 2 are read, so that blocks
+        // which are the same as in the base ROM can reuse them. Like in the new romfs, the base ROM's level 1
+        // comes right after level 3, and level 2 right after level 1.
+        long baseLevel3HashdataSize = FileFunctions.readFullLong(romfsHeaderData, 0x44);
+        byte[] baseLevel1Data = null;
+        byte[] baseLevel2Data = null;
+        if (incrementalRomfsRebuild) {
+            long baseLevel1HashdataSize = FileFunctions.readFullLong(romfsHeaderData, 0x14);
+            long baseLevel2HashdataSize = FileFunctions.readFullLong(romfsHeaderData, 0x2C);
+            long baseLevel1Offset = level3Offset + alignLong(baseLevel3HashdataSize, level3HashBlockSize);
+            long baseLevel2Offset = baseLevel1Offset + alignLong(baseLevel1HashdataSize, level1HashBlockSize);
+            baseLevel1Data = readFromBaseRom(baseLevel1Offset, (int) baseLevel1HashdataSize);
+            baseLevel2Data = readFromBaseRom(baseLevel2Offset, (int) baseLevel2HashdataSize);
         }
 
-        // Now that level 2 (hashes of file data) is done, construct level 1 (hashes of
-        // hashes of file data) and the master hash/level 0 (hashes of level 1)
-        dataToHash = new byte[level2HashBlockSize];
-        for (long i = 0; i < numberOfLevel2HashBlocks; i++) {
-            fNew.seek(newLevel2Offset + (i * level2HashBlockSize));
-            fNew.readFully(dataToHash);
-            byte[] hash = digest.digest(dataToHash);
-            fNew.seek(newLevel1Offset + (i * 0x20));
-            fNew.write(hash);
+        // Write level 3 (the tables, then the file data) front to back. Each level 3 block is hashed on a
+        // worker thread as soon as it's written, giving level 2 without reading anything back from fNew.
+        byte[] level2Data;
+        int level3BlocksReused;
+        ExecutorService hashingExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                r -> {
+                    Thread t = new Thread(r, "NCCH romfs hashing");
+                    t.setDaemon(true);
+                    return t;
+                });
+        try {
+            HashingBlockWriter level3Writer = new HashingBlockWriter(fNew, newLevel3Offset, level3HashBlockSize,
+                    newLevel3HashdataSize, hashingExecutor);
+            if (incrementalRomfsRebuild) {
+                level3Writer.setBase(baseRom, level3Offset, baseLevel3HashdataSize, baseLevel2Data);
+            }
+            for (Map.Entry<Integer, byte[]> table : level3Tables.entrySet()) {
+                // with a base, anything not written is copied from it, so unchanged tables can be skipped
+                if (!incrementalRomfsRebuild || !Arrays.equals(table.getValue(),
+                        readFromBaseRom(level3Offset + table.getKey(), table.getValue().length))) {
+                    level3Writer.writeAt(table.getKey(), table.getValue());
+                }
+            }
+            if (level3Writer.position() > fileDataOffset) {
+                throw new RomIOException("Romfs tables overlap the file data.");
+            }
+            for (FileMetadata metadata : fileMetadataList) {
+                System.out.println("NCCH: Writing file " + metadata.file.fullPath + " to romfs");
+                // Users have sent us bug reports with really bizarre errors here that seem to indicate
+                // broken metadata; do this in a try-catch solely so we can log the metadata if we fail
+                try {
+                    long fileStart = fileDataOffset + metadata.fileDataOffset;
+                    boolean moved = metadata.fileDataOffset != metadata.originalFileDataOffset;
+                    if (incrementalRomfsRebuild && !metadata.file.fileChanged && !moved) {
+                        // left to be copied from the base along with whatever comes before the next write
+                        continue;
+                    }
+                    if (metadata.file.fileChanged) {
+                        level3Writer.writeAt(fileStart, metadata.file.getOverrideContents());
+                    } else {
+                        level3Writer.writeAt(fileStart, new byte[0]);
+                        baseRom.seek(metadata.file.offset);
+                        level3Writer.copyFrom(baseRom, metadata.file.size);
+                    }
+                } catch (Exception e) {
+                    String message = String.format("Error when building romfs: File: %s, offset: %s, size: %s",
+                            metadata.file.fullPath, metadata.offset, metadata.file.size);
+                    throw new RomIOException(message, e);
+                }
+            }
+            level2Data = level3Writer.finish();
+            level3BlocksReused = level3Writer.getReusedBlocks();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RomIOException("Interrupted while rebuilding romfs.", e);
+        } finally {
+            hashingExecutor.shutdownNow();
         }
-        long numberOfLevel1HashBlocks = alignLong(newLevel1HashdataSize, level1HashBlockSize) / level1HashBlockSize;
-        dataToHash = new byte[level1HashBlockSize];
-        for (long i = 0; i < numberOfLevel1HashBlocks; i++) {
-            fNew.seek(newLevel1Offset + (i * level1HashBlockSize));
-            fNew.readFully(dataToHash);
-            byte[] hash = digest.digest(dataToHash);
-            fNew.seek(newRomfsOffset + 0x60 + (i * 0x20));
-            fNew.write(hash);
+
+        // Level 1 (hashes of level 2) and the master hash (hashes of level 1) are small enough to make in memory.
+        // In the ROM, level 1 comes *before* level 2, and each level is padded with zeros up to its block size.
+        byte[] level1Data = new byte[(int) newLevel1HashdataSize];
+        int level2BlocksReused = 0;
+        if (incrementalRomfsRebuild) {
+            level2BlocksReused = HashingBlockWriter.hashBlocksReusing(level2Data, level2HashBlockSize, level1Data,
+                    baseLevel2Data, baseLevel1Data);
+        } else {
+            HashingBlockWriter.hashBlocks(level2Data, level2Data.length, level2HashBlockSize, level1Data, 0);
         }
+        lastRomfsRebuildStats = new RomfsRebuildStats(level3BlocksReused, (int) numberOfLevel3HashBlocks,
+                level2BlocksReused, (int) numberOfLevel2HashBlocks);
+        byte[] masterHashData = new byte[(int) numberOfLevel1HashBlocks * 0x20];
+        HashingBlockWriter.hashBlocks(level1Data, level1Data.length, level1HashBlockSize, masterHashData, 0);
+        fNew.seek(newLevel1Offset);
+        fNew.write(level1Data);
+        fNew.seek(newLevel2Offset);
+        fNew.write(level2Data);
+        fNew.setLength(Math.max(fNew.length(), newFileEndingOffset));
+        fNew.seek(newRomfsOffset + 0x60);
+        fNew.write(masterHashData);
 
         // Lastly, update the header and return the size of the new romfs
         long level1LogicalOffset = 0;
@@ -562,16 +588,53 @@ public class NCCH {
         return newRomfsLength;
     }
 
-    private byte[] updateFileMetadataTable(int fileMetadataTableLength) {
-        fileMetadataList.sort((FileMetadata f1, FileMetadata f2) -> (int) (f1.fileDataOffset - f2.fileDataOffset));
+    private byte[] readFromBaseRom(long offset, int length) throws IOException {
+        byte[] data = new byte[length];
+        baseRom.seek(offset);
+        baseRom.readFully(data);
+        return data;
+    }
+
+    // hashes a region of a file in pieces, instead of reading it into a single array first
+    private static byte[] hashFileRegion(RandomAccessFile file, long offset, long length)
+            throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[(int) Math.min(length, 1 << 20)];
+        file.seek(offset);
+        while (length > 0) {
+            int toRead = (int) Math.min(length, buffer.length);
+            file.readFully(buffer, 0, toRead);
+            digest.update(buffer, 0, toRead);
+            length -= toRead;
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Lays out the file data, and makes the new file metadata table to match.
+     *
+     * @param incremental If true, every file stays at its offset in the base ROM unless the file before it grew
+     *                    into it, in which case it's moved to the next 0x10-aligned offset after that file. This
+     *                    keeps as much of the file data at the same place as possible. If false, the files are
+     *                    packed back to back instead.
+     */
+    private byte[] updateFileMetadataTable(int fileMetadataTableLength, boolean incremental) {
+        if (incremental) {
+            fileMetadataList.sort(Comparator.comparingLong(metadata -> metadata.originalFileDataOffset));
+        } else {
+            fileMetadataList.sort(Comparator.comparingLong(metadata -> metadata.fileDataOffset));
+        }
         byte[] fileMetadataTable = new byte[fileMetadataTableLength];
         int currentTableOffset = 0;
         long currentFileDataOffset = 0;
         for (FileMetadata metadata : fileMetadataList) {
-            metadata.fileDataOffset = currentFileDataOffset;
-            if (metadata.file.fileChanged) {
-                metadata.fileDataLength = metadata.file.size;
+            if (incremental) {
+                currentFileDataOffset = Math.max(metadata.originalFileDataOffset,
+                        alignLong(currentFileDataOffset, 0x10));
             }
+            metadata.fileDataOffset = currentFileDataOffset;
+            // always taken from the file, since a restored snapshot can shrink a file back after an earlier save
+            metadata.fileDataLength = metadata.file.size;
             byte[] metadataBytes = metadata.asBytes();
             System.arraycopy(metadataBytes, 0, fileMetadataTable, currentTableOffset, metadataBytes.length);
             currentTableOffset += metadataBytes.length;
@@ -656,9 +719,8 @@ public class NCCH {
 
     // Retrieves a decompressed version of .code (the game's executable).
     // The first time this is called, it will retrieve it straight from the
-    // exefs. Future calls will rely on a cached version to speed things up.
-    // If writing is enabled, it will cache the decompressed version to the
-    // tmpFolder; otherwise, it will store it in RAM.
+    // exefs. Future calls will rely on a cached version, in the override store,
+    // to speed things up.
     public byte[] getCode() throws IOException {
         if (!codeOpen) {
             codeOpen = true;
@@ -671,32 +733,13 @@ public class NCCH {
             originalCodeCRC = FileFunctions.getCRC32(code);
 
             if (codeCompressed) {
-                code = new BLZCoder(null).BLZ_DecodePub(code, ".code");
+                code = DecompressionCache.getShared().decode(code, originalCodeCRC, ".code");
             }
 
-            // Now actually make the copy or w/e
-            if (writingEnabled) {
-                File arm9file = new File(tmpFolder + ".code");
-                FileOutputStream fos = new FileOutputStream(arm9file);
-                fos.write(code);
-                fos.close();
-                arm9file.deleteOnExit();
-                this.codeRamstored = null;
-                return code;
-            } else {
-                this.codeRamstored = code;
-                byte[] newcopy = new byte[code.length];
-                System.arraycopy(code, 0, newcopy, 0, code.length);
-                return newcopy;
-            }
+            overrideStore.put(".code", code);
+            return code;
         } else {
-            if (writingEnabled) {
-                return FileFunctions.readFileFullyIntoBuffer(tmpFolder + ".code");
-            } else {
-                byte[] newcopy = new byte[this.codeRamstored.length];
-                System.arraycopy(this.codeRamstored, 0, newcopy, 0, this.codeRamstored.length);
-                return newcopy;
-            }
+            return overrideStore.get(".code");
         }
     }
 
@@ -705,21 +748,8 @@ public class NCCH {
             getCode();
         }
         codeChanged = true;
-        if (writingEnabled) {
-            FileOutputStream fos = new FileOutputStream(new File(tmpFolder + ".code"));
-            fos.write(code);
-            fos.close();
-        } else {
-            if (this.codeRamstored.length == code.length) {
-                // copy new in
-                System.arraycopy(code, 0, this.codeRamstored, 0, code.length);
-            } else {
-                // make new array
-                this.codeRamstored = null;
-                this.codeRamstored = new byte[code.length];
-                System.arraycopy(code, 0, this.codeRamstored, 0, code.length);
-            }
-        }
+        codeModifications++;
+        overrideStore.put(".code", code);
     }
 
     public boolean hasFile(String filename) {
@@ -735,12 +765,189 @@ public class NCCH {
         }
     }
 
+    /**
+     * Returns the contents of a romfs file as they are in the base ROM, ignoring any changes made to it since.
+     * Unlike {@link #getFile(String)}, this does not extract the file, and can be called by several threads at once.
+     * Returns null if the file doesn't exist.
+     */
+    public byte[] getOriginalFile(String filename) throws IOException {
+        RomfsFile file = romfsFiles.get(filename);
+        if (file == null) {
+            return null;
+        }
+        FileChannel channel = getBaseRomChannel();
+        ByteBuffer buf = ByteBuffer.allocate(file.originalSize);
+        // positional reads don't move the channel's position, so they don't get in each other's way
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, file.offset + buf.position()) < 0) {
+                throw new EOFException("Unexpected end of ROM while reading " + filename);
+            }
+        }
+        return buf.array();
+    }
+
+    private synchronized FileChannel getBaseRomChannel() throws IOException {
+        reopenROM();
+        return baseRom.getChannel();
+    }
+
+    public String getFilename() {
+        return romFilename;
+    }
+
     public void writeFile(String filename, byte[] data) throws IOException {
         if (romfsFiles.containsKey(filename)) {
             romfsFiles.get(filename).writeOverride(data);
         }
     }
 
+    /**
+     * Saves the current contents of all romfs files and .code, so they can be put back later by
+     * {@link #restoreSnapshot(Snapshot)}. Unextracted files cost nothing to save; the contents of extracted ones are
+     * held in memory.
+     */
+    public Snapshot createSnapshot() throws IOException {
+        return new Snapshot();
+    }
+
+    /**
+     * Puts back the contents saved by {@link #createSnapshot()}. Only files and .code written to since the
+     * snapshot was made are touched.
+     */
+    public void restoreSnapshot(Snapshot snapshot) throws IOException {
+        if (snapshot.owner != this) {
+            throw new IllegalArgumentException("Snapshot was not made from this NCCH.");
+        }
+        for (RomfsFile file : romfsFiles.values()) {
+            int modifications = snapshot.fileModifications.get(file);
+            if (file.getModifications() != modifications) {
+                file.restoreContents(snapshot.fileContents.get(file), modifications);
+                file.size = snapshot.fileSizes.get(file);
+                file.fileChanged = snapshot.filesChanged.get(file);
+            }
+        }
+        if (codeModifications != snapshot.codeModifications) {
+            if (snapshot.code == null) {
+                codeOpen = false;
+                codeChanged = false;
+                overrideStore.remove(".code");
+            } else {
+                writeCode(snapshot.code);
+                codeChanged = snapshot.codeChanged;
+            }
+            codeModifications = snapshot.codeModifications;
+        }
+    }
+
+    /**
+     * Sets whether {@link #saveAsNCCH(String, String, long)} rebuilds the romfs incrementally. Off by default, so the
+     * output keeps the packed layout it always had.
+     * An incremental rebuild keeps unchanged files where they are in the base ROM, and reuses the base ROM's hashes
+     * for every block that is the same as before, instead of hashing the whole romfs again.
+     */
+    public void setIncrementalRomfsRebuild(boolean incrementalRomfsRebuild) {
+        this.incrementalRomfsRebuild = incrementalRomfsRebuild;
+    }
+
+    public boolean isIncrementalRomfsRebuild() {
+        return incrementalRomfsRebuild;
+    }
+
+    /**
+     * Sets how hard saving compresses a changed .code. {@link BLZCoder.Mode#BEST} by default.
+     */
+    public void setCodeCompressionMode(BLZCoder.Mode codeCompressionMode) {
+        this.codeCompressionMode = codeCompressionMode;
+    }
+
+    /**
+     * Returns how many hash blocks the last romfs rebuild could reuse from the base ROM, or null if the romfs has
+     * not been rebuilt yet.
+     */
+    public RomfsRebuildStats getLastRomfsRebuildStats() {
+        return lastRomfsRebuildStats;
+    }
+
+    /**
+     * Counts of the romfs hash blocks whose hash was reused from the base ROM during a rebuild. A level 3 block is
+     * hashed into level 2, and a level 2 block into level 1.
+     */
+    public static class RomfsRebuildStats {
+        private final int level3BlocksReused;
+        private final int level3Blocks;
+        private final int level2BlocksReused;
+        private final int level2Blocks;
+
+        private RomfsRebuildStats(int level3BlocksReused, int level3Blocks, int level2BlocksReused,
+                                  int level2Blocks) {
+            this.level3BlocksReused = level3BlocksReused;
+            this.level3Blocks = level3Blocks;
+            this.level2BlocksReused = level2BlocksReused;
+            this.level2Blocks = level2Blocks;
+        }
+
+        public int getLevel3BlocksReused() {
+            return level3BlocksReused;
+        }
+
+        public int getLevel3Blocks() {
+            return level3Blocks;
+        }
+
+        public int getLevel2BlocksReused() {
+            return level2BlocksReused;
+        }
+
+        public int getLevel2Blocks() {
+            return level2Blocks;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Reused the hashes of %d/%d level 3 blocks and %d/%d level 2 blocks",
+                    level3BlocksReused, level3Blocks, level2BlocksReused, level2Blocks);
+        }
+    }
+
+    /**
+     * The saved state of an {@link NCCH}, see {@link #createSnapshot()}.
+     */
+    public class Snapshot {
+        private final NCCH owner = NCCH.this;
+        private final Map<RomfsFile, Integer> fileModifications = new HashMap<>();
+        private final Map<RomfsFile, byte[]> fileContents = new HashMap<>();
+        private final Map<RomfsFile, Integer> fileSizes = new HashMap<>();
+        private final Map<RomfsFile, Boolean> filesChanged = new HashMap<>();
+        private final int codeModifications = NCCH.this.codeModifications;
+        private final boolean codeChanged = NCCH.this.codeChanged;
+        private final byte[] code;
+
+        private Snapshot() throws IOException {
+            for (RomfsFile file : romfsFiles.values()) {
+                fileModifications.put(file, file.getModifications());
+                fileContents.put(file, file.getExtractedContents());
+                fileSizes.put(file, file.size);
+                filesChanged.put(file, file.fileChanged);
+            }
+            code = codeOpen ? getCode() : null;
+        }
+    }
+
+    /**
+     * Like {@link #printRomDiagnostics(PrintStream, NCCH)}, but also lists the given files if they haven't been
+     * extracted, calculating their CRC32s from the game update if it has them, or else from the base ROM.
+     */
+    public void printRomDiagnostics(PrintStream logStream, NCCH gameUpdate, Collection<String> filenames)
+            throws IOException {
+        for (String filename : filenames) {
+            NCCH source = gameUpdate != null && gameUpdate.hasFile(filename) ? gameUpdate : this;
+            if (source.romfsFiles.containsKey(filename)) {
+                source.romfsFiles.get(filename).calculateOriginalCRC();
+            }
+        }
+        printRomDiagnostics(logStream, gameUpdate);
+    }
+
     public void printRomDiagnostics(PrintStream logStream, NCCH gameUpdate) {
         Path p = Paths.get(this.romFilename);
         logStream.println("File name: " + p.getFileName().toString());
@@ -782,16 +989,13 @@ public class NCCH {
         return fileDiagnostics;
     }
 
-    public String getTmpFolder() {
-        return tmpFolder;
-    }
-
     public RandomAccessFile getBaseRom() {
         return baseRom;
     }
 
-    public boolean isWritingEnabled() {
-        return writingEnabled;
+    // holds the contents of extracted romfs files and .code
+    OverrideStore getOverrideStore() {
+        return overrideStore;
     }
 
     public String getProductCode() {
@@ -979,6 +1183,7 @@ public class NCCH {
         public int parentDirectoryOffset;
         public int siblingFileOffset;
         public long fileDataOffset;
+        public long originalFileDataOffset;
         public long fileDataLength;
         public int nextFileInHashBucketOffset;
         public int nameLength;
@@ -990,6 +1195,7 @@ public class NCCH {
             parentDirectoryOffset = FileFunctions.readFullInt(fileMetadataBlock, offset);
             siblingFileOffset = FileFunctions.readFullInt(fileMetadataBlock, offset + 0x04);
             fileDataOffset = FileFunctions.readFullLong(fileMetadataBlock, offset + 0x08);
+            originalFileDataOffset = fileDataOffset;
             fileDataLength = FileFunctions.readFullLong(fileMetadataBlock, offset + 0x10);
             nextFileInHashBucketOffset = FileFunctions.readFullInt(fileMetadataBlock, offset + 0x18);
             nameLength = FileFunctions.readFullInt(fileMetadataBlock, offset + 0x1C);
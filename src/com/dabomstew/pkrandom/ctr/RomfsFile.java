@@ -23,8 +23,6 @@ package com.dabomstew.pkrandom.ctr;
 
 import com.dabomstew.pkrandom.FileFunctions;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 
@@ -33,10 +31,11 @@ public class RomfsFile {
     private NCCH parent;
     public long offset;
     public int size;
+    // the size in the base ROM; size changes when the file is written to
+    public int originalSize;
     public String fullPath;
-    private Extracted status = Extracted.NOT;
-    private String extFilename;
-    public byte[] data;
+    private boolean extracted;
+    private int modifications;
     public boolean fileChanged = false;
     public long originalCRC;
 
@@ -45,7 +44,7 @@ public class RomfsFile {
     }
 
     public byte[] getContents() throws IOException {
-        if (this.status == Extracted.NOT) {
+        if (!this.extracted) {
             // extract file
             parent.reopenROM();
             RandomAccessFile rom = parent.getBaseRom();
@@ -53,69 +52,70 @@ public class RomfsFile {
             rom.seek(this.offset);
             rom.readFully(buf);
             originalCRC = FileFunctions.getCRC32(buf);
-            if (parent.isWritingEnabled()) {
-                // make a file
-                String tmpDir = parent.getTmpFolder();
-                this.extFilename = fullPath.replaceAll("[^A-Za-z0-9_\\.]+", "");
-                File tmpFile = new File(tmpDir + extFilename);
-                FileOutputStream fos = new FileOutputStream(tmpFile);
-                fos.write(buf);
-                fos.close();
-                tmpFile.deleteOnExit();
-                this.status = Extracted.TO_FILE;
-                this.data = null;
-                return buf;
-            } else {
-                this.status = Extracted.TO_RAM;
-                this.data = buf;
-                byte[] newcopy = new byte[buf.length];
-                System.arraycopy(buf, 0, newcopy, 0, buf.length);
-                return newcopy;
-            }
-        } else if (this.status == Extracted.TO_RAM) {
-            byte[] newcopy = new byte[this.data.length];
-            System.arraycopy(this.data, 0, newcopy, 0, this.data.length);
-            return newcopy;
+            parent.getOverrideStore().put(getStoreKey(), buf);
+            this.extracted = true;
+            return buf;
         } else {
-            String tmpDir = parent.getTmpFolder();
-            return FileFunctions.readFileFullyIntoBuffer(tmpDir + this.extFilename);
+            return parent.getOverrideStore().get(getStoreKey());
+        }
+    }
+
+    // sets originalCRC as extracting the file would, but without extracting it
+    void calculateOriginalCRC() throws IOException {
+        if (originalCRC == 0) {
+            parent.reopenROM();
+            RandomAccessFile rom = parent.getBaseRom();
+            byte[] buf = new byte[this.originalSize];
+            rom.seek(this.offset);
+            rom.readFully(buf);
+            originalCRC = FileFunctions.getCRC32(buf);
         }
     }
 
     public void writeOverride(byte[] data) throws IOException {
-        if (status == Extracted.NOT) {
+        if (!extracted) {
             // temp extract
             getContents();
         }
         fileChanged = true;
+        modifications++;
         size = data.length;
-        if (status == Extracted.TO_FILE) {
-            String tmpDir = parent.getTmpFolder();
-            FileOutputStream fos = new FileOutputStream(new File(tmpDir + this.extFilename));
-            fos.write(data);
-            fos.close();
-        } else {
-            if (this.data.length == data.length) {
-                // copy new in
-                System.arraycopy(data, 0, this.data, 0, data.length);
-            } else {
-                // make new array
-                this.data = null;
-                this.data = new byte[data.length];
-                System.arraycopy(data, 0, this.data, 0, data.length);
-            }
-        }
+        parent.getOverrideStore().put(getStoreKey(), data);
     }
 
     // returns null if no override
     public byte[] getOverrideContents() throws IOException {
-        if (status == Extracted.NOT) {
+        if (!extracted) {
             return null;
         }
         return getContents();
     }
 
-    private enum Extracted {
-        NOT, TO_FILE, TO_RAM
+    // the number of writeOverride() calls, so snapshots can tell which files changed since they were made
+    int getModifications() {
+        return modifications;
+    }
+
+    // returns null if not extracted
+    byte[] getExtractedContents() throws IOException {
+        if (!extracted) {
+            return null;
+        }
+        return getContents();
+    }
+
+    // puts back the result of an earlier getExtractedContents()/getModifications() pair
+    void restoreContents(byte[] contents, int modifications) throws IOException {
+        if (contents == null) {
+            this.extracted = false;
+            parent.getOverrideStore().remove(getStoreKey());
+        } else {
+            writeOverride(contents);
+        }
+        this.modifications = modifications;
+    }
+
+    private String getStoreKey() {
+        return "romfs/" + fullPath;
     }
 }
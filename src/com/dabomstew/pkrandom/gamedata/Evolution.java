@@ -42,6 +42,11 @@ public class Evolution implements Comparable<Evolution> {
         this.extraInfo = extra;
     }
 
+    public Evolution(Evolution original) {
+        this(original.from, original.to, original.type, original.extraInfo);
+        this.forme = original.forme;
+    }
+
     /**
      * Returns the {@link Species} this Evolution is "from".<br>
      * E.g. for the Evolution "Bulbasaur->Ivysaur" this would return Bulbasaur.
@@ -28,6 +28,7 @@ package com.dabomstew.pkrandom.gamedata;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.function.UnaryOperator;
 
 import com.dabomstew.pkrandom.graphics.palettes.SGBPaletteID;
 
@@ -44,6 +45,22 @@ public class Gen1Species extends Species {
 	
 	private SGBPaletteID paletteID;
 
+    @Override
+    public Species copyData(UnaryOperator<List<Evolution>> evolutionListCopier) {
+        Gen1Species copy = new Gen1Species(getNumber());
+        copyDataTo(copy, evolutionListCopier);
+        return copy;
+    }
+
+    @Override
+    public void copyDataTo(Species target, UnaryOperator<List<Evolution>> evolutionListCopier) {
+        super.copyDataTo(target, evolutionListCopier);
+        Gen1Species gen1Target = (Gen1Species) target;
+        gen1Target.frontImagePointer = frontImagePointer;
+        gen1Target.backImagePointer = backImagePointer;
+        gen1Target.paletteID = paletteID;
+    }
+
 	@Override
 	public void copyShuffledStatsUpEvolution(Species evolvesFrom) {
 		// If stats were already shuffled once, un-shuffle them
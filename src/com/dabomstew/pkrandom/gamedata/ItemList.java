@@ -24,6 +24,7 @@ package com.dabomstew.pkrandom.gamedata;
 /*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
 /*----------------------------------------------------------------------------*/
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Random;
 import java.util.Set;
@@ -34,14 +35,41 @@ public class ItemList {
     private boolean[] items;
     private boolean[] tms;
 
+    // the same items as above, densely packed so a random one can be drawn (and one banned) in constant time
+    private IndexPool allowedPool;
+    private IndexPool nonTMPool;
+    private IndexPool tmPool;
+
+    private boolean seedStable = true;
+
     public ItemList(int highestIndex) {
         items = new boolean[highestIndex + 1];
         tms = new boolean[highestIndex + 1];
+        allowedPool = new IndexPool(highestIndex + 1);
+        nonTMPool = new IndexPool(highestIndex + 1);
+        tmPool = new IndexPool(highestIndex + 1);
         for (int i = 1; i <= highestIndex; i++) {
             items[i] = true;
+            allowedPool.add(i);
+            nonTMPool.add(i);
         }
     }
 
+    /**
+     * Sets whether the random methods draw items the same way they always have, i.e. by trying random indexes until
+     * an allowed one comes up. This is the default, so the same seed and settings give the same items as in earlier
+     * versions.<br>
+     * If false, they instead draw from only the allowed items, using a single random number each. This is faster
+     * when few items are allowed, but gives different items for the same seed.
+     */
+    public void setSeedStable(boolean seedStable) {
+        this.seedStable = seedStable;
+    }
+
+    public boolean isSeedStable() {
+        return seedStable;
+    }
+
     public boolean isTM(int index) {
         return index >= 0 && index < tms.length && tms[index];
     }
@@ -52,23 +80,36 @@ public class ItemList {
 
     public void banSingles(int... indexes) {
         for (int index : indexes) {
-            items[index] = false;
+            ban(index);
         }
     }
 
     public void banRange(int startIndex, int length) {
         for (int i = 0; i < length; i++) {
-            items[i + startIndex] = false;
+            ban(i + startIndex);
         }
     }
 
+    private void ban(int index) {
+        items[index] = false;
+        allowedPool.remove(index);
+        nonTMPool.remove(index);
+    }
+
     public void tmRange(int startIndex, int length) {
         for (int i = 0; i < length; i++) {
-            tms[i + startIndex] = true;
+            int index = i + startIndex;
+            tms[index] = true;
+            tmPool.add(index);
+            nonTMPool.remove(index);
         }
     }
 
     public int randomItem(Random random) {
+        checkNotEmpty(allowedPool, "items");
+        if (!seedStable) {
+            return allowedPool.random(random);
+        }
         int chosen = 0;
         while (!items[chosen]) {
             chosen = random.nextInt(items.length);
@@ -77,6 +118,10 @@ public class ItemList {
     }
 
     public int randomNonTM(Random random) {
+        checkNotEmpty(nonTMPool, "non-TM items");
+        if (!seedStable) {
+            return nonTMPool.random(random);
+        }
         int chosen = 0;
         while (!items[chosen] || tms[chosen]) {
             chosen = random.nextInt(items.length);
@@ -85,6 +130,10 @@ public class ItemList {
     }
 
     public int randomTM(Random random) {
+        checkNotEmpty(tmPool, "TMs");
+        if (!seedStable) {
+            return tmPool.random(random);
+        }
         int chosen = 0;
         while (!tms[chosen]) {
             chosen = random.nextInt(items.length);
@@ -92,17 +141,30 @@ public class ItemList {
         return chosen;
     }
 
+    private static void checkNotEmpty(IndexPool pool, String what) {
+        // rather than looking for one forever
+        if (pool.size == 0) {
+            throw new IllegalStateException("No " + what + " left to choose from.");
+        }
+    }
+
     public ItemList copy() {
-        ItemList other = new ItemList(items.length - 1);
-        System.arraycopy(items, 0, other.items, 0, items.length);
-        System.arraycopy(tms, 0, other.tms, 0, tms.length);
-        return other;
+        return copy(items.length - 1);
     }
 
     public ItemList copy(int newMax) {
         ItemList other = new ItemList(newMax);
         System.arraycopy(items, 0, other.items, 0, items.length);
         System.arraycopy(tms, 0, other.tms, 0, tms.length);
+        other.allowedPool = allowedPool.copy(newMax + 1);
+        other.nonTMPool = nonTMPool.copy(newMax + 1);
+        other.tmPool = tmPool.copy(newMax + 1);
+        // indexes beyond the old max start out allowed, as in a new ItemList
+        for (int i = items.length; i <= newMax; i++) {
+            other.allowedPool.add(i);
+            other.nonTMPool.add(i);
+        }
+        other.seedStable = seedStable;
         return other;
     }
 
@@ -140,4 +202,51 @@ public class ItemList {
         }
         return tmSet;
     }
+
+    /**
+     * A set of indexes in a dense array, where removing one swaps the last one into its place.
+     */
+    private static class IndexPool {
+
+        private final int[] members;
+        // where each index is in members, or -1 if it isn't
+        private final int[] positions;
+        private int size;
+
+        IndexPool(int capacity) {
+            members = new int[capacity];
+            positions = new int[capacity];
+            Arrays.fill(positions, -1);
+        }
+
+        void add(int index) {
+            if (positions[index] == -1) {
+                members[size] = index;
+                positions[index] = size;
+                size++;
+            }
+        }
+
+        void remove(int index) {
+            int position = positions[index];
+            if (position != -1) {
+                int last = members[--size];
+                members[position] = last;
+                positions[last] = position;
+                positions[index] = -1;
+            }
+        }
+
+        int random(Random random) {
+            return members[random.nextInt(size)];
+        }
+
+        IndexPool copy(int capacity) {
+            IndexPool other = new IndexPool(capacity);
+            System.arraycopy(members, 0, other.members, 0, size);
+            System.arraycopy(positions, 0, other.positions, 0, positions.length);
+            other.size = size;
+            return other;
+        }
+    }
 }
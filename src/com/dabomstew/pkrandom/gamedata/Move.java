@@ -109,7 +109,13 @@ public class Move {
 
     public Move(Move original) {
         this();
+        copyDataFrom(original);
+    }
 
+    /**
+     * Sets all data of this Move to that of the original, e.g. to revert it to an earlier copy.
+     */
+    public void copyDataFrom(Move original) {
         this.name = original.name;
         this.number = original.number;
         this.internalId = original.internalId;
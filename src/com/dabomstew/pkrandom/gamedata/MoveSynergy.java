@@ -29,669 +29,590 @@ import com.dabomstew.pkrandom.constants.AbilityIDs;
 import com.dabomstew.pkrandom.constants.MoveIDs;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import static java.util.stream.Collectors.toCollection;
-
+/**
+ * Synergies between moves, or between abilities/stats and moves.
+ * <br><br>
+ * Each method returns the Moves of moveList which go well (or badly) with the given move/ability/stats, each once,
+ * in the order they appear in moveList. Whether a Move is included only depends on that Move itself, never on which
+ * other Moves are in moveList, so the package-private {@code ...Numbers} methods give the move numbers of the
+ * related Moves of moveList, which {@link MoveSynergyIndex} keeps for all moves of the game.
+ */
 public class MoveSynergy {
 
     public static List<Move> getSoftAbilityMoveSynergy(int ability, List<Move> moveList, Type pkType1, Type pkType2) {
-        List<Integer> synergisticMoves = new ArrayList<>();
+        return filter(moveList, getSoftAbilityMoveSynergyNumbers(ability, moveList, pkType1, pkType2));
+    }
+
+    static BitSet getSoftAbilityMoveSynergyNumbers(int ability, List<Move> moveList, Type pkType1, Type pkType2) {
+        BitSet synergisticMoves = new BitSet();
 
         switch(ability) {
             case AbilityIDs.drizzle:
             case AbilityIDs.primordialSea:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.type == Type.WATER && mv.category != MoveCategory.STATUS)
-                        .map(mv -> mv.number).collect(Collectors.toList()));
+                        .filter(mv -> mv.type == Type.WATER && mv.category != MoveCategory.STATUS));
                 break;
             case AbilityIDs.drought:
             case AbilityIDs.desolateLand:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.type == Type.FIRE && mv.category != MoveCategory.STATUS)
-                        .map(mv -> mv.number).collect(Collectors.toList()));
+                        .filter(mv -> mv.type == Type.FIRE && mv.category != MoveCategory.STATUS));
                 break;
             case AbilityIDs.refrigerate:
                 if (pkType1 == Type.ICE || pkType2 == Type.ICE) {
-                    synergisticMoves.addAll(moveList
+                    addAll(synergisticMoves, moveList
                             .stream()
-                            .filter(mv -> mv.type == Type.NORMAL && mv.category != MoveCategory.STATUS)
-                            .map(mv -> mv.number).collect(Collectors.toList()));
+                            .filter(mv -> mv.type == Type.NORMAL && mv.category != MoveCategory.STATUS));
                 }
                 break;
             case AbilityIDs.galeWings:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.type == Type.FLYING)
-                        .map(mv -> mv.number).collect(Collectors.toList()));
+                        .filter(mv -> mv.type == Type.FLYING));
                 break;
             case AbilityIDs.pixilate:
                 if (pkType1 == Type.FAIRY || pkType2 == Type.FAIRY) {
-                    synergisticMoves.addAll(moveList
+                    addAll(synergisticMoves, moveList
                             .stream()
-                            .filter(mv -> mv.type == Type.NORMAL && mv.category != MoveCategory.STATUS)
-                            .map(mv -> mv.number)
-                            .collect(Collectors.toList()));
+                            .filter(mv -> mv.type == Type.NORMAL && mv.category != MoveCategory.STATUS));
                 }
                 break;
             case AbilityIDs.aerilate:
                 if (pkType1 == Type.FLYING || pkType2 == Type.FLYING) {
-                    synergisticMoves.addAll(moveList
+                    addAll(synergisticMoves, moveList
                             .stream()
-                            .filter(mv -> mv.type == Type.NORMAL && mv.category != MoveCategory.STATUS)
-                            .map(mv -> mv.number)
-                            .collect(Collectors.toList()));
+                            .filter(mv -> mv.type == Type.NORMAL && mv.category != MoveCategory.STATUS));
                 }
                 break;
             case AbilityIDs.darkAura:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.type == Type.DARK && mv.category != MoveCategory.STATUS)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.type == Type.DARK && mv.category != MoveCategory.STATUS));
                 break;
             case AbilityIDs.fairyAura:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.type == Type.FAIRY && mv.category != MoveCategory.STATUS)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.type == Type.FAIRY && mv.category != MoveCategory.STATUS));
                 break;
             case AbilityIDs.steelworker:
             case AbilityIDs.steelySpirit:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.type == Type.STEEL && mv.category != MoveCategory.STATUS)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.type == Type.STEEL && mv.category != MoveCategory.STATUS));
                 break;
             case AbilityIDs.galvanize:
                 if (pkType1 == Type.ELECTRIC || pkType2 == Type.ELECTRIC) {
-                    synergisticMoves.addAll(moveList
+                    addAll(synergisticMoves, moveList
                             .stream()
-                            .filter(mv -> mv.type == Type.NORMAL && mv.category != MoveCategory.STATUS)
-                            .map(mv -> mv.number)
-                            .collect(Collectors.toList()));
+                            .filter(mv -> mv.type == Type.NORMAL && mv.category != MoveCategory.STATUS));
                 }
                 break;
             case AbilityIDs.electricSurge:
             case AbilityIDs.transistor:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.type == Type.ELECTRIC && mv.category != MoveCategory.STATUS)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.type == Type.ELECTRIC && mv.category != MoveCategory.STATUS));
                 break;
             case AbilityIDs.psychicSurge:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.type == Type.PSYCHIC && mv.category != MoveCategory.STATUS)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.type == Type.PSYCHIC && mv.category != MoveCategory.STATUS));
                 break;
             case AbilityIDs.grassySurge:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.type == Type.GRASS && mv.category != MoveCategory.STATUS)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.type == Type.GRASS && mv.category != MoveCategory.STATUS));
                 break;
             case AbilityIDs.dragonsMaw:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.type == Type.DRAGON && mv.category != MoveCategory.STATUS)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.type == Type.DRAGON && mv.category != MoveCategory.STATUS));
                 break;
         }
 
-        return moveList
-                .stream()
-                .filter(mv -> synergisticMoves.contains(mv.number))
-                .distinct()
-                .collect(toCollection(ArrayList::new));
+        return synergisticMoves;
     }
 
     public static List<Move> getSoftAbilityMoveAntiSynergy(int ability, List<Move> moveList) {
-        List<Integer> antiSynergisticMoves = new ArrayList<>();
+        return filter(moveList, getSoftAbilityMoveAntiSynergyNumbers(ability, moveList));
+    }
+
+    static BitSet getSoftAbilityMoveAntiSynergyNumbers(int ability, List<Move> moveList) {
+        BitSet antiSynergisticMoves = new BitSet();
 
         switch (ability) {
             case AbilityIDs.drizzle:
-                antiSynergisticMoves.addAll(moveList
+                addAll(antiSynergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.type == Type.FIRE && mv.category != MoveCategory.STATUS)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.type == Type.FIRE && mv.category != MoveCategory.STATUS));
                 break;
             case AbilityIDs.drought:
-                antiSynergisticMoves.addAll(moveList
+                addAll(antiSynergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.type == Type.WATER && mv.category != MoveCategory.STATUS)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.type == Type.WATER && mv.category != MoveCategory.STATUS));
                 break;
             case AbilityIDs.mistySurge:
-                antiSynergisticMoves.addAll(moveList
+                addAll(antiSynergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.type == Type.DRAGON && mv.category != MoveCategory.STATUS)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.type == Type.DRAGON && mv.category != MoveCategory.STATUS));
                 break;
         }
 
-        return moveList
-                .stream()
-                .filter(mv -> antiSynergisticMoves.contains(mv.number))
-                .distinct()
-                .collect(toCollection(ArrayList::new));
+        return antiSynergisticMoves;
     }
 
     public static List<Move> getHardAbilityMoveSynergy(int ability, Type pkType1, Type pkType2, List<Move> moveList,
                                                        int generation, int perfectAccuracy) {
-        List<Integer> synergisticMoves = new ArrayList<>();
+        return filter(moveList, getHardAbilityMoveSynergyNumbers(ability, pkType1, pkType2, moveList, generation,
+                perfectAccuracy));
+    }
+
+    static BitSet getHardAbilityMoveSynergyNumbers(int ability, Type pkType1, Type pkType2, List<Move> moveList,
+                                                   int generation, int perfectAccuracy) {
+        BitSet synergisticMoves = new BitSet();
 
         switch(ability) {
             case AbilityIDs.drizzle:
             case AbilityIDs.primordialSea:
-                synergisticMoves.add(MoveIDs.thunder);
-                synergisticMoves.add(MoveIDs.hurricane);
+                synergisticMoves.set(MoveIDs.thunder);
+                synergisticMoves.set(MoveIDs.hurricane);
                 if (pkType1 == Type.WATER || pkType2 == Type.WATER) {
-                    synergisticMoves.add(MoveIDs.weatherBall);
+                    synergisticMoves.set(MoveIDs.weatherBall);
                 }
                 break;
             case AbilityIDs.speedBoost:
-                synergisticMoves.add(MoveIDs.batonPass);
-                synergisticMoves.add(MoveIDs.storedPower);
-                synergisticMoves.add(MoveIDs.powerTrip);
+                synergisticMoves.set(MoveIDs.batonPass);
+                synergisticMoves.set(MoveIDs.storedPower);
+                synergisticMoves.set(MoveIDs.powerTrip);
                 break;
             case AbilityIDs.sturdy:
                 if (generation >= 5) {
-                    synergisticMoves.add(MoveIDs.endeavor);
-                    synergisticMoves.add(MoveIDs.counter);
-                    synergisticMoves.add(MoveIDs.mirrorCoat);
-                    synergisticMoves.add(MoveIDs.flail);
-                    synergisticMoves.add(MoveIDs.reversal);
+                    synergisticMoves.set(MoveIDs.endeavor);
+                    synergisticMoves.set(MoveIDs.counter);
+                    synergisticMoves.set(MoveIDs.mirrorCoat);
+                    synergisticMoves.set(MoveIDs.flail);
+                    synergisticMoves.set(MoveIDs.reversal);
                 }
                 break;
             case AbilityIDs.sandVeil:
             case AbilityIDs.sandRush:
-                synergisticMoves.add(MoveIDs.sandstorm);
+                synergisticMoves.set(MoveIDs.sandstorm);
                 break;
             case AbilityIDs.staticTheAbilityNotTheKeyword:
-                synergisticMoves.add(MoveIDs.smellingSalts);
-                synergisticMoves.add(MoveIDs.hex);
+                synergisticMoves.set(MoveIDs.smellingSalts);
+                synergisticMoves.set(MoveIDs.hex);
                 break;
             case AbilityIDs.compoundEyes:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.hitratio > 0 && mv.hitratio <= 80)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.hitratio > 0 && mv.hitratio <= 80));
                 break;
             case AbilityIDs.ownTempo:
             case AbilityIDs.tangledFeet:
-                synergisticMoves.add(MoveIDs.petalDance);
-                synergisticMoves.add(MoveIDs.thrash);
-                synergisticMoves.add(MoveIDs.outrage);
+                synergisticMoves.set(MoveIDs.petalDance);
+                synergisticMoves.set(MoveIDs.thrash);
+                synergisticMoves.set(MoveIDs.outrage);
                 break;
             case AbilityIDs.shadowTag:
             case AbilityIDs.arenaTrap:
-                synergisticMoves.add(MoveIDs.perishSong);
+                synergisticMoves.set(MoveIDs.perishSong);
                 break;
             case AbilityIDs.poisonPoint:
-                synergisticMoves.add(MoveIDs.venoshock);
+                synergisticMoves.set(MoveIDs.venoshock);
                 // fallthrough
             case AbilityIDs.effectSpore:
             case AbilityIDs.flameBody:
-                synergisticMoves.add(MoveIDs.hex);
+                synergisticMoves.set(MoveIDs.hex);
                 break;
             case AbilityIDs.sereneGrace:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
                         .filter(mv -> ((mv.statChangeMoveType == StatChangeMoveType.DAMAGE_TARGET ||
                                 mv.statChangeMoveType == StatChangeMoveType.DAMAGE_USER) &&
                                 mv.statChanges[0].percentChance < 100) ||
                                 (mv.statusMoveType == StatusMoveType.DAMAGE && mv.statusPercentChance < 100) ||
-                        mv.flinchPercentChance > 0)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        mv.flinchPercentChance > 0));
                 break;
             case AbilityIDs.swiftSwim:
             case AbilityIDs.rainDish:
             case AbilityIDs.drySkin:
             case AbilityIDs.hydration:
-                synergisticMoves.add(MoveIDs.rainDance);
+                synergisticMoves.set(MoveIDs.rainDance);
                 break;
             case AbilityIDs.chlorophyll:
             case AbilityIDs.harvest:
             case AbilityIDs.leafGuard:
-                synergisticMoves.add(MoveIDs.sunnyDay);
+                synergisticMoves.set(MoveIDs.sunnyDay);
                 break;
             case AbilityIDs.soundproof:
-                synergisticMoves.add(MoveIDs.perishSong);
+                synergisticMoves.set(MoveIDs.perishSong);
                 break;
             case AbilityIDs.sandStream:
                 if (pkType1 == Type.ROCK || pkType2 == Type.ROCK) {
-                    synergisticMoves.add(MoveIDs.weatherBall);
+                    synergisticMoves.set(MoveIDs.weatherBall);
                 }
                 break;
             case AbilityIDs.earlyBird:
             case AbilityIDs.shedSkin:
-                synergisticMoves.add(MoveIDs.rest);
+                synergisticMoves.set(MoveIDs.rest);
                 break;
             case AbilityIDs.truant:
-                synergisticMoves.add(MoveIDs.transform);
+                synergisticMoves.set(MoveIDs.transform);
                 break;
             case AbilityIDs.hustle:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
                         .filter(mv -> (mv.statChangeMoveType == StatChangeMoveType.DAMAGE_USER ||
                                 mv.statChangeMoveType == StatChangeMoveType.NO_DAMAGE_USER) &&
-                                mv.hasSpecificStatChange(StatChangeType.ACCURACY, true))
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
-                synergisticMoves.addAll(moveList
+                                mv.hasSpecificStatChange(StatChangeType.ACCURACY, true)));
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.category == MoveCategory.PHYSICAL && mv.hitratio == perfectAccuracy)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.category == MoveCategory.PHYSICAL && mv.hitratio == perfectAccuracy));
                 break;
             case AbilityIDs.guts:
-                synergisticMoves.add(MoveIDs.facade);
+                synergisticMoves.set(MoveIDs.facade);
                 break;
             case AbilityIDs.rockHead:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.recoilPercent > 0)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.recoilPercent > 0));
                 break;
             case AbilityIDs.drought:
             case AbilityIDs.desolateLand:
-                synergisticMoves.add(MoveIDs.solarBeam);
-                synergisticMoves.add(MoveIDs.solarBlade);
-                synergisticMoves.add(MoveIDs.morningSun);
-                synergisticMoves.add(MoveIDs.synthesis);
-                synergisticMoves.add(MoveIDs.moonlight);
+                synergisticMoves.set(MoveIDs.solarBeam);
+                synergisticMoves.set(MoveIDs.solarBlade);
+                synergisticMoves.set(MoveIDs.morningSun);
+                synergisticMoves.set(MoveIDs.synthesis);
+                synergisticMoves.set(MoveIDs.moonlight);
                 if (generation >= 5) {
-                    synergisticMoves.add(MoveIDs.growth);
+                    synergisticMoves.set(MoveIDs.growth);
                 }
                 if (pkType1 == Type.FIRE || pkType2 == Type.FIRE) {
-                    synergisticMoves.add(MoveIDs.weatherBall);
+                    synergisticMoves.set(MoveIDs.weatherBall);
                 }
                 break;
             case AbilityIDs.ironFist:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.isPunchMove)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.isPunchMove));
                 break;
             case AbilityIDs.snowCloak:
             case AbilityIDs.iceBody:
             case AbilityIDs.slushRush:
-                synergisticMoves.add(MoveIDs.hail);
+                synergisticMoves.set(MoveIDs.hail);
                 break;
             case AbilityIDs.unburden:
-                synergisticMoves.add(MoveIDs.fling);
-                synergisticMoves.add(MoveIDs.acrobatics);
+                synergisticMoves.set(MoveIDs.fling);
+                synergisticMoves.set(MoveIDs.acrobatics);
                 break;
             case AbilityIDs.simple:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
                         .filter(mv -> (mv.statChangeMoveType == StatChangeMoveType.DAMAGE_USER ||
                                 mv.statChangeMoveType == StatChangeMoveType.NO_DAMAGE_USER) &&
-                                mv.statChanges[0].stages > 0)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
-                synergisticMoves.add(MoveIDs.acupressure);
+                                mv.statChanges[0].stages > 0));
+                synergisticMoves.set(MoveIDs.acupressure);
                 break;
             case AbilityIDs.adaptability:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.category != MoveCategory.STATUS && (mv.type == pkType1 || mv.type == pkType2))
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.category != MoveCategory.STATUS &&
+                                (mv.type == pkType1 || mv.type == pkType2)));
                 break;
             case AbilityIDs.skillLink:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.hitCount >= 3)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.hitCount >= 3));
                 break;
             case AbilityIDs.sniper:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
                         .filter(mv -> mv.criticalChance == CriticalChance.INCREASED ||
-                                mv.criticalChance == CriticalChance.GUARANTEED)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                                mv.criticalChance == CriticalChance.GUARANTEED));
                 break;
             case AbilityIDs.magicGuard:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.recoilPercent > 0)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
-                synergisticMoves.add(MoveIDs.mindBlown);
+                        .filter(mv -> mv.recoilPercent > 0));
+                synergisticMoves.set(MoveIDs.mindBlown);
                 break;
             case AbilityIDs.stall:
-                synergisticMoves.add(MoveIDs.metalBurst);
-                synergisticMoves.add(MoveIDs.payback);
+                synergisticMoves.set(MoveIDs.metalBurst);
+                synergisticMoves.set(MoveIDs.payback);
                 break;
             case AbilityIDs.superLuck:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.criticalChance == CriticalChance.INCREASED)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.criticalChance == CriticalChance.INCREASED));
                 break;
             case AbilityIDs.analytic:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.power > 0 && mv.priority < 0)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.power > 0 && mv.priority < 0));
                 break;
             case AbilityIDs.noGuard:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.hitratio > 0 && mv.hitratio <= 70)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.hitratio > 0 && mv.hitratio <= 70));
                 break;
             case AbilityIDs.technician:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> (mv.power >= 40 && mv.power <= 60) || mv.hitCount > 1)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> (mv.power >= 40 && mv.power <= 60) || mv.hitCount > 1));
                 break;
             case AbilityIDs.slowStart:
-                synergisticMoves.add(MoveIDs.transform);
-                synergisticMoves.add(MoveIDs.protect);
-                synergisticMoves.add(MoveIDs.detect);
-                synergisticMoves.add(MoveIDs.kingsShield);
-                synergisticMoves.add(MoveIDs.banefulBunker);
-                synergisticMoves.add(MoveIDs.fly);
-                synergisticMoves.add(MoveIDs.dig);
-                synergisticMoves.add(MoveIDs.bounce);
-                synergisticMoves.add(MoveIDs.dive);
+                synergisticMoves.set(MoveIDs.transform);
+                synergisticMoves.set(MoveIDs.protect);
+                synergisticMoves.set(MoveIDs.detect);
+                synergisticMoves.set(MoveIDs.kingsShield);
+                synergisticMoves.set(MoveIDs.banefulBunker);
+                synergisticMoves.set(MoveIDs.fly);
+                synergisticMoves.set(MoveIDs.dig);
+                synergisticMoves.set(MoveIDs.bounce);
+                synergisticMoves.set(MoveIDs.dive);
                 break;
             case AbilityIDs.snowWarning:
-                synergisticMoves.add(MoveIDs.auroraVeil);
-                synergisticMoves.add(MoveIDs.blizzard);
+                synergisticMoves.set(MoveIDs.auroraVeil);
+                synergisticMoves.set(MoveIDs.blizzard);
                 if (pkType1 == Type.ICE || pkType2 == Type.ICE) {
-                    synergisticMoves.add(MoveIDs.weatherBall);
+                    synergisticMoves.set(MoveIDs.weatherBall);
                 }
                 break;
             case AbilityIDs.reckless:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.recoilPercent > 0)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
-                synergisticMoves.add(MoveIDs.jumpKick);
-                synergisticMoves.add(MoveIDs.highJumpKick);
+                        .filter(mv -> mv.recoilPercent > 0));
+                synergisticMoves.set(MoveIDs.jumpKick);
+                synergisticMoves.set(MoveIDs.highJumpKick);
                 break;
             case AbilityIDs.badDreams:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.statusType == StatusType.SLEEP)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.statusType == StatusType.SLEEP));
                 break;
             case AbilityIDs.sheerForce:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
                         .filter(mv -> mv.statChangeMoveType == StatChangeMoveType.DAMAGE_TARGET ||
                                 (mv.statChangeMoveType == StatChangeMoveType.DAMAGE_USER &&
                                         mv.statChanges[0].stages > 0) ||
                                 mv.statusMoveType == StatusMoveType.DAMAGE ||
-                                mv.flinchPercentChance > 0)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                                mv.flinchPercentChance > 0));
                 break;
             case AbilityIDs.contrary:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
                         .filter(mv -> mv.statChangeMoveType == StatChangeMoveType.DAMAGE_USER &&
-                                mv.statChanges[0].stages < 0)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                                mv.statChanges[0].stages < 0));
                 break;
             case AbilityIDs.heavyMetal:
-                synergisticMoves.add(MoveIDs.heatCrash);
-                synergisticMoves.add(MoveIDs.heavySlam);
+                synergisticMoves.set(MoveIDs.heatCrash);
+                synergisticMoves.set(MoveIDs.heavySlam);
                 break;
             case AbilityIDs.moody:
-                synergisticMoves.add(MoveIDs.storedPower);
-                synergisticMoves.add(MoveIDs.powerTrip);
+                synergisticMoves.set(MoveIDs.storedPower);
+                synergisticMoves.set(MoveIDs.powerTrip);
                 break;
             case AbilityIDs.poisonTouch:
             case AbilityIDs.toughClaws:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.makesContact)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.makesContact));
                 break;
             case AbilityIDs.regenerator:
-                synergisticMoves.add(MoveIDs.uTurn);
-                synergisticMoves.add(MoveIDs.voltSwitch);
-                synergisticMoves.add(MoveIDs.partingShot);
+                synergisticMoves.set(MoveIDs.uTurn);
+                synergisticMoves.set(MoveIDs.voltSwitch);
+                synergisticMoves.set(MoveIDs.partingShot);
                 break;
             case AbilityIDs.prankster:
-                synergisticMoves.addAll(moveList
-                        .stream()
-                        .filter(mv -> mv.statusMoveType == StatusMoveType.NO_DAMAGE)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
-                synergisticMoves.add(MoveIDs.destinyBond);
-                synergisticMoves.add(MoveIDs.encore);
-                synergisticMoves.add(MoveIDs.reflect);
-                synergisticMoves.add(MoveIDs.lightScreen);
-                synergisticMoves.add(MoveIDs.grudge);
-                synergisticMoves.add(MoveIDs.painSplit);
-                synergisticMoves.add(MoveIDs.substitute);
+                addAll(synergisticMoves, moveList
+                        .stream()
+                        .filter(mv -> mv.statusMoveType == StatusMoveType.NO_DAMAGE));
+                synergisticMoves.set(MoveIDs.destinyBond);
+                synergisticMoves.set(MoveIDs.encore);
+                synergisticMoves.set(MoveIDs.reflect);
+                synergisticMoves.set(MoveIDs.lightScreen);
+                synergisticMoves.set(MoveIDs.grudge);
+                synergisticMoves.set(MoveIDs.painSplit);
+                synergisticMoves.set(MoveIDs.substitute);
                 break;
             case AbilityIDs.strongJaw:
-                synergisticMoves.add(MoveIDs.bite);
-                synergisticMoves.add(MoveIDs.crunch);
-                synergisticMoves.add(MoveIDs.fireFang);
-                synergisticMoves.add(MoveIDs.fishiousRend);
-                synergisticMoves.add(MoveIDs.hyperFang);
-                synergisticMoves.add(MoveIDs.iceFang);
-                synergisticMoves.add(MoveIDs.jawLock);
-                synergisticMoves.add(MoveIDs.poisonFang);
-                synergisticMoves.add(MoveIDs.psychicFangs);
-                synergisticMoves.add(MoveIDs.thunderFang);
+                synergisticMoves.set(MoveIDs.bite);
+                synergisticMoves.set(MoveIDs.crunch);
+                synergisticMoves.set(MoveIDs.fireFang);
+                synergisticMoves.set(MoveIDs.fishiousRend);
+                synergisticMoves.set(MoveIDs.hyperFang);
+                synergisticMoves.set(MoveIDs.iceFang);
+                synergisticMoves.set(MoveIDs.jawLock);
+                synergisticMoves.set(MoveIDs.poisonFang);
+                synergisticMoves.set(MoveIDs.psychicFangs);
+                synergisticMoves.set(MoveIDs.thunderFang);
                 break;
             case AbilityIDs.megaLauncher:
-                synergisticMoves.add(MoveIDs.auraSphere);
-                synergisticMoves.add(MoveIDs.darkPulse);
-                synergisticMoves.add(MoveIDs.dragonPulse);
-                synergisticMoves.add(MoveIDs.originPulse);
-                synergisticMoves.add(MoveIDs.terrainPulse);
-                synergisticMoves.add(MoveIDs.waterPulse);
+                synergisticMoves.set(MoveIDs.auraSphere);
+                synergisticMoves.set(MoveIDs.darkPulse);
+                synergisticMoves.set(MoveIDs.dragonPulse);
+                synergisticMoves.set(MoveIDs.originPulse);
+                synergisticMoves.set(MoveIDs.terrainPulse);
+                synergisticMoves.set(MoveIDs.waterPulse);
                 break;
             case AbilityIDs.wimpOut:
             case AbilityIDs.emergencyExit:
-                synergisticMoves.add(MoveIDs.fakeOut);
-                synergisticMoves.add(MoveIDs.firstImpression);
+                synergisticMoves.set(MoveIDs.fakeOut);
+                synergisticMoves.set(MoveIDs.firstImpression);
                 break;
             case AbilityIDs.merciless:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.statusType == StatusType.POISON || mv.statusType == StatusType.TOXIC_POISON)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
-                synergisticMoves.add(MoveIDs.banefulBunker);
+                        .filter(mv -> mv.statusType == StatusType.POISON || mv.statusType == StatusType.TOXIC_POISON));
+                synergisticMoves.set(MoveIDs.banefulBunker);
                 break;
             case AbilityIDs.liquidVoice:
                 if (pkType1 == Type.WATER || pkType2 == Type.WATER) {
-                    synergisticMoves.addAll(moveList
+                    addAll(synergisticMoves, moveList
                             .stream()
-                            .filter(mv -> mv.isSoundMove && mv.power > 0)
-                            .map(mv -> mv.number)
-                            .collect(Collectors.toList()));
+                            .filter(mv -> mv.isSoundMove && mv.power > 0));
                 }
                 break;
             case AbilityIDs.triage:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.absorbPercent > 0)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.absorbPercent > 0));
                 break;
             case AbilityIDs.surgeSurfer:
-                synergisticMoves.add(MoveIDs.electricTerrain);
+                synergisticMoves.set(MoveIDs.electricTerrain);
                 break;
             case AbilityIDs.corrosion:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
                         .filter(mv -> mv.category == MoveCategory.STATUS &&
-                                (mv.statusType == StatusType.POISON || mv.statusType == StatusType.TOXIC_POISON))
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                                (mv.statusType == StatusType.POISON || mv.statusType == StatusType.TOXIC_POISON)));
                 break;
         }
 
-        return moveList
-                .stream()
-                .filter(mv -> synergisticMoves.contains(mv.number))
-                .distinct()
-                .collect(toCollection(ArrayList::new));
+        return synergisticMoves;
     }
 
     public static List<Move> getHardAbilityMoveAntiSynergy(int ability, List<Move> moveList) {
-        List<Integer> antiSynergisticMoves = new ArrayList<>();
+        return filter(moveList, getHardAbilityMoveAntiSynergyNumbers(ability, moveList));
+    }
+
+    static BitSet getHardAbilityMoveAntiSynergyNumbers(int ability, List<Move> moveList) {
+        BitSet antiSynergisticMoves = new BitSet();
 
         switch(ability) {
             case AbilityIDs.primordialSea:
-                antiSynergisticMoves.addAll(moveList
+                addAll(antiSynergisticMoves, moveList
                         .stream()
                         .filter(mv -> mv.type == Type.FIRE &&
-                                mv.category != MoveCategory.STATUS)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                                mv.category != MoveCategory.STATUS));
                 // fallthrough
             case AbilityIDs.drizzle:
             case AbilityIDs.sandStream:
             case AbilityIDs.snowWarning:
-                antiSynergisticMoves.add(MoveIDs.solarBeam);
-                antiSynergisticMoves.add(MoveIDs.solarBlade);
-                antiSynergisticMoves.add(MoveIDs.morningSun);
-                antiSynergisticMoves.add(MoveIDs.synthesis);
-                antiSynergisticMoves.add(MoveIDs.moonlight);
-                antiSynergisticMoves.add(MoveIDs.rainDance);
-                antiSynergisticMoves.add(MoveIDs.sunnyDay);
-                antiSynergisticMoves.add(MoveIDs.hail);
-                antiSynergisticMoves.add(MoveIDs.sandstorm);
+                antiSynergisticMoves.set(MoveIDs.solarBeam);
+                antiSynergisticMoves.set(MoveIDs.solarBlade);
+                antiSynergisticMoves.set(MoveIDs.morningSun);
+                antiSynergisticMoves.set(MoveIDs.synthesis);
+                antiSynergisticMoves.set(MoveIDs.moonlight);
+                antiSynergisticMoves.set(MoveIDs.rainDance);
+                antiSynergisticMoves.set(MoveIDs.sunnyDay);
+                antiSynergisticMoves.set(MoveIDs.hail);
+                antiSynergisticMoves.set(MoveIDs.sandstorm);
                 break;
             case AbilityIDs.speedBoost:
-                antiSynergisticMoves.addAll(moveList
+                addAll(antiSynergisticMoves, moveList
                         .stream()
                         .filter(mv -> (mv.statChangeMoveType == StatChangeMoveType.NO_DAMAGE_USER) &&
                                 mv.statChanges[0].type == StatChangeType.SPEED &&
-                                mv.statChanges[0].stages > 0)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
-                antiSynergisticMoves.add(MoveIDs.psychUp);
-                antiSynergisticMoves.add(MoveIDs.haze);
+                                mv.statChanges[0].stages > 0));
+                antiSynergisticMoves.set(MoveIDs.psychUp);
+                antiSynergisticMoves.set(MoveIDs.haze);
                 break;
             case AbilityIDs.desolateLand:
-                antiSynergisticMoves.addAll(moveList
+                addAll(antiSynergisticMoves, moveList
                         .stream()
                         .filter(mv -> mv.type == Type.WATER &&
-                                mv.category != MoveCategory.STATUS)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                                mv.category != MoveCategory.STATUS));
                 // fallthrough
             case AbilityIDs.drought:
-                antiSynergisticMoves.add(MoveIDs.thunder);
-                antiSynergisticMoves.add(MoveIDs.hurricane);
-                antiSynergisticMoves.add(MoveIDs.rainDance);
-                antiSynergisticMoves.add(MoveIDs.sunnyDay);
-                antiSynergisticMoves.add(MoveIDs.hail);
-                antiSynergisticMoves.add(MoveIDs.sandstorm);
+                antiSynergisticMoves.set(MoveIDs.thunder);
+                antiSynergisticMoves.set(MoveIDs.hurricane);
+                antiSynergisticMoves.set(MoveIDs.rainDance);
+                antiSynergisticMoves.set(MoveIDs.sunnyDay);
+                antiSynergisticMoves.set(MoveIDs.hail);
+                antiSynergisticMoves.set(MoveIDs.sandstorm);
                 break;
             case AbilityIDs.noGuard:
-                antiSynergisticMoves.add(MoveIDs.lockOn);
-                antiSynergisticMoves.add(MoveIDs.mindReader);
-                antiSynergisticMoves.addAll(moveList
+                antiSynergisticMoves.set(MoveIDs.lockOn);
+                antiSynergisticMoves.set(MoveIDs.mindReader);
+                addAll(antiSynergisticMoves, moveList
                         .stream()
                         .filter(mv -> mv.hasSpecificStatChange(StatChangeType.ACCURACY, true) ||
                                 mv.hasSpecificStatChange(StatChangeType.EVASION, true) ||
-                                mv.hasSpecificStatChange(StatChangeType.EVASION, false))
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                                mv.hasSpecificStatChange(StatChangeType.EVASION, false)));
                 break;
             case AbilityIDs.damp:
-                antiSynergisticMoves.add(MoveIDs.selfDestruct);
-                antiSynergisticMoves.add(MoveIDs.explosion);
-                antiSynergisticMoves.add(MoveIDs.mindBlown);
-                antiSynergisticMoves.add(MoveIDs.mistyExplosion);
+                antiSynergisticMoves.set(MoveIDs.selfDestruct);
+                antiSynergisticMoves.set(MoveIDs.explosion);
+                antiSynergisticMoves.set(MoveIDs.mindBlown);
+                antiSynergisticMoves.set(MoveIDs.mistyExplosion);
                 break;
             case AbilityIDs.insomnia:
             case AbilityIDs.vitalSpirit:
             case AbilityIDs.comatose:
             case AbilityIDs.sweetVeil:
-                antiSynergisticMoves.add(MoveIDs.rest);
+                antiSynergisticMoves.set(MoveIDs.rest);
                 break;
             case AbilityIDs.airLock:
             case AbilityIDs.cloudNine:
             case AbilityIDs.deltaStream:
-                antiSynergisticMoves.add(MoveIDs.rainDance);
-                antiSynergisticMoves.add(MoveIDs.sunnyDay);
-                antiSynergisticMoves.add(MoveIDs.sandstorm);
-                antiSynergisticMoves.add(MoveIDs.hail);
+                antiSynergisticMoves.set(MoveIDs.rainDance);
+                antiSynergisticMoves.set(MoveIDs.sunnyDay);
+                antiSynergisticMoves.set(MoveIDs.sandstorm);
+                antiSynergisticMoves.set(MoveIDs.hail);
                 break;
             case AbilityIDs.simple:
-                antiSynergisticMoves.addAll(moveList
+                addAll(antiSynergisticMoves, moveList
                         .stream()
                         .filter(mv -> (mv.statChangeMoveType == StatChangeMoveType.DAMAGE_USER ||
                                 mv.statChangeMoveType == StatChangeMoveType.NO_DAMAGE_USER) &&
-                                mv.statChanges[0].stages < 0)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                                mv.statChanges[0].stages < 0));
                 break;
             case AbilityIDs.contrary:
-                antiSynergisticMoves.addAll(moveList
+                addAll(antiSynergisticMoves, moveList
                         .stream()
                         .filter(mv -> (mv.statChangeMoveType == StatChangeMoveType.DAMAGE_USER ||
                                 mv.statChangeMoveType == StatChangeMoveType.NO_DAMAGE_USER) &&
-                                mv.statChanges[0].stages > 0)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
-                antiSynergisticMoves.add(MoveIDs.shellSmash);
+                                mv.statChanges[0].stages > 0));
+                antiSynergisticMoves.set(MoveIDs.shellSmash);
                 break;
             case AbilityIDs.lightMetal:
-                antiSynergisticMoves.add(MoveIDs.heatCrash);
-                antiSynergisticMoves.add(MoveIDs.heavySlam);
+                antiSynergisticMoves.set(MoveIDs.heatCrash);
+                antiSynergisticMoves.set(MoveIDs.heavySlam);
                 break;
             case AbilityIDs.electricSurge:
-                antiSynergisticMoves.addAll(moveList
+                addAll(antiSynergisticMoves, moveList
                         .stream()
-                        .filter(mv -> (mv.category == MoveCategory.STATUS && mv.statusType == StatusType.SLEEP))
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
-                antiSynergisticMoves.add(MoveIDs.rest);
+                        .filter(mv -> (mv.category == MoveCategory.STATUS && mv.statusType == StatusType.SLEEP)));
+                antiSynergisticMoves.set(MoveIDs.rest);
                 break;
             case AbilityIDs.psychicSurge:
-                antiSynergisticMoves.addAll(moveList
+                addAll(antiSynergisticMoves, moveList
                         .stream()
-                        .filter(mv -> (mv.priority > 0))
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> (mv.priority > 0)));
                 break;
             case AbilityIDs.mistySurge:
-                antiSynergisticMoves.addAll(moveList
+                addAll(antiSynergisticMoves, moveList
                         .stream()
                         .filter(mv -> (mv.category == MoveCategory.STATUS &&
                                 (mv.statusType == StatusType.BURN ||
@@ -699,335 +620,303 @@ public class MoveSynergy {
                                 mv.statusType == StatusType.PARALYZE ||
                                 mv.statusType == StatusType.SLEEP ||
                                 mv.statusType == StatusType.POISON ||
-                                mv.statusType == StatusType.TOXIC_POISON)))
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
-                antiSynergisticMoves.add(MoveIDs.rest);
+                                mv.statusType == StatusType.TOXIC_POISON))));
+                antiSynergisticMoves.set(MoveIDs.rest);
                 break;
             case AbilityIDs.grassySurge:
-                antiSynergisticMoves.add(MoveIDs.earthquake);
-                antiSynergisticMoves.add(MoveIDs.magnitude);
-                antiSynergisticMoves.add(MoveIDs.bulldoze);
+                antiSynergisticMoves.set(MoveIDs.earthquake);
+                antiSynergisticMoves.set(MoveIDs.magnitude);
+                antiSynergisticMoves.set(MoveIDs.bulldoze);
                 break;
 
 
         }
 
-        return moveList
-                .stream()
-                .filter(mv -> antiSynergisticMoves.contains(mv.number))
-                .distinct()
-                .collect(toCollection(ArrayList::new));
+        return antiSynergisticMoves;
     }
 
     public static List<Move> getStatMoveSynergy(Species sp, List<Move> moveList) {
-        List<Integer> synergisticMoves = new ArrayList<>();
+        return filter(moveList, getStatMoveSynergyNumbers(sp));
+    }
+
+    static BitSet getStatMoveSynergyNumbers(Species sp) {
+        BitSet synergisticMoves = new BitSet();
 
         if ((double) sp.getHp() / (double)sp.getBST() < 1.0/8) {
-            synergisticMoves.add(MoveIDs.painSplit);
-            synergisticMoves.add(MoveIDs.endeavor);
+            synergisticMoves.set(MoveIDs.painSplit);
+            synergisticMoves.set(MoveIDs.endeavor);
         }
 
         if ((double) sp.getHp() / (double)sp.getBST() >= 1.0/4) {
-            synergisticMoves.add(MoveIDs.waterSpout);
-            synergisticMoves.add(MoveIDs.eruption);
-            synergisticMoves.add(MoveIDs.counter);
-            synergisticMoves.add(MoveIDs.mirrorCoat);
+            synergisticMoves.set(MoveIDs.waterSpout);
+            synergisticMoves.set(MoveIDs.eruption);
+            synergisticMoves.set(MoveIDs.counter);
+            synergisticMoves.set(MoveIDs.mirrorCoat);
         }
 
         if (sp.getAttack() * 2 < sp.getDefense()) {
-            synergisticMoves.add(MoveIDs.powerTrick);
+            synergisticMoves.set(MoveIDs.powerTrick);
         }
 
         if ((double)(sp.getAttack() + sp.getSpatk()) / (double)sp.getBST() < 1.0/4) {
-            synergisticMoves.add(MoveIDs.powerSplit);
+            synergisticMoves.set(MoveIDs.powerSplit);
         }
 
         if ((double)(sp.getDefense() + sp.getSpdef()) / (double)sp.getBST() < 1.0/4) {
-            synergisticMoves.add(MoveIDs.guardSplit);
+            synergisticMoves.set(MoveIDs.guardSplit);
         }
 
         if ((double) sp.getSpeed() / (double)sp.getBST() < 1.0/8) {
-            synergisticMoves.add(MoveIDs.gyroBall);
+            synergisticMoves.set(MoveIDs.gyroBall);
         }
 
         if ((double) sp.getSpeed() / (double)sp.getBST() >= 1.0/4) {
-            synergisticMoves.add(MoveIDs.electroBall);
+            synergisticMoves.set(MoveIDs.electroBall);
         }
 
-        return moveList
-                .stream()
-                .filter(mv -> synergisticMoves.contains(mv.number))
-                .distinct()
-                .collect(toCollection(ArrayList::new));
+        return synergisticMoves;
     }
 
     public static List<Move> getStatMoveAntiSynergy(Species sp, List<Move> moveList) {
-        List<Integer> antiSynergisticMoves = new ArrayList<>();
+        return filter(moveList, getStatMoveAntiSynergyNumbers(sp));
+    }
+
+    static BitSet getStatMoveAntiSynergyNumbers(Species sp) {
+        BitSet antiSynergisticMoves = new BitSet();
 
         if ((double) sp.getHp() / (double)sp.getBST() >= 1.0/4) {
-            antiSynergisticMoves.add(MoveIDs.painSplit);
-            antiSynergisticMoves.add(MoveIDs.endeavor);
+            antiSynergisticMoves.set(MoveIDs.painSplit);
+            antiSynergisticMoves.set(MoveIDs.endeavor);
         }
 
         if (sp.getDefense() * 2 < sp.getAttack()) {
-            antiSynergisticMoves.add(MoveIDs.powerTrick);
+            antiSynergisticMoves.set(MoveIDs.powerTrick);
         }
 
         if ((double)(sp.getAttack() + sp.getSpatk()) / (double)sp.getBST() >= 1.0/3) {
-            antiSynergisticMoves.add(MoveIDs.powerSplit);
+            antiSynergisticMoves.set(MoveIDs.powerSplit);
         }
 
         if ((double)(sp.getDefense() + sp.getSpdef()) / (double)sp.getBST() >= 1.0/3) {
-            antiSynergisticMoves.add(MoveIDs.guardSplit);
+            antiSynergisticMoves.set(MoveIDs.guardSplit);
         }
 
         if ((double) sp.getSpeed() / (double)sp.getBST() >= 1.0/4) {
-            antiSynergisticMoves.add(MoveIDs.gyroBall);
+            antiSynergisticMoves.set(MoveIDs.gyroBall);
         }
 
         if ((double) sp.getSpeed() / (double)sp.getBST() < 1.0/8) {
-            antiSynergisticMoves.add(MoveIDs.electroBall);
+            antiSynergisticMoves.set(MoveIDs.electroBall);
         }
 
-        return moveList
-                .stream()
-                .filter(mv -> antiSynergisticMoves.contains(mv.number))
-                .distinct()
-                .collect(toCollection(ArrayList::new));
+        return antiSynergisticMoves;
     }
 
     public static List<Move> getMoveSynergy(Move mv1, List<Move> moveList, int generation) {
-        List<Integer> synergisticMoves = new ArrayList<>();
+        return filter(moveList, getMoveSynergyNumbers(mv1, moveList, generation));
+    }
+
+    static BitSet getMoveSynergyNumbers(Move mv1, List<Move> moveList, int generation) {
+        BitSet synergisticMoves = new BitSet();
 
         if ((mv1.statChangeMoveType == StatChangeMoveType.DAMAGE_TARGET &&
                 mv1.hasSpecificStatChange(StatChangeType.SPEED, false)) ||
                 ((mv1.statChangeMoveType == StatChangeMoveType.DAMAGE_USER ||
                         mv1.statChangeMoveType == StatChangeMoveType.NO_DAMAGE_USER) &&
                         mv1.hasSpecificStatChange(StatChangeType.SPEED, true))) {
-            synergisticMoves.addAll(moveList
+            addAll(synergisticMoves, moveList
                     .stream()
-                    .filter(mv -> mv.flinchPercentChance > 0 && mv.priority == 0)
-                    .map(mv -> mv.number)
-                    .collect(Collectors.toList()));
+                    .filter(mv -> mv.flinchPercentChance > 0 && mv.priority == 0));
         }
 
         if (mv1.flinchPercentChance > 0 && mv1.priority == 0) {
-            synergisticMoves.addAll(moveList
+            addAll(synergisticMoves, moveList
                     .stream()
                     .filter(mv -> (mv.statChangeMoveType == StatChangeMoveType.DAMAGE_TARGET &&
                             mv.hasSpecificStatChange(StatChangeType.SPEED, false)) ||
                             ((mv.statChangeMoveType == StatChangeMoveType.DAMAGE_USER ||
                                     mv.statChangeMoveType == StatChangeMoveType.NO_DAMAGE_USER) &&
-                                    mv.hasSpecificStatChange(StatChangeType.SPEED, true)))
-                    .map(mv -> mv.number)
-                    .collect(Collectors.toList()));
+                                    mv.hasSpecificStatChange(StatChangeType.SPEED, true))));
         }
 
         if (mv1.statChanges[0].stages >= 2 || mv1.statChanges[1].type != StatChangeType.NONE) {
-            synergisticMoves.add(MoveIDs.batonPass);
-            synergisticMoves.add(MoveIDs.storedPower);
-            synergisticMoves.add(MoveIDs.powerTrip);
+            synergisticMoves.set(MoveIDs.batonPass);
+            synergisticMoves.set(MoveIDs.storedPower);
+            synergisticMoves.set(MoveIDs.powerTrip);
         }
 
         if (mv1.statusType == StatusType.SLEEP) {
-            synergisticMoves.add(MoveIDs.dreamEater);
-            synergisticMoves.add(MoveIDs.nightmare);
-            synergisticMoves.add(MoveIDs.hex);
+            synergisticMoves.set(MoveIDs.dreamEater);
+            synergisticMoves.set(MoveIDs.nightmare);
+            synergisticMoves.set(MoveIDs.hex);
         }
 
         switch(mv1.number) {
             case MoveIDs.toxic:
-                synergisticMoves.add(MoveIDs.protect);
-                synergisticMoves.add(MoveIDs.detect);
-                synergisticMoves.add(MoveIDs.kingsShield);
-                synergisticMoves.add(MoveIDs.dig);
-                synergisticMoves.add(MoveIDs.fly);
-                synergisticMoves.add(MoveIDs.bounce);
-                synergisticMoves.add(MoveIDs.dive);
-                synergisticMoves.addAll(moveList
-                        .stream()
-                        .filter(mv -> (mv.isTrapMove))
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                synergisticMoves.set(MoveIDs.protect);
+                synergisticMoves.set(MoveIDs.detect);
+                synergisticMoves.set(MoveIDs.kingsShield);
+                synergisticMoves.set(MoveIDs.dig);
+                synergisticMoves.set(MoveIDs.fly);
+                synergisticMoves.set(MoveIDs.bounce);
+                synergisticMoves.set(MoveIDs.dive);
+                addAll(synergisticMoves, moveList
+                        .stream()
+                        .filter(mv -> (mv.isTrapMove)));
                 // fallthrough
             case MoveIDs.poisonPowder:
             case MoveIDs.poisonGas:
             case MoveIDs.banefulBunker:
             case MoveIDs.toxicThread:
-                synergisticMoves.add(MoveIDs.venoshock);
-                synergisticMoves.add(MoveIDs.hex);
+                synergisticMoves.set(MoveIDs.venoshock);
+                synergisticMoves.set(MoveIDs.hex);
                 break;
             case MoveIDs.venoshock:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
                         .filter(mv -> mv.category == MoveCategory.STATUS &&
-                                (mv.statusType == StatusType.POISON || mv.statusType == StatusType.TOXIC_POISON))
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                                (mv.statusType == StatusType.POISON || mv.statusType == StatusType.TOXIC_POISON)));
                 break;
             case MoveIDs.protect:
             case MoveIDs.detect:
             case MoveIDs.kingsShield:
-                synergisticMoves.add(MoveIDs.toxic);
-                synergisticMoves.add(MoveIDs.leechSeed);
-                synergisticMoves.add(MoveIDs.willOWisp);
+                synergisticMoves.set(MoveIDs.toxic);
+                synergisticMoves.set(MoveIDs.leechSeed);
+                synergisticMoves.set(MoveIDs.willOWisp);
                 break;
             case MoveIDs.batonPass:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.statChanges[0].stages >= 2 || mv.statChanges[1].type != StatChangeType.NONE)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
-                synergisticMoves.add(MoveIDs.shellSmash);
+                        .filter(mv -> mv.statChanges[0].stages >= 2 || mv.statChanges[1].type != StatChangeType.NONE));
+                synergisticMoves.set(MoveIDs.shellSmash);
                 break;
             case MoveIDs.willOWisp:
-                synergisticMoves.add(MoveIDs.hex);
+                synergisticMoves.set(MoveIDs.hex);
                 break;
             case MoveIDs.lockOn:
             case MoveIDs.mindReader:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> (mv.hitratio <= 50))
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> (mv.hitratio <= 50)));
                 break;
             case MoveIDs.sunnyDay:
-                synergisticMoves.add(MoveIDs.solarBlade);
-                synergisticMoves.add(MoveIDs.solarBeam);
+                synergisticMoves.set(MoveIDs.solarBlade);
+                synergisticMoves.set(MoveIDs.solarBeam);
                 break;
             case MoveIDs.rainDance:
-                synergisticMoves.add(MoveIDs.thunder);
-                synergisticMoves.add(MoveIDs.hurricane);
+                synergisticMoves.set(MoveIDs.thunder);
+                synergisticMoves.set(MoveIDs.hurricane);
                 break;
             case MoveIDs.powerSwap:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
                         .filter(mv -> mv.statChangeMoveType == StatChangeMoveType.DAMAGE_USER &&
                                 (mv.hasSpecificStatChange(StatChangeType.ATTACK, false) ||
-                                        mv.hasSpecificStatChange(StatChangeType.SPECIAL_ATTACK, false)))
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                                        mv.hasSpecificStatChange(StatChangeType.SPECIAL_ATTACK, false))));
                 break;
             case MoveIDs.endure:
-                synergisticMoves.add(MoveIDs.reversal);
-                synergisticMoves.add(MoveIDs.flail);
-                synergisticMoves.add(MoveIDs.endeavor);
+                synergisticMoves.set(MoveIDs.reversal);
+                synergisticMoves.set(MoveIDs.flail);
+                synergisticMoves.set(MoveIDs.endeavor);
                 break;
             case MoveIDs.endeavor:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.category != MoveCategory.STATUS && mv.priority > 0)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.category != MoveCategory.STATUS && mv.priority > 0));
                 break;
             case MoveIDs.thunderWave:
             case MoveIDs.glare:
             case MoveIDs.stunSpore:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.flinchPercentChance > 0)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
-                synergisticMoves.addAll(moveList
+                        .filter(mv -> mv.flinchPercentChance > 0));
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.category == MoveCategory.STATUS && mv.statusType == StatusType.CONFUSION)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
-                synergisticMoves.add(MoveIDs.hex);
+                        .filter(mv -> mv.category == MoveCategory.STATUS && mv.statusType == StatusType.CONFUSION));
+                synergisticMoves.set(MoveIDs.hex);
                 break;
             case MoveIDs.hail:
-                synergisticMoves.add(MoveIDs.blizzard);
-                synergisticMoves.add(MoveIDs.auroraVeil);
+                synergisticMoves.set(MoveIDs.blizzard);
+                synergisticMoves.set(MoveIDs.auroraVeil);
                 break;
             case MoveIDs.stockpile:
-                synergisticMoves.add(MoveIDs.spitUp);
-                synergisticMoves.add(MoveIDs.swallow);
+                synergisticMoves.set(MoveIDs.spitUp);
+                synergisticMoves.set(MoveIDs.swallow);
                 break;
             case MoveIDs.spitUp:
             case MoveIDs.swallow:
-                synergisticMoves.add(MoveIDs.stockpile);
+                synergisticMoves.set(MoveIDs.stockpile);
                 break;
             case MoveIDs.leechSeed:
             case MoveIDs.perishSong:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> (mv.isTrapMove))
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> (mv.isTrapMove)));
                 break;
             case MoveIDs.spikes:
             case MoveIDs.stealthRock:
             case MoveIDs.toxicSpikes:
-                synergisticMoves.add(MoveIDs.roar);
-                synergisticMoves.add(MoveIDs.whirlwind);
-                synergisticMoves.add(MoveIDs.dragonTail);
-                synergisticMoves.add(MoveIDs.circleThrow);
+                synergisticMoves.set(MoveIDs.roar);
+                synergisticMoves.set(MoveIDs.whirlwind);
+                synergisticMoves.set(MoveIDs.dragonTail);
+                synergisticMoves.set(MoveIDs.circleThrow);
                 break;
             case MoveIDs.rest:
-                synergisticMoves.add(MoveIDs.sleepTalk);
+                synergisticMoves.set(MoveIDs.sleepTalk);
                 break;
             case MoveIDs.focusEnergy:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.criticalChance == CriticalChance.INCREASED)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.criticalChance == CriticalChance.INCREASED));
                 break;
             case MoveIDs.focusPunch:
             case MoveIDs.dreamEater:
             case MoveIDs.nightmare:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
                         .filter(mv -> mv.statusMoveType == StatusMoveType.NO_DAMAGE &&
-                                mv.statusType == StatusType.SLEEP)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                                mv.statusType == StatusType.SLEEP));
                 break;
             case MoveIDs.torment:
-                synergisticMoves.add(MoveIDs.encore);
+                synergisticMoves.set(MoveIDs.encore);
                 break;
             case MoveIDs.encore:
-                synergisticMoves.add(MoveIDs.torment);
+                synergisticMoves.set(MoveIDs.torment);
                 break;
             case MoveIDs.hex:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
                         .filter(mv -> mv.statusMoveType == StatusMoveType.NO_DAMAGE &&
-                                mv.statusType != StatusType.CONFUSION)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
-                synergisticMoves.add(MoveIDs.banefulBunker);
+                                mv.statusType != StatusType.CONFUSION));
+                synergisticMoves.set(MoveIDs.banefulBunker);
                 break;
             case MoveIDs.storedPower:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.statChanges[0].stages > 1 || mv.statChanges[1].type != StatChangeType.NONE)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
-                synergisticMoves.add(MoveIDs.acupressure);
-                synergisticMoves.add(MoveIDs.shellSmash);
+                        .filter(mv -> mv.statChanges[0].stages > 1 || mv.statChanges[1].type != StatChangeType.NONE));
+                synergisticMoves.set(MoveIDs.acupressure);
+                synergisticMoves.set(MoveIDs.shellSmash);
                 break;
             case MoveIDs.swagger:
-                synergisticMoves.add(MoveIDs.punishment);
+                synergisticMoves.set(MoveIDs.punishment);
                 break;
             case MoveIDs.punishment:
-                synergisticMoves.add(MoveIDs.swagger);
+                synergisticMoves.set(MoveIDs.swagger);
                 break;
             case MoveIDs.shellSmash:
-                synergisticMoves.add(MoveIDs.storedPower);
+                synergisticMoves.set(MoveIDs.storedPower);
                 break;
         }
 
-        return moveList
-                .stream()
-                .filter(mv -> synergisticMoves.contains(mv.number))
-                .distinct()
-                .collect(toCollection(ArrayList::new));
+        return synergisticMoves;
     }
 
     public static List<Move> getSoftMoveSynergy(Move mv1, List<Move> moveList, TypeTable typeTable) {
-        List<Integer> synergisticMoves = new ArrayList<>();
+        return filter(moveList, getSoftMoveSynergyNumbers(mv1, moveList, typeTable));
+    }
+
+    static BitSet getSoftMoveSynergyNumbers(Move mv1, List<Move> moveList, TypeTable typeTable) {
+        BitSet synergisticMoves = new BitSet();
 
         if (mv1.category != MoveCategory.STATUS) {
             List<Type> notVeryEffective = new ArrayList<>();
@@ -1041,91 +930,84 @@ public class MoveSynergy {
                                 .filter(entry -> entry.getValue() == Effectiveness.DOUBLE)
                                 .map(Map.Entry::getKey)
                                 .collect(Collectors.toList());
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
                         .filter(mv -> mv.category != MoveCategory.STATUS &&
-                                superEffectiveAgainstNVE.contains(mv.type))
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                                superEffectiveAgainstNVE.contains(mv.type)));
             }
         }
 
         switch (mv1.number) {
             case MoveIDs.swordsDance:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.category == MoveCategory.PHYSICAL)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.category == MoveCategory.PHYSICAL));
                 break;
             case MoveIDs.nastyPlot:
             case MoveIDs.tailGlow:
-                synergisticMoves.addAll(moveList
+                addAll(synergisticMoves, moveList
                         .stream()
-                        .filter(mv -> mv.category == MoveCategory.SPECIAL)
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> mv.category == MoveCategory.SPECIAL));
                 break;
         }
 
-        return moveList
-                .stream()
-                .filter(mv -> synergisticMoves.contains(mv.number))
-                .distinct()
-                .collect(toCollection(ArrayList::new));
+        return synergisticMoves;
     }
 
     public static List<Move> getHardMoveAntiSynergy(Move mv1, List<Move> moveList) {
-        List<Integer> antiSynergisticMoves = new ArrayList<>();
+        return filter(moveList, getHardMoveAntiSynergyNumbers(mv1, moveList));
+    }
+
+    static BitSet getHardMoveAntiSynergyNumbers(Move mv1, List<Move> moveList) {
+        BitSet antiSynergisticMoves = new BitSet();
 
 
         if (mv1.category == MoveCategory.STATUS && mv1.statusType != StatusType.NONE) {
-            antiSynergisticMoves.addAll(moveList
+            addAll(antiSynergisticMoves, moveList
                     .stream()
                     .filter(mv -> (mv.category == MoveCategory.STATUS && mv.statusType != StatusType.NONE &&
                             (mv.statusType == mv1.statusType ||
-                                    (mv1.statusType != StatusType.CONFUSION && mv.statusType != StatusType.CONFUSION))))
-                    .map(mv -> mv.number)
-                    .collect(Collectors.toList()));
+                                    (mv1.statusType != StatusType.CONFUSION &&
+                                            mv.statusType != StatusType.CONFUSION)))));
         }
 
         switch (mv1.number) {
             case MoveIDs.protect: {
-                antiSynergisticMoves.add(MoveIDs.detect);
-                antiSynergisticMoves.add(MoveIDs.banefulBunker);
-                antiSynergisticMoves.add(MoveIDs.kingsShield);
+                antiSynergisticMoves.set(MoveIDs.detect);
+                antiSynergisticMoves.set(MoveIDs.banefulBunker);
+                antiSynergisticMoves.set(MoveIDs.kingsShield);
                 break;
             }
             case MoveIDs.detect: {
-                antiSynergisticMoves.add(MoveIDs.protect);
-                antiSynergisticMoves.add(MoveIDs.banefulBunker);
-                antiSynergisticMoves.add(MoveIDs.kingsShield);
+                antiSynergisticMoves.set(MoveIDs.protect);
+                antiSynergisticMoves.set(MoveIDs.banefulBunker);
+                antiSynergisticMoves.set(MoveIDs.kingsShield);
                 break;
             }
             case MoveIDs.kingsShield: {
-                antiSynergisticMoves.add(MoveIDs.protect);
-                antiSynergisticMoves.add(MoveIDs.detect);
-                antiSynergisticMoves.add(MoveIDs.banefulBunker);
+                antiSynergisticMoves.set(MoveIDs.protect);
+                antiSynergisticMoves.set(MoveIDs.detect);
+                antiSynergisticMoves.set(MoveIDs.banefulBunker);
                 break;
             }
             case MoveIDs.banefulBunker: {
-                antiSynergisticMoves.add(MoveIDs.protect);
-                antiSynergisticMoves.add(MoveIDs.detect);
-                antiSynergisticMoves.add(MoveIDs.kingsShield);
+                antiSynergisticMoves.set(MoveIDs.protect);
+                antiSynergisticMoves.set(MoveIDs.detect);
+                antiSynergisticMoves.set(MoveIDs.kingsShield);
                 break;
             }
             case MoveIDs.returnTheMoveNotTheKeyword:
-                antiSynergisticMoves.add(MoveIDs.frustration);
+                antiSynergisticMoves.set(MoveIDs.frustration);
                 break;
             case MoveIDs.frustration:
-                antiSynergisticMoves.add(MoveIDs.returnTheMoveNotTheKeyword);
+                antiSynergisticMoves.set(MoveIDs.returnTheMoveNotTheKeyword);
                 break;
             case MoveIDs.leechSeed:
             case MoveIDs.perishSong: {
-                antiSynergisticMoves.add(MoveIDs.whirlwind);
-                antiSynergisticMoves.add(MoveIDs.roar);
-                antiSynergisticMoves.add(MoveIDs.circleThrow);
-                antiSynergisticMoves.add(MoveIDs.dragonTail);
+                antiSynergisticMoves.set(MoveIDs.whirlwind);
+                antiSynergisticMoves.set(MoveIDs.roar);
+                antiSynergisticMoves.set(MoveIDs.circleThrow);
+                antiSynergisticMoves.set(MoveIDs.dragonTail);
                 break;
             }
         }
@@ -1134,84 +1016,90 @@ public class MoveSynergy {
             switch (mv1.type) {
                 case FIRE:
                     if (mv1.category != MoveCategory.STATUS) {
-                        antiSynergisticMoves.add(MoveIDs.waterSport);
+                        antiSynergisticMoves.set(MoveIDs.waterSport);
                     }
                     break;
                 case ELECTRIC:
                     if (mv1.category != MoveCategory.STATUS) {
-                        antiSynergisticMoves.add(MoveIDs.mudSport);
+                        antiSynergisticMoves.set(MoveIDs.mudSport);
                     }
                     break;
             }
         }
 
-        return moveList
-                .stream()
-                .filter(mv -> antiSynergisticMoves.contains(mv.number))
-                .distinct()
-                .collect(toCollection(ArrayList::new));
+        return antiSynergisticMoves;
     }
 
     public static List<Move> getSoftMoveAntiSynergy(Move mv1, List<Move> moveList) {
-        List<Integer> antiSynergisticMoves = new ArrayList<>();
+        return filter(moveList, getSoftMoveAntiSynergyNumbers(mv1, moveList));
+    }
+
+    static BitSet getSoftMoveAntiSynergyNumbers(Move mv1, List<Move> moveList) {
+        BitSet antiSynergisticMoves = new BitSet();
 
 
         if (mv1.category != MoveCategory.STATUS) {
-            antiSynergisticMoves.addAll(moveList
+            addAll(antiSynergisticMoves, moveList
                     .stream()
-                    .filter(mv -> (mv.category != MoveCategory.STATUS && mv.type == mv1.type))
-                    .map(mv -> mv.number)
-                    .collect(Collectors.toList()));
+                    .filter(mv -> (mv.category != MoveCategory.STATUS && mv.type == mv1.type)));
         }
 
         switch (mv1.number) {
             case MoveIDs.waterSport:
-                antiSynergisticMoves.addAll(moveList
+                addAll(antiSynergisticMoves, moveList
                         .stream()
-                        .filter(mv -> (mv.category != MoveCategory.STATUS && mv.type == Type.FIRE))
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> (mv.category != MoveCategory.STATUS && mv.type == Type.FIRE)));
                 break;
             case MoveIDs.mudSport:
-                antiSynergisticMoves.addAll(moveList
+                addAll(antiSynergisticMoves, moveList
                         .stream()
-                        .filter(mv -> (mv.category != MoveCategory.STATUS && mv.type == Type.ELECTRIC))
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> (mv.category != MoveCategory.STATUS && mv.type == Type.ELECTRIC)));
                 break;
         }
 
-        return moveList
-                .stream()
-                .filter(mv -> antiSynergisticMoves.contains(mv.number))
-                .distinct()
-                .collect(toCollection(ArrayList::new));
+        return antiSynergisticMoves;
     }
 
     public static List<Move> requiresOtherMove(Move mv1, List<Move> moveList) {
-        List<Integer> requiresMove = new ArrayList<>();
+        return filter(moveList, getRequiredMoveNumbers(mv1, moveList));
+    }
+
+    static BitSet getRequiredMoveNumbers(Move mv1, List<Move> moveList) {
+        BitSet requiresMove = new BitSet();
         switch (mv1.number) {
             case MoveIDs.spitUp:
             case MoveIDs.swallow:
-                requiresMove.add(MoveIDs.stockpile);
+                requiresMove.set(MoveIDs.stockpile);
                 break;
             case MoveIDs.dreamEater:
             case MoveIDs.nightmare:
-                requiresMove.addAll(moveList
+                addAll(requiresMove, moveList
                         .stream()
-                        .filter(mv -> (mv.category == MoveCategory.STATUS && mv.statusType == StatusType.SLEEP))
-                        .map(mv -> mv.number)
-                        .collect(Collectors.toList()));
+                        .filter(mv -> (mv.category == MoveCategory.STATUS && mv.statusType == StatusType.SLEEP)));
                 break;
             case MoveIDs.snore:
             case MoveIDs.sleepTalk:
-                requiresMove.add(MoveIDs.rest);
+                requiresMove.set(MoveIDs.rest);
                 break;
         }
-        return moveList
-                .stream()
-                .filter(mv -> requiresMove.contains(mv.number))
-                .distinct()
-                .collect(toCollection(ArrayList::new));
+        return requiresMove;
+    }
+
+    /**
+     * Returns the Moves of moveList whose numbers are in numbers, in order and without repeats.
+     */
+    static List<Move> filter(List<Move> moveList, BitSet numbers) {
+        List<Move> filtered = new ArrayList<>();
+        Set<Move> added = new HashSet<>();
+        for (Move mv : moveList) {
+            if (numbers.get(mv.number) && added.add(mv)) {
+                filtered.add(mv);
+            }
+        }
+        return filtered;
+    }
+
+    private static void addAll(BitSet numbers, Stream<Move> moves) {
+        moves.forEach(mv -> numbers.set(mv.number));
     }
 }
@@ -0,0 +1,206 @@
+package com.dabomstew.pkrandom.gamedata;
+
+/*----------------------------------------------------------------------------*/
+/*--  MoveSynergyIndex.java - the synergies of MoveSynergy, kept for all    --*/
+/*--                          moves of a game                               --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer ZX" by the UPR-ZX team          --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2020.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.util.*;
+
+/**
+ * Gives the same results as the methods of {@link MoveSynergy}, for candidate lists taken from a fixed set of moves.
+ * <br><br>
+ * For each move and ability, the move numbers of all moves it has a synergy (or anti-synergy) with are worked out
+ * once, the first time they are needed, and kept as bitsets. Each query then only has to pick the candidates whose
+ * bits are set, instead of going through the candidates with every filter of MoveSynergy again.
+ * <br><br>
+ * Since the bitsets are never recalculated, an index must only be created once the move data is final,
+ * i.e. after moves have been randomized/updated, and is not thread-safe.
+ */
+public class MoveSynergyIndex {
+
+    private final List<Move> moves;
+    private final int generation;
+    private final TypeTable typeTable;
+    private final int perfectAccuracy;
+
+    // indexed by move number
+    private final BitSet[] moveSynergy;
+    private final BitSet[] softMoveSynergy;
+    private final BitSet[] hardMoveAntiSynergy;
+    private final BitSet[] softMoveAntiSynergy;
+    private final BitSet[] requiredMoves;
+
+    // keyed by ability, or by ability and types, see abilityKey()
+    private final Map<Long, BitSet> hardAbilityMoveSynergy = new HashMap<>();
+    private final Map<Long, BitSet> softAbilityMoveSynergy = new HashMap<>();
+    private final Map<Integer, BitSet> hardAbilityMoveAntiSynergy = new HashMap<>();
+    private final Map<Integer, BitSet> softAbilityMoveAntiSynergy = new HashMap<>();
+
+    /**
+     * @param moves All moves of the game, like {@link com.dabomstew.pkrandom.romhandlers.RomHandler#getMoves()}
+     *              returns them. May contain nulls.
+     */
+    public MoveSynergyIndex(List<Move> moves, int generation, TypeTable typeTable, int perfectAccuracy) {
+        this.moves = new ArrayList<>();
+        int maxNumber = 0;
+        for (Move mv : moves) {
+            if (mv != null) {
+                this.moves.add(mv);
+                maxNumber = Math.max(maxNumber, mv.number);
+            }
+        }
+        this.generation = generation;
+        this.typeTable = typeTable;
+        this.perfectAccuracy = perfectAccuracy;
+
+        moveSynergy = new BitSet[maxNumber + 1];
+        softMoveSynergy = new BitSet[maxNumber + 1];
+        hardMoveAntiSynergy = new BitSet[maxNumber + 1];
+        softMoveAntiSynergy = new BitSet[maxNumber + 1];
+        requiredMoves = new BitSet[maxNumber + 1];
+    }
+
+    /**
+     * Like {@link MoveSynergy#getHardAbilityMoveSynergy(int, Type, Type, List, int, int)}.
+     */
+    public List<Move> getHardAbilityMoveSynergy(int ability, Type pkType1, Type pkType2, List<Move> moveList) {
+        BitSet numbers = hardAbilityMoveSynergy.computeIfAbsent(abilityKey(ability, pkType1, pkType2),
+                k -> MoveSynergy.getHardAbilityMoveSynergyNumbers(ability, pkType1, pkType2, moves, generation,
+                        perfectAccuracy));
+        return MoveSynergy.filter(moveList, numbers);
+    }
+
+    /**
+     * Like {@link MoveSynergy#getSoftAbilityMoveSynergy(int, List, Type, Type)}.
+     */
+    public List<Move> getSoftAbilityMoveSynergy(int ability, List<Move> moveList, Type pkType1, Type pkType2) {
+        BitSet numbers = softAbilityMoveSynergy.computeIfAbsent(abilityKey(ability, pkType1, pkType2),
+                k -> MoveSynergy.getSoftAbilityMoveSynergyNumbers(ability, moves, pkType1, pkType2));
+        return MoveSynergy.filter(moveList, numbers);
+    }
+
+    /**
+     * Like {@link MoveSynergy#getHardAbilityMoveAntiSynergy(int, List)}.
+     */
+    public List<Move> getHardAbilityMoveAntiSynergy(int ability, List<Move> moveList) {
+        BitSet numbers = hardAbilityMoveAntiSynergy.computeIfAbsent(ability,
+                k -> MoveSynergy.getHardAbilityMoveAntiSynergyNumbers(ability, moves));
+        return MoveSynergy.filter(moveList, numbers);
+    }
+
+    /**
+     * Like {@link MoveSynergy#getSoftAbilityMoveAntiSynergy(int, List)}.
+     */
+    public List<Move> getSoftAbilityMoveAntiSynergy(int ability, List<Move> moveList) {
+        BitSet numbers = softAbilityMoveAntiSynergy.computeIfAbsent(ability,
+                k -> MoveSynergy.getSoftAbilityMoveAntiSynergyNumbers(ability, moves));
+        return MoveSynergy.filter(moveList, numbers);
+    }
+
+    /**
+     * Like {@link MoveSynergy#getMoveSynergy(Move, List, int)}.
+     */
+    public List<Move> getMoveSynergy(Move mv1, List<Move> moveList) {
+        BitSet numbers = moveSynergy[mv1.number];
+        if (numbers == null) {
+            numbers = MoveSynergy.getMoveSynergyNumbers(mv1, moves, generation);
+            moveSynergy[mv1.number] = numbers;
+        }
+        return MoveSynergy.filter(moveList, numbers);
+    }
+
+    /**
+     * Like {@link MoveSynergy#getSoftMoveSynergy(Move, List, TypeTable)}.
+     */
+    public List<Move> getSoftMoveSynergy(Move mv1, List<Move> moveList) {
+        BitSet numbers = softMoveSynergy[mv1.number];
+        if (numbers == null) {
+            numbers = MoveSynergy.getSoftMoveSynergyNumbers(mv1, moves, typeTable);
+            softMoveSynergy[mv1.number] = numbers;
+        }
+        return MoveSynergy.filter(moveList, numbers);
+    }
+
+    /**
+     * Like {@link MoveSynergy#getHardMoveAntiSynergy(Move, List)}.
+     */
+    public List<Move> getHardMoveAntiSynergy(Move mv1, List<Move> moveList) {
+        BitSet numbers = hardMoveAntiSynergy[mv1.number];
+        if (numbers == null) {
+            numbers = MoveSynergy.getHardMoveAntiSynergyNumbers(mv1, moves);
+            hardMoveAntiSynergy[mv1.number] = numbers;
+        }
+        return MoveSynergy.filter(moveList, numbers);
+    }
+
+    /**
+     * Like {@link MoveSynergy#getSoftMoveAntiSynergy(Move, List)}.
+     */
+    public List<Move> getSoftMoveAntiSynergy(Move mv1, List<Move> moveList) {
+        BitSet numbers = softMoveAntiSynergy[mv1.number];
+        if (numbers == null) {
+            numbers = MoveSynergy.getSoftMoveAntiSynergyNumbers(mv1, moves);
+            softMoveAntiSynergy[mv1.number] = numbers;
+        }
+        return MoveSynergy.filter(moveList, numbers);
+    }
+
+    /**
+     * Like {@link MoveSynergy#requiresOtherMove(Move, List)}.
+     */
+    public List<Move> requiresOtherMove(Move mv1, List<Move> moveList) {
+        return MoveSynergy.filter(moveList, getRequiredMoveNumbers(mv1));
+    }
+
+    /**
+     * Returns whether any Move of moveList is required by mv1,
+     * like {@code !requiresOtherMove(mv1, moveList).isEmpty()}.
+     */
+    public boolean hasRequiredMove(Move mv1, Collection<Move> moveList) {
+        BitSet numbers = getRequiredMoveNumbers(mv1);
+        for (Move mv : moveList) {
+            if (numbers.get(mv.number)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private BitSet getRequiredMoveNumbers(Move mv1) {
+        BitSet numbers = requiredMoves[mv1.number];
+        if (numbers == null) {
+            numbers = MoveSynergy.getRequiredMoveNumbers(mv1, moves);
+            requiredMoves[mv1.number] = numbers;
+        }
+        return numbers;
+    }
+
+    private static long abilityKey(int ability, Type pkType1, Type pkType2) {
+        return ((long) ability << 16) | (typeKey(pkType1) << 8) | typeKey(pkType2);
+    }
+
+    private static long typeKey(Type type) {
+        return type == null ? 0 : type.ordinal() + 1;
+    }
+
+}
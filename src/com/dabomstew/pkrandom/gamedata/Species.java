@@ -28,6 +28,8 @@ import com.dabomstew.pkrandom.constants.SpeciesIDs;
 import com.dabomstew.pkrandom.graphics.palettes.Palette;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
 
 /**
  * Represents a Pokémon species or forme.
@@ -98,6 +100,10 @@ public class Species implements Comparable<Species> {
 
     protected List<Integer> shuffledStatsOrder;
 
+    // increased whenever the stats of any Species change, so anything caching BSTs knows when to recalculate them.
+    // Shared by all Species (also those of other RomHandlers, in batch runs), so it is atomic.
+    private static final AtomicLong statsVersion = new AtomicLong();
+
     public Species(int number) {
         this.number = number;
         shuffledStatsOrder = Arrays.asList(0, 1, 2, 3, 4, 5);
@@ -132,6 +138,7 @@ public class Species implements Comparable<Species> {
         spatk = stats.get(shuffledStatsOrder.get(3));
         spdef = stats.get(shuffledStatsOrder.get(4));
         speed = stats.get(shuffledStatsOrder.get(5));
+        statsChanged();
     }
 
     public void randomizeStatsWithinBST(Random random) {
@@ -168,6 +175,7 @@ public class Species implements Comparable<Species> {
             spdef = (int) Math.max(1, Math.round(spdW / totW * bst)) + 10;
             speed = (int) Math.max(1, Math.round(speW / totW * bst)) + 10;
         }
+        statsChanged();
 
         // Check for something we can't store
         if (hp > 255 || attack > 255 || defense > 255 || spatk > 255 || spdef > 255 || speed > 255) {
@@ -189,6 +197,7 @@ public class Species implements Comparable<Species> {
         speed = (int) Math.min(255, Math.max(1, Math.round(evolvesFrom.speed * bstRatio)));
         spatk = (int) Math.min(255, Math.max(1, Math.round(evolvesFrom.spatk * bstRatio)));
         spdef = (int) Math.min(255, Math.max(1, Math.round(evolvesFrom.spdef * bstRatio)));
+        statsChanged();
     }
 
     public void assignNewStatsForEvolution(Species evolvesFrom, Random random) {
@@ -217,12 +226,25 @@ public class Species implements Comparable<Species> {
         speed = (int) Math.min(255, Math.max(1, evolvesFrom.speed + speDiff));
         spatk = (int) Math.min(255, Math.max(1, evolvesFrom.spatk + spaDiff));
         spdef = (int) Math.min(255, Math.max(1, evolvesFrom.spdef + spdDiff));
+        statsChanged();
     }
 
     protected int getBST() {
         return hp + attack + defense + spatk + spdef + speed;
     }
 
+    /**
+     * Returns a number which only ever increases, and does so whenever the stats, and therefore possibly the BST,
+     * of any Species change.
+     */
+    static long getStatsVersion() {
+        return statsVersion.get();
+    }
+
+    private void statsChanged() {
+        statsVersion.incrementAndGet();
+    }
+
     public int getBSTForPowerLevels() {
         // Take into account Shedinja's purposefully nerfed HP
         if (number == SpeciesIDs.shedinja) {
@@ -535,6 +557,7 @@ public class Species implements Comparable<Species> {
         speed = baseForme.speed;
         spatk = baseForme.spatk;
         spdef = baseForme.spdef;
+        statsChanged();
     }
 
     public void copyBaseFormeAbilities(Species baseForme) {
@@ -548,6 +571,78 @@ public class Species implements Comparable<Species> {
         //Doesn't copy evolutions to as that would result in poorly-defined behavior
     }
 
+    /**
+     * Returns a new Species object with a copy of this Species' data, see
+     * {@link #copyDataTo(Species, UnaryOperator)}.
+     */
+    public Species copyData(UnaryOperator<List<Evolution>> evolutionListCopier) {
+        Species copy = new Species(number);
+        copyDataTo(copy, evolutionListCopier);
+        return copy;
+    }
+
+    /**
+     * Copies all data of this Species to target, which should be a Species of the same class and number.
+     * Used to save and revert the state of a loaded game, see
+     * {@link com.dabomstew.pkrandom.romhandlers.RomHandler#createSnapshot()}.<br>
+     * {@link Evolution}s and their Lists may be shared between several Species, so they are not copied here;
+     * instead each List is passed through evolutionListCopier, which lets the caller keep the sharing intact.
+     */
+    public void copyDataTo(Species target, UnaryOperator<List<Evolution>> evolutionListCopier) {
+        target.name = name;
+        target.formeSuffix = formeSuffix;
+        target.baseForme = baseForme;
+        target.formeNumber = formeNumber;
+        target.cosmeticForms = cosmeticForms;
+        target.actuallyCosmetic = actuallyCosmetic;
+        target.realCosmeticFormNumbers = new ArrayList<>(realCosmeticFormNumbers);
+        target.generation = generation;
+        target.originalEvolvedForms = originalEvolvedForms;
+        target.originalPreEvolvedForms = originalPreEvolvedForms;
+        target.primaryType = primaryType;
+        target.secondaryType = secondaryType;
+        target.originalPrimaryType = originalPrimaryType;
+        target.originalSecondaryType = originalSecondaryType;
+        target.hasSetPrimaryType = hasSetPrimaryType;
+        target.hasSetSecondaryType = hasSetSecondaryType;
+        target.hp = hp;
+        target.attack = attack;
+        target.defense = defense;
+        target.spatk = spatk;
+        target.spdef = spdef;
+        target.speed = speed;
+        target.special = special;
+        target.statsChanged();
+        target.ability1 = ability1;
+        target.ability2 = ability2;
+        target.ability3 = ability3;
+        target.catchRate = catchRate;
+        target.expYield = expYield;
+        target.guaranteedHeldItem = guaranteedHeldItem;
+        target.commonHeldItem = commonHeldItem;
+        target.rareHeldItem = rareHeldItem;
+        target.darkGrassHeldItem = darkGrassHeldItem;
+        target.genderRatio = genderRatio;
+        target.frontImageDimensions = frontImageDimensions;
+        target.callRate = callRate;
+        target.growthCurve = growthCurve;
+        target.normalPalettes = copyPalettes(normalPalettes);
+        target.shinyPalettes = copyPalettes(shinyPalettes);
+        target.evolutionsFrom = evolutionListCopier.apply(evolutionsFrom);
+        target.evolutionsTo = evolutionListCopier.apply(evolutionsTo);
+        target.megaEvolutionsFrom = new ArrayList<>(megaEvolutionsFrom);
+        target.megaEvolutionsTo = new ArrayList<>(megaEvolutionsTo);
+        target.shuffledStatsOrder = new ArrayList<>(shuffledStatsOrder);
+    }
+
+    private static List<Palette> copyPalettes(List<Palette> palettes) {
+        List<Palette> copies = new ArrayList<>(palettes.size());
+        for (Palette palette : palettes) {
+            copies.add(palette == null ? null : new Palette(palette));
+        }
+        return copies;
+    }
+
     public String getFullName() {
         return name + formeSuffix;
     }
@@ -851,6 +946,7 @@ public class Species implements Comparable<Species> {
 
     public void setHp(int hp) {
         this.hp = hp;
+        statsChanged();
     }
 
     public int getAttack() {
@@ -859,6 +955,7 @@ public class Species implements Comparable<Species> {
 
     public void setAttack(int attack) {
         this.attack = attack;
+        statsChanged();
     }
 
     public int getDefense() {
@@ -867,6 +964,7 @@ public class Species implements Comparable<Species> {
 
     public void setDefense(int defense) {
         this.defense = defense;
+        statsChanged();
     }
 
     public int getSpatk() {
@@ -875,6 +973,7 @@ public class Species implements Comparable<Species> {
 
     public void setSpatk(int spatk) {
         this.spatk = spatk;
+        statsChanged();
     }
 
     public int getSpdef() {
@@ -883,6 +982,7 @@ public class Species implements Comparable<Species> {
 
     public void setSpdef(int spdef) {
         this.spdef = spdef;
+        statsChanged();
     }
 
     public int getSpeed() {
@@ -891,6 +991,7 @@ public class Species implements Comparable<Species> {
 
     public void setSpeed(int speed) {
         this.speed = speed;
+        statsChanged();
     }
 
     public int getSpecial() {
@@ -899,6 +1000,7 @@ public class Species implements Comparable<Species> {
 
     public void setSpecial(int special) {
         this.special = special;
+        statsChanged();
     }
 
     public int getAbility1() {
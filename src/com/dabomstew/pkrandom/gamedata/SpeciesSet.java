@@ -8,11 +8,50 @@ import java.util.function.Function;
 import java.util.function.Predicate;
 
 /**
- * An extension of {@link HashSet} instantiated to {@link Species}.
- * Adds various helper functions useful for this class.
+ * A {@link Set} of {@link Species}, with various helper functions useful for this class.
  * Will not add null values to the set.
+ * <br><br>
+ * Internally this is a bitset indexed by {@link Species#getNumber()}, so the set algebra between two SpeciesSets
+ * (retainAll, removeAll, containsAll, containsAny) works on whole words at a time.
+ * <br><br>
+ * The set is iterated in the same order as a {@link HashSet} (which SpeciesSet used to extend) with the same history
+ * of changes, so the random picks made from it stay the same for a given seed. A HashSet iterates its table bucket by
+ * bucket, and each bucket in the order its members were added. So the set keeps track of the size that table would
+ * have, how many members each bucket would hold, and when each member was added. Once any bucket would hold eight
+ * members, HashSet could turn it into a tree, whose order can't be followed like this; from then on the set keeps a
+ * real HashSet, built up to the same state, to take its order from.
  */
-public class SpeciesSet extends HashSet<Species> {
+public class SpeciesSet extends AbstractSet<Species> {
+
+    private static final int CHUNK_BITS = 6;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // the same as in java.util.HashMap
+    private static final int DEFAULT_TABLE_SIZE = 16;
+    private static final int TREEIFY_THRESHOLD = 8;
+
+    // bit n of words[n >> 6] is set if the Species numbered n is in the set; that Species is in chunks[n >> 6][n & 63],
+    // and when it was added is in addedAt[n >> 6][n & 63].
+    // A chunk is only allocated once a Species in its range has been added.
+    private long[] words = new long[0];
+    private Species[][] chunks = new Species[0][];
+    private int[][] addedAt = new int[0][];
+    private int size;
+    private int modCount;
+    private int addCount;
+
+    // the table size of the equivalent HashSet, 0 until the first add, which makes it initialTableSize
+    private int tableSize;
+    private int initialTableSize = DEFAULT_TABLE_SIZE;
+    private int[] bucketSizes;
+    // once set, the equivalent HashSet itself, which gives the iteration order instead
+    private HashSet<Species> orderingSet;
+
+    // the iteration order, and the position of each species number in it; kept until the set changes
+    private Species[] order;
+    private int[] orderPositions;
+    private int orderModCount;
 
     /**
      * Creates an empty {@link SpeciesSet}.
@@ -26,7 +65,10 @@ public class SpeciesSet extends HashSet<Species> {
      * @param cloneFrom the Collection to copy from.
      */
     public SpeciesSet(Collection<? extends Species> cloneFrom) {
-        super(cloneFrom);
+        super();
+        // sized like HashSet(Collection) does
+        initialTableSize = tableSizeFor(Math.max((int) (cloneFrom.size() / .75f) + 1, DEFAULT_TABLE_SIZE));
+        this.addAll(cloneFrom);
     }
 
     /**
@@ -40,7 +82,13 @@ public class SpeciesSet extends HashSet<Species> {
 
 
     //getRandomSpecies related variables
-    private ArrayList<Species> randomCache = null;
+    private Species[] randomCache = null;
+    //getRandomSimilarStrengthSpecies related variables
+    private long[] bstIndex = null;
+    private int bstIndexModCount;
+    private long bstIndexStatsVersion;
+    private SpeciesSet copy = null;
+    private int copyModCount;
     private static final double CACHE_RESET_FACTOR = 0.5;
     //Similar Strength will keep expanding until it reaches the smaller of
     //MINIMUM_POOL or total_pool / MINIMUM_POOL_FACTOR
@@ -51,21 +99,74 @@ public class SpeciesSet extends HashSet<Species> {
 
     //Basic functions
 
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Species)) {
+            return false;
+        }
+        Species stored = getStored(((Species) o).getNumber());
+        return stored != null && stored.equals(o);
+    }
+
     @Override
     public boolean add(Species species) {
-        if(this.contains(species) || species == null) {
+        if(species == null || this.contains(species)) {
             return false;
         }
-        randomCache = null;
-        super.add(species);
+        checkModifiable();
+        int number = species.getNumber();
+        int word = number >> CHUNK_BITS;
+        ensureCapacity(word + 1);
+        if (chunks[word] == null) {
+            chunks[word] = new Species[CHUNK_SIZE];
+            addedAt[word] = new int[CHUNK_SIZE];
+        }
+        words[word] |= 1L << number;
+        chunks[word][number & CHUNK_MASK] = species;
+        addedAt[word][number & CHUNK_MASK] = addCount++;
+        size++;
+        modified(true);
+        if (orderingSet != null) {
+            orderingSet.add(species);
+        } else {
+            if (tableSize == 0) {
+                resizeTable(initialTableSize);
+            } else {
+                bucketSizes[bucketOf(number)]++;
+            }
+            if (size > tableSize / 4 * 3) {
+                resizeTable(tableSize * 2);
+            }
+            if (bucketSizes[bucketOf(number)] >= TREEIFY_THRESHOLD) {
+                // the next add to this bucket could make it a tree
+                createOrderingSet();
+            }
+        }
+
+        return true;
+    }
 
+    @Override
+    public boolean remove(Object o) {
+        if (!this.contains(o)) {
+            return false;
+        }
+        checkModifiable();
+        removeNumber(((Species) o).getNumber());
         return true;
     }
 
-    //I'm not certain that I need to override addAll—but I'm not
-    //certain that I don't, either.
     @Override
     public boolean addAll(Collection<? extends Species> c) {
+        if (c instanceof SpeciesSet && containsAll(c)) {
+            return false;
+        }
+        // one by one in the order of c, as that decides the order of this set
         boolean changed = false;
         for (Species species : c) {
             boolean added = this.add(species);
@@ -76,10 +177,294 @@ public class SpeciesSet extends HashSet<Species> {
         return changed;
     }
 
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        if (!(c instanceof SpeciesSet) || orderingSet != null) {
+            return super.retainAll(c);
+        }
+        SpeciesSet other = (SpeciesSet) c;
+        boolean changed = false;
+        for (int word = 0; word < words.length; word++) {
+            long removed = words[word] & ~(word < other.words.length ? other.words[word] : 0);
+            if (removed == 0) {
+                continue;
+            }
+            if (!changed) {
+                checkModifiable();
+                changed = true;
+            }
+            removeBits(word, removed);
+        }
+        if (changed) {
+            modified(false);
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        if (orderingSet != null) {
+            // the order of removals can change the order of a HashSet's trees, so do them as it would
+            return super.removeAll(c);
+        }
+        if (!(c instanceof SpeciesSet)) {
+            boolean changed = false;
+            for (Object o : c) {
+                if (this.remove(o)) {
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+        SpeciesSet other = (SpeciesSet) c;
+        boolean changed = false;
+        int common = Math.min(words.length, other.words.length);
+        for (int word = 0; word < common; word++) {
+            long removed = words[word] & other.words[word];
+            if (removed == 0) {
+                continue;
+            }
+            if (!changed) {
+                checkModifiable();
+                changed = true;
+            }
+            removeBits(word, removed);
+        }
+        if (changed) {
+            modified(false);
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        if (!(c instanceof SpeciesSet)) {
+            return super.containsAll(c);
+        }
+        SpeciesSet other = (SpeciesSet) c;
+        for (int word = 0; word < other.words.length; word++) {
+            long mine = word < words.length ? words[word] : 0;
+            if ((other.words[word] & ~mine) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public void clear() {
-        super.clear();
-        randomCache = null;
+        checkModifiable();
+        words = new long[0];
+        chunks = new Species[0][];
+        addedAt = new int[0][];
+        size = 0;
+        // like a HashSet, keeps its table size
+        if (orderingSet != null) {
+            orderingSet.clear();
+        } else if (bucketSizes != null) {
+            Arrays.fill(bucketSizes, 0);
+        }
+        modified(true);
+    }
+
+    @Override
+    public Iterator<Species> iterator() {
+        if (orderingSet != null) {
+            return new Iterator<Species>() {
+                private final Iterator<Species> inner = orderingSet.iterator();
+                private Species last;
+
+                @Override
+                public boolean hasNext() {
+                    return inner.hasNext();
+                }
+
+                @Override
+                public Species next() {
+                    last = inner.next();
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    checkModifiable();
+                    // HashSet's iterator removes a little differently from HashSet.remove(), so it is used here too
+                    inner.remove();
+                    int number = last.getNumber();
+                    removeBits(number >> CHUNK_BITS, 1L << number);
+                    modified(false);
+                }
+            };
+        }
+        return new Iterator<Species>() {
+            private final Species[] members = getOrder();
+            private int next = 0;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next < members.length;
+            }
+
+            @Override
+            public Species next() {
+                if (expectedModCount != modCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next >= members.length) {
+                    throw new NoSuchElementException();
+                }
+                return members[next++];
+            }
+
+            @Override
+            public void remove() {
+                if (next == 0 || members[next - 1] == null) {
+                    throw new IllegalStateException();
+                }
+                if (expectedModCount != modCount) {
+                    throw new ConcurrentModificationException();
+                }
+                checkModifiable();
+                removeNumber(members[next - 1].getNumber());
+                members[next - 1] = null;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+    /**
+     * Returns the members of the set in iteration order. The array is shared, until the set changes.
+     */
+    private Species[] getOrder() {
+        if (order != null && orderModCount == modCount) {
+            return order;
+        }
+        Species[] members = new Species[size];
+        int[] positions = new int[words.length << CHUNK_BITS];
+        int count = 0;
+        if (orderingSet != null) {
+            for (Species species : orderingSet) {
+                positions[species.getNumber()] = count;
+                members[count++] = getStored(species.getNumber());
+            }
+        } else if (size > 0) {
+            int limit = words.length << CHUNK_BITS;
+            int[] bucket = new int[TREEIFY_THRESHOLD];
+            for (int b = 0; b < tableSize; b++) {
+                if (bucketSizes[b] == 0) {
+                    continue;
+                }
+                // the numbers whose hash code puts them in this bucket
+                int inBucket = 0;
+                for (int number = (b - 31) & (tableSize - 1); number < limit; number += tableSize) {
+                    if ((words[number >> CHUNK_BITS] & (1L << number)) != 0) {
+                        // sorted by when they were added
+                        int i = inBucket++;
+                        while (i > 0 && getAddedAt(bucket[i - 1]) > getAddedAt(number)) {
+                            bucket[i] = bucket[i - 1];
+                            i--;
+                        }
+                        bucket[i] = number;
+                    }
+                }
+                for (int i = 0; i < inBucket; i++) {
+                    positions[bucket[i]] = count;
+                    members[count++] = getStored(bucket[i]);
+                }
+            }
+        }
+        order = members;
+        orderPositions = positions;
+        orderModCount = modCount;
+        return members;
+    }
+
+    // the bucket of the equivalent HashSet's table; Species' hash code is 31 + number, which HashMap uses as is
+    private int bucketOf(int number) {
+        return (31 + number) & (tableSize - 1);
+    }
+
+    private static int tableSizeFor(int capacity) {
+        return Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    private void resizeTable(int newSize) {
+        tableSize = newSize;
+        bucketSizes = new int[newSize];
+        for (int word = 0; word < words.length; word++) {
+            for (long bits = words[word]; bits != 0; bits &= bits - 1) {
+                bucketSizes[bucketOf((word << CHUNK_BITS) + Long.numberOfTrailingZeros(bits))]++;
+            }
+        }
+    }
+
+    /**
+     * Builds the equivalent HashSet. Adding the members in iteration order to a HashSet with the same table size
+     * gives the same buckets in the same order, as long as no bucket holds more than {@link #TREEIFY_THRESHOLD}.
+     */
+    private void createOrderingSet() {
+        Species[] members = getOrder();
+        HashSet<Species> set = new HashSet<>(tableSize);
+        set.addAll(Arrays.asList(members));
+        orderingSet = set;
+        bucketSizes = null;
+    }
+
+    private int getAddedAt(int number) {
+        return addedAt[number >> CHUNK_BITS][number & CHUNK_MASK];
+    }
+
+    private Species getStored(int number) {
+        int word = number >> CHUNK_BITS;
+        if (number < 0 || word >= words.length || (words[word] & (1L << number)) == 0) {
+            return null;
+        }
+        return chunks[word][number & CHUNK_MASK];
+    }
+
+    private void removeNumber(int number) {
+        if (orderingSet != null) {
+            orderingSet.remove(getStored(number));
+        }
+        removeBits(number >> CHUNK_BITS, 1L << number);
+        modified(false);
+    }
+
+    // doesn't touch the orderingSet
+    private void removeBits(int word, long bits) {
+        words[word] &= ~bits;
+        size -= Long.bitCount(bits);
+        for (; bits != 0; bits &= bits - 1) {
+            int bit = Long.numberOfTrailingZeros(bits);
+            chunks[word][bit] = null;
+            if (orderingSet == null) {
+                bucketSizes[bucketOf((word << CHUNK_BITS) + bit)]--;
+            }
+        }
+    }
+
+    private void ensureCapacity(int wordCount) {
+        if (words.length < wordCount) {
+            words = Arrays.copyOf(words, wordCount);
+            chunks = Arrays.copyOf(chunks, wordCount);
+            addedAt = Arrays.copyOf(addedAt, wordCount);
+        }
+    }
+
+    // removing keeps the random cache, getRandomSpecies() skips Species which are no longer in the set
+    private void modified(boolean added) {
+        modCount++;
+        if (added) {
+            randomCache = null;
+        }
+    }
+
+    /**
+     * Called before any change to the set is made.
+     */
+    void checkModifiable() {
+        // all SpeciesSets can be modified, except unmodifiable ones
     }
 
     /**
@@ -103,6 +488,16 @@ public class SpeciesSet extends HashSet<Species> {
      * @return True if any {@link Species} is in both Collections, false otherwise.
      */
     public boolean containsAny(Collection<Species> other) {
+        if (other instanceof SpeciesSet) {
+            long[] otherWords = ((SpeciesSet) other).words;
+            int common = Math.min(words.length, otherWords.length);
+            for (int word = 0; word < common; word++) {
+                if ((words[word] & otherWords[word]) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
         if(this.size() < other.size()) {
             for(Species species : this) {
                 if(other.contains(species)) {
@@ -884,17 +1279,17 @@ public class SpeciesSet extends HashSet<Species> {
 
         //make sure cache state is good
         if(randomCache == null) {
-            randomCache = new ArrayList<>(this);
+            randomCache = this.toArray(new Species[0]);
         }
-        if((double) this.size() / (double) randomCache.size() > CACHE_RESET_FACTOR)
+        if((double) this.size() / (double) randomCache.length > CACHE_RESET_FACTOR)
         {
-            randomCache = new ArrayList<>(this);
+            randomCache = this.toArray(new Species[0]);
         }
 
         //ok, we should be good to randomize
         while(true) {
-            int choice = random.nextInt(randomCache.size());
-            Species spec = randomCache.get(choice);
+            int choice = random.nextInt(randomCache.length);
+            Species spec = randomCache[choice];
             if(!this.contains(spec)) {
                 continue;
             }
@@ -968,27 +1363,29 @@ public class SpeciesSet extends HashSet<Species> {
      */
     public Species getRandomSimilarStrengthSpecies(Species match, boolean notSameSpecies,
                                                    int overrideBST, Random random) {
-        SpeciesSet availablePool = new SpeciesSet(this); //clone for draining
-        if(notSameSpecies) {
-            availablePool.remove(match);
-        }
+        boolean excludeMatch = notSameSpecies && this.contains(match);
+        int poolSize = excludeMatch ? size - 1 : size;
 
-        if(availablePool.isEmpty()) {
+        if(poolSize == 0) {
             if(this.isEmpty()) {
                 throw new RandomizationException("Attempted to choose a Pokemon Species from an empty set!");
             } else {
-                //if availablePool is empty, but this set isn't, match must be the only Species in the set.
+                //if the pool is empty, but this set isn't, match must be the only Species in the set.
                 return match;
             }
         }
 
-        int minimumPool = Math.min(SS_MINIMUM_POOL, availablePool.size() / SS_MINIMUM_POOL_FACTOR);
+        int minimumPool = Math.min(SS_MINIMUM_POOL, poolSize / SS_MINIMUM_POOL_FACTOR);
         if(minimumPool < 1) {
             minimumPool = 1;
         }
-        if (minimumPool >= availablePool.size()) {
+        if (minimumPool >= poolSize) {
             //must use the whole pool
             //(I think this only happens if there's exactly one Species to choose.)
+            SpeciesSet availablePool = new SpeciesSet(this);
+            if(excludeMatch) {
+                availablePool.remove(match);
+            }
             return availablePool.getRandomSpecies(random);
         }
 
@@ -999,25 +1396,122 @@ public class SpeciesSet extends HashSet<Species> {
         } else {
             matchBST = overrideBST;
         }
+        int matchNumber = excludeMatch ? match.getNumber() : -1;
+        long[] index = getBSTIndex();
+
+        int firstMinTarget = matchBST - matchBST / 10;
+        int firstMaxTarget = matchBST + matchBST / 10;
+        // a step of 0 could never find a bigger pool
+        int step = Math.max(1, matchBST / 20);
+        int minTarget = firstMinTarget;
+        int maxTarget = firstMaxTarget;
+        int from, to;
+        while (true) {
+            from = lowerBound(index, minTarget);
+            to = lowerBound(index, maxTarget + 1);
+            int count = to - from;
+            if (excludeMatch && inRange(index, from, to, matchNumber)) {
+                count--;
+            }
+            if (count >= minimumPool) {
+                break;
+            }
+            minTarget -= step;
+            maxTarget += step;
+        }
 
-        int minTarget = matchBST - matchBST / 10;
-        int maxTarget = matchBST + matchBST / 10;
-        SpeciesSet canPick = new SpeciesSet();
-        while (canPick.size() < minimumPool) {
-            Iterator<Species> itor = availablePool.iterator();
-            while (itor.hasNext()) {
-                Species spec = itor.next();
-                if(spec.getBSTForPowerLevels() >= minTarget && spec.getBSTForPowerLevels() <= maxTarget) {
-                    canPick.add(spec);
-                    itor.remove();
+        // Picks the same Species as the pool used to be picked from: each widening moved the Species in the window
+        // from a copy of this set into a new SpeciesSet, in the copy's iteration order.
+        // So the window is added to a new SpeciesSet sorted by widening, then by position in the copy.
+        SpeciesSet copy = getCopy();
+        Species[] copyOrder = copy.getOrder();
+        long[] window = new long[to - from];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            int bst = (int) (index[i] >>> 32);
+            int number = (int) index[i];
+            if (number != matchNumber) {
+                int widening = 0;
+                if (bst < firstMinTarget) {
+                    widening = (firstMinTarget - bst + step - 1) / step;
+                } else if (bst > firstMaxTarget) {
+                    widening = (bst - firstMaxTarget + step - 1) / step;
                 }
+                window[count++] = (long) widening << 32 | copy.orderPositions[number];
             }
-            minTarget -= matchBST / 20;
-            maxTarget += matchBST / 20;
+        }
+        Arrays.sort(window, 0, count);
+        SpeciesSet canPick = new SpeciesSet();
+        for (int i = 0; i < count; i++) {
+            canPick.add(copyOrder[(int) window[i]]);
         }
         return canPick.getRandomSpecies(random);
     }
 
+    /**
+     * Returns a copy of this set, which may iterate in a different order since it can have a smaller table.
+     * Kept until the set changes.
+     */
+    private SpeciesSet getCopy() {
+        if (copy == null || copyModCount != modCount) {
+            copy = new SpeciesSet(this);
+            copyModCount = modCount;
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the Species of this set sorted by BST, each as (BST << 32 | number).
+     * Kept until either the set, or the stats of any Species, change.
+     */
+    private long[] getBSTIndex() {
+        long statsVersion = Species.getStatsVersion();
+        if (bstIndex == null || bstIndexModCount != modCount || bstIndexStatsVersion != statsVersion) {
+            long[] index = new long[size];
+            int i = 0;
+            for (int word = 0; word < words.length; word++) {
+                for (long bits = words[word]; bits != 0; bits &= bits - 1) {
+                    int bit = Long.numberOfTrailingZeros(bits);
+                    long bst = Math.max(0, chunks[word][bit].getBSTForPowerLevels());
+                    index[i++] = bst << 32 | ((long) word << CHUNK_BITS | bit);
+                }
+            }
+            Arrays.sort(index);
+            bstIndex = index;
+            bstIndexModCount = modCount;
+            bstIndexStatsVersion = statsVersion;
+        }
+        return bstIndex;
+    }
+
+    // the first position in index with a BST of at least bst
+    private static int lowerBound(long[] index, int bst) {
+        if (bst <= 0) {
+            return 0;
+        }
+        long key = (long) bst << 32;
+        int low = 0;
+        int high = index.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (index[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static boolean inRange(long[] index, int from, int to, int number) {
+        for (int i = from; i < to; i++) {
+            if ((int) index[i] == number) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     //end randoms
 
     //Various Functions
@@ -1059,11 +1553,8 @@ public class SpeciesSet extends HashSet<Species> {
 
         @Override
         public boolean add(Species sp) {
-            if (unmodifiable) {
-                throw new UnmodifiableSetException();
-            } else {
-                return super.add(sp);
-            }
+            checkModifiable();
+            return super.add(sp);
         }
 
         @Override
@@ -1081,27 +1572,12 @@ public class SpeciesSet extends HashSet<Species> {
             throw new UnmodifiableSetException();
         }
 
-        // overriding the iterator is important to disable its remove()
+        // every other change, including through the iterator, goes through here
         @Override
-        public Iterator<Species> iterator() {
-            return new Iterator<Species>() {
-                private final Iterator<Species> inner = UnmodifiableSpeciesSet.super.iterator();
-
-                @Override
-                public boolean hasNext() {
-                    return inner.hasNext();
-                }
-
-                @Override
-                public Species next() {
-                    return inner.next();
-                }
-
-                @Override
-                public void remove() {
-                    throw new UnmodifiableSetException();
-                }
-            };
+        void checkModifiable() {
+            if (unmodifiable) {
+                throw new UnmodifiableSetException();
+            }
         }
     }
     
@@ -1,7 +1,5 @@
 package com.dabomstew.pkrandom.gbspace;
 
-import java.util.ListIterator;
-
 /**
  * A {@link FreedSpace} with bank functionality.<br>
  * Assumes there is data which must be in certain banks, and data which can be placed anywhere. It would be a problem
@@ -38,7 +36,6 @@ public class BankDividedFreedSpace extends FreedSpace {
                     "to prevent bad usage of free().");
         }
         super.free(start, length);
-        splitFreedChunksAtBankBoundaries();
         //System.out.println("after:\t" + this);
     }
 
@@ -48,24 +45,12 @@ public class BankDividedFreedSpace extends FreedSpace {
         return startBank != endBank;
     }
 
-    private void splitFreedChunksAtBankBoundaries() {
-        int bank = 0;
-
-        ListIterator<FreedChunk> iterator = freedChunks.listIterator();
-        while (iterator.hasNext()) {
-            FreedChunk fs = iterator.next();
-            while (freedChunkStartBank(fs) > bank) {
-                bank++;
-            }
-
-            int startOfNextBank = (bank + 1) * bankSize;
-            if (fs.end >= startOfNextBank) {
-                FreedChunk splitOff = new FreedChunk(startOfNextBank, fs.end);
-                fs.end = startOfNextBank - 1;
-                iterator.add(splitOff);
-                iterator.previous();
-            }
-        }
+    /**
+     * Freed chunks are never merged over bank boundaries, so each chunk is within a single bank.
+     */
+    @Override
+    protected boolean canMerge(int leftEnd, int rightStart) {
+        return leftEnd / bankSize == rightStart / bankSize;
     }
 
     private int freedChunkStartBank(FreedChunk fc) {
@@ -77,15 +62,26 @@ public class BankDividedFreedSpace extends FreedSpace {
      */
     @Override
     public int findAndUnfree(int length) {
-        for (int i = 0; i < numberOfBanks; i++) {
-            if (!isBankReserved(i)) {
-                int offset = findAndUnfreeInBank(length, i);
-                if (offset != -1) {
-                    return offset;
-                }
+        if (length < 1) {
+            throw new IllegalArgumentException("length must be at least 1");
+        }
+        int minStart = 0;
+        while (true) {
+            FreedChunk found = freedChunks.findFirst(minStart, length);
+            if (found == null) {
+                return -1;
             }
+            int bank = freedChunkStartBank(found);
+            if (bank >= numberOfBanks) {
+                return -1;
+            }
+            if (!isBankReserved(bank)) {
+                unfree(found, length);
+                return found.start;
+            }
+            // skip the rest of the reserved bank
+            minStart = (bank + 1) * bankSize;
         }
-        return -1;
     }
 
     private boolean isBankReserved(int bank) {
@@ -108,12 +104,8 @@ public class BankDividedFreedSpace extends FreedSpace {
     }
 
     private FreedChunk findInBank(int length, int bank) {
-        for (FreedChunk fc : freedChunks) {
-            if (fc.getLength() >= length && freedChunkStartBank(fc) == bank) {
-                return fc;
-            }
-        }
-        return null;
+        FreedChunk fc = freedChunks.findFirst(bank * bankSize, length);
+        return fc != null && freedChunkStartBank(fc) == bank ? fc : null;
     }
 
     public String toString() {
@@ -0,0 +1,202 @@
+package com.dabomstew.pkrandom.gbspace;
+
+/*----------------------------------------------------------------------------*/
+/*--  Part of "Universal Pokemon Randomizer ZX" by the UPR-ZX team          --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2022.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import com.dabomstew.pkrandom.gbspace.FreedSpace.FreedChunk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@link FreedChunk}s of a {@link FreedSpace}, ordered by offset.<br>
+ * A treap, where each chunk also knows the length of the longest chunk below it. That way, finding the first chunk
+ * (from a given offset) which is long enough only visits O(log n) chunks, as do adding and removing chunks.
+ * The chunks must not overlap.
+ */
+public class FreedChunkTree {
+
+    private FreedChunk root;
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the length of the longest chunk, or 0 if there are none.
+     */
+    public int getMaxLength() {
+        return root == null ? 0 : root.maxLength;
+    }
+
+    public void clear() {
+        root = null;
+        size = 0;
+    }
+
+    public void add(FreedChunk chunk) {
+        FreedChunk[] split = split(root, chunk.start);
+        root = merge(merge(split[0], chunk), split[1]);
+        size++;
+    }
+
+    public void remove(FreedChunk chunk) {
+        FreedChunk[] split = split(root, chunk.start);
+        FreedChunk[] rest = split(split[1], chunk.start + 1);
+        if (rest[0] != chunk) {
+            throw new IllegalArgumentException(chunk + " is not in the tree.");
+        }
+        root = merge(split[0], rest[1]);
+        size--;
+    }
+
+    /**
+     * Returns the chunk with the highest start offset <= offset, or null if there is none.
+     */
+    public FreedChunk floor(int offset) {
+        FreedChunk found = null;
+        FreedChunk node = root;
+        while (node != null) {
+            if (node.start <= offset) {
+                found = node;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the chunk with the lowest start offset > offset, or null if there is none.
+     */
+    public FreedChunk higher(int offset) {
+        FreedChunk found = null;
+        FreedChunk node = root;
+        while (node != null) {
+            if (node.start > offset) {
+                found = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the chunk with the lowest start offset >= minStart, which is at least length bytes long,
+     * or null if there is none.
+     */
+    public FreedChunk findFirst(int minStart, int length) {
+        return findFirst(root, minStart, length);
+    }
+
+    private static FreedChunk findFirst(FreedChunk node, int minStart, int length) {
+        while (node != null && node.maxLength >= length) {
+            if (node.start < minStart) {
+                node = node.right;
+                continue;
+            }
+            FreedChunk found = findFirst(node.left, minStart, length);
+            if (found != null) {
+                return found;
+            }
+            if (node.getLength() >= length) {
+                return node;
+            }
+            node = node.right;
+        }
+        return null;
+    }
+
+    /**
+     * Returns all chunks, ordered by offset.
+     */
+    public List<FreedChunk> toList() {
+        List<FreedChunk> list = new ArrayList<>(size);
+        addInOrder(root, list);
+        return list;
+    }
+
+    private static void addInOrder(FreedChunk node, List<FreedChunk> list) {
+        while (node != null) {
+            addInOrder(node.left, list);
+            list.add(node);
+            node = node.right;
+        }
+    }
+
+    /**
+     * Splits the tree into the chunks with start offsets below offset, and the rest.
+     */
+    private static FreedChunk[] split(FreedChunk node, int offset) {
+        if (node == null) {
+            return new FreedChunk[2];
+        }
+        FreedChunk[] split;
+        if (node.start < offset) {
+            split = split(node.right, offset);
+            node.right = split[0];
+            split[0] = node;
+        } else {
+            split = split(node.left, offset);
+            node.left = split[1];
+            split[1] = node;
+        }
+        update(node);
+        return split;
+    }
+
+    /**
+     * Merges two trees, where all chunks of the first are before those of the second.
+     */
+    private static FreedChunk merge(FreedChunk a, FreedChunk b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        } else {
+            b.left = merge(a, b.left);
+            update(b);
+            return b;
+        }
+    }
+
+    private static void update(FreedChunk node) {
+        int maxLength = node.getLength();
+        if (node.left != null) {
+            maxLength = Math.max(maxLength, node.left.maxLength);
+        }
+        if (node.right != null) {
+            maxLength = Math.max(maxLength, node.right.maxLength);
+        }
+        node.maxLength = maxLength;
+    }
+
+}
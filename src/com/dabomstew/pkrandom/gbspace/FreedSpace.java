@@ -22,12 +22,14 @@ package com.dabomstew.pkrandom.gbspace;
 /*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
 /*----------------------------------------------------------------------------*/
 
-import java.util.LinkedList;
-import java.util.ListIterator;
+import java.util.List;
 
 /**
  * Represents/handles all the manually freed bytes in a ROM. If bytes are manually freed (using free())
  * we know they should be available for writing at a later time, at which point we can findAndUnfree() them.
+ * <br><br>
+ * The freed chunks are kept in a {@link FreedChunkTree}, so freeing and finding/unfreeing space take O(log n) time
+ * in the number of chunks, however fragmented the freed space gets.
  **/
 public class FreedSpace {
 
@@ -35,13 +37,20 @@ public class FreedSpace {
             "This is a safety measure to prevent bad usage of free()." +
             "\n%s overlaps with existing freed chunk %s";
 
-    protected static class FreedChunk {
+    public static class FreedChunk {
 
-        public int start, end;
+        public final int start, end;
+
+        // used by FreedChunkTree
+        FreedChunk left, right;
+        final int priority;
+        int maxLength;
 
         public FreedChunk(int offset, int end) {
             this.start = offset;
             this.end = end;
+            this.priority = mix(offset);
+            this.maxLength = getLength();
         }
 
         public int getLength() {
@@ -53,9 +62,15 @@ public class FreedSpace {
             return String.format("%x-%x", start, end);
         }
 
+        private static int mix(int x) {
+            x = (x ^ (x >>> 16)) * 0x85ebca6b;
+            x = (x ^ (x >>> 13)) * 0xc2b2ae35;
+            return x ^ (x >>> 16);
+        }
+
     }
 
-    protected final LinkedList<FreedChunk> freedChunks = new LinkedList<>();
+    protected final FreedChunkTree freedChunks = new FreedChunkTree();
 
     public void free(int start, int length) {
         if (length < 1) {
@@ -65,61 +80,32 @@ public class FreedSpace {
         int end = start + length - 1;
         FreedChunk toFree = new FreedChunk(start, end);
 
-        boolean freedChunkAdded = false;
-        ListIterator<FreedChunk> iterator = freedChunks.listIterator();
-        while (iterator.hasNext() && !freedChunkAdded) {
-            FreedChunk neighbor = iterator.next();
-
-            if (toFree.start < neighbor.start) {
-                addChunkBeforeOrMergeWithRightNeighbor(toFree, neighbor, iterator);
-                freedChunkAdded = true;
-
-            } else if (neighbor.end == toFree.start - 1) {
-                mergeChunkWithLeftOrBothNeighbors(toFree, neighbor, iterator);
-                freedChunkAdded = true;
-
-            } else if (neighbor.end >= toFree.start) {
-                throw new RuntimeException(String.format(ALREADY_FREED_EXCEPTION_MESSAGE, toFree, neighbor));
-            }
-        }
-
-        if (!freedChunkAdded) {
-            freedChunks.add(toFree);
+        FreedChunk leftNeighbor = freedChunks.floor(start);
+        if (leftNeighbor != null && leftNeighbor.end >= start) {
+            throw new RuntimeException(String.format(ALREADY_FREED_EXCEPTION_MESSAGE, toFree, leftNeighbor));
         }
-    }
-
-    protected final void addChunkBeforeOrMergeWithRightNeighbor(FreedChunk toFree, FreedChunk rightNeighbor,
-                                                                ListIterator<FreedChunk> iterator) {
-        if (toFree.end >= rightNeighbor.start) {
+        FreedChunk rightNeighbor = freedChunks.higher(start);
+        if (rightNeighbor != null && rightNeighbor.start <= end) {
             throw new RuntimeException(String.format(ALREADY_FREED_EXCEPTION_MESSAGE, toFree, rightNeighbor));
         }
 
-        if (toFree.end == rightNeighbor.start - 1) {
-            rightNeighbor.start = toFree.start;
-        } else {
-            iterator.previous();
-            iterator.add(toFree);
+        if (leftNeighbor != null && leftNeighbor.end == start - 1 && canMerge(leftNeighbor.end, start)) {
+            freedChunks.remove(leftNeighbor);
+            start = leftNeighbor.start;
         }
+        if (rightNeighbor != null && rightNeighbor.start == end + 1 && canMerge(end, rightNeighbor.start)) {
+            freedChunks.remove(rightNeighbor);
+            end = rightNeighbor.end;
+        }
+        freedChunks.add(start == toFree.start && end == toFree.end ? toFree : new FreedChunk(start, end));
     }
 
-    protected final void mergeChunkWithLeftOrBothNeighbors(FreedChunk toFree, FreedChunk leftNeighbor,
-                                                           ListIterator<FreedChunk> iterator) {
-        if (iterator.hasNext()) {
-            FreedChunk rightNeighbor = iterator.next();
-
-            if (toFree.end >= rightNeighbor.start) {
-                throw new RuntimeException(String.format(ALREADY_FREED_EXCEPTION_MESSAGE, toFree, rightNeighbor));
-            } else if (toFree.end == rightNeighbor.start - 1) {
-                leftNeighbor.end = rightNeighbor.end;
-                iterator.remove();
-            } else {
-                leftNeighbor.end = toFree.end;
-            }
-            iterator.previous();
-
-        } else {
-            leftNeighbor.end = toFree.end;
-        }
+    /**
+     * Whether adjacent freed chunks, the first ending at leftEnd and the second starting at rightStart,
+     * may be merged into one.
+     */
+    protected boolean canMerge(int leftEnd, int rightStart) {
+        return true;
     }
 
     public int findAndUnfree(int length) {
@@ -132,26 +118,45 @@ public class FreedSpace {
         return offset;
     }
 
+    /**
+     * Returns the first freed chunk which is at least length bytes long.
+     */
     protected final FreedChunk find(int length) {
-        for (FreedChunk fc : freedChunks) {
-            if (fc.getLength() >= length) {
-                return fc;
-            }
-        }
-        return null;
+        return freedChunks.findFirst(Integer.MIN_VALUE, length);
     }
 
     protected final void unfree(FreedChunk toUnfree, int length) {
         // System.out.println("unfreeing " + length + " bytes starting from 0x" + Integer.toHexString(toUnfree.start));
-        toUnfree.start += length;
-        if (toUnfree.start > toUnfree.end) {
-            freedChunks.remove(toUnfree);
+        freedChunks.remove(toUnfree);
+        if (toUnfree.start + length <= toUnfree.end) {
+            freedChunks.add(new FreedChunk(toUnfree.start + length, toUnfree.end));
+        }
+    }
+
+    /**
+     * Returns the start and end offsets of all freed chunks, so this FreedSpace can later be reverted
+     * with {@link #restoreChunks(int[][])}.
+     */
+    public int[][] saveChunks() {
+        List<FreedChunk> chunks = freedChunks.toList();
+        int[][] saved = new int[chunks.size()][];
+        int i = 0;
+        for (FreedChunk fc : chunks) {
+            saved[i++] = new int[]{fc.start, fc.end};
+        }
+        return saved;
+    }
+
+    public void restoreChunks(int[][] saved) {
+        freedChunks.clear();
+        for (int[] chunk : saved) {
+            freedChunks.add(new FreedChunk(chunk[0], chunk[1]));
         }
     }
 
     public int getLengthSum() {
         int sum = 0;
-        for (FreedChunk fs : freedChunks) {
+        for (FreedChunk fs : freedChunks.toList()) {
             sum += fs.getLength();
         }
         return sum;
@@ -159,7 +164,7 @@ public class FreedSpace {
 
     @Override
     public String toString() {
-		return getLengthSum() + " bytes, " + freedChunks.size() + " chunks, " + freedChunks;
+		return getLengthSum() + " bytes, " + freedChunks.size() + " chunks, " + freedChunks.toList();
 	}
 
 }
@@ -60,7 +60,9 @@ public class Gen2TypeColors {
 		return color;
 	}
 
-	private static RandomColorSelector brightColorSelector = new RandomColorSelector(new Random(),
+	// The selectors are shared, so the Random to pick with is passed in each call, rather than set on them.
+	// They sample their maximum weight on creation, with a fixed seed so it is the same every run.
+	private static final RandomColorSelector brightColorSelector = new RandomColorSelector(new Random(0),
 	RandomColorSelector.Mode.HSV, hsv -> {
 		double w = hsv[1] + hsv[2] * 0.5;
 		if (20 <= hsv[0] && hsv[0] <= 70) {
@@ -68,17 +70,15 @@ public class Gen2TypeColors {
 		}
 		return w;
 	}, new double[] { 0, 0, 0.6 }, new double[] { 360, 1, 1 });
-	private static RandomColorSelector darkColorSelector = new RandomColorSelector(new Random(),
+	private static final RandomColorSelector darkColorSelector = new RandomColorSelector(new Random(0),
 	RandomColorSelector.Mode.HSV, hsv -> hsv[1] / 2, new double[] { 0, 0, 0.5 }, new double[] { 360, 1, 0.8 });
 
 	public static TypeColor getRandomBrightColor(Random random) {
-		brightColorSelector.setRandom(random);
-		return new TypeColor(brightColorSelector.getRandomColor(), null);
+		return new TypeColor(brightColorSelector.getRandomColor(random), null);
 	}
 
 	public static TypeColor getRandomDarkColor(Random random) {
-		darkColorSelector.setRandom(random);
-		return new TypeColor(darkColorSelector.getRandomColor(), null);
+		return new TypeColor(darkColorSelector.getRandomColor(random), null);
 	}
 
 }
@@ -43,7 +43,9 @@ public class Gen3to5TypeColors {
 		return color;
 	}
 	
-	private static RandomColorSelector randomColorSelector = new RandomColorSelector(new Random(),
+	// The selector is shared, so the Random to pick with is passed in each call, rather than set on it.
+	// It samples its maximum weight on creation, with a fixed seed so it is the same every run.
+	private static final RandomColorSelector randomColorSelector = new RandomColorSelector(new Random(0),
 	RandomColorSelector.Mode.HSV, hsv -> {
 		double w = hsv[1];
 		if (20 <= hsv[0] && hsv[0] <= 70) {
@@ -54,8 +56,7 @@ public class Gen3to5TypeColors {
 
 	// TODO: something about too similar colors being chosen for the same mon?
 	public static TypeColor getRandomTypeColor(Random random) {
-		randomColorSelector.setRandom(random);
-		return new TypeColor(randomColorSelector.getRandomColor(), null);
+		return new TypeColor(randomColorSelector.getRandomColor(random), null);
 	}
 
 }
@@ -63,7 +63,15 @@ public class RandomColorSelector {
 	}
 
 	public Color getRandomColor() {
-		double[] point = randomPointSelector.getRandomPoint();
+		return getRandomColor(randomPointSelector.getRandom());
+	}
+
+	/**
+	 * Selects a random color, using the given {@link Random} instead of the one of this RandomColorSelector.
+	 * This does not change the RandomColorSelector, so it is safe to call from several threads at once.
+	 */
+	public Color getRandomColor(Random random) {
+		double[] point = randomPointSelector.getRandomPoint(random);
 		switch (mode) {
 			case RGB:
 				return new Color((int) point[0], (int) point[1], (int) point[2]);
@@ -43,6 +43,7 @@ public class BatchRandomizationSettingsDialog extends JDialog {
     private JCheckBox autoAdvanceIndexCheckBox;
     private JButton chooseDirectoryButton;
     private JLabel outputDirectoryLabel;
+    private JSpinner numberOfThreadsSpinner;
 
     private JFileChooser outputDirectoryFileChooser;
 
@@ -99,6 +100,9 @@ public class BatchRandomizationSettingsDialog extends JDialog {
         SpinnerNumberModel startingIndexModel = new SpinnerNumberModel(1,0, Integer.MAX_VALUE, 1);
         startingIndexSpinner.setModel(startingIndexModel);
 
+        SpinnerNumberModel numberOfThreadsModel = new SpinnerNumberModel(1, 1, Integer.MAX_VALUE, 1);
+        numberOfThreadsSpinner.setModel(numberOfThreadsModel);
+
         chooseDirectoryButton.addActionListener(e -> {
             int selectionResult = outputDirectoryFileChooser.showDialog(this, "Select");
             if (selectionResult == JFileChooser.APPROVE_OPTION) {
@@ -116,6 +120,7 @@ public class BatchRandomizationSettingsDialog extends JDialog {
         autoAdvanceIndexCheckBox.setSelected(currentSettings.shouldAutoAdvanceStartingIndex());
         numberOfRandomizedROMsSpinner.setValue(currentSettings.getNumberOfRandomizedROMs());
         startingIndexSpinner.setValue(currentSettings.getStartingIndex());
+        numberOfThreadsSpinner.setValue(currentSettings.getNumberOfThreads());
         fileNamePrefixTextField.setText(currentSettings.getFileNamePrefix());
         outputDirectoryLabel.setText(currentSettings.getOutputDirectory());
         outputDirectoryFileChooser.setCurrentDirectory(new File(currentSettings.getOutputDirectory()));
@@ -127,6 +132,7 @@ public class BatchRandomizationSettingsDialog extends JDialog {
     private void setControlsEnabled(boolean enabled) {
         numberOfRandomizedROMsSpinner.setEnabled(enabled);
         startingIndexSpinner.setEnabled(enabled);
+        numberOfThreadsSpinner.setEnabled(enabled);
         fileNamePrefixTextField.setEnabled(enabled);
         generateLogFilesCheckBox.setEnabled(enabled);
         autoAdvanceIndexCheckBox.setEnabled(enabled);
@@ -139,6 +145,7 @@ public class BatchRandomizationSettingsDialog extends JDialog {
         currentSettings.setAutoAdvanceStartingIndex(autoAdvanceIndexCheckBox.isSelected());
         currentSettings.setNumberOfRandomizedROMs((Integer) numberOfRandomizedROMsSpinner.getValue());
         currentSettings.setStartingIndex((Integer) startingIndexSpinner.getValue());
+        currentSettings.setNumberOfThreads((Integer) numberOfThreadsSpinner.getValue());
         currentSettings.setFileNamePrefix(fileNamePrefixTextField.getText());
         currentSettings.setOutputDirectory(outputDirectoryFileChooser.getSelectedFile().getAbsolutePath());
     }
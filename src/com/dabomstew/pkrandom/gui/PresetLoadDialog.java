@@ -43,8 +43,6 @@ import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * 
@@ -130,9 +128,10 @@ public class PresetLoadDialog extends JDialog {
         }
 
         try {
+            // older presets are updated when they are read, and keep their version
             int presetVersionNumber = Integer.parseInt(configString.substring(0, 3));
-            if (presetVersionNumber != Version.VERSION) {
-                promptForDifferentRandomizerVersion(presetVersionNumber);
+            if (presetVersionNumber > Version.VERSION) {
+                promptForNewerRandomizerVersion();
                 safelyClearFields();
                 invalidValues();
                 return false;
@@ -143,7 +142,7 @@ public class PresetLoadDialog extends JDialog {
         }
 
         try {
-            name = this.parentGUI.getValidRequiredROMName(configString.substring(3), customNames);
+            name = this.parentGUI.getValidRequiredROMName(configString, customNames);
         } catch (InvalidSupplementFilesException ex) {
             safelyClearFields();
             invalidValues();
@@ -170,25 +169,8 @@ public class PresetLoadDialog extends JDialog {
         return true;
     }
 
-    private void promptForDifferentRandomizerVersion(int presetVN) {
-        // so what version number was it?
-        if (presetVN > Version.VERSION) {
-            // it's for a newer version
-            JOptionPane.showMessageDialog(this, bundle.getString("PresetLoadDialog.newerVersionRequired"));
-        } else {
-            // Tell them which older version to use to load this preset.
-            // Occasionally it can't tell and gives you all the possible ones.
-            String versionWanted;
-            List<String> posVersions = new ArrayList<>();
-            for (Version v : Version.ALL_VERSIONS) {
-                if (v.id == presetVN) {
-                    posVersions.add(v.name + "(" + v.branchName + ")");
-                }
-            }
-            versionWanted = posVersions.isEmpty() ? "Unknown" : String.join(" OR ", posVersions);
-            JOptionPane.showMessageDialog(this,
-                    String.format(bundle.getString("PresetLoadDialog.olderVersionRequired"), versionWanted));
-        }
+    private void promptForNewerRandomizerVersion() {
+        JOptionPane.showMessageDialog(this, bundle.getString("PresetLoadDialog.newerVersionRequired"));
     }
 
     private void safelyClearFields() {
@@ -222,8 +204,11 @@ public class PresetLoadDialog extends JDialog {
         return Long.parseLong(this.randomSeedField.getText());
     }
 
+    /**
+     * Returns the settings string, starting with its 3-digit version, see {@link Settings#fromVersionedString(String)}.
+     */
     public String getConfigString() {
-        return this.configStringField.getText().substring(3);
+        return this.configStringField.getText();
     }
 
     public CustomNamesSet getCustomNames() {
@@ -238,9 +223,9 @@ public class PresetLoadDialog extends JDialog {
             try {
                 DataInputStream dis = new DataInputStream(new FileInputStream(fh));
                 int checkInt = dis.readInt();
-                if (checkInt != Version.VERSION) {
+                if (checkInt > Version.VERSION) {
                     dis.close();
-                    promptForDifferentRandomizerVersion(checkInt);
+                    promptForNewerRandomizerVersion();
                     return;
                 }
                 long seed = dis.readLong();
@@ -32,7 +32,6 @@ package com.dabomstew.pkrandom.gui;
 
 import com.dabomstew.pkrandom.FileFunctions;
 import com.dabomstew.pkrandom.SysConstants;
-import com.dabomstew.pkrandom.Version;
 
 import javax.swing.*;
 import java.awt.event.MouseEvent;
@@ -49,18 +48,21 @@ public class PresetMakeDialog extends javax.swing.JDialog {
      */
     private static final long serialVersionUID = 7663903108783731673L;
     private long seed;
+    private int version;
     private String configString;
 
     /**
      * Creates new form PresetMakeDialog
      */
-    public PresetMakeDialog(java.awt.Frame parent, long seed, String configString) {
+    public PresetMakeDialog(java.awt.Frame parent, long seed, String versionedConfigString) {
         super(parent, true);
         initComponents();
         randomSeedField.setText(Long.toString(seed));
-        configStringField.setText(Version.VERSION + "" + configString);
+        configStringField.setText(versionedConfigString);
         this.seed = seed;
-        this.configString = configString;
+        // the settings keep the version they were made with, see Settings#toVersionedString()
+        this.version = Integer.parseInt(versionedConfigString.substring(0, 3));
+        this.configString = versionedConfigString.substring(3);
         presetFileChooser.setCurrentDirectory(new File("./"));
         this.randomSeedField.addMouseListener(new SelectTextListener(this.randomSeedField));
         this.configStringField.addMouseListener(new SelectTextListener(this.configStringField));
@@ -186,7 +188,7 @@ public class PresetMakeDialog extends javax.swing.JDialog {
             fh = FileFunctions.fixFilename(fh, "rndp");
             try {
                 DataOutputStream dos = new DataOutputStream(new FileOutputStream(fh));
-                dos.writeInt(Version.VERSION);
+                dos.writeInt(version);
                 dos.writeLong(seed);
                 dos.writeUTF(configString);
                 byte[] customnames = readFile(FileFunctions.openConfig(SysConstants.customNamesFile));
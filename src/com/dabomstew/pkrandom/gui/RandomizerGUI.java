@@ -52,6 +52,7 @@ import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -370,6 +371,8 @@ public class RandomizerGUI {
     public static boolean usedLauncher = false;
 
     private GenRestrictions currentRestrictions;
+    // the version of the settings the current state was restored from, see Settings.getVersion()
+    private int settingsVersion = Version.VERSION;
     private OperationDialog opDialog;
 
     private ResourceBundle bundle;
@@ -410,6 +413,13 @@ public class RandomizerGUI {
 
     private BatchRandomizationSettings batchRandomizationSettings;
 
+    // 0 and null keep the defaults of DecompressionCache
+    private int decompressionCacheMegabytes;
+    private String decompressionCacheDirectory;
+    // null and 0 keep the defaults of OverrideStore
+    private OverrideStore.Kind overrideStoreKind;
+    private int overrideStoreMegabytes;
+
     public RandomizerGUI() {
         ToolTipManager.sharedInstance().setInitialDelay(400);
         ToolTipManager.sharedInstance().setDismissDelay(Integer.MAX_VALUE);
@@ -875,12 +885,13 @@ public class RandomizerGUI {
 
             for (RomHandler.Factory rhf : checkHandlers) {
                 if (rhf.isLoadable(fh.getAbsolutePath())) {
+                    unloadRomHandler();
                     this.romHandler = rhf.create();
                     if (!usedLauncher && this.romHandler instanceof Abstract3DSRomHandler) {
                         String message = bundle.getString("GUI.pleaseUseTheLauncher");
                         Object[] messages = {message};
                         JOptionPane.showMessageDialog(frame, messages);
-                        this.romHandler = null;
+                        unloadRomHandler();
                         return;
                     }
                     opDialog = new OperationDialog(bundle.getString("GUI.loadingText"), frame, true);
@@ -973,61 +984,100 @@ public class RandomizerGUI {
         if (allowed && fh != null) {
             saveRandomizedRom(outputType, fh);
         } else if (allowed && batchRandomizationSettings.isBatchRandomizationEnabled()) {
-            int numberOfRandomizedROMs = batchRandomizationSettings.getNumberOfRandomizedROMs();
-            int startingIndex = batchRandomizationSettings.getStartingIndex();
-            int endingIndex = startingIndex + numberOfRandomizedROMs;
-            final String progressTemplate = bundle.getString("GUI.batchRandomizationProgress");
-            OperationDialog batchProgressDialog = new OperationDialog(String.format(progressTemplate, 0, numberOfRandomizedROMs), frame, true);
-            SwingWorker swingWorker = new SwingWorker<Void, Void>() {
-                int i;
+            performBatchRandomization(outputType);
+        }
+    }
 
-                @Override
-                protected Void doInBackground() {
-                    frame.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-                    SwingUtilities.invokeLater(() -> batchProgressDialog.setVisible(true));
-                    for (i = startingIndex; i < endingIndex; i++) {
-                        String fileName = batchRandomizationSettings.getOutputDirectory() +
-                                File.separator +
-                                batchRandomizationSettings.getFileNamePrefix() +
-                                i;
-                        if (outputType == SaveType.FILE) {
-                            fileName += '.' + romHandler.getDefaultExtension();
-                        }
-                        File rom = new File(fileName);
-                        if (outputType == SaveType.DIRECTORY) {
-                            rom.mkdirs();
-                        }
-                        int currentRomNumber = i - startingIndex + 1;
-
-                        SwingUtilities.invokeLater(
-                                () -> batchProgressDialog.setLoadingLabelText(String.format(progressTemplate,
-                                        currentRomNumber,
-                                        numberOfRandomizedROMs))
-                        );
-                        saveRandomizedRom(outputType, rom);
-                    }
-                    return null;
-                }
+    private void performBatchRandomization(SaveType outputType) {
+        final Settings settings;
+        try {
+            settings = createSettingsFromState(FileFunctions.getCustomNames());
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(frame, bundle.getString("GUI.cantLoadCustomNames"));
+            return;
+        }
+        presetMode = false;
 
-                @Override
-                protected void done() {
-                    super.done();
-                    if (batchRandomizationSettings.shouldAutoAdvanceStartingIndex()) {
-                        batchRandomizationSettings.setStartingIndex(i);
-                        attemptWriteConfig();
-                    }
-                    SwingUtilities.invokeLater(() -> batchProgressDialog.setVisible(false));
-                    JOptionPane.showMessageDialog(frame, bundle.getString("GUI.randomizationDone"));
-                    if (unloadGameOnSuccess) {
-                        romHandler = null;
-                        initialState();
+        RomHandler.Factory factory = null;
+        for (RomHandler.Factory rhf : checkHandlers) {
+            if (rhf.isLoadable(romHandler.loadedFilename())) {
+                factory = rhf;
+                break;
+            }
+        }
+        if (factory == null) {
+            return;
+        }
+        // the loaded RomHandler is used by the first worker thread, the others load their own
+        BatchRandomizer batchRandomizer = new BatchRandomizer(factory, romHandler,
+                gameUpdates.get(romHandler.getROMCode()), settings, batchRandomizationSettings, bundle,
+                outputType == SaveType.DIRECTORY);
+
+        int numberOfRandomizedROMs = batchRandomizationSettings.getNumberOfRandomizedROMs();
+        final String progressTemplate = bundle.getString("GUI.batchRandomizationProgress");
+        OperationDialog batchProgressDialog = new OperationDialog(String.format(progressTemplate, 0, numberOfRandomizedROMs), frame, true);
+        SwingWorker<List<BatchRandomizer.Result>, Void> swingWorker = new SwingWorker<List<BatchRandomizer.Result>, Void>() {
+
+            @Override
+            protected List<BatchRandomizer.Result> doInBackground() throws InterruptedException {
+                frame.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+                SwingUtilities.invokeLater(() -> batchProgressDialog.setVisible(true));
+                return batchRandomizer.randomize((result, finishedCount, totalCount) -> SwingUtilities.invokeLater(
+                        () -> batchProgressDialog.setLoadingLabelText(String.format(progressTemplate,
+                                finishedCount,
+                                totalCount))
+                ));
+            }
+
+            @Override
+            protected void done() {
+                super.done();
+                if (batchRandomizationSettings.shouldAutoAdvanceStartingIndex()) {
+                    batchRandomizationSettings.setStartingIndex(batchRandomizationSettings.getStartingIndex()
+                            + numberOfRandomizedROMs);
+                    attemptWriteConfig();
+                }
+                SwingUtilities.invokeLater(() -> batchProgressDialog.setVisible(false));
+                boolean succeeded = false;
+                try {
+                    // the other ROMs of the batch are saved all the same, so one error report is enough
+                    Optional<BatchRandomizer.Result> failed = get().stream()
+                            .filter(result -> !result.isSuccessful())
+                            .findFirst();
+                    if (failed.isPresent()) {
+                        reportBatchFailure(failed.get(), settings);
                     } else {
-                        reinitializeRomHandler(false);
+                        JOptionPane.showMessageDialog(frame, bundle.getString("GUI.randomizationDone"));
+                        succeeded = true;
                     }
-                    frame.setCursor(null);
+                } catch (InterruptedException | ExecutionException ex) {
+                    attemptToLogException(ex, "GUI.saveFailed", "GUI.saveFailedNoLog",
+                            settings.toVersionedString(), null);
                 }
-            };
-            swingWorker.execute();
+                if (succeeded && unloadGameOnSuccess) {
+                    unloadRomHandler();
+                    initialState();
+                } else {
+                    reinitializeRomHandler(false);
+                }
+                frame.setCursor(null);
+            }
+        };
+        swingWorker.execute();
+    }
+
+    private void reportBatchFailure(BatchRandomizer.Result result, Settings settings) {
+        Exception ex = result.getException();
+        String seedString = Long.toString(result.getSeed());
+        if (ex instanceof RandomizationException) {
+            attemptToLogException(ex, "GUI.saveFailedMessage", "GUI.saveFailedMessageNoLog", true,
+                    settings.toVersionedString(), seedString);
+        } else if (ex instanceof CannotWriteToLocationException) {
+            JOptionPane.showMessageDialog(mainPanel,
+                    String.format(bundle.getString("GUI.cannotWriteToLocation"), result.getFilename()));
+        } else {
+            attemptToLogException(ex, "GUI.saveFailedIO", "GUI.saveFailedIONoLog", settings.toVersionedString(),
+                    seedString);
         }
     }
 
@@ -1135,7 +1185,7 @@ public class RandomizerGUI {
                     succeededSave = true;
                 } catch (RandomizationException ex) {
                     attemptToLogException(ex, "GUI.saveFailedMessage",
-                            "GUI.saveFailedMessageNoLog", true, settings.toString(), Long.toString(seed));
+                            "GUI.saveFailedMessageNoLog", true, settings.toVersionedString(), Long.toString(seed));
                     if (verboseLog != null) {
                         verboseLog.close();
                     }
@@ -1145,7 +1195,7 @@ public class RandomizerGUI {
                         verboseLog.close();
                     }
                 } catch (Exception ex) {
-                    attemptToLogException(ex, "GUI.saveFailedIO", "GUI.saveFailedIONoLog", settings.toString(), Long.toString(seed));
+                    attemptToLogException(ex, "GUI.saveFailedIO", "GUI.saveFailedIONoLog", settings.toVersionedString(), Long.toString(seed));
                     if (verboseLog != null) {
                         verboseLog.close();
                     }
@@ -1191,7 +1241,7 @@ public class RandomizerGUI {
                                     bundle.getString("GUI.randomizationDone"));
                             // Done
                             if (this.unloadGameOnSuccess) {
-                                romHandler = null;
+                                unloadRomHandler();
                                 initialState();
                             } else {
                                 reinitializeRomHandler(false);
@@ -1199,7 +1249,7 @@ public class RandomizerGUI {
                         } else if (!batchRandomization) {
                             // Compile a config string
                             try {
-                                String configString = getCurrentSettings().toString();
+                                String configString = getCurrentSettings().toVersionedString();
                                 // Show the preset maker
                                 new PresetMakeDialog(frame, seed, configString);
                             } catch (IOException ex) {
@@ -1209,7 +1259,7 @@ public class RandomizerGUI {
 
                             // Done
                             if (this.unloadGameOnSuccess) {
-                                romHandler = null;
+                                unloadRomHandler();
                                 initialState();
                             } else {
                                 reinitializeRomHandler(false);
@@ -1219,7 +1269,7 @@ public class RandomizerGUI {
                 } else {
                     SwingUtilities.invokeLater(() -> {
                         opDialog.setVisible(false);
-                        romHandler = null;
+                        unloadRomHandler();
                         initialState();
                     });
                 }
@@ -1230,7 +1280,7 @@ public class RandomizerGUI {
                 reinitializeRomHandler(true);
             }
         } catch (Exception ex) {
-            attemptToLogException(ex, "GUI.saveFailed", "GUI.saveFailedNoLog", settings.toString(), Long.toString(seed));
+            attemptToLogException(ex, "GUI.saveFailed", "GUI.saveFailedNoLog", settings.toVersionedString(), Long.toString(seed));
             if (verboseLog != null) {
                 verboseLog.close();
             }
@@ -1259,13 +1309,13 @@ public class RandomizerGUI {
             this.romLoaded();
             Settings settings;
             try {
-                settings = Settings.fromString(config);
+                settings = Settings.fromVersionedString(config);
                 settings.tweakForRom(this.romHandler);
                 this.restoreStateFromSettings(settings);
             } catch (UnsupportedEncodingException | IllegalArgumentException e) {
                 // settings load failed
                 e.printStackTrace();
-                this.romHandler = null;
+                unloadRomHandler();
                 initialState();
             }
             SaveType outputType = askForSaveType();
@@ -1290,7 +1340,7 @@ public class RandomizerGUI {
                         }
                     }
                 } else {
-                    this.romHandler = null;
+                    unloadRomHandler();
                     initialState();
                 }
             } else if (outputType == SaveType.DIRECTORY) {
@@ -1300,7 +1350,7 @@ public class RandomizerGUI {
                     fh = romSaveChooser.getSelectedFile();
                     allowed = true;
                 } else {
-                    this.romHandler = null;
+                    unloadRomHandler();
                     initialState();
                 }
             }
@@ -1424,7 +1474,7 @@ public class RandomizerGUI {
         JTextField currentSettingsStringField = new JTextField();
         currentSettingsStringField.setEditable(false);
         try {
-            String theSettingsString = Version.VERSION + getCurrentSettings().toString();
+            String theSettingsString = getCurrentSettings().toVersionedString();
             currentSettingsStringField.setColumns(Settings.LENGTH_OF_SETTINGS_DATA * 2);
             currentSettingsStringField.setText(theSettingsString);
         } catch (IOException e) {
@@ -1454,15 +1504,14 @@ public class RandomizerGUI {
                         int settingsStringVersionNumber = Integer.parseInt(configString.substring(0, 3));
                         if (settingsStringVersionNumber < Version.VERSION) {
                             JOptionPane.showMessageDialog(frame,bundle.getString("GUI.settingsStringOlder"));
-                            String updatedSettingsString = new SettingsUpdater().update(settingsStringVersionNumber, configString.substring(3));
-                            Settings settings = Settings.fromString(updatedSettingsString);
+                            Settings settings = Settings.fromVersionedString(configString);
                             settings.tweakForRom(this.romHandler);
                             restoreStateFromSettings(settings);
                             JOptionPane.showMessageDialog(frame,bundle.getString("GUI.settingsStringLoaded"));
                         } else if (settingsStringVersionNumber > Version.VERSION) {
                             JOptionPane.showMessageDialog(frame,bundle.getString("GUI.settingsStringTooNew"));
                         } else {
-                            Settings settings = Settings.fromString(configString.substring(3));
+                            Settings settings = Settings.fromVersionedString(configString);
                             settings.tweakForRom(this.romHandler);
                             restoreStateFromSettings(settings);
                             JOptionPane.showMessageDialog(frame,bundle.getString("GUI.settingsStringLoaded"));
@@ -1512,6 +1561,16 @@ public class RandomizerGUI {
         attemptWriteConfig();
     }
 
+    /**
+     * Unloads the ROM of the current RomHandler, if any, so its temp files are deleted right away.
+     */
+    private void unloadRomHandler() {
+        if (romHandler != null) {
+            romHandler.unloadRom();
+            romHandler = null;
+        }
+    }
+
     // This is only intended to be used with the "Keep Game Loaded After Randomizing" setting or between randomization
     // iterations when batch randomization is enabled. It assumes that the game has already been loaded once, and we just need
     // to reload the same game to reinitialize the RomHandler. Don't use this for other purposes unless you know what
@@ -1520,6 +1579,7 @@ public class RandomizerGUI {
         String currentFN = this.romHandler.loadedFilename();
         for (RomHandler.Factory rhf : checkHandlers) {
             if (rhf.isLoadable(currentFN)) {
+                unloadRomHandler();
                 this.romHandler = rhf.create();
                 opDialog = new OperationDialog(bundle.getString("GUI.loadingText"), frame, true);
                 Thread t = new Thread(() -> {
@@ -1551,6 +1611,8 @@ public class RandomizerGUI {
 
     private void restoreStateFromSettings(Settings settings) {
 
+        settingsVersion = settings.getVersion();
+
         limitPokemonCheckBox.setSelected(settings.isLimitPokemon());
         currentRestrictions = settings.getCurrentRestrictions();
         if (currentRestrictions != null) {
@@ -1863,6 +1925,7 @@ public class RandomizerGUI {
 
     private Settings createSettingsFromState(CustomNamesSet customNames) {
         Settings settings = new Settings();
+        settings.setVersion(settingsVersion);
         settings.setRomName(this.romHandler.getROMName());
 
         settings.setLimitPokemon(limitPokemonCheckBox.isSelected() && limitPokemonCheckBox.isVisible());
@@ -2128,7 +2191,7 @@ public class RandomizerGUI {
                 ps.println("Seed: " + seedString);
             }
             if (settingsString != null) {
-                ps.println("Settings String: " + Version.VERSION + settingsString);
+                ps.println("Settings String: " + settingsString);
             }
             ps.println("Java Version: " + System.getProperty("java.version") + ", " + System.getProperty("java.vm.name"));
             PrintStream e1 = System.err;
@@ -2167,8 +2230,13 @@ public class RandomizerGUI {
         }
     }
 
-    public String getValidRequiredROMName(String config, CustomNamesSet customNames)
+    /**
+     * Returns the name of the ROM a preset's settings string (starting with its version) was made for,
+     * or null if the settings string is invalid.
+     */
+    public String getValidRequiredROMName(String versionedConfig, CustomNamesSet customNames)
             throws UnsupportedEncodingException, InvalidSupplementFilesException {
+        String config = Settings.toCurrentLayout(versionedConfig);
         try {
             Utils.validatePresetSupplementFiles(config, customNames);
         } catch (InvalidSupplementFilesException e) {
@@ -2191,6 +2259,8 @@ public class RandomizerGUI {
 
     private void initialState() {
 
+        settingsVersion = Version.VERSION;
+
         romNameLabel.setText(bundle.getString("GUI.noRomLoaded"));
         romCodeLabel.setText("");
         romSupportLabel.setText("");
@@ -2939,7 +3009,7 @@ public class RandomizerGUI {
             }
         } catch (Exception e) {
             attemptToLogException(e, "GUI.processFailed","GUI.processFailedNoLog", null, null);
-            romHandler = null;
+            unloadRomHandler();
             initialState();
         }
     }
@@ -3797,6 +3867,29 @@ public class RandomizerGUI {
                         if (key.equals("batchrandomization.outputdirectory")){
                             batchRandomizationSettings.setOutputDirectory(tokens[1].trim());
                         }
+                        if (key.equals("batchrandomization.numberofthreads")){
+                            batchRandomizationSettings.setNumberOfThreads(Integer.parseInt(tokens[1].trim()));
+                        }
+                        if (key.equals("decompressioncache.maxmemorymb")) {
+                            decompressionCacheMegabytes = Integer.parseInt(tokens[1].trim());
+                            if (decompressionCacheMegabytes > 0) {
+                                DecompressionCache.getShared().setMaxMemoryBytes(
+                                        decompressionCacheMegabytes * 1024L * 1024L);
+                            }
+                        }
+                        if (key.equals("decompressioncache.directory")) {
+                            decompressionCacheDirectory = tokens[1].trim();
+                            if (!decompressionCacheDirectory.isEmpty()) {
+                                DecompressionCache.getShared().setDiskDirectory(
+                                        new File(decompressionCacheDirectory));
+                            }
+                        }
+                        if (key.equals("overridestore.kind")) {
+                            overrideStoreKind = OverrideStore.Kind.valueOf(tokens[1].trim().toUpperCase());
+                        }
+                        if (key.equals("overridestore.memorybudgetmb")) {
+                            overrideStoreMegabytes = Integer.parseInt(tokens[1].trim());
+                        }
                     }
                 } else if (isReadingUpdates) {
                     isReadingUpdates = false;
@@ -3806,6 +3899,10 @@ public class RandomizerGUI {
         } catch (IOException ex) {
             ex.printStackTrace();
         }
+        OverrideStore.setDefaults(
+                overrideStoreKind != null ? overrideStoreKind : OverrideStore.getDefaultKind(),
+                overrideStoreMegabytes > 0 ? overrideStoreMegabytes * 1024L * 1024L
+                        : OverrideStore.getDefaultMemoryBudget());
     }
 
     private boolean attemptWriteConfig() {
@@ -3821,6 +3918,18 @@ public class RandomizerGUI {
             ps.println("unloadgameonsuccess=" + unloadGameOnSuccess);
             ps.println("showinvalidrompopup=" + showInvalidRomPopup);
             ps.println(batchRandomizationSettings.toString());
+            if (decompressionCacheMegabytes > 0) {
+                ps.println("decompressioncache.maxmemorymb=" + decompressionCacheMegabytes);
+            }
+            if (decompressionCacheDirectory != null && !decompressionCacheDirectory.isEmpty()) {
+                ps.println("decompressioncache.directory=" + decompressionCacheDirectory);
+            }
+            if (overrideStoreKind != null) {
+                ps.println("overridestore.kind=" + overrideStoreKind);
+            }
+            if (overrideStoreMegabytes > 0) {
+                ps.println("overridestore.memorybudgetmb=" + overrideStoreMegabytes);
+            }
             if (!initialPopup) {
                 ps.println("firststart=" + Version.VERSION_STRING);
             }
@@ -25,16 +25,23 @@ package com.dabomstew.pkrandom.newnds;
 /*----------------------------------------------------------------------------*/
 
 import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 import java.util.TreeMap;
 
 public class NARCArchive {
 
     private List<String> filenames = new ArrayList<>();
-    public List<byte[]> files = new ArrayList<>();
+    // always a MemberList, which the methods below rely on
+    public final List<byte[]> files = new MemberList();
 
     private boolean hasFilenames = false;
 
@@ -42,37 +49,68 @@ public class NARCArchive {
         // creates a new empty NARC with no filenames by default
     }
 
+    /**
+     * Creates a deep copy of another NARC.
+     */
+    public NARCArchive(NARCArchive original) {
+        this.filenames = new ArrayList<>(original.filenames);
+        ((MemberList) this.files).copyFrom((MemberList) original.files);
+        this.hasFilenames = original.hasFilenames;
+    }
+
+    /**
+     * Makes this NARC a deep copy of another one again, e.g. one made by {@link #NARCArchive(NARCArchive)}.
+     * Only the files which differ from the other NARC are copied.
+     */
+    public void restoreFrom(NARCArchive saved) {
+        if (!filenames.equals(saved.filenames)) {
+            filenames = new ArrayList<>(saved.filenames);
+        }
+        ((MemberList) files).restoreFrom((MemberList) saved.files);
+        hasFilenames = saved.hasFilenames;
+    }
+
     public NARCArchive(byte[] data) throws IOException {
-        Map<String, byte[]> frames = readNitroFrames(data);
+        this(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Reads a NARC from the remaining bytes of a buffer, e.g. a read-only view into the ROM.
+     * <br><br>
+     * Nothing is copied out of the buffer here. Each member file is only copied into its own array the first time it
+     * is taken from {@link #files}, and members which never are get written by {@link #getBytes()} straight from the
+     * buffer. The buffer must therefore not be changed afterwards. Its position is not changed.
+     */
+    public NARCArchive(ByteBuffer data) throws IOException {
+        data = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+        Map<String, ByteBuffer> frames = readNitroFrames(data);
         if (!frames.containsKey("FATB") || !frames.containsKey("FNTB") || !frames.containsKey("FIMG")) {
             throw new IOException("Not a valid narc file");
         }
 
         // File contents
-        byte[] fatbframe = frames.get("FATB");
-        byte[] fimgframe = frames.get("FIMG");
-        int fileCount = readLong(fatbframe, 0);
+        ByteBuffer fatbframe = frames.get("FATB");
+        ByteBuffer fimgframe = frames.get("FIMG");
+        int fileCount = fatbframe.getInt(0);
         for (int i = 0; i < fileCount; i++) {
-            int startOffset = readLong(fatbframe, 4 + i * 8);
-            int endOffset = readLong(fatbframe, 8 + i * 8);
+            int startOffset = fatbframe.getInt(4 + i * 8);
+            int endOffset = fatbframe.getInt(8 + i * 8);
             int length = (endOffset - startOffset);
-            byte[] thisFile = new byte[length];
-            System.arraycopy(fimgframe, startOffset, thisFile, 0, length);
-            files.add(thisFile);
+            ((MemberList) files).addView(slice(fimgframe, startOffset, length).asReadOnlyBuffer());
         }
 
         // Filenames?
-        byte[] fntbframe = frames.get("FNTB");
-        int unk1 = readLong(fntbframe, 0);
+        ByteBuffer fntbframe = frames.get("FNTB");
+        int unk1 = fntbframe.getInt(0);
         if (unk1 == 8) {
             // Filenames exist
             hasFilenames = true;
             int offset = 8;
             for (int i = 0; i < fileCount; i++) {
-                int fnLength = (fntbframe[offset] & 0xFF);
+                int fnLength = (fntbframe.get(offset) & 0xFF);
                 offset++;
                 byte[] filenameBA = new byte[fnLength];
-                System.arraycopy(fntbframe, offset, filenameBA, 0, fnLength);
+                copy(fntbframe, offset, filenameBA, 0, fnLength);
                 String filename = new String(filenameBA, StandardCharsets.US_ASCII);
                 filenames.add(filename);
             }
@@ -85,77 +123,31 @@ public class NARCArchive {
     }
 
     public byte[] getBytes() throws IOException {
+        MemberList members = (MemberList) files;
+        int fileCount = members.size();
+
         // Get bytes required for FIMG frame
         int bytesRequired = 0;
-        for (byte[] file : files) {
-            bytesRequired += Math.ceil(file.length / 4.0) * 4;
+        for (int i = 0; i < fileCount; i++) {
+            bytesRequired += (members.length(i) + 3) & ~3;
         }
-        // FIMG frame & FATB frame build
 
         // 4 for numentries, 8*size for entries, 8 for nitro header
-        byte[] fatbFrame = new byte[4 + files.size() * 8 + 8];
+        int fatbLength = 4 + fileCount * 8 + 8;
         // bytesRequired + 8 for nitro header
-        byte[] fimgFrame = new byte[bytesRequired + 8];
-
-        // Nitro headers
-        fatbFrame[0] = 'B';
-        fatbFrame[1] = 'T';
-        fatbFrame[2] = 'A';
-        fatbFrame[3] = 'F';
-        writeLong(fatbFrame, 4, fatbFrame.length);
-
-        fimgFrame[0] = 'G';
-        fimgFrame[1] = 'M';
-        fimgFrame[2] = 'I';
-        fimgFrame[3] = 'F';
-        writeLong(fimgFrame, 4, fimgFrame.length);
-        int offset = 0;
-
-        writeLong(fatbFrame, 8, files.size());
-        for (int i = 0; i < files.size(); i++) {
-            byte[] file = files.get(i);
-            int bytesRequiredForFile = (int) (Math.ceil(file.length / 4.0) * 4);
-            System.arraycopy(file, 0, fimgFrame, offset + 8, file.length);
-            for (int filler = file.length; filler < bytesRequiredForFile; filler++) {
-                fimgFrame[offset + 8 + filler] = (byte) 0xFF;
-            }
-            writeLong(fatbFrame, 12 + i * 8, offset);
-            writeLong(fatbFrame, 16 + i * 8, offset + file.length);
-            offset += bytesRequiredForFile;
-        }
-
-        // FNTB Frame
-        int bytesForFNTBFrame = 16;
-        if (hasFilenames) {
-            for (String filename : filenames) {
-                bytesForFNTBFrame += filename.getBytes(StandardCharsets.US_ASCII).length + 1;
-            }
-        }
-        byte[] fntbFrame = new byte[bytesForFNTBFrame];
-
-        fntbFrame[0] = 'B';
-        fntbFrame[1] = 'T';
-        fntbFrame[2] = 'N';
-        fntbFrame[3] = 'F';
-        writeLong(fntbFrame, 4, fntbFrame.length);
-
+        int fimgLength = bytesRequired + 8;
+        int fntbLength = 16;
+        List<byte[]> filenameBytes = new ArrayList<>();
         if (hasFilenames) {
-            writeLong(fntbFrame, 8, 8);
-            writeLong(fntbFrame, 12, 0x10000);
-            int fntbOffset = 16;
             for (String filename : filenames) {
                 byte[] fntbfilename = filename.getBytes(StandardCharsets.US_ASCII);
-                fntbFrame[fntbOffset] = (byte) fntbfilename.length;
-                System.arraycopy(fntbfilename, 0, fntbFrame, fntbOffset + 1, fntbfilename.length);
-                fntbOffset += 1 + fntbfilename.length;
+                filenameBytes.add(fntbfilename);
+                fntbLength += fntbfilename.length + 1;
             }
-        } else {
-            writeLong(fntbFrame, 8, 4);
-            writeLong(fntbFrame, 12, 0x10000);
         }
 
-        // Now for the actual Nitro file
-        int nitrolength = 16 + fatbFrame.length + fntbFrame.length + fimgFrame.length;
+        // the whole Nitro file is built in place
+        int nitrolength = 16 + fatbLength + fntbLength + fimgLength;
         byte[] nitroFile = new byte[nitrolength];
         nitroFile[0] = 'N';
         nitroFile[1] = 'A';
@@ -166,46 +158,102 @@ public class NARCArchive {
         writeLong(nitroFile, 8, nitrolength);
         writeWord(nitroFile, 12, 0x10);
         writeWord(nitroFile, 14, 3);
-        System.arraycopy(fatbFrame, 0, nitroFile, 16, fatbFrame.length);
-        System.arraycopy(fntbFrame, 0, nitroFile, 16 + fatbFrame.length, fntbFrame.length);
-        System.arraycopy(fimgFrame, 0, nitroFile, 16 + fatbFrame.length + fntbFrame.length, fimgFrame.length);
+
+        // FATB & FIMG frames
+        int fatbStart = 16;
+        int fntbStart = fatbStart + fatbLength;
+        int fimgStart = fntbStart + fntbLength;
+
+        nitroFile[fatbStart] = 'B';
+        nitroFile[fatbStart + 1] = 'T';
+        nitroFile[fatbStart + 2] = 'A';
+        nitroFile[fatbStart + 3] = 'F';
+        writeLong(nitroFile, fatbStart + 4, fatbLength);
+        writeLong(nitroFile, fatbStart + 8, fileCount);
+
+        nitroFile[fimgStart] = 'G';
+        nitroFile[fimgStart + 1] = 'M';
+        nitroFile[fimgStart + 2] = 'I';
+        nitroFile[fimgStart + 3] = 'F';
+        writeLong(nitroFile, fimgStart + 4, fimgLength);
+
+        int offset = 0;
+        for (int i = 0; i < fileCount; i++) {
+            int length = members.length(i);
+            int bytesRequiredForFile = (length + 3) & ~3;
+            members.copyTo(i, nitroFile, fimgStart + 8 + offset);
+            for (int filler = length; filler < bytesRequiredForFile; filler++) {
+                nitroFile[fimgStart + 8 + offset + filler] = (byte) 0xFF;
+            }
+            writeLong(nitroFile, fatbStart + 12 + i * 8, offset);
+            writeLong(nitroFile, fatbStart + 16 + i * 8, offset + length);
+            offset += bytesRequiredForFile;
+        }
+
+        // FNTB Frame
+        nitroFile[fntbStart] = 'B';
+        nitroFile[fntbStart + 1] = 'T';
+        nitroFile[fntbStart + 2] = 'N';
+        nitroFile[fntbStart + 3] = 'F';
+        writeLong(nitroFile, fntbStart + 4, fntbLength);
+
+        if (hasFilenames) {
+            writeLong(nitroFile, fntbStart + 8, 8);
+            writeLong(nitroFile, fntbStart + 12, 0x10000);
+            int fntbOffset = fntbStart + 16;
+            for (byte[] fntbfilename : filenameBytes) {
+                nitroFile[fntbOffset] = (byte) fntbfilename.length;
+                System.arraycopy(fntbfilename, 0, nitroFile, fntbOffset + 1, fntbfilename.length);
+                fntbOffset += 1 + fntbfilename.length;
+            }
+        } else {
+            writeLong(nitroFile, fntbStart + 8, 4);
+            writeLong(nitroFile, fntbStart + 12, 0x10000);
+        }
 
         return nitroFile;
     }
 
-    private Map<String, byte[]> readNitroFrames(byte[] data) throws IOException {
+    // the frames are little-endian views into data, not copies
+    private Map<String, ByteBuffer> readNitroFrames(ByteBuffer data) throws IOException {
 
         // Read the number of frames
-        int frameCount = readWord(data, 0x0E);
+        int frameCount = data.getShort(0x0E) & 0xFFFF;
 
         // each frame
         int offset = 0x10;
-        Map<String, byte[]> frames = new TreeMap<>();
+        Map<String, ByteBuffer> frames = new TreeMap<>();
         for (int i = 0; i < frameCount; i++) {
-            byte[] magic = new byte[] { data[offset + 3], data[offset + 2], data[offset + 1], data[offset] };
+            byte[] magic = new byte[] { data.get(offset + 3), data.get(offset + 2), data.get(offset + 1),
+                    data.get(offset) };
             String magicS = new String(magic, StandardCharsets.US_ASCII);
 
-            int frame_size = readLong(data, offset + 4);
+            int frame_size = data.getInt(offset + 4);
             // Patch for BB/VW and other DS hacks which don't update
             // the size of their expanded NARCs correctly
-            if (i == frameCount - 1 && offset + frame_size < data.length) {
-                frame_size = data.length - offset;
+            if (i == frameCount - 1 && offset + frame_size < data.limit()) {
+                frame_size = data.limit() - offset;
             }
-            byte[] frame = new byte[frame_size - 8];
-            System.arraycopy(data, offset + 8, frame, 0, frame_size - 8);
+            ByteBuffer frame = slice(data, offset + 8, frame_size - 8).order(ByteOrder.LITTLE_ENDIAN);
             frames.put(magicS, frame);
             offset += frame_size;
         }
         return frames;
     }
 
-    private int readWord(byte[] data, int offset) {
-        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8);
+    // ByteBuffer.slice(int, int) and the absolute bulk gets only exist from Java 13 on, so these do the same through a
+    // duplicate; the casts to Buffer are needed for Java 8, where position/limit aren't covariant
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        ((Buffer) view).limit(offset + length);
+        ((Buffer) view).position(offset);
+        return view.slice();
     }
 
-    private int readLong(byte[] data, int offset) {
-        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8) | ((data[offset + 2] & 0xFF) << 16)
-                | ((data[offset + 3] & 0xFF) << 24);
+    private static void copy(ByteBuffer buffer, int offset, byte[] dest, int destOffset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        ((Buffer) view).position(offset);
+        view.get(dest, destOffset, length);
     }
 
     private void writeWord(byte[] data, int offset, int value) {
@@ -220,4 +268,107 @@ public class NARCArchive {
         data[offset + 3] = (byte) ((value >> 24) & 0xFF);
     }
 
+    /**
+     * The member files. Each element is either a byte[], or a read-only view into the buffer the NARC was read from,
+     * which is replaced by a copy the first time it is taken out of the list, since callers may change it.
+     * <br><br>
+     * All access is synchronized, since NARCs can be shared between threads (e.g. through a PokemonImageCache), and
+     * even reading a member changes the list.
+     */
+    private static class MemberList extends AbstractList<byte[]> implements RandomAccess {
+
+        private final List<Object> members = new ArrayList<>();
+
+        synchronized void addView(ByteBuffer view) {
+            members.add(view);
+        }
+
+        // views are read-only, so they can be shared with the original
+        synchronized void copyFrom(MemberList original) {
+            synchronized (original) {
+                for (Object member : original.members) {
+                    members.add(member instanceof byte[] ? ((byte[]) member).clone() : member);
+                }
+            }
+        }
+
+        synchronized void restoreFrom(MemberList saved) {
+            synchronized (saved) {
+                restoreFromLocked(saved);
+            }
+        }
+
+        private void restoreFromLocked(MemberList saved) {
+            if (members.size() != saved.members.size()) {
+                members.clear();
+                copyFrom(saved);
+                modCount++;
+                return;
+            }
+            for (int i = 0; i < members.size(); i++) {
+                Object member = members.get(i);
+                Object savedMember = saved.members.get(i);
+                if (!(savedMember instanceof byte[])) {
+                    members.set(i, savedMember);
+                } else if (!(member instanceof byte[] && Arrays.equals((byte[]) member, (byte[]) savedMember))) {
+                    members.set(i, ((byte[]) savedMember).clone());
+                }
+            }
+        }
+
+        synchronized int length(int index) {
+            Object member = members.get(index);
+            return member instanceof byte[] ? ((byte[]) member).length : ((ByteBuffer) member).remaining();
+        }
+
+        synchronized void copyTo(int index, byte[] dest, int destOffset) {
+            Object member = members.get(index);
+            if (member instanceof byte[]) {
+                System.arraycopy((byte[]) member, 0, dest, destOffset, ((byte[]) member).length);
+            } else {
+                ByteBuffer view = (ByteBuffer) member;
+                copy(view, 0, dest, destOffset, view.remaining());
+            }
+        }
+
+        @Override
+        public synchronized byte[] get(int index) {
+            Object member = members.get(index);
+            if (member instanceof byte[]) {
+                return (byte[]) member;
+            }
+            ByteBuffer view = (ByteBuffer) member;
+            byte[] file = new byte[view.remaining()];
+            copy(view, 0, file, 0, file.length);
+            members.set(index, file);
+            return file;
+        }
+
+        @Override
+        public synchronized byte[] set(int index, byte[] file) {
+            byte[] old = get(index);
+            members.set(index, file);
+            return old;
+        }
+
+        @Override
+        public synchronized void add(int index, byte[] file) {
+            members.add(index, file);
+            modCount++;
+        }
+
+        @Override
+        public synchronized byte[] remove(int index) {
+            byte[] old = get(index);
+            members.remove(index);
+            modCount++;
+            return old;
+        }
+
+        @Override
+        public synchronized int size() {
+            return members.size();
+        }
+    }
+
 }
@@ -1,9 +1,8 @@
 package com.dabomstew.pkrandom.newnds;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import com.dabomstew.pkrandom.FileFunctions;
 
@@ -34,9 +33,8 @@ public class NDSFile {
     public int offset, size;
     public int fileID;
     public String fullPath;
-    private Extracted status = Extracted.NOT;
-    private String extFilename;
-    public byte[] data;
+    private boolean extracted;
+    private int modifications;
     public long originalCRC;
 
     public NDSFile(NDSRom parent) {
@@ -44,76 +42,83 @@ public class NDSFile {
     }
 
     public byte[] getContents() throws IOException {
-        if (this.status == Extracted.NOT) {
+        if (!this.extracted) {
             // extract file
-            parent.reopenROM();
-            RandomAccessFile rom = parent.getBaseRom();
             byte[] buf = new byte[this.size];
-            rom.seek(this.offset);
-            rom.readFully(buf);
+            parent.getBaseRomView(this.offset, this.size).get(buf);
             originalCRC = FileFunctions.getCRC32(buf);
-            if (parent.isWritingEnabled()) {
-                // make a file
-                String tmpDir = parent.getTmpFolder();
-                this.extFilename = fullPath.replaceAll("[^A-Za-z0-9_]+", "");
-                File tmpFile = new File(tmpDir + extFilename);
-                FileOutputStream fos = new FileOutputStream(tmpFile);
-                fos.write(buf);
-                fos.close();
-                tmpFile.deleteOnExit();
-                this.status = Extracted.TO_FILE;
-                this.data = null;
-                return buf;
-            } else {
-                this.status = Extracted.TO_RAM;
-                this.data = buf;
-                byte[] newcopy = new byte[buf.length];
-                System.arraycopy(buf, 0, newcopy, 0, buf.length);
-                return newcopy;
-            }
-        } else if (this.status == Extracted.TO_RAM) {
-            byte[] newcopy = new byte[this.data.length];
-            System.arraycopy(this.data, 0, newcopy, 0, this.data.length);
-            return newcopy;
+            parent.getOverrideStore().put(getStoreKey(), buf);
+            this.extracted = true;
+            return buf;
         } else {
-            String tmpDir = parent.getTmpFolder();
-            return FileFunctions.readFileFullyIntoBuffer(tmpDir + this.extFilename);
+            return parent.getOverrideStore().get(getStoreKey());
+        }
+    }
+
+    /**
+     * Returns a read-only view of the contents. Unlike {@link #getContents()}, this does not extract the file
+     * if it has not been extracted yet, but gives a view directly into the base ROM. Changes made later by
+     * {@link #writeOverride(byte[])} are not visible through views taken before them.
+     */
+    public ByteBuffer getContentsView() throws IOException {
+        if (!this.extracted) {
+            return parent.getBaseRomView(this.offset, this.size);
+        } else {
+            return ByteBuffer.wrap(getContents()).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    // sets originalCRC as extracting the file would, but without extracting it
+    void calculateOriginalCRC() throws IOException {
+        if (originalCRC == 0) {
+            originalCRC = FileFunctions.getCRC32(parent.getBaseRomView(this.offset, this.size));
         }
     }
 
     public void writeOverride(byte[] data) throws IOException {
-        if (status == Extracted.NOT) {
+        if (!extracted) {
             // temp extract
             getContents();
         }
-        if (status == Extracted.TO_FILE) {
-            String tmpDir = parent.getTmpFolder();
-            FileOutputStream fos = new FileOutputStream(new File(tmpDir + this.extFilename));
-            fos.write(data);
-            fos.close();
-        } else {
-            if (this.data.length == data.length) {
-                // copy new in
-                System.arraycopy(data, 0, this.data, 0, data.length);
-            } else {
-                // make new array
-                this.data = null;
-                this.data = new byte[data.length];
-                System.arraycopy(data, 0, this.data, 0, data.length);
-            }
-        }
+        modifications++;
+        parent.getOverrideStore().put(getStoreKey(), data);
     }
 
     // returns null if no override
     public byte[] getOverrideContents() throws IOException {
-        if (status == Extracted.NOT) {
+        if (!extracted) {
+            return null;
+        }
+        return getContents();
+    }
+
+    // the number of writeOverride() calls, so saving can skip unchanged files, and snapshots can tell which
+    // files changed since they were made
+    int getModifications() {
+        return modifications;
+    }
+
+    // returns null if not extracted
+    byte[] getExtractedContents() throws IOException {
+        if (!extracted) {
             return null;
         }
         return getContents();
     }
 
-    private enum Extracted {
-        NOT, TO_FILE, TO_RAM
+    // puts back the result of an earlier getExtractedContents()/getModifications() pair
+    void restoreContents(byte[] contents, int modifications) throws IOException {
+        if (contents == null) {
+            this.extracted = false;
+            parent.getOverrideStore().remove(getStoreKey());
+        } else {
+            writeOverride(contents);
+        }
+        this.modifications = modifications;
+    }
+
+    private String getStoreKey() {
+        return "file/" + fullPath;
     }
 
 }
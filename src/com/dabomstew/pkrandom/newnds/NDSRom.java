@@ -1,13 +1,19 @@
 package com.dabomstew.pkrandom.newnds;
 
 import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 
-import com.dabomstew.pkrandom.SysConstants;
+import com.dabomstew.pkrandom.DecompressionCache;
 import com.dabomstew.pkrandom.FileFunctions;
+import com.dabomstew.pkrandom.OverrideStore;
 import com.dabomstew.pkrandom.RomFunctions;
 
 import com.dabomstew.pkrandom.exceptions.RomIOException;
@@ -40,21 +46,22 @@ public class NDSRom {
     private byte version;
     private String romFilename;
     private RandomAccessFile baseRom;
+    private MappedByteBuffer mappedRom;
     private boolean romOpen;
     private Map<String, NDSFile> files;
     private Map<Integer, NDSFile> filesByID;
     private Map<Integer, NDSY9Entry> arm9overlaysByFileID;
     private NDSY9Entry[] arm9overlays;
     private byte[] fat;
-    private String tmpFolder;
-    private boolean writingEnabled;
+    private final OverrideStore overrideStore;
     private boolean arm9_open, arm9_changed, arm9_has_footer;
     private boolean arm9_compressed;
     private int arm9_ramoffset;
     private int arm9_szoffset;
     private byte[] arm9_footer;
-    private byte[] arm9_ramstored;
+    private int arm9_modifications;
     private long originalArm9CRC;
+    private BLZCoder.Mode codeCompressionMode = BLZCoder.Mode.NORMAL;
 
     private static final int arm9_align = 0x1FF, arm7_align = 0x1FF;
     private static final int fnt_align = 0x1FF, fat_align = 0x1FF;
@@ -64,24 +71,11 @@ public class NDSRom {
         this.romFilename = filename;
         this.baseRom = new RandomAccessFile(filename, "r");
         this.romOpen = true;
-        // TMP folder?
         String rawFilename = new File(filename).getName();
-        String dataFolder = "tmp_" + rawFilename.substring(0, rawFilename.lastIndexOf('.'));
-        // remove nonsensical chars
-        dataFolder = dataFolder.replaceAll("[^A-Za-z0-9_]+", "");
-        File tmpFolder = new File(SysConstants.ROOT_PATH + dataFolder);
-        tmpFolder.mkdir();
-        if (tmpFolder.canWrite()) {
-            writingEnabled = true;
-            this.tmpFolder = SysConstants.ROOT_PATH + dataFolder + File.separator;
-            tmpFolder.deleteOnExit();
-        } else {
-            writingEnabled = false;
-        }
+        this.overrideStore = OverrideStore.create(rawFilename.substring(0, rawFilename.lastIndexOf('.')));
         readFileSystem();
         arm9_open = false;
         arm9_changed = false;
-        arm9_ramstored = null;
     }
 
     public void reopenROM() throws IOException {
@@ -97,6 +91,38 @@ public class NDSRom {
             this.baseRom = null;
             this.romOpen = false;
         }
+        // the mapping itself is only released once the buffer (and any views of it) are garbage collected
+        this.mappedRom = null;
+    }
+
+    /**
+     * Closes the ROM file, and drops everything extracted from it, including any temp files of the
+     * {@link OverrideStore}. Unlike after {@link #closeROM()}, the NDSRom can't be used afterwards.
+     */
+    public void close() throws IOException {
+        closeROM();
+        overrideStore.close();
+    }
+
+    /**
+     * Returns a read-only view of part of the base ROM, in little-endian byte order. All views share a single
+     * memory mapping of the ROM file, but not their positions, so any number of threads can read them at once.
+     */
+    public ByteBuffer getBaseRomView(int offset, int size) throws IOException {
+        // Buffer casts keep this compiling against Java 8, where position/limit are not covariant
+        ByteBuffer view = getMappedRom().duplicate();
+        ((Buffer) view).limit(offset + size);
+        ((Buffer) view).position(offset);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private synchronized MappedByteBuffer getMappedRom() throws IOException {
+        if (mappedRom == null) {
+            reopenROM();
+            FileChannel channel = baseRom.getChannel();
+            mappedRom = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return mappedRom;
     }
 
     private void readFileSystem() throws IOException {
@@ -222,6 +248,8 @@ public class NDSRom {
             overlay.static_end = readFromByteArr(y9table, i * 32 + 20, 4);
             overlay.compressed_size = readFromByteArr(y9table, i * 32 + 28, 3);
             overlay.compress_flag = y9table[i * 32 + 31] & 0xFF;
+            overlay.originally_compressed = overlay.compress_flag != 0
+                    && overlay.original_size == overlay.compressed_size && overlay.compressed_size != 0;
             arm9overlays[i] = overlay;
             arm9overlaysByFileID.put(fileID, overlay);
         }
@@ -245,7 +273,7 @@ public class NDSRom {
             // custom arm9
             byte[] newARM9 = getARM9();
             if (arm9_compressed) {
-                newARM9 = new BLZCoder(null).BLZ_EncodePub(newARM9, true, false, "arm9.bin");
+                newARM9 = new BLZCoder(null).BLZ_EncodePub(newARM9, true, codeCompressionMode, "arm9.bin");
                 if (arm9_szoffset > 0) {
                     int newValue = newARM9.length + arm9_ramoffset;
                     writeToByteArr(newARM9, arm9_szoffset, 4, newValue);
@@ -325,7 +353,8 @@ public class NDSRom {
             int offset_of_file = (base_offset + file_align) & (~file_align);
             int file_len = 0;
             boolean copiedCustom = false;
-            if (filesByID.containsKey(fid)) {
+            // files which were only read, never written, are copied from the original ROM like unread ones
+            if (filesByID.containsKey(fid) && filesByID.get(fid).getModifications() != 0) {
                 byte[] customContents = filesByID.get(fid).getOverrideContents();
                 if (customContents != null) {
                     // copy custom
@@ -338,7 +367,7 @@ public class NDSRom {
             if (arm9overlaysByFileID.containsKey(fid)) {
                 NDSY9Entry entry = arm9overlaysByFileID.get(fid);
                 int overlay_id = entry.overlay_id;
-                byte[] customContents = entry.getOverrideContents();
+                byte[] customContents = entry.getModifications() != 0 ? entry.getOverrideContents() : null;
                 if (customContents != null) {
                     // copy custom
                     fNew.seek(offset_of_file);
@@ -434,15 +463,21 @@ public class NDSRom {
         closeROM();
     }
 
+    // Copies from the current file pointer of from to the current file pointer of to, advancing both.
+    // Uses FileChannel.transferTo, so the OS can copy the data without it passing through the Java heap.
     private void copy(RandomAccessFile from, RandomAccessFile to, int bytes) throws IOException {
-        int sizeof_copybuf = Math.min(256 * 1024, bytes);
-        byte[] copybuf = new byte[sizeof_copybuf];
-        while (bytes > 0) {
-            int size2 = (bytes >= sizeof_copybuf) ? sizeof_copybuf : bytes;
-            int read = from.read(copybuf, 0, size2);
-            to.write(copybuf, 0, read);
-            bytes -= read;
+        FileChannel fromChannel = from.getChannel();
+        FileChannel toChannel = to.getChannel();
+        long position = fromChannel.position();
+        long end = position + bytes;
+        while (position < end) {
+            long transferred = fromChannel.transferTo(position, end - position, toChannel);
+            if (transferred <= 0) {
+                throw new EOFException("Unexpected end of ROM while copying " + bytes + " bytes.");
+            }
+            position += transferred;
         }
+        fromChannel.position(end);
     }
 
     // get rom code for opened rom
@@ -463,6 +498,15 @@ public class NDSRom {
         }
     }
 
+    // returns null if file doesn't exist
+    public ByteBuffer getFileView(String filename) throws IOException {
+        if (files.containsKey(filename)) {
+            return files.get(filename).getContentsView();
+        } else {
+            return null;
+        }
+    }
+
     public byte[] getOverlay(int number) throws IOException {
         if (number >= 0 && number < arm9overlays.length) {
             return arm9overlays[number].getContents();
@@ -471,6 +515,27 @@ public class NDSRom {
         }
     }
 
+    /**
+     * Returns a read-only view of a file as it is in the base ROM, ignoring any changes made to it since.
+     * Returns null if the file doesn't exist.
+     */
+    public ByteBuffer getOriginalFileView(String filename) throws IOException {
+        NDSFile file = files.get(filename);
+        return file == null ? null : getBaseRomView(file.offset, file.size);
+    }
+
+    /**
+     * Returns the (decompressed) contents of an overlay as they are in the base ROM, ignoring any changes made
+     * to it since. Returns null if the overlay doesn't exist.
+     */
+    public byte[] getOriginalOverlay(int number) throws IOException {
+        if (number >= 0 && number < arm9overlays.length) {
+            return arm9overlays[number].getOriginalContents();
+        } else {
+            return null;
+        }
+    }
+
     public int getOverlayAddress(int number) {
         if (number >= 0 && number < arm9overlays.length) {
             return arm9overlays[number].ram_address;
@@ -479,6 +544,26 @@ public class NDSRom {
         }
     }
 
+    /**
+     * Returns the CRC32 of the arm9 as it is in the ROM file, before any decompression. Only set once the arm9 has
+     * been read with {@link #getARM9()}.
+     */
+    public long getOriginalArm9CRC() {
+        return originalArm9CRC;
+    }
+
+    /**
+     * Sets how hard {@link #saveTo(String)} compresses a changed arm9 and changed overlays.
+     * {@link BLZCoder.Mode#NORMAL} by default.
+     */
+    public void setCodeCompressionMode(BLZCoder.Mode codeCompressionMode) {
+        this.codeCompressionMode = codeCompressionMode;
+    }
+
+    public BLZCoder.Mode getCodeCompressionMode() {
+        return codeCompressionMode;
+    }
+
     public byte[] getARM9() throws IOException {
         if (!arm9_open) {
             arm9_open = true;
@@ -486,10 +571,10 @@ public class NDSRom {
             int arm9_offset = readFromFile(this.baseRom, 0x20, 4);
             int arm9_size = readFromFile(this.baseRom, 0x2C, 4);
             byte[] arm9 = new byte[arm9_size];
-            this.baseRom.seek(arm9_offset);
-            this.baseRom.readFully(arm9);
+            getBaseRomView(arm9_offset, arm9_size).get(arm9);
             originalArm9CRC = FileFunctions.getCRC32(arm9);
             // footer check
+            this.baseRom.seek(arm9_offset + arm9_size);
             int nitrocode = readFromFile(this.baseRom, 4);
             if (nitrocode == 0xDEC00621) {
                 // found a footer
@@ -536,32 +621,13 @@ public class NDSRom {
             }
 
             if (arm9_compressed) {
-                arm9 = new BLZCoder(null).BLZ_DecodePub(arm9, "arm9.bin");
+                arm9 = DecompressionCache.getShared().decode(arm9, originalArm9CRC, "arm9.bin");
             }
 
-            // Now actually make the copy or w/e
-            if (writingEnabled) {
-                File arm9file = new File(tmpFolder + "arm9.bin");
-                FileOutputStream fos = new FileOutputStream(arm9file);
-                fos.write(arm9);
-                fos.close();
-                arm9file.deleteOnExit();
-                this.arm9_ramstored = null;
-                return arm9;
-            } else {
-                this.arm9_ramstored = arm9;
-                byte[] newcopy = new byte[arm9.length];
-                System.arraycopy(arm9, 0, newcopy, 0, arm9.length);
-                return newcopy;
-            }
+            overrideStore.put("arm9", arm9);
+            return arm9;
         } else {
-            if (writingEnabled) {
-                return FileFunctions.readFileFullyIntoBuffer(tmpFolder + "arm9.bin");
-            } else {
-                byte[] newcopy = new byte[this.arm9_ramstored.length];
-                System.arraycopy(this.arm9_ramstored, 0, newcopy, 0, this.arm9_ramstored.length);
-                return newcopy;
-            }
+            return overrideStore.get("arm9");
         }
     }
 
@@ -583,21 +649,8 @@ public class NDSRom {
             getARM9();
         }
         arm9_changed = true;
-        if (writingEnabled) {
-            FileOutputStream fos = new FileOutputStream(new File(tmpFolder + "arm9.bin"));
-            fos.write(arm9);
-            fos.close();
-        } else {
-            if (this.arm9_ramstored.length == arm9.length) {
-                // copy new in
-                System.arraycopy(arm9, 0, this.arm9_ramstored, 0, arm9.length);
-            } else {
-                // make new array
-                this.arm9_ramstored = null;
-                this.arm9_ramstored = new byte[arm9.length];
-                System.arraycopy(arm9, 0, this.arm9_ramstored, 0, arm9.length);
-            }
-        }
+        arm9_modifications++;
+        overrideStore.put("arm9", arm9);
     }
 
     private void firstPassDirectory(int dir, int subTableOffset, int firstFileID, String[] directoryNames,
@@ -626,6 +679,100 @@ public class NDSRom {
         }
     }
 
+    /**
+     * Saves the current contents of all files, overlays and the ARM9, so they can be put back later by
+     * {@link #restoreSnapshot(Snapshot)}. Unextracted files cost nothing to save; the contents of extracted ones are
+     * held in memory.
+     */
+    public Snapshot createSnapshot() throws IOException {
+        return new Snapshot();
+    }
+
+    /**
+     * Puts back the contents saved by {@link #createSnapshot()}. Only files, overlays and the ARM9 written to
+     * since the snapshot was made are touched.
+     */
+    public void restoreSnapshot(Snapshot snapshot) throws IOException {
+        if (snapshot.owner != this) {
+            throw new IllegalArgumentException("Snapshot was not made from this NDSRom.");
+        }
+        for (NDSFile file : filesByID.values()) {
+            int modifications = snapshot.fileModifications.get(file);
+            if (file.getModifications() != modifications) {
+                file.restoreContents(snapshot.fileContents.get(file), modifications);
+            }
+        }
+        for (int i = 0; i < arm9overlays.length; i++) {
+            NDSY9Entry overlay = arm9overlays[i];
+            if (overlay.getModifications() != snapshot.overlayModifications[i]) {
+                overlay.restoreContents(snapshot.overlayContents[i], snapshot.overlayModifications[i]);
+            }
+            overlay.size = snapshot.overlaySizes[i];
+            overlay.compressed_size = snapshot.overlayCompressedSizes[i];
+        }
+        if (arm9_modifications != snapshot.arm9Modifications) {
+            if (snapshot.arm9 == null) {
+                arm9_open = false;
+                arm9_changed = false;
+                overrideStore.remove("arm9");
+            } else {
+                writeARM9(snapshot.arm9);
+                arm9_changed = snapshot.arm9Changed;
+            }
+            arm9_modifications = snapshot.arm9Modifications;
+        }
+    }
+
+    /**
+     * The saved state of an {@link NDSRom}, see {@link #createSnapshot()}.
+     */
+    public class Snapshot {
+        private final NDSRom owner = NDSRom.this;
+        private final Map<NDSFile, Integer> fileModifications = new HashMap<>();
+        private final Map<NDSFile, byte[]> fileContents = new HashMap<>();
+        private final int[] overlayModifications = new int[arm9overlays.length];
+        private final byte[][] overlayContents = new byte[arm9overlays.length][];
+        private final int[] overlaySizes = new int[arm9overlays.length];
+        private final int[] overlayCompressedSizes = new int[arm9overlays.length];
+        private final int arm9Modifications = NDSRom.this.arm9_modifications;
+        private final boolean arm9Changed = NDSRom.this.arm9_changed;
+        private final byte[] arm9;
+
+        private Snapshot() throws IOException {
+            for (NDSFile file : filesByID.values()) {
+                fileModifications.put(file, file.getModifications());
+                fileContents.put(file, file.getExtractedContents());
+            }
+            for (int i = 0; i < arm9overlays.length; i++) {
+                NDSY9Entry overlay = arm9overlays[i];
+                overlayModifications[i] = overlay.getModifications();
+                overlayContents[i] = overlay.getExtractedContents();
+                overlaySizes[i] = overlay.size;
+                overlayCompressedSizes[i] = overlay.compressed_size;
+            }
+            arm9 = arm9_open ? getARM9() : null;
+        }
+    }
+
+    /**
+     * Like {@link #printRomDiagnostics(PrintStream)}, but also lists the given overlays and files if they haven't
+     * been extracted, calculating their CRC32s from the base ROM.
+     */
+    public void printRomDiagnostics(PrintStream logStream, Collection<Integer> overlayNumbers,
+                                    Collection<String> filenames) throws IOException {
+        for (int number : overlayNumbers) {
+            if (number >= 0 && number < arm9overlays.length) {
+                arm9overlays[number].calculateOriginalCRC();
+            }
+        }
+        for (String filename : filenames) {
+            if (files.containsKey(filename)) {
+                files.get(filename).calculateOriginalCRC();
+            }
+        }
+        printRomDiagnostics(logStream);
+    }
+
     public void printRomDiagnostics(PrintStream logStream) {
         List<String> overlayList = new ArrayList<>();
         List<String> fileList = new ArrayList<>();
@@ -652,16 +799,13 @@ public class NDSRom {
         }
     }
 
-    public String getTmpFolder() {
-        return tmpFolder;
-    }
-
     public RandomAccessFile getBaseRom() {
         return baseRom;
     }
 
-    public boolean isWritingEnabled() {
-        return writingEnabled;
+    // holds the contents of extracted files, overlays and arm9
+    OverrideStore getOverrideStore() {
+        return overrideStore;
     }
 
     private int readFromByteArr(byte[] data, int offset, int size) {
@@ -1,10 +1,8 @@
 package com.dabomstew.pkrandom.newnds;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 
+import com.dabomstew.pkrandom.DecompressionCache;
 import com.dabomstew.pkrandom.FileFunctions;
 
 import cuecompressors.BLZCoder;
@@ -41,100 +39,109 @@ public class NDSY9Entry {
     public int static_start, static_end;
     public int compressed_size;
     public int compress_flag;
-    private Extracted status = Extracted.NOT;
-    private String extFilename;
-    public byte[] data;
+    private boolean extracted;
+    private int modifications;
     public long originalCRC;
     private boolean decompressed_data = false;
+    // whether the overlay is compressed in the base ROM; unlike compressed_size, this does not change on saving
+    boolean originally_compressed;
 
     public NDSY9Entry(NDSRom parent) {
         this.parent = parent;
     }
 
     public byte[] getContents() throws IOException {
-        if (this.status == Extracted.NOT) {
+        if (!this.extracted) {
             // extract file
-            parent.reopenROM();
-            RandomAccessFile rom = parent.getBaseRom();
             byte[] buf = new byte[this.original_size];
-            rom.seek(this.offset);
-            rom.readFully(buf);
+            parent.getBaseRomView(this.offset, this.original_size).get(buf);
             originalCRC = FileFunctions.getCRC32(buf);
             // Compression?
             if (compress_flag != 0 && this.original_size == this.compressed_size && this.compressed_size != 0) {
-                buf = new BLZCoder(null).BLZ_DecodePub(buf, "overlay " + overlay_id);
+                buf = DecompressionCache.getShared().decode(buf, originalCRC, "overlay " + overlay_id);
                 decompressed_data = true;
             }
-            if (parent.isWritingEnabled()) {
-                // make a file
-                String tmpDir = parent.getTmpFolder();
-                String fullPath = String.format("overlay_%04d", overlay_id);
-                this.extFilename = fullPath.replaceAll("[^A-Za-z0-9_]+", "");
-                File tmpFile = new File(tmpDir + extFilename);
-                FileOutputStream fos = new FileOutputStream(tmpFile);
-                fos.write(buf);
-                fos.close();
-                tmpFile.deleteOnExit();
-                this.status = Extracted.TO_FILE;
-                this.data = null;
-                return buf;
-            } else {
-                this.status = Extracted.TO_RAM;
-                this.data = buf;
-                byte[] newcopy = new byte[buf.length];
-                System.arraycopy(buf, 0, newcopy, 0, buf.length);
-                return newcopy;
-            }
-        } else if (this.status == Extracted.TO_RAM) {
-            byte[] newcopy = new byte[this.data.length];
-            System.arraycopy(this.data, 0, newcopy, 0, this.data.length);
-            return newcopy;
+            parent.getOverrideStore().put(getStoreKey(), buf);
+            this.extracted = true;
+            return buf;
         } else {
-            String tmpDir = parent.getTmpFolder();
-            return FileFunctions.readFileFullyIntoBuffer(tmpDir + this.extFilename);
+            return parent.getOverrideStore().get(getStoreKey());
+        }
+    }
+
+    /**
+     * Returns the contents of the overlay as they are in the base ROM, decompressed, ignoring any overrides.
+     * Unlike {@link #getContents()}, this does not extract the overlay, and can be called by several threads at once.
+     */
+    public byte[] getOriginalContents() throws IOException {
+        byte[] buf = new byte[this.original_size];
+        parent.getBaseRomView(this.offset, this.original_size).get(buf);
+        if (originally_compressed) {
+            buf = DecompressionCache.getShared().decode(buf, FileFunctions.getCRC32(buf), "overlay " + overlay_id);
+        }
+        return buf;
+    }
+
+    // sets originalCRC as extracting the overlay would, but without extracting it
+    void calculateOriginalCRC() throws IOException {
+        if (originalCRC == 0) {
+            originalCRC = FileFunctions.getCRC32(parent.getBaseRomView(this.offset, this.original_size));
         }
     }
 
     public void writeOverride(byte[] data) throws IOException {
-        if (status == Extracted.NOT) {
+        if (!extracted) {
             // temp extract
             getContents();
         }
+        modifications++;
         size = data.length;
-        if (status == Extracted.TO_FILE) {
-            String tmpDir = parent.getTmpFolder();
-            FileOutputStream fos = new FileOutputStream(new File(tmpDir + this.extFilename));
-            fos.write(data);
-            fos.close();
-        } else {
-            if (this.data.length == data.length) {
-                // copy new in
-                System.arraycopy(data, 0, this.data, 0, data.length);
-            } else {
-                // make new array
-                this.data = null;
-                this.data = new byte[data.length];
-                System.arraycopy(data, 0, this.data, 0, data.length);
-            }
-        }
+        parent.getOverrideStore().put(getStoreKey(), data);
     }
 
     // returns null if no override
     public byte[] getOverrideContents() throws IOException {
-        if (status == Extracted.NOT) {
+        if (!extracted) {
             return null;
         }
         byte[] buf = getContents();
         if (this.decompressed_data) {
-            buf = new BLZCoder(null).BLZ_EncodePub(buf, false, false, "overlay " + overlay_id);
+            buf = new BLZCoder(null).BLZ_EncodePub(buf, false, parent.getCodeCompressionMode(),
+                    "overlay " + overlay_id);
             // update our compressed size
             this.compressed_size = buf.length;
         }
         return buf;
     }
 
-    private enum Extracted {
-        NOT, TO_FILE, TO_RAM
+    // the number of writeOverride() calls, so saving can skip unchanged overlays, and snapshots can tell which
+    // overlays changed since they were made
+    int getModifications() {
+        return modifications;
+    }
+
+    // returns null if not extracted; unlike getOverrideContents() this does not recompress
+    byte[] getExtractedContents() throws IOException {
+        if (!extracted) {
+            return null;
+        }
+        return getContents();
+    }
+
+    // puts back the result of an earlier getExtractedContents()/getModifications() pair
+    void restoreContents(byte[] contents, int modifications) throws IOException {
+        if (contents == null) {
+            this.extracted = false;
+            this.decompressed_data = false;
+            parent.getOverrideStore().remove(getStoreKey());
+        } else {
+            writeOverride(contents);
+        }
+        this.modifications = modifications;
+    }
+
+    private String getStoreKey() {
+        return "overlay/" + overlay_id;
     }
 
 }
@@ -22,7 +22,7 @@ public class EncounterHeldItemRandomizer extends Randomizer {
     public void randomizeWildHeldItems() {
         boolean banBadItems = settings.isBanBadRandomWildPokemonHeldItems();
 
-        ItemList possibleItems = banBadItems ? romHandler.getNonBadItems() : romHandler.getAllowedItems();
+        ItemList possibleItems = itemsToDrawFrom(banBadItems ? romHandler.getNonBadItems() : romHandler.getAllowedItems());
         for (Species pk : romHandler.getSpeciesSetInclFormes()) {
             if (pk.getGuaranteedHeldItem() == -1 && pk.getCommonHeldItem() == -1 && pk.getRareHeldItem() == -1
                     && pk.getDarkGrassHeldItem() == -1) {
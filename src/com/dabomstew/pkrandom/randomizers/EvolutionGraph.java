@@ -0,0 +1,164 @@
+package com.dabomstew.pkrandom.randomizers;
+
+import com.dabomstew.pkrandom.gamedata.Species;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * The evolutions chosen so far while randomizing evolutions, between the {@link Species} of a pool.
+ * <br><br>
+ * Keeps the ancestors and descendants of every Species as bitsets over their numbers, and the length of their
+ * longest pre-evolution and evolution chains, up to date as evolutions are added. So whether a new evolution would
+ * create a cycle, or how many stages it would make an evolution line have, is known without walking the graph.
+ * <br><br>
+ * The evolutions must be acyclic, i.e. {@link #createsCycle(Species, Species)} must be false for each one added.
+ * Additions can be undone in the reverse order they were made, through {@link #undoLastEvolution()}.
+ */
+public class EvolutionGraph {
+
+    private final BitSet[] ancestors;
+    private final BitSet[] descendants;
+    private final int[][] children;
+    private final int[] childCounts;
+    private final int[][] parents;
+    private final int[] parentCounts;
+    private final int[] preEvolutionStages;
+    private final int[] evolutionStages;
+
+    // how to undo each change made, with the number of changes before each evolution added in additionMarks
+    private final Deque<Runnable> undoLog = new ArrayDeque<>();
+    private final Deque<Integer> additionMarks = new ArrayDeque<>();
+
+    /**
+     * @param pool       The Species evolutions may be between. All start out without any evolutions.
+     * @param mustEvolve Whether a Species will get evolutions later on. Such a Species counts as one evolution stage
+     *                   more than it has evolutions, until it gets some; see {@link #getEvolutionStages(Species)}.
+     */
+    public EvolutionGraph(Collection<Species> pool, Predicate<Species> mustEvolve) {
+        int size = 0;
+        for (Species pk : pool) {
+            size = Math.max(size, pk.getNumber() + 1);
+        }
+        ancestors = new BitSet[size];
+        descendants = new BitSet[size];
+        children = new int[size][];
+        childCounts = new int[size];
+        parents = new int[size][];
+        parentCounts = new int[size];
+        preEvolutionStages = new int[size];
+        evolutionStages = new int[size];
+        for (Species pk : pool) {
+            int n = pk.getNumber();
+            ancestors[n] = new BitSet(size);
+            descendants[n] = new BitSet(size);
+            children[n] = new int[1];
+            parents[n] = new int[1];
+            evolutionStages[n] = mustEvolve.test(pk) ? 1 : 0;
+        }
+    }
+
+    /**
+     * Returns whether adding an evolution from one Species to another would create an evolution cycle.
+     */
+    public boolean createsCycle(Species from, Species to) {
+        return from.getNumber() == to.getNumber() || ancestors[from.getNumber()].get(to.getNumber());
+    }
+
+    /**
+     * Returns the number of evolutions in the longest chain of pre-evolutions leading to a Species.
+     */
+    public int getPreEvolutionStages(Species pk) {
+        return preEvolutionStages[pk.getNumber()];
+    }
+
+    /**
+     * Returns the number of evolutions in the longest chain of evolutions from a Species. Species which have no
+     * evolutions yet, but must get some later on, count as having one.
+     */
+    public int getEvolutionStages(Species pk) {
+        return evolutionStages[pk.getNumber()];
+    }
+
+    public void addEvolution(Species from, Species to) {
+        int f = from.getNumber();
+        int t = to.getNumber();
+        additionMarks.push(undoLog.size());
+
+        addEdge(children, childCounts, f, t);
+        addEdge(parents, parentCounts, t, f);
+        undoLog.push(() -> {
+            childCounts[f]--;
+            parentCounts[t]--;
+        });
+
+        // from and its ancestors now lead to to and its descendants
+        BitSet newAncestors = (BitSet) ancestors[f].clone();
+        newAncestors.set(f);
+        BitSet newDescendants = (BitSet) descendants[t].clone();
+        newDescendants.set(t);
+        for (int d = newDescendants.nextSetBit(0); d >= 0; d = newDescendants.nextSetBit(d + 1)) {
+            addBits(ancestors, d, newAncestors);
+        }
+        for (int a = newAncestors.nextSetBit(0); a >= 0; a = newAncestors.nextSetBit(a + 1)) {
+            addBits(descendants, a, newDescendants);
+        }
+
+        raisePreEvolutionStages(t, preEvolutionStages[f] + 1);
+        raiseEvolutionStages(f, evolutionStages[t] + 1);
+    }
+
+    /**
+     * Undoes the last {@link #addEvolution(Species, Species)} not undone yet.
+     */
+    public void undoLastEvolution() {
+        int mark = additionMarks.pop();
+        while (undoLog.size() > mark) {
+            undoLog.pop().run();
+        }
+    }
+
+    private static void addEdge(int[][] edges, int[] counts, int node, int other) {
+        if (counts[node] == edges[node].length) {
+            edges[node] = Arrays.copyOf(edges[node], counts[node] * 2);
+        }
+        edges[node][counts[node]++] = other;
+    }
+
+    private void addBits(BitSet[] sets, int n, BitSet bits) {
+        BitSet old = sets[n];
+        BitSet combined = (BitSet) old.clone();
+        combined.or(bits);
+        if (!combined.equals(old)) {
+            sets[n] = combined;
+            undoLog.push(() -> sets[n] = old);
+        }
+    }
+
+    // raises the stages of n and its descendants, as far as a new pre-evolution chain of n has made them longer
+    private void raisePreEvolutionStages(int n, int stages) {
+        int old = preEvolutionStages[n];
+        if (stages <= old) {
+            return;
+        }
+        preEvolutionStages[n] = stages;
+        undoLog.push(() -> preEvolutionStages[n] = old);
+        for (int i = 0; i < childCounts[n]; i++) {
+            raisePreEvolutionStages(children[n][i], stages + 1);
+        }
+    }
+
+    // raises the stages of n and its ancestors, as far as a new evolution chain from n has made them longer
+    private void raiseEvolutionStages(int n, int stages) {
+        int old = evolutionStages[n];
+        if (stages <= old) {
+            return;
+        }
+        evolutionStages[n] = stages;
+        undoLog.push(() -> evolutionStages[n] = old);
+        for (int i = 0; i < parentCounts[n]; i++) {
+            raiseEvolutionStages(parents[n][i], stages + 1);
+        }
+    }
+
+}
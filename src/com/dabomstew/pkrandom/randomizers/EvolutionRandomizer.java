@@ -1,6 +1,7 @@
 package com.dabomstew.pkrandom.randomizers;
 
 import com.dabomstew.pkrandom.Settings;
+import com.dabomstew.pkrandom.Version;
 import com.dabomstew.pkrandom.constants.SpeciesIDs;
 import com.dabomstew.pkrandom.exceptions.RandomizationException;
 import com.dabomstew.pkrandom.gamedata.Evolution;
@@ -11,7 +12,6 @@ import com.dabomstew.pkrandom.romhandlers.RomHandler;
 
 import java.util.*;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 public class EvolutionRandomizer extends Randomizer {
 
@@ -60,6 +60,7 @@ public class EvolutionRandomizer extends Randomizer {
     private class InnerRandomizer {
 
         private static final int MAX_TRIES = 1000;
+        private static final int MAX_BACKTRACKS_PER_TRY = 100;
         private static final int DEFAULT_STAGE_LIMIT = 10;
 
         private final boolean similarStrength;
@@ -69,11 +70,14 @@ public class EvolutionRandomizer extends Randomizer {
         private final boolean forceChange;
         private final boolean forceGrowth;
         private final boolean evolveEveryLevel;
+        private final int maxBacktracks;
 
         private final SpeciesSet pokemonPool;
         private final SpeciesSet banned;
 
         private Map<Species, List<Evolution>> allOriginalEvos;
+        private List<EvolutionSlot> slots;
+        private EvolutionGraph graph;
 
         public InnerRandomizer(SpeciesSet pokemonPool, SpeciesSet banned,
                                boolean similarStrength, boolean sameType,
@@ -89,6 +93,8 @@ public class EvolutionRandomizer extends Randomizer {
             this.forceChange = forceChange;
             this.forceGrowth = forceGrowth;
             this.evolveEveryLevel = evolveEveryLevel;
+            // settings made before 1.1.3 start over at the first dead end, so their seeds give the same evolutions
+            this.maxBacktracks = settings.getVersion() < Version.FVX_1_1_3.id ? 0 : MAX_BACKTRACKS_PER_TRY;
             if (evolveEveryLevel && similarStrength) {
                 throw new IllegalArgumentException("Can't use evolveEveryLevel and similarStrength together.");
             }
@@ -102,6 +108,7 @@ public class EvolutionRandomizer extends Randomizer {
 
         public void randomizeEvolutions() {
             allOriginalEvos = cacheOriginalEvolutions();
+            slots = createSlots();
 
             boolean succeeded = false;
             int tries = 0;
@@ -109,33 +116,86 @@ public class EvolutionRandomizer extends Randomizer {
                 succeeded = randomizeEvolutionsInner();
                 tries++;
             }
-            if (tries == MAX_TRIES) {
+            if (!succeeded) {
                 throw new RandomizationException("Could not randomize Evolutions in " + MAX_TRIES + " tries.");
             }
         }
 
+        /**
+         * Picks the evolution of each slot in order. When a slot has nothing left to pick, the pick of the slot
+         * before it is undone and another one tried instead, up to {@link #MAX_BACKTRACKS_PER_TRY} times (never for
+         * settings made before 1.1.3).
+         */
         private boolean randomizeEvolutionsInner() {
             clearEvolutions();
+            graph = evolveEveryLevel ? null
+                    : new EvolutionGraph(pokemonPool, pk -> !allOriginalEvos.get(pk).isEmpty());
+            for (EvolutionSlot slot : slots) {
+                slot.tried.clear();
+            }
 
             // TODO: iterating through this in a random order would be better
-            for (Species from : pokemonPool) {
-                List<Evolution> originalEvos = getOriginalEvos(from);
-                for (Evolution evo : originalEvos) {
-                    SpeciesSet possible = findPossibleReplacements(from, evo);
-                    if (possible.isEmpty()) {
+            int backtracks = 0;
+            int i = 0;
+            while (i < slots.size()) {
+                EvolutionSlot slot = slots.get(i);
+                SpeciesSet possible = findPossibleReplacements(slot);
+                if (possible.isEmpty()) {
+                    slot.tried.clear();
+                    if (i == 0 || backtracks == maxBacktracks) {
                         return false;
                     }
-                    Species picked = similarStrength ? possible.getRandomSimilarStrengthSpecies(evo.getTo(), random)
-                            : possible.getRandomSpecies(random);
-
-                    Evolution newEvo = prepareNewEvolution(from, evo, picked);
-                    from.getEvolutionsFrom().add(newEvo);
-                    picked.getEvolutionsTo().add(newEvo);
+                    backtracks++;
+                    i--;
+                    removeEvolution(slots.get(i).picked);
+                    continue;
                 }
+                Species picked = similarStrength ? possible.getRandomSimilarStrengthSpecies(slot.evo.getTo(), random)
+                        : possible.getRandomSpecies(random);
+
+                slot.picked = prepareNewEvolution(slot.from, slot.evo, picked);
+                slot.tried.add(picked);
+                addEvolution(slot.picked);
+                i++;
             }
             return true;
         }
 
+        private List<EvolutionSlot> createSlots() {
+            List<EvolutionSlot> slots = new ArrayList<>();
+            for (Species from : pokemonPool) {
+                for (Evolution evo : getOriginalEvos(from)) {
+                    List<Species> candidates = findCandidates(from, evo);
+                    if (candidates.isEmpty()) {
+                        // no other picks can help with this one
+                        throw new RandomizationException("Could not randomize Evolutions: no possible evolution for "
+                                + from.getFullName() + ".");
+                    }
+                    slots.add(new EvolutionSlot(from, evo, candidates));
+                }
+            }
+            return slots;
+        }
+
+        private void addEvolution(Evolution evo) {
+            evo.getFrom().getEvolutionsFrom().add(evo);
+            evo.getTo().getEvolutionsTo().add(evo);
+            if (graph != null) {
+                graph.addEvolution(evo.getFrom(), evo.getTo());
+            }
+        }
+
+        private void removeEvolution(Evolution evo) {
+            // always the evolution added last
+            List<Evolution> evosFrom = evo.getFrom().getEvolutionsFrom();
+            List<Evolution> evosTo = evo.getTo().getEvolutionsTo();
+            evosFrom.remove(evosFrom.size() - 1);
+            evosTo.remove(evosTo.size() - 1);
+            if (graph != null) {
+                graph.undoLastEvolution();
+            }
+        }
+
         private Map<Species, List<Evolution>> cacheOriginalEvolutions() {
             Map<Species, List<Evolution>> originalEvos = new HashMap<>();
             for (Species pk : pokemonPool) {
@@ -176,20 +236,47 @@ public class EvolutionRandomizer extends Randomizer {
             return newEvo;
         }
 
-        private SpeciesSet findPossibleReplacements(Species from, Evolution evo) {
-            List<Predicate<Species>> filters = new ArrayList<>();
-            filters.add(to -> !banned.contains(to));
-            filters.add(to -> !to.equals(from));
-            filters.add(to -> to.getGrowthCurve().equals(from.getGrowthCurve()));
-            filters.add(to -> !isAlreadyChosenAsOtherSplitEvo(from, to));
+        /**
+         * Returns the Species the evolution of a slot may be replaced with, given the evolutions picked so far.
+         */
+        private SpeciesSet findPossibleReplacements(EvolutionSlot slot) {
+            Species from = slot.from;
+            SpeciesSet otherSplitEvos = new SpeciesSet();
+            for (Evolution ev : from.getEvolutionsFrom()) {
+                otherSplitEvos.add(ev.getTo());
+            }
 
+            List<Predicate<Species>> filters = new ArrayList<>();
+            filters.add(to -> !otherSplitEvos.contains(to));
+            filters.add(to -> !slot.tried.contains(to));
             if (!evolveEveryLevel) {
-                filters.add(to -> !createsCycle(from, to));
+                filters.add(to -> !graph.createsCycle(from, to));
                 filters.add(to -> !breaksStageLimit(from, to));
             }
             if (noConvergence) {
                 filters.add(to -> to.getEvolutionsTo().isEmpty());
             }
+            // the same set, in the same order, as filtering pokemonPool with all filters at once
+            Predicate<Species> filter = allOf(filters);
+            SpeciesSet possible = new SpeciesSet();
+            for (Species to : slot.candidates) {
+                if (filter.test(to)) {
+                    possible.add(to);
+                }
+            }
+            return possible;
+        }
+
+        /**
+         * Returns the Species an evolution may be replaced with, no matter which other evolutions are picked,
+         * in the order of pokemonPool.
+         */
+        private List<Species> findCandidates(Species from, Evolution evo) {
+            List<Predicate<Species>> filters = new ArrayList<>();
+            filters.add(to -> !banned.contains(to));
+            filters.add(to -> !to.equals(from));
+            filters.add(to -> to.getGrowthCurve().equals(from.getGrowthCurve()));
+
             if (forceChange) {
                 filters.add(to -> !isAnOriginalEvo(from, to));
             }
@@ -203,100 +290,57 @@ public class EvolutionRandomizer extends Randomizer {
                     filters.add(to -> to.hasSharedType(from));
                 }
             }
+            Predicate<Species> filter = allOf(filters);
+            List<Species> candidates = new ArrayList<>();
+            for (Species to : pokemonPool) {
+                if (filter.test(to)) {
+                    candidates.add(to);
+                }
+            }
+            return candidates;
+        }
 
-            Predicate<Species> combinedFilter = to -> {
+        private Predicate<Species> allOf(List<Predicate<Species>> filters) {
+            return to -> {
                 for (Predicate<Species> filter : filters) {
                     if (!filter.test(to)) return false;
                 }
                 return true;
             };
-            return pokemonPool.filter(combinedFilter);
         }
 
-        private boolean isAlreadyChosenAsOtherSplitEvo(Species from, Species to) {
-            return from.getEvolutionsFrom().stream().map(Evolution::getTo).collect(Collectors.toList()).contains(to);
-        }
-
-        /**
-         * Check whether adding an evolution from one Pokemon to another will cause
-         * an evolution cycle.
-         *
-         * @param from Pokemon that is evolving
-         * @param to   Pokemon to evolve to
-         * @return True if there is an evolution cycle, else false
-         */
-        private boolean createsCycle(Species from, Species to) {
-            Evolution tempEvo = new Evolution(from, to, EvolutionType.NONE, 0);
-            from.getEvolutionsFrom().add(tempEvo);
-            Set<Species> visited = new HashSet<>();
-            Set<Species> recStack = new HashSet<>();
-            boolean recur = isCyclic(from, visited, recStack);
-            from.getEvolutionsFrom().remove(tempEvo);
-            return recur;
-        }
-
-        private boolean isCyclic(Species pk, Set<Species> visited, Set<Species> recStack) {
-            if (!visited.contains(pk)) {
-                visited.add(pk);
-                recStack.add(pk);
-                for (Evolution ev : pk.getEvolutionsFrom()) {
-                    if (!visited.contains(ev.getTo()) && isCyclic(ev.getTo(), visited, recStack)) {
-                        return true;
-                    } else if (recStack.contains(ev.getTo())) {
-                        return true;
-                    }
+        private boolean isAnOriginalEvo(Species from, Species to) {
+            for (Evolution ev : allOriginalEvos.get(from)) {
+                if (ev.getTo().equals(to)) {
+                    return true;
                 }
             }
-            recStack.remove(pk);
             return false;
         }
 
         private boolean breaksStageLimit(Species from, Species to) {
-            int maxFrom = numPreEvolutions(from, stageLimit);
-            int maxTo = numEvolutions(to, stageLimit);
+            int maxFrom = graph.getPreEvolutionStages(from);
+            int maxTo = graph.getEvolutionStages(to);
             return maxFrom + maxTo + 2 > stageLimit;
         }
+    }
 
-        // Return the max depth of pre-evolutions a Pokemon has
-        private int numPreEvolutions(Species pk, int maxInterested) {
-            return numPreEvolutions(pk, 0, maxInterested);
-        }
-
-        private int numPreEvolutions(Species pk, int depth, int maxInterested) {
-            if (pk.getEvolutionsTo().size() == 0) {
-                return 0;
-            }
-            if (depth == maxInterested - 1) {
-                return 1;
-            }
-            int maxPreEvos = 0;
-            for (Evolution ev : pk.getEvolutionsTo()) {
-                maxPreEvos = Math.max(maxPreEvos, numPreEvolutions(ev.getFrom(), depth + 1, maxInterested) + 1);
-            }
-            return maxPreEvos;
-        }
-
-        private int numEvolutions(Species pk, int maxInterested) {
-            return numEvolutions(pk, 0, maxInterested);
-        }
-
-        private int numEvolutions(Species pk, int depth, int maxInterested) {
-            if (pk.getEvolutionsFrom().size() == 0) {
-                // looks ahead to see if an evo MUST be given to this Pokemon in the future
-                return allOriginalEvos.get(pk).isEmpty() ? 0 : 1;
-            }
-            if (depth == maxInterested - 1) {
-                return 1;
-            }
-            int maxEvos = 0;
-            for (Evolution ev : pk.getEvolutionsFrom()) {
-                maxEvos = Math.max(maxEvos, numEvolutions(ev.getTo(), depth + 1, maxInterested) + 1);
-            }
-            return maxEvos;
-        }
-
-        private boolean isAnOriginalEvo(Species from, Species to) {
-            return allOriginalEvos.get(from).stream().map(Evolution::getTo).collect(Collectors.toList()).contains(to);
+    /**
+     * One evolution to pick while randomizing evolutions, with the Species it may be replaced with, and those
+     * already tried for it.
+     */
+    private static class EvolutionSlot {
+
+        private final Species from;
+        private final Evolution evo;
+        private final List<Species> candidates;
+        private final SpeciesSet tried = new SpeciesSet();
+        private Evolution picked;
+
+        EvolutionSlot(Species from, Evolution evo, List<Species> candidates) {
+            this.from = from;
+            this.evo = evo;
+            this.candidates = candidates;
         }
     }
 
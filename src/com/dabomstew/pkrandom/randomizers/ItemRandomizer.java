@@ -10,7 +10,7 @@ import java.util.*;
 
 public class ItemRandomizer extends Randomizer {
 
-    private final Map<Integer, Integer> itemPlacementHistory = new HashMap<>();
+    private final PlacementHistory<Integer> itemPlacementHistory = new PlacementHistory<>(item -> item);
 
     private boolean fieldChangesMade;
     private boolean shopChangesMade;
@@ -58,7 +58,7 @@ public class ItemRandomizer extends Randomizer {
         boolean distributeItemsControl = settings.getFieldItemsMod() == Settings.FieldItemsMod.RANDOM_EVEN;
         boolean uniqueItems = !settings.isBalanceShopPrices();
 
-        ItemList possibleItems = banBadItems ? romHandler.getNonBadItems().copy() : romHandler.getAllowedItems().copy();
+        ItemList possibleItems = itemsToDrawFrom(banBadItems ? romHandler.getNonBadItems() : romHandler.getAllowedItems());
         List<Integer> currentItems = romHandler.getRegularFieldItems();
         List<Integer> currentTMs = romHandler.getCurrentFieldTMs();
         List<Integer> requiredTMs = romHandler.getRequiredFieldTMs();
@@ -79,7 +79,7 @@ public class ItemRandomizer extends Randomizer {
             for (int i = 0; i < fieldItemCount; i++) {
                 int chosenItem = possibleItems.randomNonTM(random);
                 int iterNum = 0;
-                while ((getItemPlacementHistory(chosenItem) > getItemPlacementAverage()) && iterNum < 100) {
+                while (itemPlacementHistory.isAboveAverage(chosenItem) && iterNum < 100) {
                     chosenItem = possibleItems.randomNonTM(random);
                     iterNum += 1;
                 }
@@ -87,7 +87,7 @@ public class ItemRandomizer extends Randomizer {
                 if (uniqueItems && uniqueNoSellItems.contains(chosenItem)) {
                     possibleItems.banSingles(chosenItem);
                 } else {
-                    setItemPlacementHistory(chosenItem);
+                    itemPlacementHistory.place(chosenItem);
                 }
             }
         } else {
@@ -119,35 +119,6 @@ public class ItemRandomizer extends Randomizer {
         fieldChangesMade = true;
     }
 
-    private void setItemPlacementHistory(int newItem) {
-        int history = getItemPlacementHistory(newItem);
-        // System.out.println("Current history: " + newPK.name + " : " + history);
-        itemPlacementHistory.put(newItem, history + 1);
-    }
-
-    private int getItemPlacementHistory(int newItem) {
-        List<Integer> placedItem = new ArrayList<>(itemPlacementHistory.keySet());
-        if (placedItem.contains(newItem)) {
-            return itemPlacementHistory.get(newItem);
-        } else {
-            return 0;
-        }
-    }
-
-    private float getItemPlacementAverage() {
-        // This method will return an integer of average for itemPlacementHistory
-        // placed is less than average of all placed pokemon's appearances
-        // E.g., Charmander's been placed once, but the average for all pokemon is 2.2
-        // So add to list and return
-
-        List<Integer> placedPK = new ArrayList<>(itemPlacementHistory.keySet());
-        int placedPKNum = 0;
-        for (Integer p : placedPK) {
-            placedPKNum += itemPlacementHistory.get(p);
-        }
-        return (float) placedPKNum / (float) placedPK.size();
-    }
-
     public void shuffleShopItems() {
         Map<Integer, Shop> currentItems = romHandler.getShopItems();
         if (currentItems == null) return;
@@ -286,7 +257,7 @@ public class ItemRandomizer extends Randomizer {
     public void randomizePickupItems() {
         boolean banBadItems = settings.isBanBadRandomPickupItems();
 
-        ItemList possibleItems = banBadItems ? romHandler.getNonBadItems() : romHandler.getAllowedItems();
+        ItemList possibleItems = itemsToDrawFrom(banBadItems ? romHandler.getNonBadItems() : romHandler.getAllowedItems());
         List<PickupItem> currentItems = romHandler.getPickupItems();
         List<PickupItem> newItems = new ArrayList<>();
         for (int i = 0; i < currentItems.size(); i++) {
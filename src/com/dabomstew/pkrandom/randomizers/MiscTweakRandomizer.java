@@ -38,7 +38,7 @@ public class MiscTweakRandomizer extends Randomizer {
             if (mt == MiscTweak.RANDOMIZE_CATCHING_TUTORIAL) {
                 randomizeCatchingTutorial();
             } else if (mt == MiscTweak.RANDOMIZE_PC_POTION) {
-                romHandler.setPCPotionItem(romHandler.getNonBadItems().randomNonTM(random));
+                romHandler.setPCPotionItem(itemsToDrawFrom(romHandler.getNonBadItems()).randomNonTM(random));
             } else {
                 romHandler.applyMiscTweak(mt);
             }
@@ -0,0 +1,234 @@
+package com.dabomstew.pkrandom.randomizers;
+
+import com.dabomstew.pkrandom.gamedata.Move;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * A list of {@link Move}s, where a Move may appear several times to make it more likely to be picked.
+ * <br><br>
+ * Behaves exactly like the equivalent {@link ArrayList} would: {@link #get(int)} returns the element at that position
+ * of the list with all removed elements left out, so picking through {@code get(random.nextInt(size()))} gives the
+ * same Move for the same seed. But instead of shifting elements around, removed ones are only marked as such, and a
+ * Fenwick tree over the positions finds the n-th remaining one. So adding is amortized O(1), and picking and removing
+ * are O(log n) per element, while the number of distinct Moves left is always known.
+ */
+class MovePool {
+
+    // every Move ever added, in the order added; alive[i] is false once slots[i] is removed
+    private Move[] slots;
+    private boolean[] alive;
+    private int slotCount;
+    // Fenwick tree over alive, 1-based
+    private int[] tree;
+    private int size;
+
+    // the positions each Move has been added at; the ones from firstAlive on are still in the pool.
+    // Removing either takes the first remaining one or all of them, so the remaining ones are always the last ones.
+    private final Map<Move, Positions> positions = new LinkedHashMap<>();
+    private int distinctCount;
+    // the result of distinctMoves(), until a Move is added for the first time or removed
+    private List<Move> distinctMoves;
+
+    MovePool(Collection<Move> moves) {
+        int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, moves.size())) << 1);
+        slots = new Move[capacity];
+        alive = new boolean[capacity];
+        tree = new int[capacity + 1];
+        for (Move mv : moves) {
+            add(mv);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of different Moves in the pool.
+     */
+    public int distinctCount() {
+        return distinctCount;
+    }
+
+    public void add(Move mv) {
+        if (slotCount == slots.length) {
+            grow();
+        }
+        int slot = slotCount++;
+        slots[slot] = mv;
+        alive[slot] = true;
+        update(slot, 1);
+        size++;
+
+        Positions pos = positions.computeIfAbsent(mv, k -> new Positions());
+        if (pos.remaining() == 0) {
+            distinctCount++;
+            distinctMoves = null;
+        }
+        pos.add(slot);
+    }
+
+    /**
+     * Returns the Move at the given position, counting only the Moves still in the pool.
+     */
+    public Move get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        // find the lowest slot with index + 1 alive slots up to and including it
+        int slot = 0;
+        int remaining = index + 1;
+        for (int step = Integer.highestOneBit(slots.length); step > 0; step >>= 1) {
+            int next = slot + step;
+            if (next <= slots.length && tree[next] < remaining) {
+                slot = next;
+                remaining -= tree[next];
+            }
+        }
+        return slots[slot];
+    }
+
+    public boolean contains(Move mv) {
+        Positions pos = positions.get(mv);
+        return pos != null && pos.remaining() > 0;
+    }
+
+    /**
+     * Removes the first occurrence of the given Move, like {@link List#remove(Object)}.
+     */
+    public boolean removeFirst(Move mv) {
+        Positions pos = positions.get(mv);
+        if (pos == null || pos.remaining() == 0) {
+            return false;
+        }
+        kill(pos.slots[pos.firstAlive++]);
+        if (pos.remaining() == 0) {
+            distinctCount--;
+        }
+        return true;
+    }
+
+    /**
+     * Removes every occurrence of the given Move.
+     */
+    public boolean removeAll(Move mv) {
+        Positions pos = positions.get(mv);
+        if (pos == null || pos.remaining() == 0) {
+            return false;
+        }
+        while (pos.firstAlive < pos.count) {
+            kill(pos.slots[pos.firstAlive++]);
+        }
+        distinctCount--;
+        return true;
+    }
+
+    /**
+     * Removes every occurrence of each of the given Moves, like {@link List#removeAll(Collection)}.
+     */
+    public boolean removeAll(Collection<Move> moves) {
+        boolean changed = false;
+        for (Move mv : moves) {
+            if (removeAll(mv)) {
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the Moves in the pool, each once, in the order they first appear in it,
+     * like {@code stream().distinct()} on the equivalent list.
+     */
+    public List<Move> distinctMoves() {
+        if (distinctMoves == null) {
+            distinctMoves = Collections.unmodifiableList(findDistinctMoves());
+        }
+        return distinctMoves;
+    }
+
+    private List<Move> findDistinctMoves() {
+        List<Positions> remaining = new ArrayList<>(distinctCount);
+        List<Move> moves = new ArrayList<>(distinctCount);
+        for (Map.Entry<Move, Positions> entry : positions.entrySet()) {
+            if (entry.getValue().remaining() > 0) {
+                remaining.add(entry.getValue());
+                moves.add(entry.getKey());
+            }
+        }
+        Integer[] order = new Integer[moves.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> remaining.get(i).slots[remaining.get(i).firstAlive]));
+        List<Move> distinct = new ArrayList<>(order.length);
+        for (int i : order) {
+            distinct.add(moves.get(i));
+        }
+        return distinct;
+    }
+
+    /**
+     * Returns the Moves in the pool for which the predicate is true, in order and with repeats.
+     */
+    public List<Move> filter(Predicate<Move> predicate) {
+        List<Move> filtered = new ArrayList<>();
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (alive[slot] && predicate.test(slots[slot])) {
+                filtered.add(slots[slot]);
+            }
+        }
+        return filtered;
+    }
+
+    private void kill(int slot) {
+        distinctMoves = null;
+        alive[slot] = false;
+        update(slot, -1);
+        size--;
+    }
+
+    private void update(int slot, int delta) {
+        for (int i = slot + 1; i <= slots.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    private void grow() {
+        int capacity = slots.length * 2;
+        slots = Arrays.copyOf(slots, capacity);
+        alive = Arrays.copyOf(alive, capacity);
+        // rebuild the tree in O(n)
+        tree = new int[capacity + 1];
+        for (int i = 1; i <= capacity; i++) {
+            tree[i] += alive[i - 1] ? 1 : 0;
+            int parent = i + (i & -i);
+            if (parent <= capacity) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    private static class Positions {
+        int[] slots = new int[4];
+        int count;
+        int firstAlive;
+
+        void add(int slot) {
+            if (count == slots.length) {
+                slots = Arrays.copyOf(slots, count * 2);
+            }
+            slots[count++] = slot;
+        }
+
+        int remaining() {
+            return count - firstAlive;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.dabomstew.pkrandom.randomizers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Counts how many times each thing (a Species, an item...) has been placed, for spreading placements out evenly.
+ * <br><br>
+ * The average is taken over the things placed at least once, like a Map from thing to count would give. The sum and
+ * the number of things placed are kept up to date by {@link #place(Object)}, and the things are grouped by their
+ * counts, so placing, looking up a count, comparing with the average and finding the things placed far more often
+ * than average don't have to go through all counts.
+ */
+public class PlacementHistory<T> {
+
+    private final ToIntFunction<T> indexer;
+
+    // by index
+    private Object[] things = new Object[16];
+    private int[] counts = new int[16];
+    private int[] positionsInGroup = new int[16];
+
+    // groups[c - 1] holds the indices of the things placed c times, in no particular order
+    private int[][] groups = new int[0][];
+    private int[] groupSizes = new int[0];
+
+    private long total;
+    private int placedCount;
+
+    /**
+     * @param indexer Gives each thing a unique, small non-negative index, e.g. its number.
+     */
+    public PlacementHistory(ToIntFunction<T> indexer) {
+        this.indexer = indexer;
+    }
+
+    public void place(T thing) {
+        int index = indexer.applyAsInt(thing);
+        ensureCapacity(index + 1);
+        int count = counts[index];
+        if (count == 0) {
+            things[index] = thing;
+            placedCount++;
+        } else {
+            removeFromGroup(count, index);
+        }
+        counts[index] = count + 1;
+        addToGroup(count + 1, index);
+        total++;
+    }
+
+    public boolean isEmpty() {
+        return placedCount == 0;
+    }
+
+    public int getCount(T thing) {
+        int index = indexer.applyAsInt(thing);
+        return index < counts.length ? counts[index] : 0;
+    }
+
+    /**
+     * Returns whether a thing has been placed more times than the average. Never true while nothing has been placed.
+     */
+    public boolean isAboveAverage(T thing) {
+        return (long) getCount(thing) * placedCount > total;
+    }
+
+    /**
+     * Returns whether a thing has been placed fewer times than multiple * the average, i.e. is not one of
+     * {@link #getPlacedAtLeast(int)}. Never true while nothing has been placed.
+     */
+    public boolean isBelow(T thing, int multiple) {
+        return (long) getCount(thing) * placedCount < multiple * total;
+    }
+
+    /**
+     * Returns the things placed at least as many times as multiple * the average.
+     * Things that have never been placed are never returned.
+     */
+    public List<T> getPlacedAtLeast(int multiple) {
+        List<T> found = new ArrayList<>();
+        for (int count = groups.length; count > 0; count--) {
+            if ((long) count * placedCount < multiple * total) {
+                break;
+            }
+            int[] group = groups[count - 1];
+            for (int i = 0; i < groupSizes[count - 1]; i++) {
+                found.add(thingAt(group[i]));
+            }
+        }
+        return found;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T thingAt(int index) {
+        return (T) things[index];
+    }
+
+    private void addToGroup(int count, int index) {
+        if (groups.length < count) {
+            // counts only ever go up by one
+            groups = Arrays.copyOf(groups, count);
+            groups[count - 1] = new int[4];
+            groupSizes = Arrays.copyOf(groupSizes, count);
+        }
+        int[] group = groups[count - 1];
+        int size = groupSizes[count - 1];
+        if (size == group.length) {
+            group = Arrays.copyOf(group, size * 2);
+            groups[count - 1] = group;
+        }
+        group[size] = index;
+        positionsInGroup[index] = size;
+        groupSizes[count - 1] = size + 1;
+    }
+
+    private void removeFromGroup(int count, int index) {
+        int[] group = groups[count - 1];
+        int last = groupSizes[count - 1] - 1;
+        int position = positionsInGroup[index];
+        group[position] = group[last];
+        positionsInGroup[group[position]] = position;
+        groupSizes[count - 1] = last;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (counts.length < capacity) {
+            int newLength = Math.max(capacity, counts.length * 2);
+            things = Arrays.copyOf(things, newLength);
+            counts = Arrays.copyOf(counts, newLength);
+            positionsInGroup = Arrays.copyOf(positionsInGroup, newLength);
+        }
+    }
+
+}
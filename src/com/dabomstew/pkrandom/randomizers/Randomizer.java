@@ -1,6 +1,8 @@
 package com.dabomstew.pkrandom.randomizers;
 
 import com.dabomstew.pkrandom.Settings;
+import com.dabomstew.pkrandom.Version;
+import com.dabomstew.pkrandom.gamedata.ItemList;
 import com.dabomstew.pkrandom.gamedata.cueh.CopyUpEvolutionsHelper;
 import com.dabomstew.pkrandom.gamedata.Species;
 import com.dabomstew.pkrandom.romhandlers.RomHandler;
@@ -37,4 +39,15 @@ public abstract class Randomizer {
     public boolean isChangesMade() {
         return changesMade;
     }
+
+    /**
+     * Returns a copy of an {@link ItemList} to draw random items from. Settings made before 1.1.3 draw them the way
+     * they always have, so their seeds give the same items as before, while newer ones draw from the allowed items
+     * directly.
+     */
+    protected ItemList itemsToDrawFrom(ItemList items) {
+        ItemList copy = items.copy();
+        copy.setSeedStable(settings.getVersion() < Version.FVX_1_1_3.id);
+        return copy;
+    }
 }
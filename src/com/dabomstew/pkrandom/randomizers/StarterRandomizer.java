@@ -399,7 +399,7 @@ public class StarterRandomizer extends Randomizer {
 
         List<Integer> oldHeldItems = romHandler.getStarterHeldItems();
         List<Integer> newHeldItems = new ArrayList<>();
-        ItemList possibleItems = banBadItems ? romHandler.getNonBadItems() : romHandler.getAllowedItems();
+        ItemList possibleItems = itemsToDrawFrom(banBadItems ? romHandler.getNonBadItems() : romHandler.getAllowedItems());
         for (int i = 0; i < oldHeldItems.size(); i++) {
             newHeldItems.add(possibleItems.randomItem(this.random));
         }
@@ -57,7 +57,7 @@ public class TradeRandomizer extends Randomizer {
         List<Species> usedGivens = new ArrayList<>();
         List<String> usedOTs = new ArrayList<>();
         List<String> usedNicknames = new ArrayList<>();
-        ItemList possibleItems = romHandler.getAllowedItems();
+        ItemList possibleItems = itemsToDrawFrom(romHandler.getAllowedItems());
 
         int nickCount = nicknames.size();
         int trnameCount = trainerNames.size();
@@ -15,6 +15,7 @@ public class TrainerMovesetRandomizer extends Randomizer {
     private Map<Integer, List<Integer>> allEggMoves;
     private Map<Species, boolean[]> allTMCompat, allTutorCompat;
     private List<Integer> allTMMoves, allTutorMoves;
+    private MoveSynergyIndex moveSynergy;
 
     public TrainerMovesetRandomizer(RomHandler romHandler, Settings settings, Random random) {
         super(romHandler, settings, random);
@@ -26,6 +27,9 @@ public class TrainerMovesetRandomizer extends Randomizer {
 
         List<Trainer> trainers = romHandler.getTrainers();
 
+        moveSynergy = new MoveSynergyIndex(romHandler.getMoves(), romHandler.generationOfPokemon(),
+                romHandler.getTypeTable(), romHandler.getPerfectAccuracy());
+
         for (Trainer t : trainers) {
             t.setPokemonHaveCustomMoves(true);
 
@@ -62,118 +66,92 @@ public class TrainerMovesetRandomizer extends Randomizer {
 
                 Species pk = romHandler.getAltFormeOfSpecies(tp.species, tp.forme);
 
-                List<Move> stabMoves = new ArrayList<>(movesAtLevel)
-                        .stream()
-                        .filter(mv -> mv.type == pk.getPrimaryType(false) && mv.category != MoveCategory.STATUS)
-                        .collect(Collectors.toList());
+                // moves are made more likely to be picked by adding them to the pool again
+                MovePool pool = new MovePool(movesAtLevel);
+
+                List<Move> stabMoves = pool.filter(mv -> mv.type == pk.getPrimaryType(false)
+                        && mv.category != MoveCategory.STATUS);
                 Collections.shuffle(stabMoves, random);
 
                 for (int i = 0; i < stabMoveBias * stabMoves.size(); i++) {
                     int j = i % stabMoves.size();
-                    movesAtLevel.add(stabMoves.get(j));
+                    pool.add(stabMoves.get(j));
                 }
 
                 if (pk.getSecondaryType(false) != null) {
-                    stabMoves = new ArrayList<>(movesAtLevel)
-                            .stream()
-                            .filter(mv -> mv.type == pk.getSecondaryType(false) && mv.category != MoveCategory.STATUS)
-                            .collect(Collectors.toList());
+                    stabMoves = pool.filter(mv -> mv.type == pk.getSecondaryType(false)
+                            && mv.category != MoveCategory.STATUS);
                     Collections.shuffle(stabMoves, random);
 
                     for (int i = 0; i < stabMoveBias * stabMoves.size(); i++) {
                         int j = i % stabMoves.size();
-                        movesAtLevel.add(stabMoves.get(j));
+                        pool.add(stabMoves.get(j));
                     }
                 }
 
                 // Hard ability/move synergy
 
-                List<Move> abilityMoveSynergyList = MoveSynergy.getHardAbilityMoveSynergy(
+                List<Move> abilityMoveSynergyList = moveSynergy.getHardAbilityMoveSynergy(
                         romHandler.getAbilityForTrainerPokemon(tp),
                         pk.getPrimaryType(false),
                         pk.getSecondaryType(false),
-                        movesAtLevel,
-                        romHandler.generationOfPokemon(),
-                        romHandler.getPerfectAccuracy());
+                        pool.distinctMoves());
                 Collections.shuffle(abilityMoveSynergyList, random);
                 for (int i = 0; i < hardAbilityMoveBias * abilityMoveSynergyList.size(); i++) {
                     int j = i % abilityMoveSynergyList.size();
-                    movesAtLevel.add(abilityMoveSynergyList.get(j));
+                    pool.add(abilityMoveSynergyList.get(j));
                 }
 
                 // Soft ability/move synergy
 
-                List<Move> softAbilityMoveSynergyList = MoveSynergy.getSoftAbilityMoveSynergy(
+                List<Move> softAbilityMoveSynergyList = moveSynergy.getSoftAbilityMoveSynergy(
                         romHandler.getAbilityForTrainerPokemon(tp),
-                        movesAtLevel,
+                        pool.distinctMoves(),
                         pk.getPrimaryType(false),
                         pk.getSecondaryType(false));
 
                 Collections.shuffle(softAbilityMoveSynergyList, random);
                 for (int i = 0; i < softAbilityMoveBias * softAbilityMoveSynergyList.size(); i++) {
                     int j = i % softAbilityMoveSynergyList.size();
-                    movesAtLevel.add(softAbilityMoveSynergyList.get(j));
+                    pool.add(softAbilityMoveSynergyList.get(j));
                 }
 
                 // Soft ability/move anti-synergy
 
-                List<Move> softAbilityMoveAntiSynergyList = MoveSynergy.getSoftAbilityMoveAntiSynergy(
-                        romHandler.getAbilityForTrainerPokemon(tp), movesAtLevel);
-                List<Move> withoutSoftAntiSynergy = new ArrayList<>(movesAtLevel);
-                for (Move mv : softAbilityMoveAntiSynergyList) {
-                    withoutSoftAntiSynergy.remove(mv);
-                }
-                if (withoutSoftAntiSynergy.size() > 0) {
-                    movesAtLevel = withoutSoftAntiSynergy;
+                List<Move> softAbilityMoveAntiSynergyList = moveSynergy.getSoftAbilityMoveAntiSynergy(
+                        romHandler.getAbilityForTrainerPokemon(tp), pool.distinctMoves());
+                // each of these is in the pool, so removing one of each removes exactly that many
+                if (pool.size() > softAbilityMoveAntiSynergyList.size()) {
+                    for (Move mv : softAbilityMoveAntiSynergyList) {
+                        pool.removeFirst(mv);
+                    }
                 }
 
-                List<Move> distinctMoveList = movesAtLevel.stream().distinct().collect(Collectors.toList());
-                int movesLeft = distinctMoveList.size();
-
-                if (movesLeft <= 4) {
-
-                    for (int i = 0; i < 4; i++) {
-                        if (i < movesLeft) {
-                            tp.moves[i] = distinctMoveList.get(i).number;
-                        } else {
-                            tp.moves[i] = 0;
-                        }
-                    }
+                if (pool.distinctCount() <= 4) {
+                    setMoves(tp, pool.distinctMoves());
                     continue;
                 }
 
                 // Stat/move synergy
 
-                List<Move> statSynergyList = MoveSynergy.getStatMoveSynergy(pk, movesAtLevel);
+                List<Move> statSynergyList = MoveSynergy.getStatMoveSynergy(pk, pool.distinctMoves());
                 Collections.shuffle(statSynergyList, random);
                 for (int i = 0; i < statBias * statSynergyList.size(); i++) {
                     int j = i % statSynergyList.size();
-                    movesAtLevel.add(statSynergyList.get(j));
+                    pool.add(statSynergyList.get(j));
                 }
 
                 // Stat/move anti-synergy
 
-                List<Move> statAntiSynergyList = MoveSynergy.getStatMoveAntiSynergy(pk, movesAtLevel);
-                List<Move> withoutStatAntiSynergy = new ArrayList<>(movesAtLevel);
-                for (Move mv : statAntiSynergyList) {
-                    withoutStatAntiSynergy.remove(mv);
-                }
-                if (withoutStatAntiSynergy.size() > 0) {
-                    movesAtLevel = withoutStatAntiSynergy;
+                List<Move> statAntiSynergyList = MoveSynergy.getStatMoveAntiSynergy(pk, pool.distinctMoves());
+                if (pool.size() > statAntiSynergyList.size()) {
+                    for (Move mv : statAntiSynergyList) {
+                        pool.removeFirst(mv);
+                    }
                 }
 
-                distinctMoveList = movesAtLevel.stream().distinct().collect(Collectors.toList());
-                movesLeft = distinctMoveList.size();
-
-                if (movesLeft <= 4) {
-
-                    for (int i = 0; i < 4; i++) {
-                        if (i < movesLeft) {
-                            tp.moves[i] = distinctMoveList.get(i).number;
-                        } else {
-                            tp.moves[i] = 0;
-                        }
-                    }
+                if (pool.distinctCount() <= 4) {
+                    setMoves(tp, pool.distinctMoves());
                     continue;
                 }
 
@@ -197,12 +175,8 @@ public class TrainerMovesetRandomizer extends Randomizer {
                         break;
                 }
 
-                List<Move> physicalMoves = new ArrayList<>(movesAtLevel)
-                        .stream()
-                        .filter(mv -> mv.category == MoveCategory.PHYSICAL).collect(Collectors.toList());
-                List<Move> specialMoves = new ArrayList<>(movesAtLevel)
-                        .stream()
-                        .filter(mv -> mv.category == MoveCategory.SPECIAL).collect(Collectors.toList());
+                List<Move> physicalMoves = pool.filter(mv -> mv.category == MoveCategory.PHYSICAL);
+                List<Move> specialMoves = pool.filter(mv -> mv.category == MoveCategory.SPECIAL);
 
                 if (atkSpatkRatio < 1 && specialMoves.size() > 0) {
                     atkSpatkRatio = 1 / atkSpatkRatio;
@@ -210,14 +184,14 @@ public class TrainerMovesetRandomizer extends Randomizer {
                     int additionalMoves = (int) (physicalMoves.size() * acceptedRatio) - specialMoves.size();
                     for (int i = 0; i < additionalMoves; i++) {
                         Move mv = specialMoves.get(random.nextInt(specialMoves.size()));
-                        movesAtLevel.add(mv);
+                        pool.add(mv);
                     }
                 } else if (physicalMoves.size() > 0) {
                     double acceptedRatio = atkSpatkRatioModifier * atkSpatkRatio;
                     int additionalMoves = (int) (specialMoves.size() * acceptedRatio) - physicalMoves.size();
                     for (int i = 0; i < additionalMoves; i++) {
                         Move mv = physicalMoves.get(random.nextInt(physicalMoves.size()));
-                        movesAtLevel.add(mv);
+                        pool.add(mv);
                     }
                 }
 
@@ -227,95 +201,77 @@ public class TrainerMovesetRandomizer extends Randomizer {
 
                 for (int i = 1; i <= 4; i++) {
                     Move move;
-                    List<Move> pickFrom;
-
-                    if (i == 1) {
-                        pickFrom = movesAtLevel
-                                .stream()
-                                .filter(mv -> mv.isGoodDamaging(romHandler.getPerfectAccuracy()))
-                                .collect(Collectors.toList());
-                        if (pickFrom.isEmpty()) {
-                            pickFrom = movesAtLevel;
-                        }
-                    } else {
-                        pickFrom = movesAtLevel;
-                    }
 
                     if (i == 4) {
-                        List<Move> requiresOtherMove = movesAtLevel
+                        List<Move> requiresOtherMove = pool.distinctMoves()
                                 .stream()
                                 .filter(mv -> GlobalConstants.requiresOtherMove.contains(mv.number))
-                                .distinct().collect(Collectors.toList());
+                                .collect(Collectors.toList());
 
                         for (Move dependentMove : requiresOtherMove) {
                             boolean hasRequiredMove = false;
-                            for (Move requiredMove : MoveSynergy.requiresOtherMove(dependentMove, movesAtLevel)) {
+                            for (Move requiredMove : moveSynergy.requiresOtherMove(dependentMove,
+                                    pool.distinctMoves())) {
                                 if (pickedMoves.contains(requiredMove)) {
                                     hasRequiredMove = true;
                                     break;
                                 }
                             }
                             if (!hasRequiredMove) {
-                                movesAtLevel.removeAll(Collections.singletonList(dependentMove));
+                                pool.removeAll(dependentMove);
                             }
                         }
                     }
 
-                    move = pickFrom.get(random.nextInt(pickFrom.size()));
+                    List<Move> goodDamagingMoves = i == 1 ?
+                            pool.filter(mv -> mv.isGoodDamaging(romHandler.getPerfectAccuracy())) :
+                            Collections.emptyList();
+                    if (!goodDamagingMoves.isEmpty()) {
+                        move = goodDamagingMoves.get(random.nextInt(goodDamagingMoves.size()));
+                    } else {
+                        move = pool.get(random.nextInt(pool.size()));
+                    }
                     pickedMoves.add(move);
 
                     if (i == 4) {
                         break;
                     }
 
-                    movesAtLevel.removeAll(Collections.singletonList(move));
-
-                    movesAtLevel.removeAll(MoveSynergy.getHardMoveAntiSynergy(move, movesAtLevel));
+                    pool.removeAll(move);
 
-                    distinctMoveList = movesAtLevel.stream().distinct().collect(Collectors.toList());
-                    movesLeft = distinctMoveList.size();
+                    pool.removeAll(moveSynergy.getHardMoveAntiSynergy(move, pool.distinctMoves()));
 
-                    if (movesLeft <= (4 - i)) {
-                        pickedMoves.addAll(distinctMoveList);
+                    if (pool.distinctCount() <= (4 - i)) {
+                        pickedMoves.addAll(pool.distinctMoves());
                         break;
                     }
 
-                    List<Move> hardMoveSynergyList = MoveSynergy.getMoveSynergy(
-                            move,
-                            movesAtLevel,
-                            romHandler.generationOfPokemon());
+                    List<Move> hardMoveSynergyList = moveSynergy.getMoveSynergy(move, pool.distinctMoves());
                     Collections.shuffle(hardMoveSynergyList, random);
                     for (int j = 0; j < hardMoveBias * hardMoveSynergyList.size(); j++) {
                         int k = j % hardMoveSynergyList.size();
-                        movesAtLevel.add(hardMoveSynergyList.get(k));
+                        pool.add(hardMoveSynergyList.get(k));
                     }
 
-                    List<Move> softMoveSynergyList = MoveSynergy.getSoftMoveSynergy(
-                            move,
-                            movesAtLevel,
-                            romHandler.getTypeTable());
+                    List<Move> softMoveSynergyList = moveSynergy.getSoftMoveSynergy(move, pool.distinctMoves());
                     Collections.shuffle(softMoveSynergyList, random);
                     for (int j = 0; j < softMoveBias * softMoveSynergyList.size(); j++) {
                         int k = j % softMoveSynergyList.size();
-                        movesAtLevel.add(softMoveSynergyList.get(k));
+                        pool.add(softMoveSynergyList.get(k));
                     }
 
-                    List<Move> softMoveAntiSynergyList = MoveSynergy.getSoftMoveAntiSynergy(move, movesAtLevel);
+                    List<Move> softMoveAntiSynergyList = moveSynergy.getSoftMoveAntiSynergy(move, pool.distinctMoves());
                     Collections.shuffle(softMoveAntiSynergyList, random);
                     for (int j = 0; j < softMoveAntiBias * softMoveAntiSynergyList.size(); j++) {
-                        distinctMoveList = movesAtLevel.stream().distinct().collect(Collectors.toList());
-                        if (distinctMoveList.size() <= (4 - i)) {
+                        if (pool.distinctCount() <= (4 - i)) {
                             break;
                         }
                         int k = j % softMoveAntiSynergyList.size();
-                        movesAtLevel.remove(softMoveAntiSynergyList.get(k));
+                        pool.removeFirst(softMoveAntiSynergyList.get(k));
                     }
 
-                    distinctMoveList = movesAtLevel.stream().distinct().collect(Collectors.toList());
-                    movesLeft = distinctMoveList.size();
-
-                    if (movesLeft <= (4 - i)) {
-                        pickedMoves.addAll(distinctMoveList);
+                    if (pool.distinctCount() <= (4 - i)) {
+                        pickedMoves.addAll(pool.distinctMoves());
                         break;
                     }
                 }
@@ -335,6 +291,16 @@ public class TrainerMovesetRandomizer extends Randomizer {
         changesMade = true;
     }
 
+    private static void setMoves(TrainerPokemon tp, List<Move> moves) {
+        for (int i = 0; i < 4; i++) {
+            if (i < moves.size()) {
+                tp.moves[i] = moves.get(i).number;
+            } else {
+                tp.moves[i] = 0;
+            }
+        }
+    }
+
     private List<Move> trimMoveList(TrainerPokemon tp, List<Move> movesAtLevel, boolean doubleBattleMode) {
         int movesLeft = movesAtLevel.size();
 
@@ -392,7 +358,7 @@ public class TrainerMovesetRandomizer extends Randomizer {
                 .filter(mv -> GlobalConstants.requiresOtherMove.contains(mv.number)).collect(Collectors.toList());
 
         for (Move dependentMove : requiresOtherMove) {
-            if (MoveSynergy.requiresOtherMove(dependentMove, movesAtLevel).isEmpty()) {
+            if (!moveSynergy.hasRequiredMove(dependentMove, movesAtLevel)) {
                 movesAtLevel.remove(dependentMove);
             }
         }
@@ -413,7 +379,7 @@ public class TrainerMovesetRandomizer extends Randomizer {
         // Remove hard ability anti-synergy moves
 
         List<Move> withoutHardAntiSynergy = new ArrayList<>(movesAtLevel);
-        withoutHardAntiSynergy.removeAll(MoveSynergy.getHardAbilityMoveAntiSynergy(
+        withoutHardAntiSynergy.removeAll(moveSynergy.getHardAbilityMoveAntiSynergy(
                 romHandler.getAbilityForTrainerPokemon(tp),
                 movesAtLevel));
 
@@ -21,7 +21,7 @@ public class TrainerPokemonRandomizer extends Randomizer {
     private Map<Type, Integer> typeWeightings;
     private int totalTypeWeighting;
 
-    private final Map<Species, Integer> placementHistory = new HashMap<>();
+    private final PlacementHistory<Species> placementHistory = new PlacementHistory<>(Species::getNumber);
 
     private Set<Type> usedUberTypes = EnumSet.noneOf(Type.class);
     private Map<Trainer, Type> trainerTypes = new HashMap<>();
@@ -245,7 +245,7 @@ public class TrainerPokemonRandomizer extends Randomizer {
                 // Now, do all the bookkeeping we need for later choices
 
                 if (distributionSetting || (mainPlaythroughSetting && mainPlaythroughTrainers.contains(t.index))) {
-                    setPlacementHistory(newSp);
+                    placementHistory.place(newSp);
                 }
 
                 if (eliteFourSetUniquePokemon) {
@@ -500,10 +500,11 @@ public class TrainerPokemonRandomizer extends Randomizer {
             pickFrom = pickFrom.filterFinalEvos(false);
         }
 
-        if (usePlacementHistory) {
+        // while nothing has been placed, nothing is below the average
+        if (usePlacementHistory && !placementHistory.isEmpty()) {
             // "Distributed" settings
-            double placementAverage = getPlacementAverage();
-            SpeciesSet belowAverage = pickFrom.filter(pk -> getPlacementHistory(pk) < placementAverage * 2);
+            // filtered, as a copy with removals would iterate in another order
+            SpeciesSet belowAverage = pickFrom.filter(pk -> placementHistory.isBelow(pk, 2));
             if (!belowAverage.isEmpty()) {
                 pickFrom = belowAverage;
             }
@@ -717,19 +718,6 @@ public class TrainerPokemonRandomizer extends Randomizer {
         }
     }
 
-    private void setPlacementHistory(Species newPK) {
-        int history = getPlacementHistory(newPK);
-        placementHistory.put(newPK, history + 1);
-    }
-
-    private int getPlacementHistory(Species newPK) {
-        return placementHistory.getOrDefault(newPK, 0);
-    }
-
-    private double getPlacementAverage() {
-        return placementHistory.values().stream().mapToInt(e -> e).average().orElse(0);
-    }
-
     public void makeRivalCarryStarter() {
         List<Trainer> currentTrainers = romHandler.getTrainers();
         rivalCarriesStarterUpdate(currentTrainers, "RIVAL", romHandler.isORAS() ? 0 : 1);
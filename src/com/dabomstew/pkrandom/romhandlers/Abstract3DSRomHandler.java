@@ -22,6 +22,7 @@ package com.dabomstew.pkrandom.romhandlers;
 /*----------------------------------------------------------------------------*/
 
 import com.dabomstew.pkrandom.FileFunctions;
+import com.dabomstew.pkrandom.RomFileCRC32s;
 import com.dabomstew.pkrandom.ctr.GARCArchive;
 import com.dabomstew.pkrandom.ctr.NCCH;
 import com.dabomstew.pkrandom.exceptions.CannotWriteToLocationException;
@@ -29,15 +30,23 @@ import com.dabomstew.pkrandom.exceptions.EncryptedROMException;
 import com.dabomstew.pkrandom.exceptions.RomIOException;
 import com.dabomstew.pkrandom.gamedata.Species;
 import com.dabomstew.pkrandom.gamedata.Type;
+import com.dabomstew.pkrandom.romhandlers.romentries.Abstract3DSRomEntry;
+import cuecompressors.BLZCoder;
 
 import java.awt.image.BufferedImage;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * An abstract base class for 3DS {@link RomHandler}s, which standardises common 3DS functions.
@@ -47,6 +56,9 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
 	private NCCH baseRom;
 	private NCCH gameUpdate;
 	private String loadedFN;
+	private boolean incrementalRomfsRebuild;
+	private boolean fastCodeCompression;
+	private final PokemonImageCache<GARCArchive> pokemonImageCache = new PokemonImageCache<>();
 
 	@Override
 	public boolean loadRom(String filename) {
@@ -55,6 +67,7 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
 		if (!this.detect3DSRom(productCode, titleId)) {
 			return false;
 		}
+		unloadRom();
 		// Load inner rom
 		try {
 			baseRom = new NCCH(filename, productCode, titleId);
@@ -64,7 +77,10 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
 		} catch (IOException e) {
 			throw new RomIOException(e);
 		}
+		baseRom.setIncrementalRomfsRebuild(incrementalRomfsRebuild);
+		setFastCodeCompression(fastCodeCompression);
 		loadedFN = filename;
+		pokemonImageCache.clear();
 		this.loadedROM(productCode, titleId);
 		return true;
 	}
@@ -78,6 +94,45 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
 
 	protected abstract void loadedROM(String productCode, String titleId);
 
+	@Override
+	protected void recordSnapshot(Snapshot snapshot) {
+		super.recordSnapshot(snapshot);
+		NCCH savedBaseRomOwner = baseRom;
+		NCCH savedGameUpdateOwner = gameUpdate;
+		NCCH.Snapshot savedBaseRom;
+		NCCH.Snapshot savedGameUpdate;
+		try {
+			savedBaseRom = baseRom.createSnapshot();
+			savedGameUpdate = gameUpdate == null ? null : gameUpdate.createSnapshot();
+		} catch (IOException e) {
+			throw new RomIOException(e);
+		}
+		snapshot.addRestorer(() -> {
+			if (baseRom != savedBaseRomOwner || gameUpdate != savedGameUpdateOwner) {
+				throw new IllegalStateException("The ROM or game update was replaced after the snapshot was made.");
+			}
+			try {
+				baseRom.restoreSnapshot(savedBaseRom);
+				if (gameUpdate != null) {
+					gameUpdate.restoreSnapshot(savedGameUpdate);
+				}
+			} catch (IOException e) {
+				throw new RomIOException(e);
+			}
+			pokemonImageCache.clear();
+		});
+	}
+
+	protected static List<Map<Integer, byte[]>> copyGARCFiles(GARCArchive garc) {
+		return garc == null ? null : garc.copyFiles();
+	}
+
+	protected static void restoreGARCFiles(GARCArchive garc, List<Map<Integer, byte[]>> saved) {
+		if (garc != null) {
+			garc.restoreFiles(saved);
+		}
+	}
+
 
 	protected abstract String getGameAcronym();
 
@@ -95,6 +150,37 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
 		return true;
 	}
 
+	/**
+	 * Sets whether saving the ROM as a file rebuilds its romfs incrementally, see
+	 * {@link NCCH#setIncrementalRomfsRebuild(boolean)}. Off by default. Also applies to ROMs loaded later on.
+	 */
+	public void setIncrementalRomfsRebuild(boolean incrementalRomfsRebuild) {
+		this.incrementalRomfsRebuild = incrementalRomfsRebuild;
+		if (baseRom != null) {
+			baseRom.setIncrementalRomfsRebuild(incrementalRomfsRebuild);
+		}
+	}
+
+	/**
+	 * Sets whether saving the ROM compresses the .code with {@link BLZCoder.Mode#FAST}, instead of
+	 * {@link BLZCoder.Mode#BEST}. The output is a little larger, but takes far less time to make.
+	 * Off by default. Also applies to ROMs loaded later on.
+	 */
+	public void setFastCodeCompression(boolean fastCodeCompression) {
+		this.fastCodeCompression = fastCodeCompression;
+		if (baseRom != null) {
+			baseRom.setCodeCompressionMode(fastCodeCompression ? BLZCoder.Mode.FAST : BLZCoder.Mode.BEST);
+		}
+	}
+
+	/**
+	 * Returns how many romfs hash blocks the last save could reuse from the source ROM, or null if the ROM has not
+	 * been saved as a file yet.
+	 */
+	public NCCH.RomfsRebuildStats getLastRomfsRebuildStats() {
+		return baseRom == null ? null : baseRom.getLastRomfsRebuildStats();
+	}
+
 	@Override
 	public boolean saveRomDirectory(String filename) {
 		try {
@@ -117,6 +203,7 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
 		String productCode = getProductCodeFromFile(filename);
 		String titleId = getTitleIdFromFile(filename);
 		try {
+			closeGameUpdate();
 			gameUpdate = new NCCH(filename, productCode, titleId);
 			if (!gameUpdate.isDecrypted()) {
 				throw new EncryptedROMException(filename);
@@ -128,13 +215,19 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
 		} catch (IOException e) {
 			throw new RomIOException(e);
 		}
+		pokemonImageCache.clear();
 		this.loadedROM(baseRom.getProductCode(), baseRom.getTitleId());
 		return true;
 	}
 
 	@Override
 	public void removeGameUpdate() {
-		gameUpdate = null;
+		try {
+			closeGameUpdate();
+		} catch (IOException e) {
+			throw new RomIOException(e);
+		}
+		pokemonImageCache.clear();
 		this.loadedROM(baseRom.getProductCode(), baseRom.getTitleId());
 	}
 
@@ -147,13 +240,44 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
 
 	@Override
 	public void printRomDiagnostics(PrintStream logStream) {
-		baseRom.printRomDiagnostics(logStream, gameUpdate);
+		// the files with expected CRC32s are listed even if the randomization never read them
+		Abstract3DSRomEntry romEntry = getRomEntry();
+		List<String> filenames = new ArrayList<>();
+		for (String fileKey : romEntry.getFileKeys()) {
+			filenames.add(romEntry.getFile(fileKey));
+		}
+		try {
+			baseRom.printRomDiagnostics(logStream, gameUpdate, filenames);
+		} catch (IOException e) {
+			throw new RomIOException(e);
+		}
 	}
 
 	public void closeInnerRom() throws IOException {
 		baseRom.closeROM();
 	}
 
+	@Override
+	public void unloadRom() {
+		try {
+			closeGameUpdate();
+			if (baseRom != null) {
+				baseRom.close();
+				baseRom = null;
+			}
+		} catch (IOException e) {
+			throw new RomIOException(e);
+		}
+		pokemonImageCache.clear();
+	}
+
+	private void closeGameUpdate() throws IOException {
+		if (gameUpdate != null) {
+			gameUpdate.close();
+			gameUpdate = null;
+		}
+	}
+
 	@Override
 	public boolean hasPhysicalSpecialSplit() {
 		// Default value for Gen4+.
@@ -161,6 +285,13 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
 		return true;
 	}
 
+	/**
+	 * Returns the CRC32 of the code as it was read by {@link #readCode()}, before any decompression.
+	 */
+	protected long getCodeCRC32() {
+		return gameUpdate != null ? gameUpdate.originalCodeCRC : baseRom.originalCodeCRC;
+	}
+
 	protected byte[] readCode() throws IOException {
 		if (gameUpdate != null) {
 			return gameUpdate.getCode();
@@ -190,6 +321,21 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
 		return baseRom.getFile(location);
 	}
 
+	/**
+	 * Returns the CRC32s of the files at the given locations, as they are in the ROM file (or the game update,
+	 * if one is loaded and has the file), even if they have been changed since. See {@link RomFileCRC32s}.
+	 */
+	protected Map<String, Long> getOriginalFileCRC32s(Collection<String> locations) throws IOException {
+		Map<String, RomFileCRC32s.FileReader> readers = new LinkedHashMap<>();
+		for (String location : locations) {
+			NCCH source = gameUpdate != null && gameUpdate.hasFile(location) ? gameUpdate : baseRom;
+			readers.put(location, () -> ByteBuffer.wrap(source.getOriginalFile(location)));
+		}
+		String romIdentity = gameUpdate == null ? RomFileCRC32s.identify(loadedFN)
+				: RomFileCRC32s.identify(loadedFN, gameUpdate.getFilename());
+		return RomFileCRC32s.calculate(romIdentity, "file", readers);
+	}
+
 	protected void writeFile(String location, byte[] data) throws IOException {
 		writeFile(location, data, 0, data.length);
 	}
@@ -240,6 +386,7 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
 		if (gameUpdate != null && gameUpdate.hasFile(location)) {
 			gameUpdate.writeFile(location, data);
 		}
+		pokemonImageCache.archiveChanged(location);
 	}
 
 	public String getTitleIdFromLoadedROM() {
@@ -356,13 +503,15 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
 		String GARCPath = getGARCPath("PokemonGraphics");
 		GARCArchive pokeGraphicsGARC;
 		try {
-			pokeGraphicsGARC = readGARC(GARCPath, false);
+			pokeGraphicsGARC = readCachedPokemonGraphicsGARC();
 		} catch (IOException e) {
 			throw new RomIOException(e);
 		}
 
 		for (int i = 1; i < pokeGraphicsGARC.files.size(); i++) {
-			BufferedImage icon = getPokemonIcon(i, pokeGraphicsGARC, false, true);
+			int iconIndex = i;
+			BufferedImage icon = pokemonImageCache.getImage(imageKey(iconIndex, false, true),
+					() -> getPokemonIcon(iconIndex, pokeGraphicsGARC, false, true));
 			bims.add(icon);
 		}
 		return bims;
@@ -370,9 +519,7 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
 
 	public int getIconGARCSize() {
 		try {
-			String GARCPath = getGARCPath("PokemonGraphics");
-			GARCArchive pokeGraphicsGARC = readGARC(GARCPath, false);
-			return pokeGraphicsGARC.files.size();
+			return readCachedPokemonGraphicsGARC().files.size();
 		} catch (IOException e) {
 			throw new RomIOException(e);
 		}
@@ -380,15 +527,29 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
 
 	public BufferedImage getPokemonIcon(int iconIndex) {
 		try {
-			String GARCPath = getGARCPath("PokemonGraphics");
-			GARCArchive pokeGraphicsGARC = readGARC(GARCPath, false);
-
-			return getPokemonIcon(iconIndex, pokeGraphicsGARC, true, false);
+			GARCArchive pokeGraphicsGARC = readCachedPokemonGraphicsGARC();
+			// the icons have their own palettes, so these are all the key needs
+			return pokemonImageCache.getImage(imageKey(iconIndex, true, false),
+					() -> getPokemonIcon(iconIndex, pokeGraphicsGARC, true, false));
 		} catch (IOException e) {
 			throw new RomIOException(e);
 		}
 	}
 
+	private static List<Object> imageKey(int iconIndex, boolean transparentBackground, boolean includePalette) {
+		return Collections.unmodifiableList(Arrays.asList(iconIndex, transparentBackground, includePalette));
+	}
+
+	// the GARC is shared between calls until the file is written to, so it must not be changed
+	private GARCArchive readCachedPokemonGraphicsGARC() throws IOException {
+		return pokemonImageCache.getArchive(getGARCPath("PokemonGraphics"), path -> readGARC(path, false));
+	}
+
+	@Override
+	public void clearPokemonImageCache() {
+		pokemonImageCache.clear();
+	}
+
 	public abstract BufferedImage getPokemonIcon(int pkIndex, GARCArchive pokeGraphicsGARC,
 												 boolean transparentBackground, boolean includePalette);
 
@@ -406,4 +567,7 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
 	// - voliol 2022-08-07
 	public abstract String getGARCPath(String fileName);
 
+	@Override
+	protected abstract Abstract3DSRomEntry getRomEntry();
+
 }
@@ -3,6 +3,7 @@ package com.dabomstew.pkrandom.romhandlers;
 import com.dabomstew.pkrandom.FileFunctions;
 import com.dabomstew.pkrandom.GFXFunctions;
 import com.dabomstew.pkrandom.RomFunctions;
+import com.dabomstew.pkrandom.RomFileCRC32s;
 import com.dabomstew.pkrandom.exceptions.CannotWriteToLocationException;
 import com.dabomstew.pkrandom.exceptions.RomIOException;
 import com.dabomstew.pkrandom.gamedata.Species;
@@ -11,6 +12,7 @@ import com.dabomstew.pkrandom.newnds.NARCArchive;
 import com.dabomstew.pkrandom.newnds.NDSRom;
 import com.dabomstew.pkrandom.gamedata.Type;
 import com.dabomstew.pkrandom.romhandlers.romentries.AbstractDSRomEntry;
+import cuecompressors.BLZCoder;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
@@ -18,6 +20,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 
@@ -36,6 +40,8 @@ public abstract class AbstractDSRomHandler extends AbstractRomHandler {
     private NDSRom baseRom;
     private String loadedFN;
     private boolean arm9Extended = false;
+    private boolean fastCodeCompression;
+    private final PokemonImageCache<NARCArchive> pokemonImageCache = new PokemonImageCache<>();
 
     protected abstract boolean detectNDSRom(String ndsCode, byte version);
 
@@ -44,13 +50,16 @@ public abstract class AbstractDSRomHandler extends AbstractRomHandler {
         if (!this.detectNDSRom(getROMCodeFromFile(filename), getVersionFromFile(filename))) {
             return false;
         }
+        unloadRom();
         // Load inner rom
         try {
             baseRom = new NDSRom(filename);
         } catch (IOException e) {
             throw new RomIOException(e);
         }
+        setFastCodeCompression(fastCodeCompression);
         loadedFN = filename;
+        pokemonImageCache.clear();
         loadedROM(baseRom.getCode(), baseRom.getVersion());
         return true;
     }
@@ -60,6 +69,18 @@ public abstract class AbstractDSRomHandler extends AbstractRomHandler {
         return loadedFN;
     }
 
+    /**
+     * Sets whether saving the ROM compresses the arm9 and overlays with {@link BLZCoder.Mode#FAST}, instead of
+     * {@link BLZCoder.Mode#NORMAL}. The output is a little larger, but takes far less time to make.
+     * Off by default. Also applies to ROMs loaded later on.
+     */
+    public void setFastCodeCompression(boolean fastCodeCompression) {
+        this.fastCodeCompression = fastCodeCompression;
+        if (baseRom != null) {
+            baseRom.setCodeCompressionMode(fastCodeCompression ? BLZCoder.Mode.FAST : BLZCoder.Mode.NORMAL);
+        }
+    }
+
     protected byte[] get3byte(int amount) {
         byte[] ret = new byte[3];
         ret[0] = (byte) (amount & 0xFF);
@@ -84,6 +105,42 @@ public abstract class AbstractDSRomHandler extends AbstractRomHandler {
         return true;
     }
 
+    @Override
+    protected void recordSnapshot(Snapshot snapshot) {
+        super.recordSnapshot(snapshot);
+        NDSRom.Snapshot savedBaseRom;
+        try {
+            savedBaseRom = baseRom.createSnapshot();
+        } catch (IOException e) {
+            throw new RomIOException(e);
+        }
+        boolean savedArm9Extended = arm9Extended;
+        snapshot.addRestorer(() -> {
+            try {
+                baseRom.restoreSnapshot(savedBaseRom);
+            } catch (IOException e) {
+                throw new RomIOException(e);
+            }
+            arm9Extended = savedArm9Extended;
+            pokemonImageCache.clear();
+        });
+    }
+
+    protected static NARCArchive copyNARC(NARCArchive narc) {
+        return narc == null ? null : new NARCArchive(narc);
+    }
+
+    /**
+     * Returns the contents of a NARC copied by {@link #copyNARC(NARCArchive)}, in the live NARC if there is one.
+     */
+    protected static NARCArchive restoreNARC(NARCArchive live, NARCArchive saved) {
+        if (live == null || saved == null) {
+            return copyNARC(saved);
+        }
+        live.restoreFrom(saved);
+        return live;
+    }
+
     @Override
     public boolean saveRomDirectory(String filename) {
         // do nothing. DS games do have the concept of a filesystem, but it's way more
@@ -115,13 +172,36 @@ public abstract class AbstractDSRomHandler extends AbstractRomHandler {
 
     @Override
     public void printRomDiagnostics(PrintStream logStream) {
-        baseRom.printRomDiagnostics(logStream);
+        // the overlays and files with expected CRC32s are listed even if the randomization never read them
+        AbstractDSRomEntry romEntry = getRomEntry();
+        List<String> filenames = new ArrayList<>();
+        for (String fileKey : romEntry.getFileKeys()) {
+            filenames.add(romEntry.getFile(fileKey));
+        }
+        try {
+            baseRom.printRomDiagnostics(logStream, romEntry.getOverlayExpectedCRC32Keys(), filenames);
+        } catch (IOException e) {
+            throw new RomIOException(e);
+        }
     }
 
     public void closeInnerRom() throws IOException {
         baseRom.closeROM();
     }
 
+    @Override
+    public void unloadRom() {
+        if (baseRom != null) {
+            try {
+                baseRom.close();
+            } catch (IOException e) {
+                throw new RomIOException(e);
+            }
+            baseRom = null;
+        }
+        pokemonImageCache.clear();
+    }
+
     @Override
     public boolean hasPhysicalSpecialSplit() {
         // Default value for Gen4+.
@@ -130,13 +210,26 @@ public abstract class AbstractDSRomHandler extends AbstractRomHandler {
     }
 
     public NARCArchive readNARC(String subpath) throws IOException {
-        return new NARCArchive(readFile(subpath));
+        return new NARCArchive(readFileView(subpath));
     }
 
     public void writeNARC(String subpath, NARCArchive narc) throws IOException {
         this.writeFile(subpath, narc.getBytes());
     }
 
+    /**
+     * Like {@link #readNARC(String)}, but the NARC is remembered for the Pokemon image getters, and shared between
+     * calls until the file is written to. So it must not be changed.
+     */
+    protected NARCArchive readCachedNARC(String subpath) throws IOException {
+        return pokemonImageCache.getArchive(subpath, this::readNARC);
+    }
+
+    @Override
+    public void clearPokemonImageCache() {
+        pokemonImageCache.clear();
+    }
+
     protected static String getROMCodeFromFile(String filename) {
         try {
             FileInputStream fis = new FileInputStream(filename);
@@ -201,6 +294,15 @@ public abstract class AbstractDSRomHandler extends AbstractRomHandler {
         return baseRom.getFile(location);
     }
 
+    /**
+     * Like {@link #readFile(String)}, but returns a read-only view instead of a copy. Use this when the contents
+     * are only read, e.g. to parse them into some other structure; unmodified files are then read straight
+     * from the ROM.
+     */
+    protected ByteBuffer readFileView(String location) throws IOException {
+        return baseRom.getFileView(location);
+    }
+
     protected void writeFile(String location, byte[] data) throws IOException {
         writeFile(location, data, 0, data.length);
     }
@@ -212,12 +314,20 @@ public abstract class AbstractDSRomHandler extends AbstractRomHandler {
             data = newData;
         }
         baseRom.writeFile(location, data);
+        pokemonImageCache.archiveChanged(location);
     }
 
     protected byte[] readARM9() throws IOException {
         return baseRom.getARM9();
     }
 
+    /**
+     * Returns the CRC32 of the arm9 as it is in the ROM file, see {@link NDSRom#getOriginalArm9CRC()}.
+     */
+    protected long getOriginalArm9CRC() {
+        return baseRom.getOriginalArm9CRC();
+    }
+
     protected void writeARM9(byte[] data) throws IOException {
         baseRom.writeARM9(data);
     }
@@ -230,6 +340,30 @@ public abstract class AbstractDSRomHandler extends AbstractRomHandler {
         baseRom.writeOverlay(number, data);
     }
 
+    /**
+     * Returns the CRC32s of the given overlays (decompressed), as they are in the ROM file, even if they have been
+     * changed since. See {@link RomFileCRC32s}.
+     */
+    protected Map<Integer, Long> getOriginalOverlayCRC32s(Collection<Integer> numbers) throws IOException {
+        Map<Integer, RomFileCRC32s.FileReader> readers = new LinkedHashMap<>();
+        for (int number : numbers) {
+            readers.put(number, () -> ByteBuffer.wrap(baseRom.getOriginalOverlay(number)));
+        }
+        return RomFileCRC32s.calculate(RomFileCRC32s.identify(loadedFN), "overlay", readers);
+    }
+
+    /**
+     * Returns the CRC32s of the files at the given locations, as they are in the ROM file, even if they have been
+     * changed since. See {@link RomFileCRC32s}.
+     */
+    protected Map<String, Long> getOriginalFileCRC32s(Collection<String> locations) throws IOException {
+        Map<String, RomFileCRC32s.FileReader> readers = new LinkedHashMap<>();
+        for (String location : locations) {
+            readers.put(location, () -> baseRom.getOriginalFileView(location));
+        }
+        return RomFileCRC32s.calculate(RomFileCRC32s.identify(loadedFN), "file", readers);
+    }
+
     protected void readByteIntoFlags(byte[] data, boolean[] flags, int offsetIntoFlags, int offsetIntoData) {
         int thisByte = data[offsetIntoData] & 0xFF;
         for (int i = 0; i < 8 && (i + offsetIntoFlags) < flags.length; i++) {
@@ -471,7 +605,7 @@ public abstract class AbstractDSRomHandler extends AbstractRomHandler {
 		String NARCPath = getRomEntry().getFile("PokemonGraphics");
 		NARCArchive pokeGraphicsNARC;
 		try {
-			pokeGraphicsNARC = readNARC(NARCPath);
+			pokeGraphicsNARC = readCachedNARC(NARCPath);
 		} catch (IOException e) {
 			throw new RomIOException(e);
 		}
@@ -528,6 +662,8 @@ public abstract class AbstractDSRomHandler extends AbstractRomHandler {
 
         protected NARCArchive pokeGraphicsNARC;
         protected int gender = FEMALE;
+        // whether the NARC(s) were set from outside, and so might not be the ones the cached images came from
+        protected boolean customNARCs;
 
         public DSPokemonImageGetter(Species pk) {
             super(pk);
@@ -535,6 +671,7 @@ public abstract class AbstractDSRomHandler extends AbstractRomHandler {
 
         public DSPokemonImageGetter setPokeGraphicsNARC(NARCArchive pokeGraphicsNARC) {
             this.pokeGraphicsNARC = pokeGraphicsNARC;
+            this.customNARCs = true;
             return this;
         }
 
@@ -550,13 +687,34 @@ public abstract class AbstractDSRomHandler extends AbstractRomHandler {
             if (pokeGraphicsNARC == null) {
                 try {
                     String NARCpath = getRomEntry().getFile("PokemonGraphics");
-                    pokeGraphicsNARC = readNARC(NARCpath);
+                    pokeGraphicsNARC = readCachedNARC(NARCpath);
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
             }
         }
 
+        @Override
+        public BufferedImage get() {
+            beforeGet();
+            if (customNARCs) {
+                return decode();
+            }
+            // the palette comes from the Species, so it is part of the key; IntBuffers are equal by their contents
+            List<Object> key = Collections.unmodifiableList(Arrays.asList(pk.getNumber(), forme, back, shiny, gender,
+                    transparentBackground, includePalette, IntBuffer.wrap(getPalette().toARGB())));
+            return pokemonImageCache.getImage(key, this::decode);
+        }
+
+        /**
+         * Decodes the image {@link #get()} returns, from the NARC(s) read by {@link #beforeGet()}.
+         */
+        protected abstract BufferedImage decode();
+
+        protected Palette getPalette() {
+            return shiny ? pk.getShinyPalette() : pk.getNormalPalette();
+        }
+
         public abstract boolean hasGenderedImages();
 
         public BufferedImage getFull() {
@@ -22,7 +22,6 @@ package com.dabomstew.pkrandom.romhandlers;
 /*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
 /*----------------------------------------------------------------------------*/
 
-import com.dabomstew.pkrandom.FileFunctions;
 import com.dabomstew.pkrandom.RomFunctions;
 import com.dabomstew.pkrandom.constants.GBConstants;
 import com.dabomstew.pkrandom.exceptions.RomIOException;
@@ -32,24 +31,24 @@ import com.dabomstew.pkrandom.romhandlers.romentries.AbstractGBCRomEntry;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 
 /**
  * An extension of {@link AbstractGBRomHandler} used for Gen 1 and Gen 2.
  */
 public abstract class AbstractGBCRomHandler extends AbstractGBRomHandler {
 
-    private String[] tb;
-    private Map<String, Byte> d;
-    private int longestTableToken;
+    // the names of the text tables, in the order they are read
+    private List<String> textTableNames;
+    private GBTextCodec textCodec;
+    private final StringBuilder decodeBuffer = new StringBuilder();
+    private byte[] encodeBuffer = new byte[64];
 
     private BankDividedFreedSpace freedSpace;
 
@@ -107,61 +106,24 @@ public abstract class AbstractGBCRomHandler extends AbstractGBRomHandler {
     protected abstract void loadMovesLearnt();
 
     protected void clearTextTables() {
-        tb = new String[256];
-        if (d != null) {
-            d.clear();
-        } else {
-            d = new HashMap<>();
-        }
-        longestTableToken = 0;
+        textTableNames = new ArrayList<>();
+        textCodec = null;
     }
 
     protected void readTextTable(String name) {
-        try {
-            Scanner sc = new Scanner(FileFunctions.openConfig(name + ".tbl"), "UTF-8");
-            while (sc.hasNextLine()) {
-                String q = sc.nextLine();
-                if (!q.trim().isEmpty()) {
-                    String[] r = q.split("=", 2);
-                    if (r[1].endsWith("\r\n")) {
-                        r[1] = r[1].substring(0, r[1].length() - 2);
-                    }
-                    int hexcode = Integer.parseInt(r[0], 16);
-                    if (tb[hexcode] != null) {
-                        String oldMatch = tb[hexcode];
-                        tb[hexcode] = null;
-                        if (d.get(oldMatch) == hexcode) {
-                            d.remove(oldMatch);
-                        }
-                    }
-                    tb[hexcode] = r[1];
-                    longestTableToken = Math.max(longestTableToken, r[1].length());
-                    d.put(r[1], (byte) hexcode);
-                }
-            }
-            sc.close();
-        } catch (FileNotFoundException ignored) {
+        textTableNames.add(name);
+        textCodec = null;
+    }
+
+    private GBTextCodec getTextCodec() {
+        if (textCodec == null) {
+            textCodec = GBTextCodec.forGBC(textTableNames);
         }
+        return textCodec;
     }
 
     protected String readString(int offset, int maxLength, boolean textEngineMode) {
-        StringBuilder string = new StringBuilder();
-        for (int c = 0; c < maxLength; c++) {
-            int currChar = rom[offset + c] & 0xFF;
-            if (tb[currChar] != null) {
-                string.append(tb[currChar]);
-                if (textEngineMode && (tb[currChar].equals("\\r") || tb[currChar].equals("\\e"))) {
-                    break;
-                }
-            } else {
-                if (currChar == GBConstants.stringTerminator) {
-                    break;
-                } else {
-                    string.append("\\x").append(String.format("%02X", currChar));
-                }
-            }
-        }
-        return string.toString();
+        return getTextCodec().decode(rom, offset, maxLength, textEngineMode, decodeBuffer);
     }
 
     protected int lengthOfStringAt(int offset, boolean textEngineMode) {
@@ -180,25 +142,11 @@ public abstract class AbstractGBCRomHandler extends AbstractGBRomHandler {
     }
 
     protected byte[] translateString(String text) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        while (!text.isEmpty()) {
-            int i = Math.max(0, longestTableToken - text.length());
-            if (text.charAt(0) == '\\' && text.charAt(1) == 'x') {
-                baos.write(Integer.parseInt(text.substring(2, 4), 16));
-                text = text.substring(4);
-            } else {
-                while (!(d.containsKey(text.substring(0, longestTableToken - i)) || (i == longestTableToken))) {
-                    i++;
-                }
-                if (i == longestTableToken) {
-                    text = text.substring(1);
-                } else {
-                    baos.write(d.get(text.substring(0, longestTableToken - i)) & 0xFF);
-                    text = text.substring(longestTableToken - i);
-                }
-            }
+        if (encodeBuffer.length < text.length()) {
+            encodeBuffer = new byte[Math.max(text.length(), encodeBuffer.length * 2)];
         }
-        return baos.toByteArray();
+        int length = getTextCodec().encode(text, encodeBuffer);
+        return Arrays.copyOf(encodeBuffer, length);
     }
 
     protected String readFixedLengthString(int offset, int length) {
@@ -17,6 +17,7 @@ import java.io.*;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
@@ -31,6 +32,8 @@ public abstract class AbstractGBRomHandler extends AbstractRomHandler {
     private String loadedFileName;
     private long actualCRC32;
 
+    private boolean verifyFreedSpace = true;
+
     @Override
     public boolean loadRom(String filename) {
         try {
@@ -129,6 +132,17 @@ public abstract class AbstractGBRomHandler extends AbstractRomHandler {
         return true;
     }
 
+    @Override
+    protected void recordSnapshot(Snapshot snapshot) {
+        super.recordSnapshot(snapshot);
+        byte[] savedRom = Arrays.copyOf(rom, rom.length);
+        int[][] savedFreedSpace = getFreedSpace().saveChunks();
+        snapshot.addRestorer(() -> {
+            rom = restoreBytes(rom, savedRom);
+            getFreedSpace().restoreChunks(savedFreedSpace);
+        });
+    }
+
     @Override
     public boolean hasGameUpdateLoaded() {
         return false;
@@ -368,9 +382,7 @@ public abstract class AbstractGBRomHandler extends AbstractRomHandler {
 		if (length < 1) {
 			throw new IllegalArgumentException("length must be at least 1.");
 		}
-		for (int i = 0; i < length; i++) {
-			writeByte(offset + i, getFreeSpaceByte());
-		}
+		Arrays.fill(rom, offset, offset + length, getFreeSpaceByte());
         getFreedSpace().free(offset, length);
 	}
 
@@ -415,19 +427,28 @@ public abstract class AbstractGBRomHandler extends AbstractRomHandler {
     }
 
 	protected boolean isRomSpaceUsed(int offset, int length) {
-		if (offset < 0)
+		if (offset < 0 || !verifyFreedSpace)
 			return false;
 		// manual check if the space is still unused, because
 		// the deprecated RomFunctions methods (or any future badly written code)
 		// can in theory use the freed spaces "by accident".
-		for (int i = 0; i < length; i++) {
-			if (rom[offset + i] != getFreeSpaceByte()) {
+		byte freeSpaceByte = getFreeSpaceByte();
+		for (int i = offset; i < offset + length; i++) {
+			if (rom[i] != freeSpaceByte) {
 				return true;
 			}
 		}
 		return false;
 	}
 
+    /**
+     * Sets whether space found in the {@link FreedSpace} is checked to still only hold the free space byte,
+     * before it is written to. On by default; turning it off trusts the FreedSpace to be right.
+     */
+    public void setVerifyFreedSpace(boolean verifyFreedSpace) {
+        this.verifyFreedSpace = verifyFreedSpace;
+    }
+
     protected abstract FreedSpace getFreedSpace();
 
 	protected abstract byte getFreeSpaceByte();
@@ -473,6 +494,13 @@ public abstract class AbstractGBRomHandler extends AbstractRomHandler {
     @Override
     public abstract AbstractGBRomEntry getRomEntry();
 
+    /**
+     * Returns the CRC32 of the ROM as it was loaded.
+     */
+    protected long getActualCRC32() {
+        return actualCRC32;
+    }
+
     @Override
     public boolean isRomValid(PrintStream logStream) {
         if (logStream != null) {
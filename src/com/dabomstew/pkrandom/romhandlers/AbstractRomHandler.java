@@ -29,6 +29,7 @@ package com.dabomstew.pkrandom.romhandlers;
 /*----------------------------------------------------------------------------*/
 
 import com.dabomstew.pkrandom.MiscTweak;
+import com.dabomstew.pkrandom.MultiPatternSearch;
 import com.dabomstew.pkrandom.RomFunctions;
 import com.dabomstew.pkrandom.Settings;
 import com.dabomstew.pkrandom.constants.GlobalConstants;
@@ -44,6 +45,7 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 /**
@@ -51,8 +53,13 @@ import java.util.stream.Collectors;
  */
 public abstract class AbstractRomHandler implements RomHandler {
 
+
     protected final RestrictedSpeciesService rPokeService = new RestrictedSpeciesService(this);
     protected final TypeService typeService = new TypeService(this);
+    // for searching the loaded buffers for several needles at once
+    protected final MultiPatternSearch.Cache searchCache = new MultiPatternSearch.Cache();
+    // the granularity restoreBytes() compares and copies back in
+    private static final int RESTORE_BLOCK_SIZE = 4096;
 
     protected int perfectAccuracy = 100; // default
 
@@ -245,6 +252,138 @@ public abstract class AbstractRomHandler implements RomHandler {
                 true, additional));
     }
 
+    @Override
+    public Snapshot createSnapshot() {
+        Snapshot snapshot = new Snapshot(this);
+        recordSnapshot(snapshot);
+        return snapshot;
+    }
+
+    @Override
+    public void restoreSnapshot(Snapshot snapshot) {
+        snapshot.restore(this);
+    }
+
+    /**
+     * Adds restorers for all of this RomHandler's game data to a new {@link Snapshot}.<br>
+     * The restorers copy back everything they saved, whether it was changed or not.<br>
+     * Subclasses which keep game data outside of the {@link Species} and {@link Move}s, e.g. the Rom contents or
+     * cached {@link Trainer}s, must override this and call the superclass method.
+     */
+    protected void recordSnapshot(Snapshot snapshot) {
+        List<Species> liveSpecies = new ArrayList<>();
+        for (Species pk : getSpeciesInclFormes()) {
+            if (pk != null) {
+                liveSpecies.add(pk);
+            }
+        }
+        List<Species> savedSpecies = copySpeciesData(liveSpecies, null);
+        snapshot.addRestorer(() -> copySpeciesData(savedSpecies, liveSpecies));
+
+        List<Move> liveMoves = new ArrayList<>();
+        List<Move> savedMoves = new ArrayList<>();
+        for (Move move : getMoves()) {
+            if (move != null) {
+                liveMoves.add(move);
+                savedMoves.add(new Move(move));
+            }
+        }
+        snapshot.addRestorer(() -> {
+            for (int i = 0; i < liveMoves.size(); i++) {
+                liveMoves.get(i).copyDataFrom(savedMoves.get(i));
+            }
+        });
+
+        // the evolution updates are logged, so those of an earlier randomization must not linger
+        recordEvolutionUpdates(snapshot, impossibleEvolutionUpdates);
+        recordEvolutionUpdates(snapshot, timeBasedEvolutionUpdates);
+        recordEvolutionUpdates(snapshot, easierEvolutionUpdates);
+    }
+
+    /**
+     * Returns the bytes of saved, in live if they have the same length, or else in a copy of saved.
+     * Reusing live avoids allocating a new array of e.g. a whole ROM on every restore. All of live is compared
+     * against saved, but only the blocks which differ are copied back.
+     */
+    protected static byte[] restoreBytes(byte[] live, byte[] saved) {
+        if (live.length != saved.length) {
+            return saved.clone();
+        }
+        RomFunctions.copyChangedBlocks(saved, live, RESTORE_BLOCK_SIZE);
+        return live;
+    }
+
+    private static void recordEvolutionUpdates(Snapshot snapshot, Set<EvolutionUpdate> updates) {
+        Set<EvolutionUpdate> saved = new TreeSet<>(updates);
+        snapshot.addRestorer(() -> {
+            updates.clear();
+            updates.addAll(saved);
+        });
+    }
+
+    /**
+     * Copies the data of each Species in from to the Species at the same position in to, or to new Species objects
+     * if to is null. {@link Evolution}s (and Lists of them) shared by several Species are also shared by the copies.
+     */
+    private static List<Species> copySpeciesData(List<Species> from, List<Species> to) {
+        Map<Evolution, Evolution> evoCopies = new IdentityHashMap<>();
+        Map<List<Evolution>, List<Evolution>> evoListCopies = new IdentityHashMap<>();
+        UnaryOperator<List<Evolution>> evoListCopier = evos -> evoListCopies.computeIfAbsent(evos, key -> {
+            List<Evolution> copy = new ArrayList<>(key.size());
+            for (Evolution evo : key) {
+                copy.add(evoCopies.computeIfAbsent(evo, Evolution::new));
+            }
+            return copy;
+        });
+
+        if (to == null) {
+            List<Species> copies = new ArrayList<>(from.size());
+            for (Species pk : from) {
+                copies.add(pk.copyData(evoListCopier));
+            }
+            return copies;
+        }
+        for (int i = 0; i < from.size(); i++) {
+            from.get(i).copyDataTo(to.get(i), evoListCopier);
+        }
+        return to;
+    }
+
+    /**
+     * Returns deep copies of the {@link Trainer}s, for subclasses which keep them in a field.
+     */
+    protected static List<Trainer> copyTrainers(List<Trainer> trainers) {
+        if (trainers == null) {
+            return null;
+        }
+        List<Trainer> copies = new ArrayList<>(trainers.size());
+        for (Trainer tr : trainers) {
+            copies.add(new Trainer(tr));
+        }
+        return copies;
+    }
+
+    /**
+     * Returns a deep copy of the movesets, for subclasses which keep them in a field.
+     */
+    protected static Map<Integer, List<MoveLearnt>> copyMovesets(Map<Integer, List<MoveLearnt>> movesets) {
+        if (movesets == null) {
+            return null;
+        }
+        Map<Integer, List<MoveLearnt>> copies = new TreeMap<>();
+        for (Map.Entry<Integer, List<MoveLearnt>> entry : movesets.entrySet()) {
+            List<MoveLearnt> moveset = new ArrayList<>(entry.getValue().size());
+            for (MoveLearnt ml : entry.getValue()) {
+                MoveLearnt copy = new MoveLearnt();
+                copy.move = ml.move;
+                copy.level = ml.level;
+                moveset.add(copy);
+            }
+            copies.put(entry.getKey(), moveset);
+        }
+        return copies;
+    }
+
     /* Helper methods used by subclasses and/or this class */
 
     protected void applyCamelCaseNames() {
@@ -525,6 +664,11 @@ public abstract class AbstractRomHandler implements RomHandler {
 
     public abstract List<BufferedImage> getAllPokemonImages();
 
+    @Override
+    public void clearPokemonImageCache() {
+        // default: no images are kept
+    }
+
     public abstract void savePokemonPalettes();
 
     @Override
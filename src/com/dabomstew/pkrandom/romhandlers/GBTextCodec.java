@@ -0,0 +1,223 @@
+package com.dabomstew.pkrandom.romhandlers;
+
+import com.dabomstew.pkrandom.FileFunctions;
+import com.dabomstew.pkrandom.TokenTrie;
+import com.dabomstew.pkrandom.constants.GBConstants;
+import com.dabomstew.pkrandom.constants.Gen3Constants;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+/**
+ * Encodes and decodes the text of the GB/GBC games (Gen 1 and 2) and the GBA games (Gen 3), using the text tables
+ * in the .tbl files of the config.
+ * <br><br>
+ * Each text in the tables may be several chars long, so encoding looks for the longest one at each position, through
+ * a {@link TokenTrie}. Bytes without a text are decoded as "\xXX" (and in Gen 3, variables as "\vXX"), and encoded
+ * back from that.
+ * <br><br>
+ * The codecs are compiled once per set of tables, and shared between RomHandlers. They can't be changed, so they are
+ * thread-safe; the buffers given to them are not shared.
+ */
+public class GBTextCodec {
+
+    private static final int GBA_MAX_TOKEN_LENGTH = 4;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private static final Map<List<String>, GBTextCodec> compiled = new HashMap<>();
+
+    private final String[] decodeTable;
+    // bytes which end the text in text engine mode, i.e. "\r" and "\e"
+    private final boolean[] textEnds;
+    private final TokenTrie encodeTrie;
+    private final int maxTokenLength;
+    private final int terminator;
+    // -1 if there are no variables
+    private final int variable;
+
+    private GBTextCodec(String[] decodeTable, Map<String, Integer> encodeTable, int maxTokenLength,
+                        int terminator, int variable) {
+        this.decodeTable = decodeTable;
+        this.textEnds = new boolean[256];
+        for (int i = 0; i < 256; i++) {
+            textEnds[i] = decodeTable[i] != null && (decodeTable[i].equals("\\r") || decodeTable[i].equals("\\e"));
+        }
+        this.encodeTrie = new TokenTrie(encodeTable);
+        this.maxTokenLength = maxTokenLength;
+        this.terminator = terminator;
+        this.variable = variable;
+    }
+
+    /**
+     * Returns the codec for a Gen 1 or Gen 2 game, with the given tables read in order.
+     * Later tables override earlier ones. Tables which don't exist are skipped.
+     */
+    public static GBTextCodec forGBC(List<String> tableNames) {
+        List<String> key = new ArrayList<>();
+        key.add("GBC");
+        key.addAll(tableNames);
+        synchronized (compiled) {
+            GBTextCodec codec = compiled.get(key);
+            if (codec == null) {
+                String[] tb = new String[256];
+                Map<String, Byte> d = new HashMap<>();
+                int longestTableToken = 0;
+                for (String name : tableNames) {
+                    longestTableToken = Math.max(longestTableToken, readGBCTextTable(name, tb, d));
+                }
+                codec = new GBTextCodec(tb, toUnsigned(d), longestTableToken, GBConstants.stringTerminator & 0xFF,
+                        -1);
+                compiled.put(key, codec);
+            }
+            return codec;
+        }
+    }
+
+    /**
+     * Returns the codec for a Gen 3 game, with the given table.
+     */
+    public static GBTextCodec forGBA(String tableName) {
+        List<String> key = Collections.unmodifiableList(Arrays.asList("GBA", tableName));
+        synchronized (compiled) {
+            GBTextCodec codec = compiled.get(key);
+            if (codec == null) {
+                String[] tb = new String[256];
+                Map<String, Byte> d = new HashMap<>();
+                readGBATextTable(tableName, tb, d);
+                codec = new GBTextCodec(tb, toUnsigned(d), GBA_MAX_TOKEN_LENGTH,
+                        Gen3Constants.textTerminator & 0xFF, Gen3Constants.textVariable & 0xFF);
+                compiled.put(key, codec);
+            }
+            return codec;
+        }
+    }
+
+    // returns the length of the longest text in the table
+    private static int readGBCTextTable(String name, String[] tb, Map<String, Byte> d) {
+        int longestTableToken = 0;
+        try {
+            Scanner sc = new Scanner(FileFunctions.openConfig(name + ".tbl"), "UTF-8");
+            while (sc.hasNextLine()) {
+                String q = sc.nextLine();
+                if (!q.trim().isEmpty()) {
+                    String[] r = q.split("=", 2);
+                    if (r[1].endsWith("\r\n")) {
+                        r[1] = r[1].substring(0, r[1].length() - 2);
+                    }
+                    int hexcode = Integer.parseInt(r[0], 16);
+                    if (tb[hexcode] != null) {
+                        String oldMatch = tb[hexcode];
+                        tb[hexcode] = null;
+                        if (d.get(oldMatch) == hexcode) {
+                            d.remove(oldMatch);
+                        }
+                    }
+                    tb[hexcode] = r[1];
+                    longestTableToken = Math.max(longestTableToken, r[1].length());
+                    d.put(r[1], (byte) hexcode);
+                }
+            }
+            sc.close();
+        } catch (FileNotFoundException ignored) {
+        }
+        return longestTableToken;
+    }
+
+    private static void readGBATextTable(String name, String[] tb, Map<String, Byte> d) {
+        try {
+            Scanner sc = new Scanner(FileFunctions.openConfig(name + ".tbl"), "UTF-8");
+            while (sc.hasNextLine()) {
+                String q = sc.nextLine();
+                if (!q.trim().isEmpty()) {
+                    String[] r = q.split("=", 2);
+                    if (r[1].endsWith("\r\n")) {
+                        r[1] = r[1].substring(0, r[1].length() - 2);
+                    }
+                    tb[Integer.parseInt(r[0], 16)] = r[1];
+                    d.put(r[1], (byte) Integer.parseInt(r[0], 16));
+                }
+            }
+            sc.close();
+        } catch (FileNotFoundException e) {
+            System.err.println("File not found!");
+        }
+    }
+
+    private static Map<String, Integer> toUnsigned(Map<String, Byte> d) {
+        Map<String, Integer> unsigned = new HashMap<>();
+        for (Map.Entry<String, Byte> entry : d.entrySet()) {
+            unsigned.put(entry.getKey(), entry.getValue() & 0xFF);
+        }
+        return unsigned;
+    }
+
+    /**
+     * Decodes the text at offset, until a terminator or maxLength bytes.
+     *
+     * @param textEngineMode Whether to also stop after a "\r" or "\e", as the text engine of Gen 1 and 2 does.
+     * @param buffer         Cleared and used to build the text.
+     */
+    public String decode(byte[] data, int offset, int maxLength, boolean textEngineMode, StringBuilder buffer) {
+        buffer.setLength(0);
+        for (int i = 0; i < maxLength; i++) {
+            int currChar = data[offset + i] & 0xFF;
+            String translated = decodeTable[currChar];
+            if (translated != null) {
+                buffer.append(translated);
+                if (textEngineMode && textEnds[currChar]) {
+                    break;
+                }
+            } else if (currChar == terminator) {
+                break;
+            } else if (currChar == variable) {
+                appendEscape(buffer, 'v', data[offset + i + 1] & 0xFF);
+                i++;
+            } else {
+                appendEscape(buffer, 'x', currChar);
+            }
+        }
+        return buffer.toString();
+    }
+
+    private static void appendEscape(StringBuilder buffer, char type, int value) {
+        buffer.append('\\').append(type).append(HEX_DIGITS[value >> 4]).append(HEX_DIGITS[value & 0xF]);
+    }
+
+    /**
+     * Encodes a text into buffer, which must be at least as long as the text. Chars which can't be encoded
+     * are skipped.
+     *
+     * @return The number of bytes written.
+     */
+    public int encode(CharSequence text, byte[] buffer) {
+        int length = 0;
+        int i = 0;
+        int end = text.length();
+        while (i < end) {
+            if (text.charAt(i) == '\\' && text.charAt(i + 1) == 'x') {
+                buffer[length++] = (byte) Integer.parseInt(text.subSequence(i + 2, i + 4).toString(), 16);
+                i += 4;
+            } else if (variable != -1 && text.charAt(i) == '\\' && text.charAt(i + 1) == 'v') {
+                buffer[length++] = (byte) variable;
+                buffer[length++] = (byte) Integer.parseInt(text.subSequence(i + 2, i + 4).toString(), 16);
+                i += 4;
+            } else {
+                int match = encodeTrie.match(text, i, Math.min(end, i + maxTokenLength));
+                if (match == -1) {
+                    i++;
+                } else {
+                    buffer[length++] = (byte) encodeTrie.getValue(match);
+                    i += encodeTrie.getLength(match);
+                }
+            }
+        }
+        return length;
+    }
+
+}
@@ -123,6 +123,19 @@ public class Gen1RomHandler extends AbstractGBCRomHandler {
         loadMapNames();
     }
 
+    @Override
+    protected void recordSnapshot(Snapshot snapshot) {
+        super.recordSnapshot(snapshot);
+        List<Trainer> savedTrainers = copyTrainers(trainers);
+        Map<Integer, List<MoveLearnt>> savedMovesets = copyMovesets(movesets);
+        boolean savedXAccNerfed = xAccNerfed;
+        snapshot.addRestorer(() -> {
+            trainers = copyTrainers(savedTrainers);
+            movesets = copyMovesets(savedMovesets);
+            xAccNerfed = savedXAccNerfed;
+        });
+    }
+
     @Override
     protected void initRomEntry() {
         romEntry = checkRomEntry(this.rom);
@@ -126,6 +126,23 @@ public class Gen2RomHandler extends AbstractGBCRomHandler {
         }
     }
 
+    @Override
+    protected void recordSnapshot(Snapshot snapshot) {
+        super.recordSnapshot(snapshot);
+        List<Trainer> savedTrainers = copyTrainers(trainers);
+        Map<Integer, List<MoveLearnt>> savedMovesets = copyMovesets(movesets);
+        boolean savedHavePatchedFleeing = havePatchedFleeing;
+        ItemList savedAllowedItems = allowedItems.copy();
+        ItemList savedNonBadItems = nonBadItems.copy();
+        snapshot.addRestorer(() -> {
+            trainers = copyTrainers(savedTrainers);
+            movesets = copyMovesets(savedMovesets);
+            havePatchedFleeing = savedHavePatchedFleeing;
+            allowedItems = savedAllowedItems.copy();
+            nonBadItems = savedNonBadItems.copy();
+        });
+    }
+
     @Override
     protected void initRomEntry() {
         romEntry = checkRomEntry(this.rom);
@@ -24,6 +24,7 @@ package com.dabomstew.pkrandom.romhandlers;
 
 import com.dabomstew.pkrandom.FileFunctions;
 import com.dabomstew.pkrandom.MiscTweak;
+import com.dabomstew.pkrandom.MultiPatternSearch;
 import com.dabomstew.pkrandom.RomFunctions;
 import com.dabomstew.pkrandom.Settings;
 import com.dabomstew.pkrandom.constants.*;
@@ -45,7 +46,6 @@ import compressors.DSDecmp;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
@@ -90,27 +90,6 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         }
     }
 
-    private void loadTextTable(String filename) {
-        try {
-            Scanner sc = new Scanner(FileFunctions.openConfig(filename + ".tbl"), "UTF-8");
-            while (sc.hasNextLine()) {
-                String q = sc.nextLine();
-                if (!q.trim().isEmpty()) {
-                    String[] r = q.split("=", 2);
-                    if (r[1].endsWith("\r\n")) {
-                        r[1] = r[1].substring(0, r[1].length() - 2);
-                    }
-                    tb[Integer.parseInt(r[0], 16)] = r[1];
-                    d.put(r[1], (byte) Integer.parseInt(r[0], 16));
-                }
-            }
-            sc.close();
-        } catch (FileNotFoundException e) {
-            System.err.println("File not found!");
-        }
-
-    }
-
     // This ROM's data
     private Gen3RomEntry romEntry;
     private Species[] pokes, pokesInternal;
@@ -120,8 +99,9 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
     private Move[] moves;
     private boolean jamboMovesetHack;
     private boolean havePatchedObedience;
-    private String[] tb;
-    public Map<String, Byte> d;
+    private GBTextCodec textCodec;
+    private final StringBuilder decodeBuffer = new StringBuilder();
+    private byte[] encodeBuffer = new byte[64];
     private String[] abilityNames;
     private String[] itemNames;
     private boolean mapLoadingDone;
@@ -188,6 +168,21 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         nonBadItems = Gen3Constants.getNonBadItems(romEntry.getRomType()).copy();
     }
 
+    @Override
+    protected void recordSnapshot(Snapshot snapshot) {
+        super.recordSnapshot(snapshot);
+        List<Trainer> savedTrainers = copyTrainers(trainers);
+        boolean savedHavePatchedObedience = havePatchedObedience;
+        ItemList savedAllowedItems = allowedItems.copy();
+        ItemList savedNonBadItems = nonBadItems.copy();
+        snapshot.addRestorer(() -> {
+            trainers = copyTrainers(savedTrainers);
+            havePatchedObedience = savedHavePatchedObedience;
+            allowedItems = savedAllowedItems.copy();
+            nonBadItems = savedNonBadItems.copy();
+        });
+    }
+
     @Override
     protected void initRomEntry() {
         for (Gen3RomEntry re : roms) {
@@ -307,9 +302,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
 
     @Override
     protected void initTextTables() {
-        tb = new String[256];
-        d = new HashMap<>();
-        loadTextTable(romEntry.getTableFile());
+        textCodec = GBTextCodec.forGBA(romEntry.getTableFile());
     }
 
     private void basicBPRE10HackSupport() {
@@ -1135,51 +1128,15 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
     }
 
     private String readString(int offset, int maxLength) {
-        StringBuilder string = new StringBuilder();
-        for (int i = 0; i < maxLength; i++) {
-            byte currChar = rom[offset + i];
-            String translated = tb[Byte.toUnsignedInt(currChar)];
-            if (translated != null) {
-                string.append(translated);
-            } else {
-                if (currChar == Gen3Constants.textTerminator) {
-                    break;
-                } else if (currChar == Gen3Constants.textVariable) {
-                    int nextChar = rom[offset + i + 1] & 0xFF;
-                    string.append("\\v").append(String.format("%02X", nextChar));
-                    i++;
-                } else {
-                    string.append("\\x").append(String.format("%02X", currChar));
-                }
-            }
-        }
-        return string.toString();
+        return textCodec.decode(rom, offset, maxLength, false, decodeBuffer);
     }
 
     private byte[] translateString(String text) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        while (!text.isEmpty()) {
-            int i = Math.max(0, 4 - text.length());
-            if (text.charAt(0) == '\\' && text.charAt(1) == 'x') {
-                baos.write((byte) Integer.parseInt(text.substring(2, 4), 16));
-                text = text.substring(4);
-            } else if (text.charAt(0) == '\\' && text.charAt(1) == 'v') {
-                baos.write(Gen3Constants.textVariable);
-                baos.write((byte) Integer.parseInt(text.substring(2, 4), 16));
-                text = text.substring(4);
-            } else {
-                while (!(d.containsKey(text.substring(0, 4 - i)) || (i == 4))) {
-                    i++;
-                }
-                if (i == 4) {
-                    text = text.substring(1);
-                } else {
-                    baos.write(d.get(text.substring(0, 4 - i)));
-                    text = text.substring(4 - i);
-                }
-            }
+        if (encodeBuffer.length < text.length()) {
+            encodeBuffer = new byte[Math.max(text.length(), encodeBuffer.length * 2)];
         }
-        return baos.toByteArray();
+        int length = textCodec.encode(text, encodeBuffer);
+        return Arrays.copyOf(encodeBuffer, length);
     }
 
     private String readFixedLengthString(int offset, int length) {
@@ -2668,7 +2625,10 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         for (int i = 0; i < searchFor.length; i++) {
             searchFor[i] = (byte) Integer.parseInt(hexString.substring(i * 2, i * 2 + 2), 16);
         }
-        List<Integer> found = RomFunctions.search(haystack, searchFor);
+        return uniqueOffset(RomFunctions.search(haystack, searchFor));
+    }
+
+    private static int uniqueOffset(List<Integer> found) {
         if (found.isEmpty()) {
             return -1; // not found
         } else if (found.size() > 1) {
@@ -2703,6 +2663,19 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         return RomFunctions.search(haystack, searchFor);
     }
 
+    /**
+     * Finds all offsets of each of the hexstrings in the rom, going through it only once. The results are in the
+     * same order as the hexstrings; use {@link #uniqueOffset(List)} on one to get what {@link #find(String)} would.
+     * Searching the rom again only goes through what was written to since, see {@link MultiPatternSearch.Cache}.
+     */
+    private List<List<Integer>> findMultiple(List<String> hexStrings) {
+        List<byte[]> searchFor = new ArrayList<>(hexStrings.size());
+        for (String hexString : hexStrings) {
+            searchFor.add(RomFunctions.hexToBytes(hexString));
+        }
+        return searchCache.search(getActualCRC32(), rom, searchFor);
+    }
+
     private void writeHexString(String hexString, int offset) {
         if (hexString.length() % 2 != 0) {
             throw new IllegalArgumentException("hexString must have an even number of characters");
@@ -2716,13 +2689,17 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         }
 
         havePatchedObedience = true;
+        // the patches below don't overlap each other's code, so it can all be looked for at once
+        List<List<Integer>> found = findMultiple(Arrays.asList(Gen3Constants.deoxysObeyCode,
+                Gen3Constants.levelEvoKantoDexCheckCode, Gen3Constants.stoneEvoKantoDexCheckCode));
+
         // This routine *appears* to only exist in E/FR/LG...
         // Look for the deoxys part which is
         // MOVS R1, 0x19A
         // CMP R0, R1
         // BEQ <mew/deoxys case>
         // Hex is CD214900 8842 0FD0
-        int deoxysObOffset = find(Gen3Constants.deoxysObeyCode);
+        int deoxysObOffset = uniqueOffset(found.get(0));
         if (deoxysObOffset > 0) {
             // We found the deoxys check...
             // Replacing it with MOVS R1, 0x0 would work fine.
@@ -2743,7 +2720,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
 
         // Look for evolutions too
         if (romEntry.getRomType() == Gen3Constants.RomType_FRLG) {
-            int evoJumpOffset = find(Gen3Constants.levelEvoKantoDexCheckCode);
+            int evoJumpOffset = uniqueOffset(found.get(1));
             if (evoJumpOffset > 0) {
                 // This currently compares species to 0x97 and then allows
                 // evolution if it's <= that.
@@ -2753,7 +2730,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
                         ((Gen3Constants.gbaUnconditionalJumpOpcode << 8) | (Gen3Constants.levelEvoKantoDexJumpAmount)));
             }
 
-            int stoneJumpOffset = find(Gen3Constants.stoneEvoKantoDexCheckCode);
+            int stoneJumpOffset = uniqueOffset(found.get(2));
             if (stoneJumpOffset > 0) {
                 // same as the above, but for stone evos
                 writeWord(stoneJumpOffset, Gen3Constants.gbaNopOpcode);
@@ -2790,8 +2767,14 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
             writeHexString(Gen3Constants.rsNatDexScriptPart2, writeSpace + 8);
 
         } else if (romEntry.getRomType() == Gen3Constants.RomType_FRLG) {
+            // None of these are changed or created by the fixes of the others, so they can be looked for at once.
+            // The check outside Oak's house may overlap the one in his lab, so it is looked for after fixing that.
+            List<List<Integer>> found = findMultiple(Arrays.asList(Gen3Constants.frlgPokedexScriptIdentifier,
+                    Gen3Constants.frlgNatDexFlagChecker, Gen3Constants.frlgOaksLabKantoDexChecker,
+                    Gen3Constants.frlgOakAideCheckPrefix));
+
             // Find the original pokedex script
-            int pkDexOffset = find(Gen3Constants.frlgPokedexScriptIdentifier);
+            int pkDexOffset = uniqueOffset(found.get(0));
             if (pkDexOffset < 0) {
                 throw new RuntimeException("Patch for National Dex at Start of Game unsuccessful. Could not find script.");
             }
@@ -2810,7 +2793,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
             writeHexString(Gen3Constants.frlgNatDexScript, writeSpace);
 
             // Fix people using the national dex flag
-            List<Integer> ndexChecks = findMultiple(Gen3Constants.frlgNatDexFlagChecker);
+            List<Integer> ndexChecks = found.get(1);
             for (int ndexCheckOffset : ndexChecks) {
                 // change to a flag-check
                 // 82C = "beaten e4/gary once"
@@ -2818,7 +2801,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
             }
 
             // Fix oak in his lab
-            int oakLabCheckOffs = find(Gen3Constants.frlgOaksLabKantoDexChecker);
+            int oakLabCheckOffs = uniqueOffset(found.get(2));
             if (oakLabCheckOffs > 0) {
                 // replace it
                 writeHexString(Gen3Constants.frlgOaksLabFix, oakLabCheckOffs);
@@ -2833,7 +2816,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
 
             // Fix Oak's aides so they look for your National Dex seen/caught,
             // not your Kanto Dex seen/caught
-            int oakAideCheckOffs = find(Gen3Constants.frlgOakAideCheckPrefix);
+            int oakAideCheckOffs = uniqueOffset(found.get(3));
             if (oakAideCheckOffs > 0) {
                 oakAideCheckOffs += Gen3Constants.frlgOakAideCheckPrefix.length() / 2; // because it was a prefix
                 // Change the bne instruction to an unconditional branch to always use National Dex
@@ -4538,26 +4521,19 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
 		int chunkLength = Gen3Constants.unusedSpaceChunkLength;
 		int frontMargin = Gen3Constants.unusedSpaceFrontMargin;
 
-		boolean freedAllUnused = false;
-
-		while (!freedAllUnused) {
-			byte[] searchNeedle = new byte[chunkLength];
-			for (int i = 0; i < chunkLength; i++) {
-				searchNeedle[i] = getFreeSpaceByte();
-			}
-			int foundOffset = RomFunctions.searchForFirst(rom, unusedSpaceOffset, searchNeedle);
-
-			if (foundOffset < unusedSpaceStartOffset) {
-				freedAllUnused = true;
+		byte[] searchNeedle = new byte[chunkLength];
+		for (int i = 0; i < chunkLength; i++) {
+			searchNeedle[i] = getFreeSpaceByte();
+		}
+		// The chunks already consist of free space bytes, so freeing them doesn't change the rom, and they can all be
+		// found in one go. Each is found after the end of the previous one, as if searching for the first from there.
+		for (int foundOffset : RomFunctions.search(rom, unusedSpaceStartOffset, searchNeedle)) {
+			if (foundOffset > unusedSpaceOffset + chunkLength || foundOffset == unusedSpaceStartOffset) {
+				freeSpace(foundOffset + frontMargin, chunkLength - frontMargin);
 			} else {
-
-				if (foundOffset > unusedSpaceOffset + chunkLength || foundOffset == unusedSpaceStartOffset) {
-					freeSpace(foundOffset + frontMargin, chunkLength - frontMargin);
-				} else {
-					freeSpace(foundOffset, chunkLength);
-				}
-				unusedSpaceOffset = foundOffset + chunkLength;
+				freeSpace(foundOffset, chunkLength);
 			}
+			unusedSpaceOffset = foundOffset + chunkLength;
 		}
 
 	}
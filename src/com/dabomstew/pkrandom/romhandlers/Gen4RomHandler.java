@@ -39,6 +39,7 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -157,11 +158,10 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
 				|| (romEntry.getRomType() == Gen4Constants.Type_HGSS
 						&& romEntry.hasTweakFile("NewRoamerSubroutineTweak"));
 
-		try {
-			computeCRC32sForRom();
-		} catch (IOException e) {
-			throw new RomIOException(e);
-		}
+		// the CRC32s of overlays and files are only calculated once needed, by isRomValid()
+		actualArm9CRC32 = FileFunctions.getCRC32(arm9);
+		actualOverlayCRC32s = null;
+		actualFileCRC32s = null;
 		
 		// We want to guarantee that the catching tutorial in HGSS has Ethan/Lyra's new
 		// Pokemon. We also
@@ -179,6 +179,35 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
 		}
 	}
 
+	@Override
+	protected void recordSnapshot(Snapshot snapshot) {
+		super.recordSnapshot(snapshot);
+		byte[] savedArm9 = arm9.clone();
+		NARCArchive savedPokeNarc = copyNARC(pokeNarc);
+		NARCArchive savedMoveNarc = copyNARC(moveNarc);
+		NARCArchive savedMsgNarc = copyNARC(msgNarc);
+		NARCArchive savedScriptNarc = copyNARC(scriptNarc);
+		NARCArchive savedEventNarc = copyNARC(eventNarc);
+		ItemList savedAllowedItems = allowedItems.copy();
+		ItemList savedNonBadItems = nonBadItems.copy();
+		TypeTable savedTypeTable = typeTable == null ? null : new TypeTable(typeTable);
+		boolean savedRoamerRandomizationEnabled = roamerRandomizationEnabled;
+		boolean savedLastStringsCompressed = lastStringsCompressed;
+		snapshot.addRestorer(() -> {
+			arm9 = restoreBytes(arm9, savedArm9);
+			pokeNarc = restoreNARC(pokeNarc, savedPokeNarc);
+			moveNarc = restoreNARC(moveNarc, savedMoveNarc);
+			msgNarc = restoreNARC(msgNarc, savedMsgNarc);
+			scriptNarc = restoreNARC(scriptNarc, savedScriptNarc);
+			eventNarc = restoreNARC(eventNarc, savedEventNarc);
+			allowedItems = savedAllowedItems.copy();
+			nonBadItems = savedNonBadItems.copy();
+			typeTable = savedTypeTable == null ? null : new TypeTable(savedTypeTable);
+			roamerRandomizationEnabled = savedRoamerRandomizationEnabled;
+			lastStringsCompressed = savedLastStringsCompressed;
+		});
+	}
+
 	private void loadMoves() {
 		try {
 			moveNarc = this.readNARC(romEntry.getFile("MoveData"));
@@ -2832,7 +2861,16 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
 		// related to this in order to make double battles work on all trainers
 		try {
 			String doubleBattleFixPrefix = Gen4Constants.getDoubleBattleFixPrefix(romEntry.getRomType());
-			int offset = find(arm9, doubleBattleFixPrefix);
+			String doubleBattleFlagReturnPrefix = romEntry.getStringValue("DoubleBattleFlagReturnPrefix");
+			String doubleBattleWalkingPrefix1 = romEntry.getStringValue("DoubleBattleWalkingPrefix1");
+			String doubleBattleWalkingPrefix2 = romEntry.getStringValue("DoubleBattleWalkingPrefix2");
+			String doubleBattleTextBoxPrefix = romEntry.getStringValue("DoubleBattleTextBoxPrefix");
+			// each patch is in a different subroutine, so they can all be looked for at once
+			List<List<Integer>> found = findMultiple(getOriginalArm9CRC(), arm9, Arrays.asList(doubleBattleFixPrefix,
+					doubleBattleFlagReturnPrefix, doubleBattleWalkingPrefix1, doubleBattleWalkingPrefix2,
+					doubleBattleTextBoxPrefix));
+
+			int offset = uniqueOffset(found.get(0));
 			if (offset > 0) {
 				offset += doubleBattleFixPrefix.length() / 2; // because it was a prefix
 				arm9[offset] = (byte) 0xE0;
@@ -2840,15 +2878,10 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
 				throw new OperationNotSupportedException("Double Battle Mode not supported for this game");
 			}
 
-			String doubleBattleFlagReturnPrefix = romEntry.getStringValue("DoubleBattleFlagReturnPrefix");
-			String doubleBattleWalkingPrefix1 = romEntry.getStringValue("DoubleBattleWalkingPrefix1");
-			String doubleBattleWalkingPrefix2 = romEntry.getStringValue("DoubleBattleWalkingPrefix2");
-			String doubleBattleTextBoxPrefix = romEntry.getStringValue("DoubleBattleTextBoxPrefix");
-
 			// After getting the double battle flag, return immediately instead of
 			// converting it to a 1 for
 			// non-zero values/0 for zero
-			offset = find(arm9, doubleBattleFlagReturnPrefix);
+			offset = uniqueOffset(found.get(1));
 			if (offset > 0) {
 				offset += doubleBattleFlagReturnPrefix.length() / 2; // because it was a prefix
 				writeWord(arm9, offset, 0xBD08);
@@ -2858,7 +2891,7 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
 
 			// Instead of doing "double trainer walk" for nonzero values, do it only for
 			// value == 2
-			offset = find(arm9, doubleBattleWalkingPrefix1);
+			offset = uniqueOffset(found.get(2));
 			if (offset > 0) {
 				offset += doubleBattleWalkingPrefix1.length() / 2; // because it was a prefix
 				arm9[offset] = (byte) 0x2; // cmp r0, #0x2
@@ -2870,7 +2903,7 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
 			// Instead of checking if the value was exactly 1 after checking that it was
 			// nonzero, check that it's
 			// 2 again lol
-			offset = find(arm9, doubleBattleWalkingPrefix2);
+			offset = uniqueOffset(found.get(3));
 			if (offset > 0) {
 				offset += doubleBattleWalkingPrefix2.length() / 2; // because it was a prefix
 				arm9[offset] = (byte) 0x2;
@@ -2879,7 +2912,7 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
 			}
 
 			// Once again, compare a value to 2 instead of just checking that it's nonzero
-			offset = find(arm9, doubleBattleTextBoxPrefix);
+			offset = uniqueOffset(found.get(4));
 			if (offset > 0) {
 				offset += doubleBattleTextBoxPrefix.length() / 2; // because it was a prefix
 				writeWord(arm9, offset, 0x46C0);
@@ -3988,7 +4021,25 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
 		for (int i = 0; i < searchFor.length; i++) {
 			searchFor[i] = (byte) Integer.parseInt(hexString.substring(i * 2, i * 2 + 2), 16);
 		}
-		List<Integer> found = RomFunctions.search(data, searchFor);
+		return uniqueOffset(RomFunctions.search(data, searchFor));
+	}
+
+	/**
+	 * Finds all offsets of each of the hexstrings in the data, going through it only once. The results are in the
+	 * same order as the hexstrings; use {@link #uniqueOffset(List)} on one to get what {@link #find(byte[], String)}
+	 * would. Searching the data again only goes through what was written to since, see {@link MultiPatternSearch.Cache}.
+	 *
+	 * @param loadCRC The CRC32 of the data as it was loaded.
+	 */
+	private List<List<Integer>> findMultiple(long loadCRC, byte[] data, List<String> hexStrings) {
+		List<byte[]> searchFor = new ArrayList<>(hexStrings.size());
+		for (String hexString : hexStrings) {
+			searchFor.add(RomFunctions.hexToBytes(hexString));
+		}
+		return searchCache.search(loadCRC, data, searchFor);
+	}
+
+	private static int uniqueOffset(List<Integer> found) {
 		if (found.isEmpty()) {
 			return -1; // not found
 		} else if (found.size() > 1) {
@@ -5281,8 +5332,14 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
 		// The code in Gen 4 is almost identical outside of one single constant; the
 		// reason the bars scroll slower is because Gen 4 runs at 30 FPS instead of 60.
 		try {
-			byte[] battleOverlay = readOverlay(romEntry.getIntValue("BattleOvlNumber"));
-			int offset = find(battleOverlay, Gen4Constants.hpBarSpeedPrefix);
+			int battleOverlayNumber = romEntry.getIntValue("BattleOvlNumber");
+			byte[] battleOverlay = readOverlay(battleOverlayNumber);
+			long battleOverlayCRC = getOriginalOverlayCRC32s(Collections.singleton(battleOverlayNumber))
+					.get(battleOverlayNumber);
+			// the patches are in different places, so they can all be looked for at once
+			List<List<Integer>> found = findMultiple(battleOverlayCRC, battleOverlay, Arrays.asList(
+					Gen4Constants.hpBarSpeedPrefix, Gen4Constants.expBarSpeedPrefix, Gen4Constants.bothBarsSpeedPrefix));
+			int offset = uniqueOffset(found.get(0));
 			if (offset > 0) {
 				offset += Gen4Constants.hpBarSpeedPrefix.length() / 2; // because it was a prefix
 				// For the HP bar, the original game passes 1 for the toAdd parameter of
@@ -5291,7 +5348,7 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
 				battleOverlay[offset] = 0x02;
 			}
 
-			offset = find(battleOverlay, Gen4Constants.expBarSpeedPrefix);
+			offset = uniqueOffset(found.get(1));
 			if (offset > 0) {
 				offset += Gen4Constants.expBarSpeedPrefix.length() / 2; // because it was a prefix
 				// For the EXP bar, the original game passes expFraction for the toAdd
@@ -5310,7 +5367,7 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
 				battleOverlay[offset + 1] = 0x19;
 			}
 
-			offset = find(battleOverlay, Gen4Constants.bothBarsSpeedPrefix);
+			offset = uniqueOffset(found.get(2));
 			if (offset > 0) {
 				offset += Gen4Constants.bothBarsSpeedPrefix.length() / 2; // because it was a prefix
 				// For both HP and EXP bars, a different set of logic is used when the maxValue
@@ -5614,23 +5671,27 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
 	}
 
 	private void computeCRC32sForRom() throws IOException {
-		this.actualOverlayCRC32s = new HashMap<>();
-		this.actualFileCRC32s = new HashMap<>();
-		this.actualArm9CRC32 = FileFunctions.getCRC32(arm9);
-		for (int overlayNumber : romEntry.getOverlayExpectedCRC32Keys()) {
-			byte[] overlay = readOverlay(overlayNumber);
-			long crc32 = FileFunctions.getCRC32(overlay);
-			this.actualOverlayCRC32s.put(overlayNumber, crc32);
+		this.actualOverlayCRC32s = getOriginalOverlayCRC32s(romEntry.getOverlayExpectedCRC32Keys());
+		List<String> locations = new ArrayList<>();
+		for (String fileKey : romEntry.getFileKeys()) {
+			locations.add(romEntry.getFile(fileKey));
 		}
+		Map<String, Long> crc32sByLocation = getOriginalFileCRC32s(locations);
+		this.actualFileCRC32s = new HashMap<>();
 		for (String fileKey : romEntry.getFileKeys()) {
-			byte[] file = readFile(romEntry.getFile(fileKey));
-			long crc32 = FileFunctions.getCRC32(file);
-			this.actualFileCRC32s.put(fileKey, crc32);
+			this.actualFileCRC32s.put(fileKey, crc32sByLocation.get(romEntry.getFile(fileKey)));
 		}
 	}
 
 	@Override
 	public boolean isRomValid(PrintStream logStream) {
+		if (actualFileCRC32s == null) {
+			try {
+				computeCRC32sForRom();
+			} catch (IOException e) {
+				throw new RomIOException(e);
+			}
+		}
 		if (logStream != null) {
 			System.out.println("Checking CRC32 validities");
 			System.out.println("ARM9 expected:\t" + Long.toHexString(romEntry.getArm9ExpectedCRC32()));
@@ -5812,6 +5873,7 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
 
 		public DSPokemonImageGetter setOtherPokeGraphicsNARC(NARCArchive otherPokeGraphicsNARC) {
 			this.otherPokeGraphicsNARC = otherPokeGraphicsNARC;
+			this.customNARCs = true;
 			return this;
 		}
 
@@ -5820,7 +5882,7 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
 			if (otherPokeGraphicsNARC == null) {
 				try {
 					String NARCpath = getRomEntry().getFile("OtherPokemonGraphics");
-					otherPokeGraphicsNARC = readNARC(NARCpath);
+					otherPokeGraphicsNARC = readCachedNARC(NARCpath);
 				} catch (IOException e) {
 					throw new RuntimeException(e);
 				}
@@ -5838,9 +5900,7 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
 		}
 
 		@Override
-		public BufferedImage get() {
-			beforeGet();
-
+		protected BufferedImage decode() {
 			int imageIndex = getImageIndex();
 			int[] imageData = readImageData(getGraphicalFormeAmount() > 1 ? otherPokeGraphicsNARC : pokeGraphicsNARC, imageIndex);
 
@@ -5887,7 +5947,8 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
 			return imageIndex;
 		}
 
-		private Palette getPalette() {
+		@Override
+		protected Palette getPalette() {
 			Palette palette;
 			// unown and deoxys have the same palette(s) for all their formes
 			if (getGraphicalFormeAmount() > 1 && pk.getNumber() != SpeciesIDs.unown && pk.getNumber() != SpeciesIDs.deoxys) {
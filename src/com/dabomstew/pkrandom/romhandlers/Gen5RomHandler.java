@@ -40,6 +40,7 @@ import java.awt.image.BufferedImage;
 import java.awt.image.IndexColorModel;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -102,6 +103,7 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
     private Map<String, Long> actualFileCRC32s;
     
     private NARCArchive pokeNarc, moveNarc, stringsNarc, storyTextNarc, scriptNarc, shopNarc;
+    private final PPTxtHandler textHandler = new PPTxtHandler();
 
     @Override
     protected boolean detectNDSRom(String ndsCode, byte version) {
@@ -174,11 +176,10 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
         regularShopItems = Gen5Constants.regularShopItems;
         opShopItems = Gen5Constants.opShopItems;
 
-        try {
-            computeCRC32sForRom();
-        } catch (IOException e) {
-            throw new RomIOException(e);
-        }
+        // the CRC32s of overlays and files are only calculated once needed, by isRomValid()
+        actualArm9CRC32 = FileFunctions.getCRC32(arm9);
+        actualOverlayCRC32s = null;
+        actualFileCRC32s = null;
 
         // If there are tweaks for expanding the ARM9, do it here to keep it simple.
         boolean shouldExtendARM9 = romEntry.hasTweakFile("ShedinjaEvolutionTweak") || romEntry.hasTweakFile("NewIndexToMusicTweak");
@@ -188,6 +189,33 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
         }
     }
 
+    @Override
+    protected void recordSnapshot(Snapshot snapshot) {
+        super.recordSnapshot(snapshot);
+        byte[] savedArm9 = arm9.clone();
+        NARCArchive savedPokeNarc = copyNARC(pokeNarc);
+        NARCArchive savedMoveNarc = copyNARC(moveNarc);
+        NARCArchive savedStringsNarc = copyNARC(stringsNarc);
+        NARCArchive savedStoryTextNarc = copyNARC(storyTextNarc);
+        NARCArchive savedScriptNarc = copyNARC(scriptNarc);
+        NARCArchive savedShopNarc = copyNARC(shopNarc);
+        ItemList savedAllowedItems = allowedItems.copy();
+        ItemList savedNonBadItems = nonBadItems.copy();
+        TypeTable savedTypeTable = typeTable == null ? null : new TypeTable(typeTable);
+        snapshot.addRestorer(() -> {
+            arm9 = restoreBytes(arm9, savedArm9);
+            pokeNarc = restoreNARC(pokeNarc, savedPokeNarc);
+            moveNarc = restoreNARC(moveNarc, savedMoveNarc);
+            stringsNarc = restoreNARC(stringsNarc, savedStringsNarc);
+            storyTextNarc = restoreNARC(storyTextNarc, savedStoryTextNarc);
+            scriptNarc = restoreNARC(scriptNarc, savedScriptNarc);
+            shopNarc = restoreNARC(shopNarc, savedShopNarc);
+            allowedItems = savedAllowedItems.copy();
+            nonBadItems = savedNonBadItems.copy();
+            typeTable = savedTypeTable == null ? null : new TypeTable(savedTypeTable);
+        });
+    }
+
     private void loadPokemonStats() {
         try {
             pokeNarc = this.readNARC(romEntry.getFile("PokemonStats"));
@@ -2658,13 +2686,13 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
     private List<String> getStrings(boolean isStoryText, int index) {
         NARCArchive baseNARC = isStoryText ? storyTextNarc : stringsNarc;
         byte[] rawFile = baseNARC.files.get(index);
-        return new ArrayList<>(PPTxtHandler.readTexts(rawFile));
+        return new ArrayList<>(textHandler.readTexts(rawFile));
     }
 
     private void setStrings(boolean isStoryText, int index, List<String> strings) {
         NARCArchive baseNARC = isStoryText ? storyTextNarc : stringsNarc;
         byte[] oldRawFile = baseNARC.files.get(index);
-        byte[] newRawFile = PPTxtHandler.saveEntry(oldRawFile, strings);
+        byte[] newRawFile = textHandler.saveEntry(oldRawFile, strings);
         baseNARC.files.set(index, newRawFile);
     }
 
@@ -3840,23 +3868,27 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
     }
 
     private void computeCRC32sForRom() throws IOException {
-        this.actualOverlayCRC32s = new HashMap<>();
-        this.actualFileCRC32s = new HashMap<>();
-        this.actualArm9CRC32 = FileFunctions.getCRC32(arm9);
-        for (int overlayNumber : romEntry.getOverlayExpectedCRC32Keys()) {
-            byte[] overlay = readOverlay(overlayNumber);
-            long crc32 = FileFunctions.getCRC32(overlay);
-            this.actualOverlayCRC32s.put(overlayNumber, crc32);
+        this.actualOverlayCRC32s = getOriginalOverlayCRC32s(romEntry.getOverlayExpectedCRC32Keys());
+        List<String> locations = new ArrayList<>();
+        for (String fileKey : romEntry.getFileKeys()) {
+            locations.add(romEntry.getFile(fileKey));
         }
+        Map<String, Long> crc32sByLocation = getOriginalFileCRC32s(locations);
+        this.actualFileCRC32s = new HashMap<>();
         for (String fileKey : romEntry.getFileKeys()) {
-            byte[] file = readFile(romEntry.getFile(fileKey));
-            long crc32 = FileFunctions.getCRC32(file);
-            this.actualFileCRC32s.put(fileKey, crc32);
+            this.actualFileCRC32s.put(fileKey, crc32sByLocation.get(romEntry.getFile(fileKey)));
         }
     }
 
     @Override
     public boolean isRomValid(PrintStream logStream) {
+        if (actualFileCRC32s == null) {
+            try {
+                computeCRC32sForRom();
+            } catch (IOException e) {
+                throw new RomIOException(e);
+            }
+        }
         // identical to Gen 4 implementation, could be moved up to AbstractDSRomHandler
         if (logStream != null) {
             System.out.println("Checking CRC32 validities");
@@ -4035,9 +4067,7 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
         }
 
         @Override
-        public BufferedImage get() {
-            beforeGet();
-
+        protected BufferedImage decode() {
             int spriteIndex = pk.getNumber() * 20;
 
             if (hasGenderedImages() && gender == FEMALE) {
@@ -4049,7 +4079,7 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
             byte[] compressedPic = pokeGraphicsNARC.files.get(spriteIndex);
             byte[] uncompressedPic = DSDecmp.Decompress(compressedPic);
 
-            Palette palette = shiny ? pk.getShinyPalette() : pk.getNormalPalette();
+            Palette palette = getPalette();
             int[] convPalette = palette.toARGB();
             if (transparentBackground) {
                 convPalette[0] = 0;
@@ -97,6 +97,7 @@ public class Gen6RomHandler extends Abstract3DSRomHandler {
     private Map<String, Long> actualFileCRC32s;
 
     private GARCArchive pokeGarc, moveGarc, stringsGarc, storyTextGarc;
+    private N3DSTxtHandler textHandler;
 
     @Override
     protected boolean detect3DSRom(String productCode, String titleId) {
@@ -123,6 +124,7 @@ public class Gen6RomHandler extends Abstract3DSRomHandler {
     @Override
     protected void loadedROM(String productCode, String titleId) {
         this.romEntry = entryFor(productCode, titleId);
+        this.textHandler = new N3DSTxtHandler(true, romEntry.getRomType());
 
         try {
             code = readCode();
@@ -152,11 +154,32 @@ public class Gen6RomHandler extends Abstract3DSRomHandler {
         allowedItems = Gen6Constants.getAllowedItems(romEntry.getRomType()).copy();
         nonBadItems = Gen6Constants.getNonBadItems(romEntry.getRomType()).copy();
 
-        try {
-            computeCRC32sForRom();
-        } catch (IOException e) {
-            throw new RomIOException(e);
-        }
+        // the CRC32s of files are only calculated once needed, by isRomValid()
+        actualCodeCRC32 = FileFunctions.getCRC32(code);
+        actualFileCRC32s = null;
+    }
+
+    @Override
+    protected void recordSnapshot(Snapshot snapshot) {
+        super.recordSnapshot(snapshot);
+        byte[] savedCode = code.clone();
+        List<Map<Integer, byte[]>> savedPokeGarc = copyGARCFiles(pokeGarc);
+        List<Map<Integer, byte[]>> savedMoveGarc = copyGARCFiles(moveGarc);
+        List<Map<Integer, byte[]>> savedStringsGarc = copyGARCFiles(stringsGarc);
+        List<Map<Integer, byte[]>> savedStoryTextGarc = copyGARCFiles(storyTextGarc);
+        List<MegaEvolution> savedMegaEvolutions = new ArrayList<>(megaEvolutions);
+        ItemList savedAllowedItems = allowedItems.copy();
+        ItemList savedNonBadItems = nonBadItems.copy();
+        snapshot.addRestorer(() -> {
+            code = restoreBytes(code, savedCode);
+            restoreGARCFiles(pokeGarc, savedPokeGarc);
+            restoreGARCFiles(moveGarc, savedMoveGarc);
+            restoreGARCFiles(stringsGarc, savedStringsGarc);
+            restoreGARCFiles(storyTextGarc, savedStoryTextGarc);
+            megaEvolutions = new ArrayList<>(savedMegaEvolutions);
+            allowedItems = savedAllowedItems.copy();
+            nonBadItems = savedNonBadItems.copy();
+        });
     }
 
     private void loadPokemonStats() {
@@ -408,7 +431,7 @@ public class Gen6RomHandler extends Abstract3DSRomHandler {
 
     private List<String> getStrings(GARCArchive textGARC, int index) {
         byte[] rawFile = textGARC.files.get(index).get(0);
-        return new ArrayList<>(N3DSTxtHandler.readTexts(rawFile,true,romEntry.getRomType()));
+        return new ArrayList<>(textHandler.readTexts(rawFile));
     }
 
     private void setStrings(boolean isStoryText, int index, List<String> strings) {
@@ -419,7 +442,7 @@ public class Gen6RomHandler extends Abstract3DSRomHandler {
     private void setStrings(GARCArchive textGARC, int index, List<String> strings) {
         byte[] oldRawFile = textGARC.files.get(index).get(0);
         try {
-            byte[] newRawFile = N3DSTxtHandler.saveEntry(oldRawFile, strings, romEntry.getRomType());
+            byte[] newRawFile = textHandler.saveEntry(oldRawFile, strings);
             textGARC.setFile(index, newRawFile);
         } catch (IOException e) {
             e.printStackTrace();
@@ -3957,17 +3980,26 @@ public class Gen6RomHandler extends Abstract3DSRomHandler {
     }
 
     private void computeCRC32sForRom() throws IOException {
+        List<String> locations = new ArrayList<>();
+        for (String fileKey : romEntry.getFileKeys()) {
+            locations.add(romEntry.getFile(fileKey));
+        }
+        Map<String, Long> crc32sByLocation = getOriginalFileCRC32s(locations);
         this.actualFileCRC32s = new HashMap<>();
-        this.actualCodeCRC32 = FileFunctions.getCRC32(code);
         for (String fileKey : romEntry.getFileKeys()) {
-            byte[] file = readFile(romEntry.getFile(fileKey));
-            long crc32 = FileFunctions.getCRC32(file);
-            this.actualFileCRC32s.put(fileKey, crc32);
+            this.actualFileCRC32s.put(fileKey, crc32sByLocation.get(romEntry.getFile(fileKey)));
         }
     }
 
     @Override
     public boolean isRomValid(PrintStream logStream) {
+        if (actualFileCRC32s == null) {
+            try {
+                computeCRC32sForRom();
+            } catch (IOException e) {
+                throw new RomIOException(e);
+            }
+        }
         int index = this.hasGameUpdateLoaded() ? 1 : 0;
         long expectedCodeCRC32 = romEntry.getExpectedCodeCRC32s()[index];
         if (logStream != null) {
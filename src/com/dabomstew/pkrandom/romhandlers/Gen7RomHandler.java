@@ -23,6 +23,7 @@ package com.dabomstew.pkrandom.romhandlers;
 
 import com.dabomstew.pkrandom.FileFunctions;
 import com.dabomstew.pkrandom.MiscTweak;
+import com.dabomstew.pkrandom.MultiPatternSearch;
 import com.dabomstew.pkrandom.RomFunctions;
 import com.dabomstew.pkrandom.Settings;
 import com.dabomstew.pkrandom.constants.*;
@@ -94,6 +95,7 @@ public class Gen7RomHandler extends Abstract3DSRomHandler {
     private Map<String, Long> actualFileCRC32s;
 
     private GARCArchive pokeGarc, moveGarc, encounterGarc, stringsGarc, storyTextGarc;
+    private N3DSTxtHandler textHandler;
 
     @Override
     protected boolean detect3DSRom(String productCode, String titleId) {
@@ -120,6 +122,7 @@ public class Gen7RomHandler extends Abstract3DSRomHandler {
     @Override
     protected void loadedROM(String productCode, String titleId) {
         this.romEntry = entryFor(productCode, titleId);
+        this.textHandler = new N3DSTxtHandler(true, romEntry.getRomType());
 
         try {
             code = readCode();
@@ -148,11 +151,50 @@ public class Gen7RomHandler extends Abstract3DSRomHandler {
         allowedItems = Gen7Constants.getAllowedItems(romEntry.getRomType()).copy();
         nonBadItems = Gen7Constants.nonBadItems.copy();
 
-        try {
-            computeCRC32sForRom();
-        } catch (IOException e) {
-            throw new RomIOException(e);
-        }
+        // the CRC32s of files are only calculated once needed, by isRomValid()
+        actualCodeCRC32 = FileFunctions.getCRC32(code);
+        actualFileCRC32s = null;
+    }
+
+    @Override
+    protected void recordSnapshot(Snapshot snapshot) {
+        super.recordSnapshot(snapshot);
+        byte[] savedCode = code.clone();
+        List<Map<Integer, byte[]>> savedPokeGarc = copyGARCFiles(pokeGarc);
+        List<Map<Integer, byte[]>> savedMoveGarc = copyGARCFiles(moveGarc);
+        List<Map<Integer, byte[]>> savedEncounterGarc = copyGARCFiles(encounterGarc);
+        List<Map<Integer, byte[]>> savedStringsGarc = copyGARCFiles(stringsGarc);
+        List<Map<Integer, byte[]>> savedStoryTextGarc = copyGARCFiles(storyTextGarc);
+        // the encounter tables are written to in place, so only their contents need saving
+        List<List<byte[]>> savedEncounterTables = new ArrayList<>();
+        for (AreaData areaData : areaDataList) {
+            List<byte[]> tables = new ArrayList<>();
+            for (byte[] table : areaData.encounterTables) {
+                tables.add(table.clone());
+            }
+            savedEncounterTables.add(tables);
+        }
+        List<MegaEvolution> savedMegaEvolutions = new ArrayList<>(megaEvolutions);
+        ItemList savedAllowedItems = allowedItems.copy();
+        ItemList savedNonBadItems = nonBadItems.copy();
+        snapshot.addRestorer(() -> {
+            code = restoreBytes(code, savedCode);
+            restoreGARCFiles(pokeGarc, savedPokeGarc);
+            restoreGARCFiles(moveGarc, savedMoveGarc);
+            restoreGARCFiles(encounterGarc, savedEncounterGarc);
+            restoreGARCFiles(stringsGarc, savedStringsGarc);
+            restoreGARCFiles(storyTextGarc, savedStoryTextGarc);
+            for (int i = 0; i < areaDataList.size(); i++) {
+                List<byte[]> tables = areaDataList.get(i).encounterTables;
+                List<byte[]> savedTables = savedEncounterTables.get(i);
+                for (int j = 0; j < tables.size(); j++) {
+                    System.arraycopy(savedTables.get(j), 0, tables.get(j), 0, tables.get(j).length);
+                }
+            }
+            megaEvolutions = new ArrayList<>(savedMegaEvolutions);
+            allowedItems = savedAllowedItems.copy();
+            nonBadItems = savedNonBadItems.copy();
+        });
     }
 
     private List<String> getStrings(boolean isStoryText, int index) {
@@ -162,7 +204,7 @@ public class Gen7RomHandler extends Abstract3DSRomHandler {
 
     private List<String> getStrings(GARCArchive textGARC, int index) {
         byte[] rawFile = textGARC.files.get(index).get(0);
-        return new ArrayList<>(N3DSTxtHandler.readTexts(rawFile,true,romEntry.getRomType()));
+        return new ArrayList<>(textHandler.readTexts(rawFile));
     }
 
     private void setStrings(boolean isStoryText, int index, List<String> strings) {
@@ -173,7 +215,7 @@ public class Gen7RomHandler extends Abstract3DSRomHandler {
     private void setStrings(GARCArchive textGARC, int index, List<String> strings) {
         byte[] oldRawFile = textGARC.files.get(index).get(0);
         try {
-            byte[] newRawFile = N3DSTxtHandler.saveEntry(oldRawFile, strings, romEntry.getRomType());
+            byte[] newRawFile = textHandler.saveEntry(oldRawFile, strings);
             textGARC.setFile(index, newRawFile);
         } catch (IOException e) {
             e.printStackTrace();
@@ -2095,8 +2137,10 @@ public class Gen7RomHandler extends Abstract3DSRomHandler {
             levels[i] = zygardeAssemblyScript.decData[scriptLevelOffsets[i]];
         }
 
-        int speciesOffset = find(code, Gen7Constants.zygardeAssemblySpeciesPrefix);
-        int formeOffset = find(code, Gen7Constants.zygardeAssemblyFormePrefix);
+        int[] offsets = findInCode(Gen7Constants.zygardeAssemblySpeciesPrefix,
+                Gen7Constants.zygardeAssemblyFormePrefix);
+        int speciesOffset = offsets[0];
+        int formeOffset = offsets[1];
         if (speciesOffset > 0 && formeOffset > 0) {
             speciesOffset += Gen7Constants.zygardeAssemblySpeciesPrefix.length() / 2; // because it was a prefix
             formeOffset += Gen7Constants.zygardeAssemblyFormePrefix.length() / 2; // because it was a prefix
@@ -2233,8 +2277,10 @@ public class Gen7RomHandler extends Abstract3DSRomHandler {
         scriptGarc.setFile(Gen7Constants.zygardeAssemblyScriptFile, zygardeAssemblyScript.getBytes());
         writeGARC(romEntry.getFile("Scripts"), scriptGarc);
 
-        int speciesOffset = find(code, Gen7Constants.zygardeAssemblySpeciesPrefix);
-        int formeOffset = find(code, Gen7Constants.zygardeAssemblyFormePrefix);
+        int[] offsets = findInCode(Gen7Constants.zygardeAssemblySpeciesPrefix,
+                Gen7Constants.zygardeAssemblyFormePrefix);
+        int speciesOffset = offsets[0];
+        int formeOffset = offsets[1];
         if (speciesOffset > 0 && formeOffset > 0) {
             speciesOffset += Gen7Constants.zygardeAssemblySpeciesPrefix.length() / 2; // because it was a prefix
             formeOffset += Gen7Constants.zygardeAssemblyFormePrefix.length() / 2; // because it was a prefix
@@ -2424,6 +2470,43 @@ public class Gen7RomHandler extends Abstract3DSRomHandler {
         }
     }
 
+    /**
+     * Like {@link #find(byte[], String)} in the code for each of the hexStrings, but only goes through the code once.
+     * Searching the code again only goes through what was written to since, see {@link MultiPatternSearch.Cache}.
+     */
+    private int[] findInCode(String... hexStrings) {
+        int[] offsets = new int[hexStrings.length];
+        List<byte[]> needles = new ArrayList<>();
+        for (int i = 0; i < hexStrings.length; i++) {
+            String hexString = hexStrings[i];
+            if (hexString.length() % 2 != 0) {
+                offsets[i] = -3; // error
+                continue;
+            }
+            byte[] searchFor = new byte[hexString.length() / 2];
+            for (int j = 0; j < searchFor.length; j++) {
+                searchFor[j] = (byte) Integer.parseInt(hexString.substring(j * 2, j * 2 + 2), 16);
+            }
+            needles.add(searchFor);
+        }
+        List<List<Integer>> allFound = searchCache.search(getCodeCRC32(), code, needles);
+        int needle = 0;
+        for (int i = 0; i < hexStrings.length; i++) {
+            if (offsets[i] == -3) {
+                continue;
+            }
+            List<Integer> found = allFound.get(needle++);
+            if (found.isEmpty()) {
+                offsets[i] = -1; // not found
+            } else if (found.size() > 1) {
+                offsets[i] = -2; // not unique
+            } else {
+                offsets[i] = found.get(0);
+            }
+        }
+        return offsets;
+    }
+
     @Override
     public int getTMCount() {
         return Gen7Constants.tmCount;
@@ -3555,17 +3638,26 @@ public class Gen7RomHandler extends Abstract3DSRomHandler {
     }
 
     private void computeCRC32sForRom() throws IOException {
+        List<String> locations = new ArrayList<>();
+        for (String fileKey : romEntry.getFileKeys()) {
+            locations.add(romEntry.getFile(fileKey));
+        }
+        Map<String, Long> crc32sByLocation = getOriginalFileCRC32s(locations);
         this.actualFileCRC32s = new HashMap<>();
-        this.actualCodeCRC32 = FileFunctions.getCRC32(code);
         for (String fileKey : romEntry.getFileKeys()) {
-            byte[] file = readFile(romEntry.getFile(fileKey));
-            long crc32 = FileFunctions.getCRC32(file);
-            this.actualFileCRC32s.put(fileKey, crc32);
+            this.actualFileCRC32s.put(fileKey, crc32sByLocation.get(romEntry.getFile(fileKey)));
         }
     }
 
     @Override
     public boolean isRomValid(PrintStream logStream) {
+        if (actualFileCRC32s == null) {
+            try {
+                computeCRC32sForRom();
+            } catch (IOException e) {
+                throw new RomIOException(e);
+            }
+        }
         int index = this.hasGameUpdateLoaded() ? 1 : 0;
         long expectedCodeCRC32 = romEntry.getExpectedCodeCRC32s()[index];
         if (logStream != null) {
@@ -0,0 +1,100 @@
+package com.dabomstew.pkrandom.romhandlers;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the parsed graphics archives (NARCs, GARCs) of a loaded ROM, and the {@link BufferedImage}s of Pokemon
+ * decoded from them, so getting the same image again (e.g. for the mascot) doesn't read and decode anything.
+ * <br><br>
+ * Keys of images must tell apart everything the image depends on: the Pokemon, forme, shininess, back/front, and
+ * also the palette, if it is taken from the {@link com.dabomstew.pkrandom.gamedata.Species} rather than the archive.
+ * Only the most recently used images are kept.
+ * <br><br>
+ * The RomHandler must {@link #clear()} the cache whenever the archives may have changed, e.g. when they are written
+ * to or a snapshot is restored.
+ * <br><br>
+ * The cache itself is thread-safe. The archives it hands out are shared between threads though, so the archive type
+ * must be safe to read from several threads at once: {@link com.dabomstew.pkrandom.newnds.NARCArchive} synchronizes
+ * its member list, which changes even when read, and a {@link com.dabomstew.pkrandom.ctr.GARCArchive} is only read.
+ */
+class PokemonImageCache<A> {
+
+    private static final int MAX_IMAGES = 256;
+
+    /**
+     * Reads an archive from the ROM.
+     */
+    interface ArchiveReader<A> {
+        A read(String path) throws IOException;
+    }
+
+    private final Map<String, A> archives = new HashMap<>();
+    private final Map<Object, BufferedImage> images = new LinkedHashMap<Object, BufferedImage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, BufferedImage> eldest) {
+            return size() > MAX_IMAGES;
+        }
+    };
+
+    /**
+     * Returns the archive at a path, reading it only if it isn't remembered already.
+     * The archive is shared, so it must not be changed.
+     */
+    public A getArchive(String path, ArchiveReader<A> reader) throws IOException {
+        synchronized (this) {
+            A archive = archives.get(path);
+            if (archive != null) {
+                return archive;
+            }
+        }
+        A archive = reader.read(path);
+        synchronized (this) {
+            A other = archives.putIfAbsent(path, archive);
+            return other == null ? archive : other;
+        }
+    }
+
+    /**
+     * Returns a copy of the image with the given key, decoding it only if it isn't remembered already.
+     */
+    public BufferedImage getImage(Object key, Supplier<BufferedImage> decoder) {
+        BufferedImage image;
+        synchronized (this) {
+            image = images.get(key);
+        }
+        if (image == null) {
+            image = decoder.get();
+            synchronized (this) {
+                images.put(key, image);
+            }
+        }
+        // callers are free to draw on the images they get
+        return copy(image);
+    }
+
+    /**
+     * Forgets everything if the archive at the path is remembered, because it is about to change.
+     */
+    public synchronized void archiveChanged(String path) {
+        if (archives.containsKey(path)) {
+            clear();
+        }
+    }
+
+    public synchronized void clear() {
+        archives.clear();
+        images.clear();
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        ColorModel colorModel = image.getColorModel();
+        return new BufferedImage(colorModel, image.copyData(null), colorModel.isAlphaPremultiplied(), null);
+    }
+
+}
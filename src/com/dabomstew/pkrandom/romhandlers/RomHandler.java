@@ -31,6 +31,7 @@ import com.dabomstew.pkrandom.services.TypeService;
 
 import java.awt.image.BufferedImage;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -65,6 +66,36 @@ public interface RomHandler {
         public abstract boolean isLoadable(String filename);
     }
 
+    /**
+     * The recorded state of a loaded RomHandler, see {@link #createSnapshot()}.
+     * Only meaningful to the RomHandler which created it.
+     */
+    final class Snapshot {
+        private final RomHandler owner;
+        private final List<Runnable> restorers = new ArrayList<>();
+
+        public Snapshot(RomHandler owner) {
+            this.owner = owner;
+        }
+
+        /**
+         * Adds an action which returns some part of the owner's state to how it was when this Snapshot was created.
+         * It must be possible to run the action any number of times.
+         */
+        public void addRestorer(Runnable restorer) {
+            restorers.add(restorer);
+        }
+
+        public void restore(RomHandler owner) {
+            if (owner != this.owner) {
+                throw new IllegalArgumentException("Snapshot was created by another RomHandler.");
+            }
+            for (Runnable restorer : restorers) {
+                restorer.run();
+            }
+        }
+    }
+
     // =======================
     // Basic load/save methods
     // =======================
@@ -75,6 +106,34 @@ public interface RomHandler {
 
     String loadedFilename();
 
+    /**
+     * Releases what the loaded Rom holds on to outside of this object, like open files and temp files.<br>
+     * The RomHandler can't be used afterwards, until another Rom is loaded.
+     */
+    default void unloadRom() {
+    }
+
+    // =========
+    // Snapshots
+    // =========
+
+    /**
+     * Records the current state of the game data, i.e. both the data gettable through this RomHandler and
+     * the underlying Rom contents, so it can be returned to with {@link #restoreSnapshot(Snapshot)}.<br>
+     * Typically called right after {@link #loadRom(String)}, which allows randomizing the same Rom many times
+     * without loading it again in between.
+     */
+    Snapshot createSnapshot();
+
+    /**
+     * Returns the game data to the state it was in when the {@link Snapshot} was created.
+     * The same Snapshot can be restored any number of times.<br>
+     * This saves parsing the Rom again, but still takes time in proportion to the size of the game data, not to how
+     * much of it was changed: the Rom bytes held in memory are compared against the saved ones in full, and the
+     * parsed game data, like the {@link Species} and {@link Move}s, is always copied back in full.
+     */
+    void restoreSnapshot(Snapshot snapshot);
+
     // =============================================================
     // Methods relating to game updates for the 3DS and Switch games
     // =============================================================
@@ -591,6 +650,12 @@ public interface RomHandler {
 
     List<BufferedImage> getAllPokemonImages();
 
+    /**
+     * Forgets the Pokemon images kept from earlier calls to the image getters, if any.
+     * Must be called when the Pokemon palettes are changed, e.g. randomized.
+     */
+    void clearPokemonImageCache();
+
     // ======
     // Types
     // ======
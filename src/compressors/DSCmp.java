@@ -23,6 +23,7 @@ package compressors;
  */
 
 import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
 
 public final class DSCmp {
 
@@ -32,8 +33,40 @@ public final class DSCmp {
     public static final int HUFF8 = 0x28;
     public static final int RLE = 0x30;
 
-    // https://github.com/pleonex/tinke/blob/master/Plugins/DSDecmp/DSDecmp/Formats/Nitro/LZ10.cs#L173
+    private static final int WINDOW_SIZE = 0x1000;
+
+    /**
+     * How hard {@link #compressLZ10(byte[], Level)} and {@link #compressLZ11(byte[], Level)} look for matches.
+     * All levels find matches through hash chains, so even the slowest one is far from the old brute-force search.
+     */
+    public enum Level {
+        /**
+         * Only looks at the 16 most recent earlier occurrences of each position's first three bytes.
+         */
+        FAST(16),
+        /**
+         * Only looks at the 256 most recent earlier occurrences of each position's first three bytes.
+         */
+        NORMAL(256),
+        /**
+         * Looks at every earlier occurrence in the window, and picks the same one the original brute-force search
+         * did. The output is byte-identical to what older versions of the randomizer made.
+         */
+        COMPATIBLE(-1);
+
+        private final int maxChainLength;
+
+        Level(int maxChainLength) {
+            this.maxChainLength = maxChainLength;
+        }
+    }
+
     public static byte[] compressLZ10(byte[] decompressed) {
+        return compressLZ10(decompressed, Level.COMPATIBLE);
+    }
+
+    // https://github.com/pleonex/tinke/blob/master/Plugins/DSDecmp/DSDecmp/Formats/Nitro/LZ10.cs#L173
+    public static byte[] compressLZ10(byte[] decompressed, Level level) {
         ByteArrayOutputStream compressed = new ByteArrayOutputStream();
 
         compressed.write(LZ10);
@@ -47,6 +80,7 @@ public final class DSCmp {
             compressed.write(getBytes24(decompressed.length), 0, 3);
 
         int curIn = 0;
+        MatchFinder matchFinder = new MatchFinder(decompressed, level);
 
         byte[] outBuffer = new byte[17];
         outBuffer[0] = 0;
@@ -61,10 +95,9 @@ public final class DSCmp {
                 numBlocks = 0;
             }
 
-            int[] occInfo = getOccurenceInfo(decompressed, curIn, Math.min(decompressed.length - curIn, 0x12),
-                    Math.min(curIn, 0x1000));
-            int occLength = occInfo[0];
-            int occDisp = occInfo[1];
+            matchFinder.find(curIn, Math.min(decompressed.length - curIn, 0x12));
+            int occLength = matchFinder.length;
+            int occDisp = matchFinder.disp;
 
             if (occLength < 3)
                 outBuffer[lenBuffer++] = decompressed[curIn++];
@@ -86,8 +119,12 @@ public final class DSCmp {
         return compressed.toByteArray();
     }
 
-    // https://github.com/pleonex/tinke/blob/master/Plugins/DSDecmp/DSDecmp/Formats/Nitro/LZ11.cs#L238
     public static byte[] compressLZ11(byte[] decompressed) {
+        return compressLZ11(decompressed, Level.COMPATIBLE);
+    }
+
+    // https://github.com/pleonex/tinke/blob/master/Plugins/DSDecmp/DSDecmp/Formats/Nitro/LZ11.cs#L238
+    public static byte[] compressLZ11(byte[] decompressed, Level level) {
         ByteArrayOutputStream compressed = new ByteArrayOutputStream();
 
         compressed.write(LZ11);
@@ -101,6 +138,7 @@ public final class DSCmp {
             compressed.write(getBytes24(decompressed.length), 0, 3);
 
         int curIn = 0;
+        MatchFinder matchFinder = new MatchFinder(decompressed, level);
 
         byte[] outBuffer = new byte[33];
         outBuffer[0] = 0;
@@ -115,10 +153,9 @@ public final class DSCmp {
                 numBlocks = 0;
             }
 
-            int[] occInfo = getOccurenceInfo(decompressed, curIn, Math.min(decompressed.length - curIn, 0x10110),
-                    Math.min(curIn, 0x1000));
-            int occLength = occInfo[0];
-            int occDisp = occInfo[1];
+            matchFinder.find(curIn, Math.min(decompressed.length - curIn, 0x10110));
+            int occLength = matchFinder.length;
+            int occDisp = matchFinder.disp;
 
             if (occLength < 3)
                 outBuffer[lenBuffer++] = decompressed[curIn++];
@@ -151,34 +188,129 @@ public final class DSCmp {
         return compressed.toByteArray();
     }
 
-    // https://github.com/pleonex/tinke/blob/master/Plugins/DSDecmp/DSDecmp/Utils/LZUtil.cs#L19
-    private static int[] getOccurenceInfo(byte[] decompressed, int current, int pending, int finished) {
-        if (pending == 0)
-            return new int[] { 0, 0 };
-
-        int disp = 0;
-        int length = 0;
+    /**
+     * Finds the longest earlier occurrence of the data at a position, within the last {@link #WINDOW_SIZE} bytes.
+     * <br><br>
+     * Like the brute-force search this replaces
+     * (https://github.com/pleonex/tinke/blob/master/Plugins/DSDecmp/DSDecmp/Utils/LZUtil.cs#L19), it never
+     * finds matches at displacement 1, and may find matches overlapping the position itself.
+     * Only matches of at least 3 bytes are used by the compressors, so only positions starting with the same three
+     * bytes are considered. They are found through hash chains, linking each position to the previous one whose first
+     * three bytes hashed the same, or for {@link Level#COMPATIBLE}, to the next one.
+     */
+    private static final class MatchFinder {
+
+        private static final int HASH_BITS = 15;
+        private static final int MIN_MATCH = 3;
+
+        private final byte[] data;
+        private final int maxChainLength;
+        private final int[] newest = new int[1 << HASH_BITS];
+        private final int[] oldest;
+        private final int[] chain;
+        private int inserted;
+
+        private int length;
+        private int disp;
+
+        private MatchFinder(byte[] data, Level level) {
+            this.data = data;
+            this.maxChainLength = level.maxChainLength;
+            Arrays.fill(newest, -1);
+            if (level == Level.COMPATIBLE) {
+                oldest = new int[1 << HASH_BITS];
+                Arrays.fill(oldest, -1);
+            } else {
+                oldest = null;
+            }
+            chain = new int[data.length];
+        }
 
-        for (int i = 0; i < finished - 1; i++) {
-            int pendingOffset = current - finished + i;
-            int pendingLength = 0;
+        /**
+         * Sets length and disp to the best match found for current, of at most pending bytes.
+         * Positions must be given in increasing order.
+         */
+        private void find(int current, int pending) {
+            length = 0;
+            disp = 0;
+            // displacement 1 is never used, so the position right before current is not a candidate yet
+            while (inserted <= current - 2) {
+                insert(inserted++);
+            }
+            if (pending < MIN_MATCH) {
+                return;
+            }
 
-            for (int j = 0; j < pending; j++) {
-                if (decompressed[pendingOffset + j] != decompressed[current + j])
-                    break;
-                pendingLength++;
+            int windowStart = Math.max(0, current - WINDOW_SIZE);
+            int hash = hash(current);
+            if (oldest == null) {
+                // newest first, so of two equally long matches the nearest is kept
+                int candidate = newest[hash];
+                for (int i = 0; i < maxChainLength && candidate >= windowStart; i++) {
+                    if (tryCandidate(candidate, current, pending)) {
+                        return;
+                    }
+                    candidate = chain[candidate];
+                }
+            } else {
+                // the brute-force search went oldest first, keeping the farthest of equally long matches,
+                // and stopping at the first one as long as pending
+                int candidate = oldest[hash];
+                while (candidate >= 0 && candidate < windowStart) {
+                    candidate = chain[candidate];
+                }
+                oldest[hash] = candidate;
+                while (candidate >= 0) {
+                    if (tryCandidate(candidate, current, pending)) {
+                        return;
+                    }
+                    candidate = chain[candidate];
+                }
             }
+        }
 
-            if (pendingLength > length) {
-                length = pendingLength;
-                disp = finished - i;
+        /**
+         * Keeps the match at candidate if it's longer than the best one so far. Returns true if it can not be beat.
+         */
+        private boolean tryCandidate(int candidate, int current, int pending) {
+            // a hash collision, or a match which can't be longer than the best one
+            if (data[candidate + length] != data[current + length]) {
+                return false;
+            }
+            int candidateLength = 0;
+            while (candidateLength < pending && data[candidate + candidateLength] == data[current + candidateLength]) {
+                candidateLength++;
+            }
+            if (candidateLength > length) {
+                length = candidateLength;
+                disp = current - candidate;
+            }
+            return length == pending;
+        }
 
-                if (length == pending)
-                    break;
+        private void insert(int position) {
+            if (position + MIN_MATCH > data.length) {
+                return;
             }
+            int hash = hash(position);
+            if (oldest == null) {
+                chain[position] = newest[hash];
+            } else {
+                chain[position] = -1;
+                if (newest[hash] >= 0) {
+                    chain[newest[hash]] = position;
+                }
+                if (oldest[hash] < 0) {
+                    oldest[hash] = position;
+                }
+            }
+            newest[hash] = position;
         }
 
-        return new int[] { length, disp };
+        private int hash(int position) {
+            int key = (data[position] & 0xFF) << 16 | (data[position + 1] & 0xFF) << 8 | (data[position + 2] & 0xFF);
+            return (key * 0x9E3779B1) >>> (32 - HASH_BITS);
+        }
     }
 
     private static byte[] getBytes(int val) {
@@ -42,6 +42,7 @@ public class BLZCoder {
 
     private static final int BLZ_NORMAL = 0;
     private static final int BLZ_BEST = 1;
+    private static final int BLZ_FAST = 2;
 
     private static final int BLZ_SHIFT = 1;
     private static final int BLZ_MASK = 0x80;
@@ -54,8 +55,41 @@ public class BLZCoder {
 
     private static final int BLZ_MAXIM = 0x01400000;
 
+    private static final int HASH_BITS = 15;
+    private static final int FAST_MAX_CHAIN = 32;
+
+    /**
+     * How hard the encoder looks for the best way to code the data. All modes give data that BLZ_DecodePub decodes.
+     */
+    public enum Mode {
+        /**
+         * Greedy coding, which only tries the 32 nearest matches with the same first three bytes.
+         */
+        FAST(BLZ_FAST),
+        /**
+         * Greedy coding with the longest match at each position. Same output as "-en" of the original blz.
+         */
+        NORMAL(BLZ_NORMAL),
+        /**
+         * LZ-CUE coding, which looks ahead to see if a shorter match gives a better result. Same output as "-eo" of
+         * the original blz.
+         */
+        BEST(BLZ_BEST);
+
+        private final int blzMode;
+
+        Mode(int blzMode) {
+            this.blzMode = blzMode;
+        }
+    }
+
     private boolean arm9;
 
+    // hash chains over the (inverted) raw buffer, to find the matches for SEARCH without trying each position
+    private int[] hash_head, hash_chain;
+    private int hash_inserted, hash_max_chain;
+    private int search_len, search_pos;
+
     public BLZCoder(String[] args) {
 
         int cmd, mode = 0, arg;
@@ -79,6 +113,9 @@ public class BLZCoder {
         } else if (args[0].equalsIgnoreCase("-eo") || args[0].equalsIgnoreCase("-eo9")) {
             cmd = CMD_ENCODE;
             mode = BLZ_BEST;
+        } else if (args[0].equalsIgnoreCase("-ef") || args[0].equalsIgnoreCase("-ef9")) {
+            cmd = CMD_ENCODE;
+            mode = BLZ_FAST;
         } else {
             EXIT("Command not supported\n");
             return;
@@ -106,7 +143,8 @@ public class BLZCoder {
     private void Usage() {
         EXIT("Usage: BLZ command filename [filename [...]]\n" + "\n" + "command:\n"
                 + "  -d ....... decode 'filename'\n" + "  -en[9] ... encode 'filename', normal mode\n"
-                + "  -eo[9] ... encode 'filename', optimal mode (LZ-CUE)\n" + "\n"
+                + "  -eo[9] ... encode 'filename', optimal mode (LZ-CUE)\n"
+                + "  -ef[9] ... encode 'filename', fast mode\n" + "\n"
                 + "* '9' compress an ARM9 file with 0x4000 bytes decoded\n"
                 + "* multiple filenames and wildcards are permitted\n"
                 + "* the original file is overwritten with the new file\n"
@@ -409,7 +447,11 @@ public class BLZCoder {
     }
 
     public byte[] BLZ_EncodePub(byte[] data, boolean arm9, boolean best, String reference) {
-        int mode = best ? BLZ_BEST : BLZ_NORMAL;
+        return BLZ_EncodePub(data, arm9, best ? Mode.BEST : Mode.NORMAL, reference);
+    }
+
+    public byte[] BLZ_EncodePub(byte[] data, boolean arm9, Mode blzMode, String reference) {
+        int mode = blzMode.blzMode;
         this.arm9 = arm9;
         if (reference.equals("GARC")) {
             return LZSS_Encode(data);
@@ -480,6 +522,12 @@ public class BLZCoder {
         raw = 0;
         raw_end = raw_new;
 
+        hash_head = new int[1 << HASH_BITS];
+        Arrays.fill(hash_head, -1);
+        hash_chain = new int[Math.max(raw_end, 0)];
+        hash_inserted = 0;
+        hash_max_chain = best == BLZ_FAST ? FAST_MAX_CHAIN : -1;
+
         mask = 0;
         while (raw < raw_end) {
             if ((mask = (mask >>> BLZ_SHIFT)) == 0) {
@@ -487,22 +535,22 @@ public class BLZCoder {
                 mask = BLZ_MASK;
             }
 
-            SearchPair sl1 = SEARCH(pos_best, raw_buffer, raw, raw_end);
-            len_best = sl1.l;
-            pos_best = sl1.p;
+            SEARCH(pos_best, raw_buffer, raw, raw_end);
+            len_best = search_len;
+            pos_best = search_pos;
 
             // LZ-CUE optimization start
             if (best == BLZ_BEST) {
                 if (len_best > BLZ_THRESHOLD) {
                     if (raw + len_best < raw_end) {
                         raw += len_best;
-                        SearchPair sl2 = SEARCH(pos_next, raw_buffer, raw, raw_end);
-                        len_next = sl2.l;
-                        pos_next = sl2.p;
+                        SEARCH(pos_next, raw_buffer, raw, raw_end);
+                        len_next = search_len;
+                        pos_next = search_pos;
                         raw -= (len_best - 1);
-                        SearchPair sl3 = SEARCH(pos_post, raw_buffer, raw, raw_end);
-                        len_post = sl3.l;
-                        pos_post = sl3.p;
+                        SEARCH(pos_post, raw_buffer, raw, raw_end);
+                        len_post = search_len;
+                        pos_post = search_pos;
                         raw--;
 
                         if (len_next <= BLZ_THRESHOLD) {
@@ -540,6 +588,8 @@ public class BLZCoder {
         }
 
         pak_len = pak;
+        hash_head = null;
+        hash_chain = null;
 
         BLZ_Invert(raw_buffer, 0, raw_len);
         BLZ_Invert(pak_buffer, 0, pak_len);
@@ -706,41 +756,59 @@ public class BLZCoder {
         }
     }
 
-    private static class SearchPair {
-        public int l;
-        public int p;
+    // Finds the longest match for raw, at a distance of 3 to BLZ_N, not reaching past raw itself.
+    // Of equally long matches, the nearest is used. The result is put in search_len and search_pos; if there is no
+    // match longer than BLZ_THRESHOLD, search_len is BLZ_THRESHOLD and search_pos is p.
+    // A match that long has to start with the same three bytes as raw, so only positions in the same hash chain are
+    // tried, nearest first. Unless hash_max_chain limits them, these are the same matches the plain search of blz.c
+    // (trying every distance in order) finds.
+    private void SEARCH(int p, int[] raw_buffer, int raw, int raw_end) {
+        int l = BLZ_THRESHOLD;
+        int max = (raw >= BLZ_N) ? BLZ_N : raw;
 
-        public SearchPair(int l, int p) {
-            this.l = l;
-            this.p = p;
+        while (hash_inserted <= raw - 3) {
+            int q = hash_inserted++;
+            if (q + 3 <= raw_end) {
+                int hash = HASH(raw_buffer, q);
+                hash_chain[q] = hash_head[hash];
+                hash_head[hash] = q;
+            }
         }
-    }
 
-    private SearchPair SEARCH(int p, int[] raw_buffer, int raw, int raw_end) {
-        int l = BLZ_THRESHOLD;
-        int max = (raw >= BLZ_N) ? BLZ_N : raw;
-        for (int pos = 3; pos <= max; pos++) {
-            int len;
-            for (len = 0; len < BLZ_F; len++) {
-                if (raw + len == raw_end) {
-                    break;
+        if (raw + 3 <= raw_end) {
+            int cap = Math.min(BLZ_F, raw_end - raw);
+            int tries = hash_max_chain;
+            // the lookahead of LZ-CUE may have inserted positions past raw - 3 already, those are skipped
+            for (int q = hash_head[HASH(raw_buffer, raw)]; q >= raw - max && tries != 0; q = hash_chain[q]) {
+                int pos = raw - q;
+                if (pos < 3) {
+                    continue;
                 }
-                if (len >= pos) {
-                    break;
+                tries--;
+                int len_max = Math.min(cap, pos);
+                // a hash collision, or a match which can't be longer than the best one
+                if (len_max <= l || raw_buffer[raw + l] != raw_buffer[q + l]) {
+                    continue;
                 }
-                if (raw_buffer[raw + len] != raw_buffer[raw + len - pos]) {
-                    break;
+                int len = 0;
+                while (len < len_max && raw_buffer[raw + len] == raw_buffer[q + len]) {
+                    len++;
                 }
-            }
-
-            if (len > l) {
-                p = pos;
-                if ((l = len) == BLZ_F) {
-                    break;
+                if (len > l) {
+                    p = pos;
+                    if ((l = len) == BLZ_F) {
+                        break;
+                    }
                 }
             }
         }
-        return new SearchPair(l, p);
+        search_len = l;
+        search_pos = p;
+    }
+
+    private static int HASH(int[] buffer, int offset) {
+        int key = (buffer[offset] << 16) | (buffer[offset + 1] << 8) | buffer[offset + 2];
+        return (key * 0x9E3779B1) >>> (32 - HASH_BITS);
     }
 
     private class BLZResult {
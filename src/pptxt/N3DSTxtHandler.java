@@ -20,16 +20,17 @@ package pptxt;
 /*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
 /*----------------------------------------------------------------------------*/
 
-import com.dabomstew.pkrandom.constants.Gen7Constants;
 import com.dabomstew.pkrandom.constants.N3DSConstants;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.*;
-import java.util.stream.Collectors;
 
+/**
+ * Reads and writes the text files of the 3DS games.
+ * <br><br>
+ * Each instance has its own settings and buffers, which are reused between calls. So an N3DSTxtHandler must not be
+ * used by several threads at once, but each RomHandler can have its own.
+ */
 public class N3DSTxtHandler {
 
     private static final int KEY_BASE = 0x7C89;
@@ -40,13 +41,28 @@ public class N3DSTxtHandler {
     private static final int KEY_TEXTCLEAR = 0xBE01;
     private static final int KEY_TEXTWAIT = 0xBE02;
     private static final int KEY_TEXTNULL = 0xBDFF;
-    private static boolean remapChars = false;
-    private static boolean setEmptyText = false;
-    private static int romType;
+    private static final boolean SET_EMPTY_TEXT = false;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private final boolean remapChars;
+    private final Map<Integer, String> variableNames;
+    // the reverse of variableNames, keeping the first code of each name like N3DSConstants.getVariableCode() does
+    private final Map<String, Integer> variableCodes = new HashMap<>();
+
+    private final StringBuilder sb = new StringBuilder();
+    // the decrypted words of the entry being read, or the words of the entries being written
+    private int[] words = new int[256];
+    private int wordCount;
+
+    public N3DSTxtHandler(boolean remapChars, int romType) {
+        this.remapChars = remapChars;
+        this.variableNames = N3DSConstants.getTextVariableCodes(romType);
+        for (Map.Entry<Integer, String> entry : variableNames.entrySet()) {
+            variableCodes.putIfAbsent(entry.getValue(), entry.getKey());
+        }
+    }
 
-    public static List<String> readTexts(byte[] ds, boolean remapChars, int romType) {
-        N3DSTxtHandler.remapChars = remapChars;
-        N3DSTxtHandler.romType = romType;
+    public List<String> readTexts(byte[] ds) {
         List<String> strings = new ArrayList<>();
         int numSections, numEntries, totalLength, initialKey, sectionDataOffset, sectionLength;
 
@@ -62,83 +78,93 @@ public class N3DSTxtHandler {
             return new ArrayList<>();
         }
 
-        int[] entryOffsets = new int[numEntries];
-        int[] entryLengths = new int[numEntries];
-
+        int key = KEY_BASE;
         for (int i = 0; i < numEntries; i++) {
-            entryOffsets[i] = readLong(ds, (i * 8) + sectionDataOffset + 4) + sectionDataOffset;
-            entryLengths[i] = readShort(ds, (i * 8) + sectionDataOffset + 8);
-            byte[] encEntryData = Arrays.copyOfRange(ds, entryOffsets[i], entryOffsets[i] + entryLengths[i]*2);
-            strings.add(getEntryString(cryptEntryData(encEntryData,getEntryKey(i))));
+            int entryOffset = readLong(ds, (i * 8) + sectionDataOffset + 4) + sectionDataOffset;
+            int entryLength = readShort(ds, (i * 8) + sectionDataOffset + 8);
+            decryptEntry(ds, entryOffset, entryLength, key);
+            strings.add(getEntryString());
+            key = (key + KEY_ADVANCE) & 0xFFFF;
         }
 
         return strings;
     }
 
-    public static byte[] saveEntry(byte[] originalData, List<String> values, int romType) throws IOException {
-        int key = KEY_BASE;
+    private void decryptEntry(byte[] ds, int offset, int length, int key) {
+        if (offset > ds.length) {
+            throw new ArrayIndexOutOfBoundsException(offset);
+        }
+        ensureWords(length);
+        for (int i = 0; i < length; i++) {
+            // like Arrays.copyOfRange(), anything past the end of the file reads as 0
+            int lo = offset + i * 2 < ds.length ? ds[offset + i * 2] & 0xFF : 0;
+            int hi = offset + i * 2 + 1 < ds.length ? ds[offset + i * 2 + 1] & 0xFF : 0;
+            words[i] = (lo | (hi << 8)) ^ key;
+            key = (key << 3 | key >>> 13) & 0xFFFF;
+        }
+        wordCount = length;
+    }
 
-        ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
-        ByteBuffer offsetsBuf = ByteBuffer.allocate(values.size() * 8);
-        offsetsBuf.order(ByteOrder.LITTLE_ENDIAN);
-        int dataOffset = 4 + values.size() * 8;
+    public byte[] saveEntry(byte[] originalData, List<String> values) throws IOException {
+        int entryKey = KEY_BASE;
+
+        // all entries go into words one after another, entry i starting at entryStarts[i]
+        int[] entryStarts = new int[values.size() + 1];
+        wordCount = 0;
         for (int i = 0; i < values.size(); i++) {
             String text = values.get(i).trim();
-            if (text.length() == 0 && setEmptyText) {
-                text = String.format("[~ %d]",i);
+            if (text.length() == 0 && SET_EMPTY_TEXT) {
+                text = "[~ " + i + "]";
             }
-            byte[] decEntryData = getEntryData(text,romType);
-            byte[] encEntryData = cryptEntryData(decEntryData,key);
-            offsetsBuf.putInt(dataOffset + dataStream.size());
-            offsetsBuf.putShort((short)(encEntryData.length / 2));
-            offsetsBuf.position(offsetsBuf.position()+2);
-            dataStream.write(encEntryData);
-            if (encEntryData.length % 4 == 2) {
-                dataStream.write(0);
-                dataStream.write(0);
+            entryStarts[i] = wordCount;
+            addEntryWords(text);
+            int key = entryKey;
+            for (int w = entryStarts[i]; w < wordCount; w++) {
+                words[w] ^= key;
+                key = (key << 3 | key >>> 13) & 0xFFFF;
             }
-            key = (key + KEY_ADVANCE) & 0xFFFF;
+            entryKey = (entryKey + KEY_ADVANCE) & 0xFFFF;
+        }
+        entryStarts[values.size()] = wordCount;
+
+        int dataSize = 0;
+        for (int i = 0; i < values.size(); i++) {
+            int entryLength = entryStarts[i + 1] - entryStarts[i];
+            // entries are padded to a multiple of 4 bytes
+            dataSize += (entryLength + (entryLength & 1)) * 2;
         }
 
         int sectionDataOffset = 0x10;
-        ByteBuffer headerBuf = ByteBuffer.allocate(0x14);
-        headerBuf.order(ByteOrder.LITTLE_ENDIAN);
-        headerBuf.putShort((short)1);
-        headerBuf.putShort((short)values.size());
-        headerBuf.putInt(4 + values.size()*8 + dataStream.size());
-        headerBuf.putInt(0);
-        headerBuf.putInt(sectionDataOffset);
-        headerBuf.putInt(4 + values.size()*8 + dataStream.size());
-
-        headerBuf.flip();
-        offsetsBuf.flip();
-
-        byte[] fullArray = new byte[headerBuf.limit() + offsetsBuf.limit() + dataStream.size()];
-        System.arraycopy(headerBuf.array(),
-                0,
-                fullArray,
-                0,
-                headerBuf.limit());
-        System.arraycopy(offsetsBuf.array(),
-                0,
-                fullArray,
-                headerBuf.limit(),
-                offsetsBuf.limit());
-        System.arraycopy(dataStream.toByteArray(),
-                0,
-                fullArray,
-                headerBuf.limit()+offsetsBuf.limit(),
-                dataStream.size());
+        int headerSize = 0x14;
+        int sectionSize = 4 + values.size() * 8 + dataSize;
+        byte[] fullArray = new byte[headerSize + values.size() * 8 + dataSize];
+        writeShort(fullArray, 0, 1);
+        writeShort(fullArray, 2, values.size());
+        writeLong(fullArray, 4, sectionSize);
+        writeLong(fullArray, 8, 0);
+        writeLong(fullArray, 0xC, sectionDataOffset);
+        writeLong(fullArray, 0x10, sectionSize);
+
+        int dataOffset = 4 + values.size() * 8;
+        int pos = headerSize + values.size() * 8;
+        for (int i = 0; i < values.size(); i++) {
+            int entryLength = entryStarts[i + 1] - entryStarts[i];
+            writeLong(fullArray, headerSize + i * 8, dataOffset);
+            writeShort(fullArray, headerSize + i * 8 + 4, entryLength);
+            for (int w = entryStarts[i]; w < entryStarts[i + 1]; w++) {
+                writeShort(fullArray, pos, words[w]);
+                pos += 2;
+            }
+            if (entryLength % 2 == 1) {
+                pos += 2;
+            }
+            dataOffset += (entryLength + (entryLength & 1)) * 2;
+        }
 
         return fullArray;
     }
 
-    private static byte[] getEntryData(String entry, int romType) throws IOException {
-        if (entry == null) {
-            return new byte[2];
-        }
-
-        ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
+    private void addEntryWords(String entry) throws IOException {
         int i = 0;
         while (i < entry.length()) {
             int val = entry.charAt(i++);
@@ -150,65 +176,29 @@ public class N3DSTxtHandler {
                     throw new IOException("Variable text is not capped properly: " + entry);
                 }
                 String varText = entry.substring(i,bracket);
-                List<Integer> varValues = getVariableValues(varText,romType);
-                for (int v: varValues) {
-                    dataStream.write(v & 0xFF);
-                    dataStream.write((v >>> 8) & 0xFF);
-                }
+                addVariableWords(varText);
                 i += 1 + varText.length();
             } else if (val == '\\') {
-                List<Integer> escapeValues = getEscapeValues(entry.charAt(i++));
-                for (int escVal: escapeValues) {
-                    dataStream.write(escVal & 0xFF);
-                    dataStream.write((escVal >>> 8) & 0xFF);
-                }
+                addEscapeWords(entry.charAt(i++));
             } else {
-                dataStream.write(val & 0xFF);
-                dataStream.write((val >>> 8) & 0xFF);
+                addWord(val);
             }
         }
-        dataStream.write(KEY_TERMINATOR & 0xFF);
-        dataStream.write((KEY_TERMINATOR >>> 8) & 0xFF);
-        return dataStream.toByteArray();
-    }
-
-    private static byte[] cryptEntryData(byte[] data, int key) {
-        byte[] result = new byte[data.length];
-        for (int i = 0; i < result.length; i+= 2) {
-            int sh = (readShort(data, i) & 0xFFFF) ^ (key & 0xFFFF);
-            result[i] = (byte)(sh & 0xFF);
-            result[i+1] = (byte)((sh >> 8) & 0xFF);
-            key = (key << 3 | key >>> 13) & 0xFFFF;
-        }
-        return result;
-    }
-
-    private static int getEntryKey(int index) {
-        int key = KEY_BASE;
-        for (int i = 0; i < index; i++) {
-            key = (key + KEY_ADVANCE) & 0xFFFF;
-        }
-        return key;
+        addWord(KEY_TERMINATOR);
     }
 
-    private static String getEntryString(byte[] data) {
-        if (data == null) {
-            return "";
-        }
-
-        StringBuilder sb = new StringBuilder();
+    private String getEntryString() {
+        sb.setLength(0);
         int i = 0;
 
-        while (i < data.length) {
-            int val = readShort(data, i);
+        while (i < wordCount) {
+            int val = getWord(i);
             if (val == KEY_TERMINATOR) break;
-            i += 2;
+            i++;
 
             switch (val) {
                 case KEY_VARIABLE:
-                    RefInt refI = new RefInt(i);
-                    sb.append(getVariableString(data,refI));
-                    i = refI.val;
+                    i = appendVariableString(i);
                     break;
                 case '\n':
                     sb.append("\\n");
@@ -226,86 +216,86 @@ public class N3DSTxtHandler {
         return sb.toString();
     }
 
-    private static List<Integer> getEscapeValues(char esc) throws IOException {
-        List<Integer> vals = new ArrayList<>();
+    private void addEscapeWords(char esc) throws IOException {
         switch (esc) {
             case 'n':
-                vals.add((int) '\n');
-                return vals;
+                addWord('\n');
+                return;
             case '\\':
-                vals.add((int) '\\');
-                return vals;
+                addWord('\\');
+                return;
             case '[':
-                vals.add((int) '[');
-                return vals;
+                addWord('[');
+                return;
             case 'r':
-                vals.add(KEY_VARIABLE);
-                vals.add(1);
-                vals.add(KEY_TEXTRETURN);
-                return vals;
+                addWord(KEY_VARIABLE);
+                addWord(1);
+                addWord(KEY_TEXTRETURN);
+                return;
             case 'c':
-                vals.add(KEY_VARIABLE);
-                vals.add(1);
-                vals.add(KEY_TEXTCLEAR);
-                return vals;
+                addWord(KEY_VARIABLE);
+                addWord(1);
+                addWord(KEY_TEXTCLEAR);
+                return;
             default:
                 throw new IOException("Invalid terminated line: \\" + esc);
         }
     }
 
-    private static List<Integer> getVariableValues(String variable, int romType) throws IOException {
+    private void addVariableWords(String variable) throws IOException {
         String[] splitString = variable.split(" ");
         if (splitString.length < 2) {
             throw new IOException("Incorrectly formatted variable text: " + variable);
         }
 
-        List<Integer> vals = new ArrayList<>();
-        vals.add(KEY_VARIABLE);
         switch (splitString[0]) {
             case "~":
-                vals.add(1);
-                vals.add(KEY_TEXTNULL);
-                vals.add(Integer.parseInt(splitString[1]));
+                addWord(KEY_VARIABLE);
+                addWord(1);
+                addWord(KEY_TEXTNULL);
+                addWord(Integer.parseInt(splitString[1]));
                 break;
             case "WAIT":
-                vals.add(1);
-                vals.add(KEY_TEXTWAIT);
-                vals.add(Integer.parseInt(splitString[1]));
+                addWord(KEY_VARIABLE);
+                addWord(1);
+                addWord(KEY_TEXTWAIT);
+                addWord(Integer.parseInt(splitString[1]));
                 break;
             case "VAR":
-                vals.addAll(getVariableParameters(splitString[1],romType));
+                addVariableParameterWords(splitString[1]);
                 break;
             default:
                 throw new IOException("Unknown variable method type: " + variable);
         }
-        return vals;
     }
 
-    private static List<Integer> getVariableParameters(String text, int romType) throws IOException {
-        List<Integer> vals = new ArrayList<>();
+    private void addVariableParameterWords(String text) throws IOException {
         int bracket = text.indexOf("(");
         boolean noArgs = bracket < 0;
         String variable = noArgs ? text : text.substring(0,bracket);
-        int varVal = getVariableNumber(variable,romType);
+        int varVal = getVariableNumber(variable);
         if (!noArgs) {
             String[] args = text.substring(bracket + 1, text.length() - 1).split(",");
-            vals.add(1 + args.length);
-            vals.add(varVal);
-            vals.addAll(Arrays.stream(args)
-                    .mapToInt(s -> Integer.parseInt(s,16))
-                    .boxed()
-                    .collect(Collectors.toList()));
-
+            int[] argVals = new int[args.length];
+            for (int a = 0; a < args.length; a++) {
+                argVals[a] = Integer.parseInt(args[a], 16);
+            }
+            addWord(KEY_VARIABLE);
+            addWord(1 + args.length);
+            addWord(varVal);
+            for (int argVal : argVals) {
+                addWord(argVal);
+            }
         } else {
-            vals.add(1);
-            vals.add(varVal);
+            addWord(KEY_VARIABLE);
+            addWord(1);
+            addWord(varVal);
         }
-        return vals;
     }
 
-    private static int getVariableNumber(String variable, int romType) throws IOException {
-        int v = N3DSConstants.getVariableCode(variable,romType);
-        if (v != 0) {
+    private int getVariableNumber(String variable) throws IOException {
+        Integer v = variableCodes.get(variable);
+        if (v != null && v != 0) {
             return v;
         }
         try {
@@ -315,46 +305,58 @@ public class N3DSTxtHandler {
         }
     }
 
-    private static String getVariableString(byte[] data, RefInt refI) {
-        StringBuilder sb = new StringBuilder();
-        int count = readShort(data,refI.val);
-        refI.val += 2;
-        int variable = readShort(data,refI.val);
-        refI.val += 2;
+    /**
+     * Appends the variable starting at word i, and returns the index of the word after it.
+     */
+    private int appendVariableString(int i) {
+        int count = getWord(i++);
+        int variable = getWord(i++);
 
         switch (variable) {
             case KEY_TEXTRETURN:
-                return "\\r";
+                sb.append("\\r");
+                return i;
             case KEY_TEXTCLEAR:
-                return "\\c";
+                sb.append("\\c");
+                return i;
             case KEY_TEXTWAIT:
-                int time = readShort(data, refI.val);
-                refI.val += 2;
-                return String.format("[WAIT %d]", time);
+                int time = getWord(i++);
+                sb.append("[WAIT ").append(time).append(']');
+                return i;
             case KEY_TEXTNULL:
-                int line = readShort(data,refI.val);
-                refI.val += 2;
-                return String.format("[~ %d]",line);
+                int line = getWord(i++);
+                sb.append("[~ ").append(line).append(']');
+                return i;
         }
 
-        String varName = N3DSConstants.getTextVariableCodes(romType).getOrDefault(variable,String.format("%04X",variable));
-        sb.append("[VAR ").append(varName);
+        sb.append("[VAR ");
+        String varName = variableNames.get(variable);
+        if (varName != null) {
+            sb.append(varName);
+        } else {
+            appendHex(variable);
+        }
         if (count > 1) {
             sb.append("(");
-            while (count > 1 && refI.val < data.length) {
-                int arg = readShort(data,refI.val);
-                refI.val += 2;
-                sb.append(String.format("%04X",arg));
-                if (--count == 1 || refI.val >= data.length) break;
+            while (count > 1 && i < wordCount) {
+                int arg = getWord(i++);
+                appendHex(arg);
+                if (--count == 1 || i >= wordCount) break;
                 sb.append(",");
             }
             sb.append(")");
         }
         sb.append("]");
-        return sb.toString();
+        return i;
+    }
+
+    private void appendHex(int value) {
+        for (int shift = 12; shift >= 0; shift -= 4) {
+            sb.append(HEX_DIGITS[(value >> shift) & 0xF]);
+        }
     }
 
-    private static int tryRemapChar(int val) {
+    private int tryRemapChar(int val) {
         if (!remapChars) {
             return val;
         }
@@ -372,7 +374,7 @@ public class N3DSTxtHandler {
         }
     }
 
-    private static int tryUnmapChar(int val) {
+    private int tryUnmapChar(int val) {
         if (!remapChars) {
             return val;
         }
@@ -390,6 +392,24 @@ public class N3DSTxtHandler {
         }
     }
 
+    private int getWord(int index) {
+        if (index >= wordCount) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return words[index];
+    }
+
+    private void addWord(int value) {
+        ensureWords(wordCount + 1);
+        words[wordCount++] = value & 0xFFFF;
+    }
+
+    private void ensureWords(int capacity) {
+        if (words.length < capacity) {
+            words = Arrays.copyOf(words, Math.max(capacity, words.length * 2));
+        }
+    }
+
     private static int readShort(byte[] data, int offset) {
         return (data[offset] & 0xFF) + ((data[offset + 1] & 0xFF) << 8);
     }
@@ -399,11 +419,15 @@ public class N3DSTxtHandler {
                 + ((data[offset + 3] & 0xFF) << 24);
     }
 
-    private static class RefInt {
-        int val;
+    private static void writeShort(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value & 0xFF);
+        data[offset + 1] = (byte) ((value >> 8) & 0xFF);
+    }
 
-        RefInt(int val) {
-            this.val = val;
-        }
+    private static void writeLong(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value & 0xFF);
+        data[offset + 1] = (byte) ((value >> 8) & 0xFF);
+        data[offset + 2] = (byte) ((value >> 16) & 0xFF);
+        data[offset + 3] = (byte) ((value >> 24) & 0xFF);
     }
 }
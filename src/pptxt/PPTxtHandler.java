@@ -8,23 +8,31 @@ package pptxt;
 
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import com.dabomstew.pkrandom.FileFunctions;
-
+import com.dabomstew.pkrandom.TokenTrie;
+
+/**
+ * Reads and writes the text files of the generation 5 games.
+ * <br><br>
+ * The character table is shared, but each instance has its own buffers, which are reused between calls.
+ * So a PPTxtHandler must not be used by several threads at once, but each RomHandler can have its own.
+ */
 public class PPTxtHandler {
 
-    private static Map<String, String> pokeToText = new HashMap<>();
-    private static Map<String, String> textToPoke = new HashMap<>();
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
 
-    private static Pattern pokeToTextPattern, textToPokePattern;
+    // the table text of each char, or null for chars without one
+    private static final String[] pokeToText = new String[65536];
+    private static final TokenTrie textToPoke;
 
     static {
+        Map<String, Integer> textToPokeMap = new LinkedHashMap<>();
         try {
             Scanner sc = new Scanner(FileFunctions.openConfig("Generation5.tbl"), "UTF-8");
             while (sc.hasNextLine()) {
@@ -34,230 +42,165 @@ public class PPTxtHandler {
                     if (r[1].endsWith("\r\n")) {
                         r[1] = r[1].substring(0, r[1].length() - 2);
                     }
-                    pokeToText.put(Character.toString((char) Integer.parseInt(r[0], 16)), r[1].replace("\\", "\\\\")
-                            .replace("$", "\\$"));
-                    textToPoke.put(r[1], "\\\\x" + r[0]);
+                    int code = Integer.parseInt(r[0], 16);
+                    pokeToText[(char) code] = r[1];
+                    textToPokeMap.put(r[1], code);
                 }
             }
             sc.close();
-            pokeToTextPattern = makePattern(pokeToText.keySet());
-            textToPokePattern = makePattern(textToPoke.keySet());
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         }
+        textToPoke = new TokenTrie(textToPokeMap);
     }
 
-    private static Pattern makePattern(Iterable<String> tokens) {
-        String patternStr = "("
-                + implode(tokens, "|").replace("\\", "\\\\").replace("[", "\\[").replace("]", "\\]")
-                        .replace("(", "\\(").replace(")", "\\)") + ")";
-        return Pattern.compile(patternStr);
-    }
-
-    private static String implode(Iterable<String> tokens, String sep) {
-        StringBuilder sb = new StringBuilder();
-        boolean first = true;
-        for (String token : tokens) {
-            if (!first) {
-                sb.append(sep);
-            }
-            sb.append(token);
-            first = false;
-        }
-        return sb.toString();
-    }
+    private final StringBuilder sb = new StringBuilder();
+    private int[] words = new int[256];
 
     /**
      * Decompress the words given into chars according to 9bits per char format
      * Based off poketext's implementation of the same in gen4, but uses all 16
      * bits per word as opposed to 15
-     * 
+     *
      * @param chars
-     *            List of words, beginning with [F100] which is skipped.
-     * @return Decompressed list of integers corresponding to characters
+     *            Array of words, beginning with [F100] which is skipped.
+     * @param count
+     *            The number of words in chars.
+     * @return Decompressed array of integers corresponding to characters
      */
-    private static List<Integer> decompress(List<Integer> chars) {
-        List<Integer> uncomp = new ArrayList<>();
+    private static int[] decompress(int[] chars, int count) {
+        // at most two chars end in each word
+        int[] uncomp = new int[count * 2];
+        int uncompCount = 0;
         int j = 1;
         int shift1 = 0;
         int trans = 0;
         while (true) {
-            int tmp = chars.get(j);
-            tmp = tmp >> shift1;
-            int tmp1 = tmp;
+            if (j >= count) {
+                throw new IndexOutOfBoundsException("Index: " + j + ", Size: " + count);
+            }
+            int tmp1;
             if (shift1 >= 0x10) {
                 shift1 -= 0x10;
                 if (shift1 > 0) {
-                    tmp1 = (trans | ((chars.get(j) << (9 - shift1)) & 0x1FF));
+                    tmp1 = (trans | ((chars[j] << (9 - shift1)) & 0x1FF));
                     if ((tmp1 & 0xFF) == 0xFF) {
                         break;
                     }
                     if (tmp1 != 0x0 && tmp1 != 0x1) {
-                        uncomp.add(tmp1);
+                        uncomp[uncompCount++] = tmp1;
                     }
                 }
             } else {
-                tmp1 = ((chars.get(j) >> shift1) & 0x1FF);
+                tmp1 = ((chars[j] >> shift1) & 0x1FF);
                 if ((tmp1 & 0xFF) == 0xFF) {
                     break;
                 }
                 if (tmp1 != 0x0 && tmp1 != 0x1) {
-                    uncomp.add(tmp1);
+                    uncomp[uncompCount++] = tmp1;
                 }
                 shift1 += 9;
                 if (shift1 < 0x10) {
-                    trans = ((chars.get(j) >> shift1) & 0x1FF);
+                    trans = ((chars[j] >> shift1) & 0x1FF);
                     shift1 += 9;
                 }
                 j += 1;
             }
         }
-        return uncomp;
+        return Arrays.copyOf(uncomp, uncompCount);
     }
 
-    private static List<Integer> lastKeys;
-    private static List<Integer> lastUnknowns;
-
     /**
      * Take a byte-array corresponding to a NARC entry and build a list of
      * strings against the gen5 text encryption. Decompresses as appropriate.
-     * 
+     *
      * @param ds
      *            The data from this msg.narc entry
      * @return The list of strings
      */
-
-    public static List<String> readTexts(byte[] ds) {
-        int pos = 0;
-        int i = 0;
-        lastKeys = new ArrayList<>();
-        lastUnknowns = new ArrayList<>();
+    public List<String> readTexts(byte[] ds) {
         List<String> strings = new ArrayList<>();
-        int numSections, numEntries, tmpCharCount, tmpUnknown, tmpChar;
-        int tmpOffset;
-        int[] sizeSections = new int[] { 0, 0, 0 };
-        int[] sectionOffset = new int[] { 0, 0, 0 };
-        Map<Integer, List<Integer>> tableOffsets = new HashMap<>();
-        Map<Integer, List<Integer>> characterCount = new HashMap<>();
-        Map<Integer, List<Integer>> unknown = new HashMap<>();
-        Map<Integer, List<List<Integer>>> encText = new HashMap<>();
-        Map<Integer, List<List<String>>> decText = new HashMap<>();
-        StringBuilder sb;
-        int key;
-
-        numSections = readWord(ds, 0);
-        numEntries = readWord(ds, 2);
-        sizeSections[0] = readLong(ds, 4);
-        // unk1 = readLong(ds, 8);
-        pos += 12;
-        if (numSections > i) {
-            for (int z = 0; z < numSections; z++) {
-                sectionOffset[z] = readLong(ds, pos);
-                pos += 4;
-            }
-            pos = sectionOffset[i];
-            sizeSections[i] = readLong(ds, pos);
-            pos += 4;
-            tableOffsets.put(i, new ArrayList<>());
-            characterCount.put(i, new ArrayList<>());
-            unknown.put(i, new ArrayList<>());
-            encText.put(i, new ArrayList<>());
-            decText.put(i, new ArrayList<>());
+        int numSections = readWord(ds, 0);
+        int numEntries = readWord(ds, 2);
+        if (numSections > 0) {
+            int sectionOffset = readLong(ds, 12);
+            int pos = sectionOffset + 4;
             for (int j = 0; j < numEntries; j++) {
-                tmpOffset = readLong(ds, pos);
-                pos += 4;
-                tmpCharCount = readWord(ds, pos);
-                pos += 2;
-                tmpUnknown = readWord(ds, pos);
-                pos += 2;
-                tableOffsets.get(i).add(tmpOffset);
-                characterCount.get(i).add(tmpCharCount);
-                unknown.get(i).add(tmpUnknown);
-                lastUnknowns.add(tmpUnknown);
+                int entryOffset = readLong(ds, pos);
+                int charCount = readWord(ds, pos + 4);
+                pos += 8;
+                strings.add(readText(ds, sectionOffset + entryOffset, charCount));
             }
-            for (int j = 0; j < numEntries; j++) {
-                List<Integer> tmpEncChars = new ArrayList<>();
-                pos = sectionOffset[i] + tableOffsets.get(i).get(j);
-                for (int k = 0; k < characterCount.get(i).get(j); k++) {
-                    tmpChar = readWord(ds, pos);
-                    pos += 2;
-                    tmpEncChars.add(tmpChar);
-                }
-                encText.get(i).add(tmpEncChars);
-                key = encText.get(i).get(j).get(characterCount.get(i).get(j) - 1) ^ 0xFFFF;
-                for (int k = characterCount.get(i).get(j) - 1; k >= 0; k--) {
-                    encText.get(i).get(j).set(k, (encText.get(i).get(j).get(k)) ^ key);
-                    if (k == 0) {
-                        lastKeys.add(key);
-                    }
-                    key = ((key >>> 3) | (key << 13)) & 0xffff;
-                }
-                if (encText.get(i).get(j).get(0) == 0xF100) {
-                    encText.get(i).set(j, decompress(encText.get(i).get(j)));
-                    characterCount.get(i).set(j, encText.get(i).get(j).size());
-                }
-                List<String> chars = new ArrayList<>();
-                sb = new StringBuilder();
-                for (int k = 0; k < characterCount.get(i).get(j); k++) {
-                    if (encText.get(i).get(j).get(k) == 0xFFFF) {
-                        chars.add("\\xFFFF");
-                    } else {
-                        if (encText.get(i).get(j).get(k) > 20 && encText.get(i).get(j).get(k) <= 0xFFF0
-                                && Character.UnicodeBlock.of(encText.get(i).get(j).get(k)) != null) {
-                            chars.add("" + ((char) encText.get(i).get(j).get(k).intValue()));
-                        } else {
-                            String num = String.format("%04X", encText.get(i).get(j).get(k));
-                            chars.add("\\x" + num);
-                        }
-                        sb.append(chars.get(k));
-                    }
-                }
-                strings.add(sb.toString());
-                decText.get(i).add(chars);
-            }
-        }
-
-        // Parse strings against the table
-        for (int sn = 0; sn < strings.size(); sn++) {
-            strings.set(sn, bulkReplace(strings.get(sn), pokeToTextPattern, pokeToText));
         }
         return strings;
     }
 
-    private static String bulkReplace(String string, Pattern pattern, Map<String, String> replacements) {
-        Matcher matcher = pattern.matcher(string);
-
-        StringBuffer sb = new StringBuffer();
-        while (matcher.find()) {
-            matcher.appendReplacement(sb, replacements.get(matcher.group(1)));
+    private String readText(byte[] ds, int pos, int charCount) {
+        int[] chars = ensureWords(charCount);
+        for (int k = 0; k < charCount; k++) {
+            chars[k] = readWord(ds, pos + k * 2);
+        }
+        int key = chars[charCount - 1] ^ 0xFFFF;
+        for (int k = charCount - 1; k >= 0; k--) {
+            chars[k] ^= key;
+            key = ((key >>> 3) | (key << 13)) & 0xffff;
+        }
+        if (chars[0] == 0xF100) {
+            chars = decompress(chars, charCount);
+            charCount = chars.length;
         }
-        matcher.appendTail(sb);
 
+        sb.setLength(0);
+        for (int k = 0; k < charCount; k++) {
+            int c = chars[k];
+            if (c == 0xFFFF) {
+                continue;
+            }
+            if (c > 20 && c <= 0xFFF0 && Character.UnicodeBlock.of(c) != null) {
+                String text = pokeToText[c];
+                if (text != null) {
+                    sb.append(text);
+                } else {
+                    sb.append((char) c);
+                }
+            } else {
+                appendHexEscape(sb, c);
+            }
+        }
         return sb.toString();
     }
 
+    /**
+     * Reads the key each entry of the first section is encrypted with, from its last word.
+     */
+    private static int[] readKeys(byte[] ds, int sectionOffset, int numEntries) {
+        int[] keys = new int[numEntries];
+        int pos = sectionOffset + 4;
+        for (int j = 0; j < numEntries; j++) {
+            int entryOffset = readLong(ds, pos);
+            int charCount = readWord(ds, pos + 4);
+            pos += 8;
+            int key = readWord(ds, sectionOffset + entryOffset + (charCount - 1) * 2) ^ 0xFFFF;
+            // the key is rotated right by 3 for each word decrypted before the first
+            int rotation = ((charCount - 1) * 3) & 0xF;
+            keys[j] = ((key >>> rotation) | (key << (16 - rotation))) & 0xFFFF;
+        }
+        return keys;
+    }
+
     /**
      * Write newStrings to the text datafile originalData, as language 0 (the
      * only one in most releases BUT japanese). Return the resulting binary as a
      * byte-array. Will never use the [F100] compression, even if the original
      * file used it.
-     * 
+     *
      * @param originalData
      *            The original file, to copy stuff like unknowns.
      * @param text
      *            The new data.
      * @return The file to write back to the NARC.
      */
-    public static byte[] saveEntry(byte[] originalData, List<String> text) {
-
-        // Parse strings against the reverse table
-        for (int sn = 0; sn < text.size(); sn++) {
-            text.set(sn, bulkReplace(text.get(sn), textToPokePattern, textToPoke));
-        }
-
-        // Make sure we have the original unknowns etc
-        readTexts(originalData);
-
+    public byte[] saveEntry(byte[] originalData, List<String> text) {
         // Start getting stuff
         int numSections, numEntries;
         int[] sizeSections = new int[] { 0, 0, 0 };
@@ -278,7 +221,6 @@ public class PPTxtHandler {
             System.err.println("Can't do anything due to too few lines");
             return originalData;
         } else {
-            byte[] newEntry = makeSection(text, numEntries);
             for (int z = 0; z < numSections; z++) {
                 sectionOffset[z] = readLong(originalData, pos);
                 pos += 4;
@@ -287,6 +229,7 @@ public class PPTxtHandler {
                 pos = sectionOffset[z];
                 sizeSections[z] = readLong(originalData, pos);
             }
+            byte[] newEntry = makeSection(originalData, sectionOffset[0], text, numEntries);
             newsizeSections[0] = newEntry.length;
 
             byte[] newData = new byte[originalData.length - sizeSections[0] + newsizeSections[0]];
@@ -304,68 +247,106 @@ public class PPTxtHandler {
         }
     }
 
-    private static byte[] makeSection(List<String> strings, int numEntries) {
-        List<List<Integer>> data = new ArrayList<>();
-        int size = 0;
-        int offset = 4 + 8 * numEntries;
-        int charCount;
+    private byte[] makeSection(byte[] originalData, int originalSectionOffset, List<String> strings, int numEntries) {
+        // the keys and unknowns are kept from the original entries
+        int[] keys = readKeys(originalData, originalSectionOffset, numEntries);
+
+        // all entries go into words one after another, entry i starting at entryStarts[i]
+        int[] entryStarts = new int[numEntries + 1];
+        int wordCount = 0;
         for (int i = 0; i < numEntries; i++) {
-            data.add(parseString(strings.get(i), i));
-            size += (data.get(i).size() * 2);
+            entryStarts[i] = wordCount;
+            wordCount = parseString(strings.get(i), keys[i], wordCount);
         }
+        int size = wordCount * 2;
         if (size % 4 == 2) {
             size += 2;
-            int tmpKey = lastKeys.get(numEntries - 1);
-            for (int i = 0; i < data.get(numEntries - 1).size(); i++) {
+            int tmpKey = keys[numEntries - 1];
+            for (int i = entryStarts[numEntries - 1]; i < wordCount; i++) {
                 tmpKey = ((tmpKey << 3) | (tmpKey >> 13)) & 0xFFFF;
             }
-            data.get(numEntries - 1).add(0xFFFF ^ tmpKey);
+            ensureWords(wordCount + 1)[wordCount++] = 0xFFFF ^ tmpKey;
         }
+        entryStarts[numEntries] = wordCount;
+
+        int offset = 4 + 8 * numEntries;
         size += offset;
         byte[] section = new byte[size];
         int pos = 0;
         writeLong(section, pos, size);
         pos += 4;
         for (int i = 0; i < numEntries; i++) {
-            charCount = data.get(i).size();
+            int charCount = entryStarts[i + 1] - entryStarts[i];
+            int unknown = readWord(originalData, originalSectionOffset + 4 + i * 8 + 6);
             writeLong(section, pos, offset);
             pos += 4;
             writeWord(section, pos, charCount);
             pos += 2;
-            writeWord(section, pos, lastUnknowns.get(i));
+            writeWord(section, pos, unknown);
             pos += 2;
             offset += (charCount * 2);
         }
-        for (int i = 0; i < numEntries; i++) {
-            for (int word : data.get(i)) {
-                writeWord(section, pos, word);
-                pos += 2;
-            }
+        for (int i = 0; i < wordCount; i++) {
+            writeWord(section, pos, words[i]);
+            pos += 2;
         }
         return section;
     }
 
-    private static List<Integer> parseString(String string, int entry_id) {
-        List<Integer> chars = new ArrayList<>();
-        for (int i = 0; i < string.length(); i++) {
-            if (string.charAt(i) != '\\') {
-                chars.add((int) string.charAt(i));
+    /**
+     * Encodes and encrypts a string into words, starting at index start.
+     *
+     * @return The index after the last word written.
+     */
+    private int parseString(String string, int key, int start) {
+        // first replace the tokens of the table by their \xXXXX escapes...
+        sb.setLength(0);
+        int length = string.length();
+        for (int i = 0; i < length; ) {
+            int match = textToPoke.match(string, i, length);
+            if (match != -1) {
+                appendHexEscape(sb, textToPoke.getValue(match));
+                i += textToPoke.getLength(match);
+            } else {
+                sb.append(string.charAt(i++));
+            }
+        }
+
+        // ...then turn the chars and escapes into words
+        int[] chars = ensureWords(start + sb.length() + 1);
+        int count = start;
+        for (int i = 0; i < sb.length(); i++) {
+            if (sb.charAt(i) != '\\') {
+                chars[count++] = sb.charAt(i);
             } else {
-                if (((i + 2) < string.length()) && string.charAt(i + 2) == '{') {
-                    chars.add((int) string.charAt(i));
+                if (((i + 2) < sb.length()) && sb.charAt(i + 2) == '{') {
+                    chars[count++] = sb.charAt(i);
                 } else {
-                    chars.add(Integer.parseInt(string.substring(i + 2, i + 6), 16));
+                    chars[count++] = Integer.parseInt(sb.substring(i + 2, i + 6), 16);
                     i += 5;
                 }
             }
         }
-        chars.add(0xFFFF);
-        int key = lastKeys.get(entry_id);
-        for (int i = 0; i < chars.size(); i++) {
-            chars.set(i, (chars.get(i) ^ key) & 0xFFFF);
+        chars[count++] = 0xFFFF;
+        for (int i = start; i < count; i++) {
+            chars[i] = (chars[i] ^ key) & 0xFFFF;
             key = ((key << 3) | (key >>> 13)) & 0xFFFF;
         }
-        return chars;
+        return count;
+    }
+
+    private int[] ensureWords(int capacity) {
+        if (words.length < capacity) {
+            words = Arrays.copyOf(words, Math.max(capacity, words.length * 2));
+        }
+        return words;
+    }
+
+    private static void appendHexEscape(StringBuilder sb, int value) {
+        sb.append('\\').append('x');
+        for (int shift = 12; shift >= 0; shift -= 4) {
+            sb.append(HEX_DIGITS[(value >> shift) & 0xF]);
+        }
     }
 
     private static int readWord(byte[] data, int offset) {
@@ -22,6 +22,7 @@ package randompoint;
 
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 /**
@@ -29,7 +30,10 @@ import java.util.function.Function;
  * function. This is done by picking completely random points, until it finds
  * one "under" a n-dimensional curve created by the weight function. As such,
  * the time it takes depends on the weight function.
- *
+ * <br><br>
+ * Once constructed, {@link #getRandomPoint(Random)} does not change the
+ * RandomPointSelector other than its statistics, so it may be called by several
+ * threads at once, each with their own {@link Random}.
  */
 public class RandomPointSelector {
 
@@ -40,8 +44,8 @@ public class RandomPointSelector {
 		private final double[] coordinates;
 		private final double value;
 
-		public Point() {
-			coordinates = randomCoordinatesWithinBounds();
+		public Point(Random random) {
+			coordinates = randomCoordinatesWithinBounds(random);
 			value = random.nextDouble() * getMaxValue();
 
 		}
@@ -61,8 +65,8 @@ public class RandomPointSelector {
 
 	private Function<double[], Double> weightFunction;
 
-	private int tries;
-	private int hits;
+	private final AtomicInteger tries = new AtomicInteger();
+	private final AtomicInteger hits = new AtomicInteger();
 
 	/**
 	 * Constructs a new RandomPointSelector.
@@ -98,13 +102,13 @@ public class RandomPointSelector {
 	private double generateMaxValueBySample(int sampleNum) {
 		double max = 0;
 		for (int i = 0; i < sampleNum; i++) {
-			double value = curveValueAt(randomCoordinatesWithinBounds());
+			double value = curveValueAt(randomCoordinatesWithinBounds(random));
 			max = Math.max(max, value);
 		}
 		return max;
 	}
 
-	private double[] randomCoordinatesWithinBounds() {
+	private double[] randomCoordinatesWithinBounds(Random random) {
 		double[] coordinates = new double[getDimensions()];
 		for (int i = 0; i < coordinates.length; i++) {
 			coordinates[i] = random.nextDouble() * (upperBounds[i] - lowerBounds[i]) + lowerBounds[i];
@@ -121,16 +125,24 @@ public class RandomPointSelector {
 	}
 
 	public double[] getRandomPoint() {
+		return getRandomPoint(random);
+	}
+
+	/**
+	 * Selects a random point, using the given {@link Random} instead of the one
+	 * of this RandomPointSelector.
+	 */
+	public double[] getRandomPoint(Random random) {
 
-		Point point = new Point();
-		tries++;
+		Point point = new Point(random);
+		tries.incrementAndGet();
 		for (int i = 0; i < MAX_ATTEMPTS; i++) {
 			if (underCurve(point)) {
-				hits++;
+				hits.incrementAndGet();
 				return point.coordinates;
 			}
-			point = new Point();
-			tries++;
+			point = new Point(random);
+			tries.incrementAndGet();
 		}
 		throw new RuntimeException("Picking point took too long, exceeded " + MAX_ATTEMPTS + " attempts.");
 	}
@@ -154,10 +166,11 @@ public class RandomPointSelector {
 	 * selected, the number will always be 0.
 	 */
 	public double getRelativeMeasureUnderCurve() {
+		int tries = this.tries.get();
 		if (tries == 0) {
 			return 0;
 		}
-		return ((double) hits) / ((double) tries);
+		return ((double) hits.get()) / ((double) tries);
 	}
 
 	public Random getRandom() {
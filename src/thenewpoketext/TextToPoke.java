@@ -6,178 +6,148 @@ package thenewpoketext;
 /*--  Ported to Java and bugfixed/customized by Dabomstew                   --*/
 /*----------------------------------------------------------------------------*/
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import com.dabomstew.pkrandom.TokenTrie;
+
 public class TextToPoke {
 
+    // the longest text in the table which is looked for
+    private static final int MAX_TEXT_LENGTH = 6;
+
     public static byte[] MakeFile(List<String> textarr, boolean compressed) {
         int base = textarr.size() * 8 + 4;
-        List<PointerEntry> ptrtable = new ArrayList<>();
-        List<List<Integer>> rawdata = new ArrayList<>();
-        for (String aTextarr : textarr) {
-            List<Integer> data = ToCode(aTextarr, compressed);
-            int l = data.size();
-            ptrtable.add(new PointerEntry(base, l));
-            rawdata.add(data);
-            base += l * 2;
+        int[][] rawdata = new int[textarr.size()][];
+        int dataLength = 0;
+        for (int i = 0; i < textarr.size(); i++) {
+            rawdata[i] = ToCode(textarr.get(i), compressed);
+            dataLength += rawdata[i].length * 2;
         }
 
-        List<Integer> hdr = Arrays.asList(textarr.size(), 0);
-
-        return join(wordListToBarr(hdr), pointerListToBarr(ptrtable), listOfWordListToBarr(rawdata));
+        byte[] barr = new byte[base + dataLength];
+        writeWord(barr, 0, textarr.size());
+        writeWord(barr, 2, 0);
+        for (int i = 0; i < rawdata.length; i++) {
+            int l = rawdata[i].length;
+            writeLong(barr, 4 + i * 8, base);
+            writeLong(barr, 4 + i * 8 + 4, l);
+            for (int j = 0; j < l; j++) {
+                writeWord(barr, base + j * 2, rawdata[i][j]);
+            }
+            base += l * 2;
+        }
+        return barr;
     }
 
-    private static List<Integer> ToCode(String text, boolean compressed) {
-        List<Integer> data = new ArrayList<>();
-        while (text.length() != 0) {
-            int i = Math.max(0, 6 - text.length());
-            if (text.charAt(0) == '\\') {
-                if (text.charAt(1) == 'x') {
-                    data.add(Integer.parseInt(text.substring(2, 6), 16));
-                    text = text.substring(6);
-                } else if (text.charAt(1) == 'v') {
+    private static int[] ToCode(String text, boolean compressed) {
+        WordList data = new WordList(text.length() + 1);
+        int pos = 0;
+        while (pos < text.length()) {
+            if (text.charAt(pos) == '\\') {
+                if (text.charAt(pos + 1) == 'x') {
+                    data.add(Integer.parseInt(text.substring(pos + 2, pos + 6), 16));
+                    pos += 6;
+                } else if (text.charAt(pos + 1) == 'v') {
                     data.add(0xFFFE);
-                    data.add(Integer.parseInt(text.substring(2, 6), 16));
-                    text = text.substring(6);
-                } else if (text.charAt(1) == 'z') {
-                    List<Integer> var = new ArrayList<>();
-                    int w = 0;
-                    while (text.length() != 0) {
-                        if (text.charAt(0) == '\\' && text.charAt(1) == 'z') {
-                            w++;
-                            var.add(Integer.parseInt(text.substring(2, 6), 16));
-                            text = text.substring(6);
+                    data.add(Integer.parseInt(text.substring(pos + 2, pos + 6), 16));
+                    pos += 6;
+                } else if (text.charAt(pos + 1) == 'z') {
+                    WordList var = new WordList(4);
+                    while (pos < text.length()) {
+                        if (text.charAt(pos) == '\\' && text.charAt(pos + 1) == 'z') {
+                            var.add(Integer.parseInt(text.substring(pos + 2, pos + 6), 16));
+                            pos += 6;
                         } else {
                             break;
                         }
                     }
-                    data.add(w);
+                    data.add(var.size);
                     data.addAll(var);
-                } else if (text.charAt(1) == 'n') {
+                } else if (text.charAt(pos + 1) == 'n') {
                     data.add(0xE000);
-                    text = text.substring(2);
-                } else if (text.charAt(1) == 'p') {
+                    pos += 2;
+                } else if (text.charAt(pos + 1) == 'p') {
                     data.add(0x25BC);
-                    text = text.substring(2);
-                } else if (text.charAt(1) == 'l') {
+                    pos += 2;
+                } else if (text.charAt(pos + 1) == 'l') {
                     data.add(0x25BD);
-                    text = text.substring(2);
-                } else if (text.substring(1, 4).equals("and")) {
+                    pos += 2;
+                } else if (text.substring(pos + 1, pos + 4).equals("and")) {
                     data.add(0x1C2);
-                    text = text.substring(4);
+                    pos += 4;
                 } else {
-                    System.out.printf("unknown escape: %s\n", text.substring(1, 2));
-                    text = text.substring(2);
+                    System.out.printf("unknown escape: %s\n", text.substring(pos + 1, pos + 2));
+                    pos += 2;
                 }
             } else {
-                while (!(UnicodeParser.d.containsKey(text.substring(0, 6 - i)) || (i == 6))) {
-                    i++;
-                }
-                if (i == 6) {
-                    System.out.printf("Char not found %s(%x)", text.substring(0, 1), (byte)text.charAt(0));
-                    text = text.substring(1);
+                TokenTrie trie = UnicodeParser.dTrie;
+                int match = trie.match(text, pos, Math.min(text.length(), pos + MAX_TEXT_LENGTH));
+                if (match == -1) {
+                    System.out.printf("Char not found %s(%x)", text.substring(pos, pos + 1), (byte)text.charAt(pos));
+                    pos += 1;
                 } else {
-                    data.add(UnicodeParser.d.get(text.substring(0, 6 - i)));
-                    text = text.substring(6 - i);
+                    data.add(trie.getValue(match));
+                    pos += trie.getLength(match);
                 }
             }
         }
         if (compressed) {
-            if (data.size() % 5 != 0 || data.size() == 0) {
+            if (data.size % 5 != 0 || data.size == 0) {
                 data.add(0x1FF);
             }
-            byte[] bits = new byte[data.size() * 9];
-            int bc = 0;
-            for (Integer aData : data) {
-                for (int j = 0; j < 9; j++) {
-                    bits[bc++] = (byte) ((aData >> j) & 1);
-                }
-            }
+            // packs the 9-bit chars into 15-bit words
+            int bitCount = data.size * 9;
+            WordList packed = new WordList(bitCount / 15 + 3);
+            packed.add(0xF100);
             int tmp_uint16 = 0;
-            data.clear();
-            data.add(0xF100);
-            for (int i = 0; i < bits.length; i++) {
+            for (int i = 0; i < bitCount; i++) {
                 if (i % 15 == 0 && i != 0) {
-                    data.add(tmp_uint16);
+                    packed.add(tmp_uint16);
                     tmp_uint16 = 0;
                 }
-                tmp_uint16 |= (bits[i] << (i % 15));
+                int bit = (data.words[i / 9] >> (i % 9)) & 1;
+                tmp_uint16 |= (bit << (i % 15));
             }
-            data.add(tmp_uint16);
+            packed.add(tmp_uint16);
+            data = packed;
         }
         data.add(0xFFFF);
-        return data;
+        return Arrays.copyOf(data.words, data.size);
     }
 
-    private static byte[] join(byte[]... args) {
-        int tlen = 0;
-        for (byte[] arr : args) {
-            tlen += arr.length;
-        }
-        byte[] barr = new byte[tlen];
-        int offs = 0;
-        for (byte[] arr : args) {
-            System.arraycopy(arr, 0, barr, offs, arr.length);
-            offs += arr.length;
-        }
-        return barr;
+    private static void writeWord(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value & 0xFF);
+        data[offset + 1] = (byte) ((value >> 8) & 0xFF);
     }
 
-    private static byte[] wordListToBarr(List<Integer> list) {
-        byte[] barr = new byte[list.size() * 2];
-        int l = list.size();
-        for (int i = 0; i < l; i++) {
-            barr[i * 2] = (byte) (list.get(i) & 0xFF);
-            barr[i * 2 + 1] = (byte) ((list.get(i) >> 8) & 0xFF);
-        }
-        return barr;
+    private static void writeLong(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value & 0xFF);
+        data[offset + 1] = (byte) ((value >> 8) & 0xFF);
+        data[offset + 2] = (byte) ((value >> 16) & 0xFF);
+        data[offset + 3] = (byte) ((value >> 24) & 0xFF);
     }
 
-    private static byte[] pointerListToBarr(List<PointerEntry> ptrList) {
-        byte[] data = new byte[ptrList.size() * 8];
-        int l = ptrList.size();
-        for (int i = 0; i < l; i++) {
-            int ofs = i * 8;
-            PointerEntry ent = ptrList.get(i);
-            data[ofs] = (byte) (ent.ptr & 0xFF);
-            data[ofs + 1] = (byte) ((ent.ptr >> 8) & 0xFF);
-            data[ofs + 2] = (byte) ((ent.ptr >> 16) & 0xFF);
-            data[ofs + 3] = (byte) ((ent.ptr >> 24) & 0xFF);
-            data[ofs + 4] = (byte) (ent.chars & 0xFF);
-            data[ofs + 5] = (byte) ((ent.chars >> 8) & 0xFF);
-            data[ofs + 6] = (byte) ((ent.chars >> 16) & 0xFF);
-            data[ofs + 7] = (byte) ((ent.chars >> 24) & 0xFF);
-        }
-        return data;
-    }
+    private static class WordList {
+
+        private int[] words;
+        private int size;
 
-    private static byte[] listOfWordListToBarr(List<List<Integer>> list) {
-        int tlen = 0;
-        for (List<Integer> subList : list) {
-            tlen += subList.size() * 2;
+        public WordList(int capacity) {
+            this.words = new int[Math.max(capacity, 1)];
         }
-        byte[] barr = new byte[tlen];
-        int offs = 0;
-        for (List<Integer> slist : list) {
-            for (Integer aSlist : slist) {
-                barr[offs] = (byte) (aSlist & 0xFF);
-                barr[offs + 1] = (byte) ((aSlist >> 8) & 0xFF);
-                offs += 2;
+
+        public void add(int word) {
+            if (size == words.length) {
+                words = Arrays.copyOf(words, size * 2);
             }
+            words[size++] = word;
         }
-        return barr;
-    }
 
-    private static class PointerEntry {
-
-        private int ptr;
-        private int chars;
-
-        public PointerEntry(int ptr, int chars) {
-            this.ptr = ptr;
-            this.chars = chars;
+        public void addAll(WordList other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.words[i]);
+            }
         }
     }
 
@@ -12,11 +12,14 @@ import java.util.Map;
 import java.util.Scanner;
 
 import com.dabomstew.pkrandom.FileFunctions;
+import com.dabomstew.pkrandom.TokenTrie;
 
 public class UnicodeParser {
 
     public static String[] tb = new String[65536];
     public static Map<String, Integer> d = new HashMap<>();
+    // d, for finding the longest text at a position in one go
+    static final TokenTrie dTrie;
 
     static {
         try {
@@ -36,6 +39,7 @@ public class UnicodeParser {
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         }
+        dTrie = new TokenTrie(d);
     }
 
 }
@@ -0,0 +1,109 @@
+package test;
+
+import com.dabomstew.pkrandom.MultiPatternSearch;
+import com.dabomstew.pkrandom.RomFunctions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MultiPatternSearchTest {
+
+    private static final int HAYSTACK_LENGTH = 20000;
+    private static final long LOAD_CRC = 0x12345678L;
+
+    @Test
+    public void searchFindsSameAsRomFunctionsSearch() {
+        Random random = new Random(1);
+        for (int round = 0; round < 50; round++) {
+            byte[] haystack = randomBytes(random, HAYSTACK_LENGTH, 3);
+            List<byte[]> needles = randomNeedles(random);
+            assertSameAsRomFunctions(haystack, needles, new MultiPatternSearch(needles).search(haystack));
+        }
+    }
+
+    @Test
+    public void cacheFindsOccurrencesCreatedByWrites() {
+        byte[] haystack = new byte[HAYSTACK_LENGTH];
+        byte[] needle = new byte[]{1, 2, 3, 4};
+        List<byte[]> needles = Arrays.asList(needle);
+        MultiPatternSearch.Cache cache = new MultiPatternSearch.Cache();
+        assertEquals(Arrays.asList(new ArrayList<Integer>()), cache.search(LOAD_CRC, haystack, needles));
+
+        System.arraycopy(needle, 0, haystack, 4094, needle.length); // across a block boundary
+        System.arraycopy(needle, 0, haystack, 10000, needle.length);
+        assertEquals(Arrays.asList(Arrays.asList(4094, 10000)), cache.search(LOAD_CRC, haystack, needles));
+
+        haystack[10001] = 0;
+        assertEquals(Arrays.asList(Arrays.asList(4094)), cache.search(LOAD_CRC, haystack, needles));
+    }
+
+    @Test
+    public void cacheFindsSameAsRomFunctionsSearchAfterWrites() {
+        Random random = new Random(2);
+        for (int round = 0; round < 20; round++) {
+            byte[] loaded = randomBytes(random, HAYSTACK_LENGTH, 3);
+            byte[] haystack = loaded.clone();
+            MultiPatternSearch.Cache cache = new MultiPatternSearch.Cache();
+            for (int seed = 0; seed < 10; seed++) {
+                // like restoring a snapshot before each seed of a batch
+                System.arraycopy(loaded, 0, haystack, 0, loaded.length);
+                for (int search = 0; search < 5; search++) {
+                    int writes = random.nextInt(5);
+                    for (int i = 0; i < writes; i++) {
+                        byte[] written = randomBytes(random, 1 + random.nextInt(64), 3);
+                        int offset = random.nextInt(haystack.length - written.length);
+                        System.arraycopy(written, 0, haystack, offset, written.length);
+                    }
+                    List<byte[]> needles = randomNeedles(random);
+                    assertSameAsRomFunctions(haystack, needles, cache.search(LOAD_CRC, haystack, needles));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void findChangedBlocksMergesAdjacentBlocks() {
+        byte[] a = new byte[14000];
+        byte[] b = a.clone();
+        b[5] = 1;
+        b[4096] = 1;
+        b[13999] = 1;
+        List<int[]> changed = RomFunctions.findChangedBlocks(a, b, 4096);
+        assertEquals(2, changed.size());
+        assertEquals(Arrays.toString(new int[]{0, 8192}), Arrays.toString(changed.get(0)));
+        assertEquals(Arrays.toString(new int[]{12288, 14000}), Arrays.toString(changed.get(1)));
+        assertEquals(0, RomFunctions.findChangedBlocks(a, a.clone(), 4096).size());
+    }
+
+    private static void assertSameAsRomFunctions(byte[] haystack, List<byte[]> needles, List<List<Integer>> found) {
+        assertEquals(needles.size(), found.size());
+        for (int i = 0; i < needles.size(); i++) {
+            assertEquals(RomFunctions.search(haystack, needles.get(i)), found.get(i),
+                    "needle " + Arrays.toString(needles.get(i)));
+        }
+    }
+
+    private static List<byte[]> randomNeedles(Random random) {
+        List<byte[]> needles = new ArrayList<>();
+        int count = 1 + random.nextInt(6);
+        for (int i = 0; i < count; i++) {
+            // a small alphabet gives plenty of (overlapping) occurrences
+            needles.add(randomBytes(random, 1 + random.nextInt(8), 3));
+        }
+        return needles;
+    }
+
+    private static byte[] randomBytes(Random random, int length, int alphabet) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) random.nextInt(alphabet);
+        }
+        return bytes;
+    }
+
+}
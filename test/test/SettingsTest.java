@@ -0,0 +1,84 @@
+package test;
+
+import com.dabomstew.pkrandom.Settings;
+import com.dabomstew.pkrandom.Version;
+import com.dabomstew.pkrandom.gamedata.ExpCurve;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SettingsTest {
+
+    @Test
+    public void oldSettingsKeepTheirVersionThroughWriteAndRead() throws IOException {
+        Settings settings = makeSettings(Version.FVX_1_1_2.id);
+        Settings read = writeAndRead(settings);
+        assertEquals(Version.FVX_1_1_2.id, read.getVersion());
+        assertEquals(settings.toString(), read.toString());
+    }
+
+    @Test
+    public void currentSettingsKeepTheirVersionThroughWriteAndRead() throws IOException {
+        Settings settings = makeSettings(Version.VERSION);
+        Settings read = writeAndRead(settings);
+        assertEquals(Version.VERSION, read.getVersion());
+        assertEquals(settings.toString(), read.toString());
+    }
+
+    @Test
+    public void settingsOlderThanTheirLayoutAreNotUpdatedTwice() throws IOException {
+        // the written data already has the current layout, so it can't claim to be from before 1.1.0
+        Settings settings = makeSettings(Version.FVX_1_0_3.id);
+        Settings read = writeAndRead(settings);
+        assertEquals(Version.FVX_1_1_0.id, read.getVersion());
+        assertEquals(settings.toString(), read.toString());
+    }
+
+    @Test
+    public void oldSettingsKeepTheirVersionThroughVersionedString() {
+        Settings settings = makeSettings(Version.FVX_1_1_2.id);
+        String versionedString = settings.toVersionedString();
+        assertTrue(versionedString.startsWith(Integer.toString(Version.FVX_1_1_2.id)));
+        Settings read = assertDoesNotThrow(() -> Settings.fromVersionedString(versionedString));
+        assertEquals(Version.FVX_1_1_2.id, read.getVersion());
+        assertEquals(settings.toString(), read.toString());
+    }
+
+    @Test
+    public void oldSettingsStringsAreUpdatedToTheCurrentLayout() {
+        Settings settings = makeSettings(Version.FVX_1_1_2.id);
+        assertEquals(settings.toString(), Settings.toCurrentLayout(settings.toVersionedString()));
+    }
+
+    @Test
+    public void newerSettingsStringsCanNotBeRead() {
+        String versionedString = (Version.VERSION + 1) + makeSettings(Version.VERSION).toString();
+        assertThrows(UnsupportedOperationException.class, () -> Settings.toCurrentLayout(versionedString));
+        assertThrows(UnsupportedOperationException.class, () -> Settings.fromVersionedString(versionedString));
+    }
+
+    private static Settings makeSettings(int version) {
+        Settings settings = new Settings();
+        settings.setRomName("Pokemon Red (U)");
+        settings.setSelectedEXPCurve(ExpCurve.MEDIUM_FAST);
+        settings.setVersion(version);
+        return settings;
+    }
+
+    private static Settings writeAndRead(Settings settings) throws IOException {
+        File file = File.createTempFile("settings", ".rnqs");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            settings.write(out);
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            return Settings.read(in);
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+package test.compressors;
+
+import cuecompressors.BLZCoder;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BLZCoderTest {
+
+    private static byte[] getTestData() {
+        // compressible, but not trivially so
+        Random random = new Random(0x0B12);
+        byte[] data = new byte[0x20000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (random.nextInt(16) == 0 ? random.nextInt(256) : (i / 7) % 50);
+        }
+        return data;
+    }
+
+    @ParameterizedTest
+    @EnumSource(BLZCoder.Mode.class)
+    public void encodedDecodesToInput(BLZCoder.Mode mode) {
+        byte[] data = getTestData();
+        byte[] encoded = new BLZCoder(null).BLZ_EncodePub(data, false, mode, "test");
+        assertTrue(encoded.length < data.length);
+        assertArrayEquals(data, new BLZCoder(null).BLZ_DecodePub(encoded, "test"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(BLZCoder.Mode.class)
+    public void encodedArm9DecodesToInput(BLZCoder.Mode mode) {
+        byte[] data = getTestData();
+        byte[] encoded = new BLZCoder(null).BLZ_EncodePub(data, true, mode, "arm9.bin");
+        assertTrue(encoded.length < data.length);
+        assertArrayEquals(data, new BLZCoder(null).BLZ_DecodePub(encoded, "arm9.bin"));
+    }
+
+}
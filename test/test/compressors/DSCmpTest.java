@@ -0,0 +1,138 @@
+package test.compressors;
+
+import compressors.DSCmp;
+import compressors.DSDecmp;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DSCmpTest {
+
+    private static final String[] TEST_DATA_NAMES = new String[]{"single", "short", "zeros", "random", "pattern",
+            "lowEntropy", "longRuns"};
+
+    // the MD5 digests of what the brute force LZ10/LZ11 compressors, which DSCmp replaced, gave for the test data
+    private static final Map<String, String> LZ10_DIGESTS = new HashMap<>();
+    private static final Map<String, String> LZ11_DIGESTS = new HashMap<>();
+
+    static {
+        LZ10_DIGESTS.put("single", "801eee5b2deb73f345150d90533ef30f");
+        LZ10_DIGESTS.put("short", "6aaadec54d7d615b20b70a1b694172a9");
+        LZ10_DIGESTS.put("zeros", "57e730d3752d28d87ea697900287f248");
+        LZ10_DIGESTS.put("random", "7e321b80e1a998ee0e9e742e42013147");
+        LZ10_DIGESTS.put("pattern", "4e5f92961de0d98fb56f3f33b4449e43");
+        LZ10_DIGESTS.put("lowEntropy", "c21a784c6cc8486cf6a474f0e5bfb00b");
+        LZ10_DIGESTS.put("longRuns", "398f82f49249f3684e896b92495ef18a");
+        LZ11_DIGESTS.put("single", "7c005cde87d525cd961a643ed5353bc7");
+        LZ11_DIGESTS.put("short", "3d9b44af7ab6beef92b7955ea03bcf2d");
+        LZ11_DIGESTS.put("zeros", "12e758e8075f393b77970419f9471bc9");
+        LZ11_DIGESTS.put("random", "ec9c2198dd8b12bb44854570d2112608");
+        LZ11_DIGESTS.put("pattern", "e31417c07e45e531873d6f062a35a7bf");
+        LZ11_DIGESTS.put("lowEntropy", "a7166d71e1e0c97debbf985c48760133");
+        LZ11_DIGESTS.put("longRuns", "cee9dea95cf26da8d12ef05600fa09b9");
+    }
+
+    public static String[] getTestDataNames() {
+        return TEST_DATA_NAMES;
+    }
+
+    static byte[] getTestData(String name) {
+        Random random = new Random(name.hashCode());
+        byte[] data;
+        switch (name) {
+            case "single":
+                return new byte[]{7};
+            case "short":
+                return new byte[]{1, 2, 1, 2, 1};
+            case "zeros":
+                return new byte[0x20000];
+            case "random":
+                data = new byte[0x8000];
+                random.nextBytes(data);
+                return data;
+            case "pattern":
+                data = new byte[0x10000];
+                for (int i = 0; i < data.length; i++) {
+                    data[i] = (byte) (i % 37 + i / 1000);
+                }
+                return data;
+            case "lowEntropy":
+                data = new byte[0x10000];
+                for (int i = 0; i < data.length; i++) {
+                    data[i] = (byte) random.nextInt(4);
+                }
+                return data;
+            case "longRuns":
+                data = new byte[0x30000];
+                for (int i = 0; i < data.length; ) {
+                    int run = random.nextInt(0x2000);
+                    byte value = (byte) random.nextInt(3);
+                    for (int j = 0; j < run && i < data.length; j++) {
+                        data[i++] = value;
+                    }
+                }
+                return data;
+            default:
+                throw new IllegalArgumentException(name);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("getTestDataNames")
+    public void compatibleLZ10IsSameAsBruteForce(String name) {
+        byte[] data = getTestData(name);
+        assertEquals(LZ10_DIGESTS.get(name), digest(DSCmp.compressLZ10(data, DSCmp.Level.COMPATIBLE)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("getTestDataNames")
+    public void compatibleLZ11IsSameAsBruteForce(String name) {
+        byte[] data = getTestData(name);
+        assertEquals(LZ11_DIGESTS.get(name), digest(DSCmp.compressLZ11(data, DSCmp.Level.COMPATIBLE)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("getTestDataNames")
+    public void allLZ10LevelsDecompressToInput(String name) {
+        byte[] data = getTestData(name);
+        for (DSCmp.Level level : DSCmp.Level.values()) {
+            assertArrayEquals(data, decompress(DSCmp.compressLZ10(data, level)), level.toString());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("getTestDataNames")
+    public void allLZ11LevelsDecompressToInput(String name) {
+        byte[] data = getTestData(name);
+        for (DSCmp.Level level : DSCmp.Level.values()) {
+            assertArrayEquals(data, decompress(DSCmp.compressLZ11(data, level)), level.toString());
+        }
+    }
+
+    private static String digest(byte[] data) {
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("MD5").digest(data)) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static byte[] decompress(byte[] compressed) {
+        // the decompressor reads whole blocks of 8, so like in a ROM, there has to be something after the end
+        return DSDecmp.Decompress(Arrays.copyOf(compressed, compressed.length + 0x20));
+    }
+
+}
@@ -0,0 +1,135 @@
+package test.compressors;
+
+import com.dabomstew.pkrandom.DecompressionCache;
+import com.dabomstew.pkrandom.FileFunctions;
+import cuecompressors.BLZCoder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DecompressionCacheTest {
+
+    private static byte[] getDecoded(int seed) {
+        byte[] data = new byte[0x8000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ((i / 5 + seed) % 40);
+        }
+        return data;
+    }
+
+    private static byte[] encode(byte[] decoded) {
+        return new BLZCoder(null).BLZ_EncodePub(decoded, false, BLZCoder.Mode.NORMAL, "test");
+    }
+
+    @Test
+    public void secondDecodeIsAHit() {
+        DecompressionCache cache = new DecompressionCache(1 << 20, null);
+        byte[] decoded = getDecoded(0);
+        byte[] encoded = encode(decoded);
+        long crc = FileFunctions.getCRC32(encoded);
+        assertArrayEquals(decoded, cache.decode(encoded, crc, "test"));
+        assertArrayEquals(decoded, cache.decode(encoded, crc, "test"));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void returnedArraysCanBeModified() {
+        DecompressionCache cache = new DecompressionCache(1 << 20, null);
+        byte[] decoded = getDecoded(0);
+        byte[] encoded = encode(decoded);
+        long crc = FileFunctions.getCRC32(encoded);
+        cache.decode(encoded, crc, "test")[0]++;
+        cache.decode(encoded, crc, "test")[0]++;
+        assertArrayEquals(decoded, cache.decode(encoded, crc, "test"));
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        // room for two
+        DecompressionCache cache = new DecompressionCache(0x10000, null);
+        byte[][] encoded = new byte[3][];
+        long[] crcs = new long[3];
+        for (int i = 0; i < 3; i++) {
+            encoded[i] = encode(getDecoded(i));
+            crcs[i] = FileFunctions.getCRC32(encoded[i]);
+        }
+        cache.decode(encoded[0], crcs[0], "test");
+        cache.decode(encoded[1], crcs[1], "test");
+        cache.decode(encoded[0], crcs[0], "test");
+        cache.decode(encoded[2], crcs[2], "test"); // evicts 1
+        assertEquals(1, cache.getHits());
+        cache.decode(encoded[0], crcs[0], "test");
+        assertEquals(2, cache.getHits());
+        cache.decode(encoded[1], crcs[1], "test");
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void diskCacheIsUsedByOtherInstances(@TempDir File dir) {
+        byte[] decoded = getDecoded(0);
+        byte[] encoded = encode(decoded);
+        long crc = FileFunctions.getCRC32(encoded);
+        new DecompressionCache(1 << 20, dir).decode(encoded, crc, "test");
+
+        DecompressionCache other = new DecompressionCache(1 << 20, dir);
+        assertArrayEquals(decoded, other.decode(encoded, crc, "test"));
+        assertEquals(1, other.getHits());
+        assertEquals(0, other.getMisses());
+    }
+
+    @Test
+    public void concurrentDecodesKeepOneCopy() throws InterruptedException {
+        DecompressionCache cache = new DecompressionCache(1 << 20, null);
+        byte[] decoded = getDecoded(0);
+        byte[] encoded = encode(decoded);
+        long crc = FileFunctions.getCRC32(encoded);
+
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<byte[]> results = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                    results.add(cache.decode(encoded, crc, "test"));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            t.start();
+            workers.add(t);
+        }
+        start.countDown();
+        for (Thread t : workers) {
+            t.join();
+        }
+
+        assertEquals(threads, results.size());
+        for (byte[] result : results) {
+            assertArrayEquals(decoded, result);
+        }
+        assertEquals(1, cache.getMisses());
+        assertEquals(threads - 1, cache.getHits());
+        assertEquals(decoded.length, cache.getMemoryBytes());
+    }
+
+    @Test
+    public void loweringMaxMemoryEvicts() {
+        DecompressionCache cache = new DecompressionCache(1 << 20, null);
+        byte[] encoded = encode(getDecoded(0));
+        cache.decode(encoded, FileFunctions.getCRC32(encoded), "test");
+        assertEquals(0x8000, cache.getMemoryBytes());
+        cache.setMaxMemoryBytes(0x4000);
+        assertEquals(0, cache.getMemoryBytes());
+    }
+
+}
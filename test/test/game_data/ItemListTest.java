@@ -0,0 +1,132 @@
+package test.game_data;
+
+import com.dabomstew.pkrandom.gamedata.ItemList;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ItemListTest {
+
+    private static final int HIGHEST_INDEX = 100;
+    private static final int DRAWS = 10000;
+
+    private static ItemList createItemList() {
+        ItemList items = new ItemList(HIGHEST_INDEX);
+        items.banSingles(5, 17, 42);
+        items.banRange(60, 10);
+        items.tmRange(80, 10);
+        items.banSingles(85);
+        return items;
+    }
+
+    @Test
+    public void seedStableDrawsAreSameAsTryingRandomIndexes() {
+        ItemList items = createItemList();
+        assertTrue(items.isSeedStable());
+        Random random = new Random(1);
+        Random expectedRandom = new Random(1);
+        for (int i = 0; i < DRAWS; i++) {
+            int expected = 0;
+            while (!items.isAllowed(expected)) {
+                expected = expectedRandom.nextInt(HIGHEST_INDEX + 1);
+            }
+            assertEquals(expected, items.randomItem(random));
+
+            expected = 0;
+            while (!items.isAllowed(expected) || items.isTM(expected)) {
+                expected = expectedRandom.nextInt(HIGHEST_INDEX + 1);
+            }
+            assertEquals(expected, items.randomNonTM(random));
+
+            expected = 0;
+            while (!items.isTM(expected)) {
+                expected = expectedRandom.nextInt(HIGHEST_INDEX + 1);
+            }
+            assertEquals(expected, items.randomTM(random));
+        }
+    }
+
+    @Test
+    public void directDrawsGiveEveryAllowedItemAndNothingElse() {
+        ItemList items = createItemList();
+        items.setSeedStable(false);
+        Random random = new Random(2);
+        Set<Integer> drawnItems = new HashSet<>();
+        Set<Integer> drawnNonTMs = new HashSet<>();
+        Set<Integer> drawnTMs = new HashSet<>();
+        for (int i = 0; i < DRAWS; i++) {
+            drawnItems.add(items.randomItem(random));
+            drawnNonTMs.add(items.randomNonTM(random));
+            drawnTMs.add(items.randomTM(random));
+        }
+        assertEquals(items.getItemSet(), drawnItems);
+        assertEquals(items.getNonTMSet(), drawnNonTMs);
+        assertEquals(items.getTMSet(), drawnTMs);
+    }
+
+    @Test
+    public void bannedItemsAreNotDrawn() {
+        for (boolean seedStable : new boolean[]{true, false}) {
+            ItemList items = createItemList();
+            items.setSeedStable(seedStable);
+            Random random = new Random(3);
+            for (int i = 0; i < DRAWS; i++) {
+                int item = items.randomItem(random);
+                items.banSingles(item);
+                assertFalse(items.isAllowed(item));
+                if (items.getItemSet().isEmpty()) {
+                    break;
+                }
+            }
+            assertTrue(items.getItemSet().isEmpty());
+        }
+    }
+
+    @Test
+    public void copyWithNewMaxKeepsBansAndAllowsNewIndexes() {
+        ItemList items = createItemList();
+        items.setSeedStable(false);
+        ItemList copy = items.copy(HIGHEST_INDEX + 20);
+        assertFalse(copy.isSeedStable());
+        for (int i = 0; i <= HIGHEST_INDEX; i++) {
+            assertEquals(items.isAllowed(i), copy.isAllowed(i));
+            assertEquals(items.isTM(i), copy.isTM(i));
+        }
+        for (int i = HIGHEST_INDEX + 1; i <= HIGHEST_INDEX + 20; i++) {
+            assertTrue(copy.isAllowed(i));
+            assertFalse(copy.isTM(i));
+        }
+
+        Random random = new Random(4);
+        Set<Integer> drawn = new HashSet<>();
+        for (int i = 0; i < DRAWS; i++) {
+            drawn.add(copy.randomNonTM(random));
+        }
+        assertEquals(copy.getNonTMSet(), drawn);
+
+        copy.banSingles(1);
+        assertTrue(items.isAllowed(1));
+    }
+
+    @Test
+    public void drawingWithNothingLeftThrows() {
+        for (boolean seedStable : new boolean[]{true, false}) {
+            ItemList items = new ItemList(HIGHEST_INDEX);
+            items.setSeedStable(seedStable);
+            Random random = new Random(5);
+            assertThrows(IllegalStateException.class, () -> items.randomTM(random));
+
+            items.tmRange(1, HIGHEST_INDEX);
+            assertThrows(IllegalStateException.class, () -> items.randomNonTM(random));
+            items.randomTM(random);
+
+            items.banRange(1, HIGHEST_INDEX);
+            assertThrows(IllegalStateException.class, () -> items.randomItem(random));
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+package test.game_data;
+
+import com.dabomstew.pkrandom.constants.AbilityIDs;
+import com.dabomstew.pkrandom.constants.MoveIDs;
+import com.dabomstew.pkrandom.gamedata.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MoveSynergyTest {
+
+    private static final int GENERATION = 5;
+
+    private final Move tackle = makeMove(MoveIDs.tackle, Type.NORMAL, MoveCategory.PHYSICAL);
+    private final Move ember = makeMove(MoveIDs.ember, Type.FIRE, MoveCategory.SPECIAL);
+    private final Move waterGun = makeMove(MoveIDs.waterGun, Type.WATER, MoveCategory.SPECIAL);
+    private final Move surf = makeMove(MoveIDs.surf, Type.WATER, MoveCategory.SPECIAL);
+    private final Move rainDance = makeMove(MoveIDs.rainDance, Type.WATER, MoveCategory.STATUS);
+    private final Move hypnosis = makeSleepMove(MoveIDs.hypnosis);
+    private final Move dreamEater = makeMove(MoveIDs.dreamEater, Type.PSYCHIC, MoveCategory.SPECIAL);
+    private final Move rest = makeMove(MoveIDs.rest, Type.PSYCHIC, MoveCategory.STATUS);
+    private final Move snore = makeMove(MoveIDs.snore, Type.NORMAL, MoveCategory.SPECIAL);
+    private final Move sleepTalk = makeMove(MoveIDs.sleepTalk, Type.NORMAL, MoveCategory.STATUS);
+    private final Move stockpile = makeMove(MoveIDs.stockpile, Type.NORMAL, MoveCategory.STATUS);
+    private final Move spitUp = makeMove(MoveIDs.spitUp, Type.NORMAL, MoveCategory.SPECIAL);
+    private final Move swallow = makeMove(MoveIDs.swallow, Type.NORMAL, MoveCategory.STATUS);
+
+    private final List<Move> allMoves = Arrays.asList(tackle, ember, waterGun, surf, rainDance, hypnosis,
+            dreamEater, rest, snore, sleepTalk, stockpile, spitUp, swallow);
+
+    private static Move makeMove(int number, Type type, MoveCategory category) {
+        Move move = new Move();
+        move.number = number;
+        move.name = "Move " + number;
+        move.type = type;
+        move.category = category;
+        return move;
+    }
+
+    private static Move makeSleepMove(int number) {
+        Move move = makeMove(number, Type.PSYCHIC, MoveCategory.STATUS);
+        move.statusMoveType = StatusMoveType.NO_DAMAGE;
+        move.statusType = StatusType.SLEEP;
+        return move;
+    }
+
+    private MoveSynergyIndex makeIndex() {
+        // with nulls, like RomHandler.getMoves()
+        List<Move> moves = new ArrayList<>(allMoves);
+        moves.add(0, null);
+        return new MoveSynergyIndex(moves, GENERATION, TypeTable.getVanillaGen2To5Table(), 100);
+    }
+
+    @Test
+    public void synergiesAreInPoolOrderWithoutRepeats() {
+        List<Move> pool = Arrays.asList(swallow, tackle, spitUp, swallow, rest, spitUp);
+        List<Move> expected = Arrays.asList(swallow, spitUp);
+        assertEquals(expected, MoveSynergy.getMoveSynergy(stockpile, pool, GENERATION));
+        assertEquals(expected, makeIndex().getMoveSynergy(stockpile, pool));
+    }
+
+    @Test
+    public void synergiesOnlyComeFromThePool() {
+        List<Move> pool = Arrays.asList(tackle, spitUp, rest);
+        assertEquals(Collections.singletonList(spitUp), MoveSynergy.getMoveSynergy(stockpile, pool, GENERATION));
+        assertEquals(Collections.singletonList(spitUp), makeIndex().getMoveSynergy(stockpile, pool));
+        assertEquals(Collections.emptyList(), makeIndex().getMoveSynergy(stockpile, Collections.emptyList()));
+    }
+
+    @Test
+    public void requiredMovesAreFound() {
+        MoveSynergyIndex index = makeIndex();
+        for (Move mv : Arrays.asList(spitUp, swallow)) {
+            assertEquals(Collections.singletonList(stockpile), MoveSynergy.requiresOtherMove(mv, allMoves));
+            assertEquals(Collections.singletonList(stockpile), index.requiresOtherMove(mv, allMoves));
+        }
+        for (Move mv : Arrays.asList(snore, sleepTalk)) {
+            assertEquals(Collections.singletonList(rest), MoveSynergy.requiresOtherMove(mv, allMoves));
+            assertEquals(Collections.singletonList(rest), index.requiresOtherMove(mv, allMoves));
+        }
+        // Rest puts the user to sleep, but is not a sleep status move
+        assertEquals(Collections.singletonList(hypnosis), MoveSynergy.requiresOtherMove(dreamEater, allMoves));
+        assertEquals(Collections.singletonList(hypnosis), index.requiresOtherMove(dreamEater, allMoves));
+
+        assertTrue(index.hasRequiredMove(dreamEater, Arrays.asList(tackle, hypnosis)));
+        assertFalse(index.hasRequiredMove(dreamEater, Arrays.asList(tackle, rest)));
+        assertFalse(index.hasRequiredMove(tackle, allMoves));
+        assertTrue(index.requiresOtherMove(tackle, allMoves).isEmpty());
+    }
+
+    @Test
+    public void abilitySynergiesFollowTheMoveTypes() {
+        // Drizzle boosts damaging Water moves only
+        List<Move> expected = Arrays.asList(waterGun, surf);
+        assertEquals(expected, MoveSynergy.getSoftAbilityMoveSynergy(AbilityIDs.drizzle, allMoves, Type.WATER, null));
+        assertEquals(expected, makeIndex().getSoftAbilityMoveSynergy(AbilityIDs.drizzle, allMoves, Type.WATER, null));
+    }
+
+}
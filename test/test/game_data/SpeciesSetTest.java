@@ -7,6 +7,7 @@ import org.junit.jupiter.api.Test;
 
 import javax.print.attribute.UnmodifiableSetException;
 import java.util.*;
+import java.util.function.UnaryOperator;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -204,4 +205,269 @@ public class SpeciesSetTest {
             }
         }
     }
+
+    @Test
+    public void setAlgebraMatchesHashSet() {
+        Random random = new Random(0);
+        Species[] species = new Species[1100];
+        for (int i = 0; i < species.length; i++) {
+            species[i] = new Species(i);
+            species[i].setName("Random" + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            SpeciesSet a = new SpeciesSet();
+            SpeciesSet b = new SpeciesSet();
+            Set<Species> hashA = new HashSet<>();
+            Set<Species> hashB = new HashSet<>();
+            for (int j = 0; j < 200; j++) {
+                Species spA = species[random.nextInt(species.length)];
+                a.add(spA);
+                hashA.add(spA);
+                Species spB = species[random.nextInt(species.length / 2)];
+                b.add(spB);
+                hashB.add(spB);
+            }
+
+            assertEquals(!Collections.disjoint(hashA, hashB), a.containsAny(b));
+            assertEquals(hashA.containsAll(hashB), a.containsAll(b));
+
+            SpeciesSet union = new SpeciesSet(a);
+            union.addAll(b);
+            Set<Species> hashUnion = new HashSet<>(hashA);
+            hashUnion.addAll(hashB);
+            assertEquals(hashUnion, union);
+
+            SpeciesSet intersection = new SpeciesSet(a);
+            intersection.retainAll(b);
+            Set<Species> hashIntersection = new HashSet<>(hashA);
+            hashIntersection.retainAll(hashB);
+            assertEquals(hashIntersection, intersection);
+
+            SpeciesSet difference = new SpeciesSet(a);
+            difference.removeAll(b);
+            Set<Species> hashDifference = new HashSet<>(hashA);
+            hashDifference.removeAll(hashB);
+            assertEquals(hashDifference, difference);
+            assertEquals(hashDifference.size(), difference.size());
+        }
+    }
+
+    @Test
+    public void iteratesInTheSameOrderAsHashSet() {
+        // SpeciesSet used to be a HashSet, and seeds must keep giving the same results
+        Random random = new Random(0);
+        Species[] species = new Species[1100];
+        for (int i = 0; i < species.length; i++) {
+            species[i] = new Species(i);
+            species[i].setName("Random" + i);
+        }
+        for (int i = 0; i < 200; i++) {
+            // numbers 16 apart share buckets while the table is small, so some sets need HashSet's own order
+            int spacing = i % 2 == 0 ? 1 : 16;
+            int range = random.nextInt(species.length / spacing) + 1;
+            SpeciesSet specs = new SpeciesSet();
+            Set<Species> hashSpecs = new HashSet<>();
+            for (int j = 0; j < 300; j++) {
+                Species sp = species[random.nextInt(range) * spacing];
+                switch (random.nextInt(10)) {
+                    case 0:
+                        specs.remove(sp);
+                        hashSpecs.remove(sp);
+                        break;
+                    case 1:
+                        SpeciesSet other = new SpeciesSet();
+                        for (int k = random.nextInt(20); k > 0; k--) {
+                            other.add(species[random.nextInt(range) * spacing]);
+                        }
+                        Set<Species> hashOther = new HashSet<>(other);
+                        if (random.nextBoolean()) {
+                            specs.addAll(other);
+                            hashSpecs.addAll(hashOther);
+                        } else {
+                            specs.removeAll(other);
+                            hashSpecs.removeAll(hashOther);
+                        }
+                        break;
+                    case 2:
+                        int modulo = random.nextInt(3) + 2;
+                        specs = specs.filter(s -> s.getNumber() % modulo != 0);
+                        Set<Species> hashFiltered = new HashSet<>();
+                        for (Species s : hashSpecs) {
+                            if (s.getNumber() % modulo != 0) {
+                                hashFiltered.add(s);
+                            }
+                        }
+                        hashSpecs = hashFiltered;
+                        break;
+                    case 3:
+                        specs = new SpeciesSet(specs);
+                        hashSpecs = new HashSet<>(hashSpecs);
+                        break;
+                    case 4:
+                        Iterator<Species> it = specs.iterator();
+                        Iterator<Species> hashIt = hashSpecs.iterator();
+                        while (it.hasNext()) {
+                            boolean remove = it.next().getNumber() % 3 == 0;
+                            hashIt.next();
+                            if (remove) {
+                                it.remove();
+                                hashIt.remove();
+                            }
+                        }
+                        break;
+                    case 5:
+                        if (random.nextInt(20) == 0) {
+                            specs.clear();
+                            hashSpecs.clear();
+                        }
+                        break;
+                    default:
+                        specs.add(sp);
+                        hashSpecs.add(sp);
+                        break;
+                }
+                assertEquals(new ArrayList<>(hashSpecs), new ArrayList<>(specs));
+            }
+        }
+    }
+
+    @Test
+    public void removingThroughIteratorRemovesFromSet() {
+        SpeciesSet specs = new SpeciesSet();
+        for (int i = 0; i < 200; i++) {
+            Species species = new Species(i);
+            species.setName("Random" + i);
+            specs.add(species);
+        }
+
+        Iterator<Species> it = specs.iterator();
+        while (it.hasNext()) {
+            if (it.next().getNumber() % 2 == 0) {
+                it.remove();
+            }
+        }
+        assertEquals(100, specs.size());
+        for (Species species : specs) {
+            assertEquals(1, species.getNumber() % 2);
+        }
+    }
+
+    @Test
+    public void similarStrengthPicksFollowStatChanges() {
+        SpeciesSet specs = new SpeciesSet();
+        for (int i = 0; i < 100; i++) {
+            Species species = new Species(i);
+            species.setName("Random" + i);
+            species.setHp(50 + i * 5);
+            specs.add(species);
+        }
+        Species match = new Species(1000);
+        match.setHp(300);
+
+        for (int i = 0; i < 100; i++) {
+            Species pick = specs.getRandomSimilarStrengthSpecies(match, random);
+            assertTrue(Math.abs(pick.getBSTForPowerLevels() - 300) <= 30);
+        }
+
+        // once the set has been queried, changing stats must still be taken into account
+        for (Species species : specs) {
+            species.setHp(species.getHp() + 1000);
+        }
+        match.setHp(1300);
+        for (int i = 0; i < 100; i++) {
+            Species pick = specs.getRandomSimilarStrengthSpecies(match, random);
+            assertTrue(Math.abs(pick.getBSTForPowerLevels() - 1300) <= 130);
+        }
+    }
+
+    @Test
+    public void similarStrengthPicksFollowRestoredStats() {
+        List<Species> speciesList = new ArrayList<>();
+        SpeciesSet specs = new SpeciesSet();
+        for (int i = 0; i < 100; i++) {
+            Species species = new Species(i);
+            species.setName("Random" + i);
+            species.setHp(50 + i * 5);
+            speciesList.add(species);
+            specs.add(species);
+        }
+        Species match = new Species(1000);
+        match.setHp(300);
+        // builds the BST index
+        specs.getRandomSimilarStrengthSpecies(match, random);
+
+        // the same copies a RomHandler snapshot keeps
+        List<Species> saved = new ArrayList<>();
+        for (Species species : speciesList) {
+            saved.add(species.copyData(UnaryOperator.identity()));
+        }
+
+        for (Species species : specs) {
+            species.setHp(species.getHp() + 1000);
+        }
+        match.setHp(1300);
+        Species changedPick = specs.getRandomSimilarStrengthSpecies(match, random);
+        assertTrue(Math.abs(changedPick.getBSTForPowerLevels() - 1300) <= 130);
+
+        // restoring the snapshot must make the index be rebuilt again
+        for (int i = 0; i < speciesList.size(); i++) {
+            saved.get(i).copyDataTo(speciesList.get(i), UnaryOperator.identity());
+        }
+        match.setHp(300);
+        for (int i = 0; i < 100; i++) {
+            Species pick = specs.getRandomSimilarStrengthSpecies(match, random);
+            assertTrue(Math.abs(pick.getBSTForPowerLevels() - 300) <= 30);
+        }
+    }
+
+    @Test
+    public void similarStrengthPicksAreTheSameAsFromACopiedPool() {
+        Random setup = new Random(1);
+        SpeciesSet specs = new SpeciesSet();
+        Set<Species> hashSpecs = new HashSet<>();
+        for (int i = 0; i < 400; i++) {
+            Species species = new Species(setup.nextInt(1100));
+            species.setName("Random" + i);
+            species.setHp(setup.nextInt(600));
+            specs.add(species);
+            hashSpecs.add(species);
+        }
+        List<Species> matches = new ArrayList<>(hashSpecs);
+
+        Random random = new Random(2);
+        Random expectedRandom = new Random(2);
+        for (int i = 0; i < 1000; i++) {
+            Species match = matches.get(setup.nextInt(matches.size()));
+            boolean notSameSpecies = setup.nextBoolean();
+            Species expected = pickSimilarStrengthFromCopy(hashSpecs, match, notSameSpecies, expectedRandom);
+            assertEquals(expected, specs.getRandomSimilarStrengthSpecies(match, notSameSpecies, random));
+        }
+    }
+
+    // how getRandomSimilarStrengthSpecies() worked when SpeciesSet was a HashSet
+    private static Species pickSimilarStrengthFromCopy(Set<Species> specs, Species match, boolean notSameSpecies,
+                                                       Random random) {
+        Set<Species> availablePool = new HashSet<>(specs);
+        if (notSameSpecies) {
+            availablePool.remove(match);
+        }
+        int minimumPool = Math.max(1, Math.min(5, availablePool.size() / 4));
+        int matchBST = match.getBSTForPowerLevels();
+        int minTarget = matchBST - matchBST / 10;
+        int maxTarget = matchBST + matchBST / 10;
+        Set<Species> canPick = new HashSet<>();
+        while (canPick.size() < minimumPool) {
+            Iterator<Species> itor = availablePool.iterator();
+            while (itor.hasNext()) {
+                Species spec = itor.next();
+                if (spec.getBSTForPowerLevels() >= minTarget && spec.getBSTForPowerLevels() <= maxTarget) {
+                    canPick.add(spec);
+                    itor.remove();
+                }
+            }
+            minTarget -= Math.max(1, matchBST / 20);
+            maxTarget += Math.max(1, matchBST / 20);
+        }
+        return new ArrayList<>(canPick).get(random.nextInt(canPick.size()));
+    }
 }
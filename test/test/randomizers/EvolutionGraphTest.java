@@ -0,0 +1,115 @@
+package test.randomizers;
+
+import com.dabomstew.pkrandom.gamedata.Species;
+import com.dabomstew.pkrandom.randomizers.EvolutionGraph;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EvolutionGraphTest {
+
+    private static final int POOL_SIZE = 40;
+    private static final int OPERATIONS = 1000;
+
+    @Test
+    public void matchesDepthFirstSearchAfterAddingAndUndoing() {
+        for (int seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            List<Species> pool = new ArrayList<>();
+            Set<Integer> numbers = new HashSet<>();
+            while (pool.size() < POOL_SIZE) {
+                int number = random.nextInt(POOL_SIZE * 5);
+                if (numbers.add(number)) {
+                    pool.add(new Species(number));
+                }
+            }
+            Set<Species> mustEvolve = new HashSet<>();
+            for (Species pk : pool) {
+                if (random.nextInt(4) == 0) {
+                    mustEvolve.add(pk);
+                }
+            }
+
+            EvolutionGraph graph = new EvolutionGraph(pool, mustEvolve::contains);
+            Map<Species, List<Species>> evolutions = new HashMap<>();
+            for (Species pk : pool) {
+                evolutions.put(pk, new ArrayList<>());
+            }
+            Deque<Species[]> added = new ArrayDeque<>();
+
+            for (int i = 0; i < OPERATIONS; i++) {
+                if (!added.isEmpty() && random.nextInt(3) == 0) {
+                    Species[] last = added.pop();
+                    List<Species> evosFrom = evolutions.get(last[0]);
+                    evosFrom.remove(evosFrom.size() - 1);
+                    graph.undoLastEvolution();
+                } else {
+                    Species from = pool.get(random.nextInt(POOL_SIZE));
+                    Species to = pool.get(random.nextInt(POOL_SIZE));
+                    boolean createsCycle = from.equals(to) || reaches(evolutions, to, from);
+                    assertEquals(createsCycle, graph.createsCycle(from, to));
+                    if (!createsCycle) {
+                        evolutions.get(from).add(to);
+                        graph.addEvolution(from, to);
+                        added.push(new Species[]{from, to});
+                    }
+                }
+
+                Map<Species, Integer> preEvolutionStages = new HashMap<>();
+                Map<Species, Integer> evolutionStages = new HashMap<>();
+                for (Species pk : pool) {
+                    assertEquals(preEvolutionStages(evolutions, pk, preEvolutionStages),
+                            graph.getPreEvolutionStages(pk));
+                    assertEquals(evolutionStages(evolutions, mustEvolve, pk, evolutionStages),
+                            graph.getEvolutionStages(pk));
+                }
+            }
+        }
+    }
+
+    private static boolean reaches(Map<Species, List<Species>> evolutions, Species from, Species to) {
+        Deque<Species> toVisit = new ArrayDeque<>();
+        Set<Species> visited = new HashSet<>();
+        toVisit.push(from);
+        while (!toVisit.isEmpty()) {
+            Species pk = toVisit.pop();
+            if (pk.equals(to)) {
+                return true;
+            }
+            if (visited.add(pk)) {
+                toVisit.addAll(evolutions.get(pk));
+            }
+        }
+        return false;
+    }
+
+    private static int preEvolutionStages(Map<Species, List<Species>> evolutions, Species pk,
+                                          Map<Species, Integer> known) {
+        if (known.containsKey(pk)) {
+            return known.get(pk);
+        }
+        int stages = 0;
+        for (Map.Entry<Species, List<Species>> entry : evolutions.entrySet()) {
+            if (entry.getValue().contains(pk)) {
+                stages = Math.max(stages, preEvolutionStages(evolutions, entry.getKey(), known) + 1);
+            }
+        }
+        known.put(pk, stages);
+        return stages;
+    }
+
+    private static int evolutionStages(Map<Species, List<Species>> evolutions, Set<Species> mustEvolve, Species pk,
+                                       Map<Species, Integer> known) {
+        if (known.containsKey(pk)) {
+            return known.get(pk);
+        }
+        int stages = mustEvolve.contains(pk) ? 1 : 0;
+        for (Species evo : evolutions.get(pk)) {
+            stages = Math.max(stages, evolutionStages(evolutions, mustEvolve, evo, known) + 1);
+        }
+        known.put(pk, stages);
+        return stages;
+    }
+}
@@ -0,0 +1,71 @@
+package test.randomizers;
+
+import com.dabomstew.pkrandom.Settings;
+import com.dabomstew.pkrandom.Version;
+import com.dabomstew.pkrandom.gamedata.ExpCurve;
+import com.dabomstew.pkrandom.gamedata.ItemList;
+import com.dabomstew.pkrandom.randomizers.Randomizer;
+import com.dabomstew.pkrandom.romhandlers.RomHandler;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ItemDrawModeTest extends RandomizerTest {
+
+    private static final int DRAWS = 1000;
+
+    @ParameterizedTest
+    @MethodSource("getRomNames")
+    public void oldSettingsStringDrawsItemsSeedStable(String romName) throws UnsupportedEncodingException {
+        activateRomHandler(romName);
+        Settings settings = Settings.fromVersionedString(Version.FVX_1_1_2.id + getSettingsString());
+        assertEquals(Version.FVX_1_1_2.id, settings.getVersion());
+
+        ItemList drawnFrom = new ItemDrawingRandomizer(romHandler, settings).itemsToDrawFrom();
+        assertTrue(drawnFrom.isSeedStable());
+        // the items list as it always was, before there were direct draws
+        ItemList expected = romHandler.getAllowedItems().copy();
+        Random random = new Random(1);
+        Random expectedRandom = new Random(1);
+        for (int i = 0; i < DRAWS; i++) {
+            assertEquals(expected.randomItem(expectedRandom), drawnFrom.randomItem(random));
+            assertEquals(expected.randomNonTM(expectedRandom), drawnFrom.randomNonTM(random));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("getRomNames")
+    public void currentSettingsStringDrawsItemsDirectly(String romName) throws UnsupportedEncodingException {
+        activateRomHandler(romName);
+        Settings settings = Settings.fromVersionedString(Version.VERSION + getSettingsString());
+        assertEquals(Version.VERSION, settings.getVersion());
+
+        assertFalse(new ItemDrawingRandomizer(romHandler, settings).itemsToDrawFrom().isSeedStable());
+    }
+
+    private String getSettingsString() {
+        Settings settings = new Settings();
+        settings.setRomName(romHandler.getROMName());
+        settings.setSelectedEXPCurve(ExpCurve.MEDIUM_FAST);
+        return settings.toString();
+    }
+
+    /**
+     * Gives access to the list the randomizers draw items from.
+     */
+    private static class ItemDrawingRandomizer extends Randomizer {
+
+        public ItemDrawingRandomizer(RomHandler romHandler, Settings settings) {
+            super(romHandler, settings, new Random());
+        }
+
+        public ItemList itemsToDrawFrom() {
+            return itemsToDrawFrom(romHandler.getAllowedItems());
+        }
+    }
+
+}
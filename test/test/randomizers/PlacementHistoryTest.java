@@ -0,0 +1,73 @@
+package test.randomizers;
+
+import com.dabomstew.pkrandom.randomizers.PlacementHistory;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlacementHistoryTest {
+
+    private static final int THINGS = 200;
+    private static final int PLACEMENTS = 5000;
+
+    @Test
+    public void nothingIsAboveOrBelowAverageWhileNothingIsPlaced() {
+        PlacementHistory<Integer> history = new PlacementHistory<>(i -> i);
+        assertTrue(history.isEmpty());
+        assertEquals(0, history.getCount(5));
+        assertFalse(history.isAboveAverage(5));
+        assertFalse(history.isBelow(5, 2));
+        assertTrue(history.getPlacedAtLeast(2).isEmpty());
+    }
+
+    @Test
+    public void placingCountsUp() {
+        PlacementHistory<Integer> history = new PlacementHistory<>(i -> i);
+        history.place(3);
+        history.place(3);
+        history.place(100);
+        assertFalse(history.isEmpty());
+        assertEquals(2, history.getCount(3));
+        assertEquals(1, history.getCount(100));
+        assertEquals(0, history.getCount(4));
+        // the average is 1.5
+        assertTrue(history.isAboveAverage(3));
+        assertFalse(history.isAboveAverage(100));
+        assertFalse(history.isAboveAverage(4));
+    }
+
+    @Test
+    public void agreesWithMapOfCounts() {
+        PlacementHistory<Integer> history = new PlacementHistory<>(i -> i);
+        Map<Integer, Integer> counts = new HashMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < PLACEMENTS; i++) {
+            // skewed, so some things get placed far more often than average
+            int thing = Math.min(random.nextInt(THINGS), random.nextInt(THINGS));
+            history.place(thing);
+            counts.merge(thing, 1, Integer::sum);
+
+            // how ItemRandomizer and TrainerPokemonRandomizer compared with the average before
+            float floatAverage = (float) counts.values().stream().mapToInt(c -> c).sum() / (float) counts.size();
+            double doubleAverage = counts.values().stream().mapToInt(c -> c).average().orElse(0);
+            Set<Integer> placedOften = new HashSet<>();
+            for (int t = 0; t < THINGS; t++) {
+                int count = counts.getOrDefault(t, 0);
+                assertEquals(count, history.getCount(t));
+                assertEquals(count > floatAverage, history.isAboveAverage(t));
+                assertEquals(count < doubleAverage * 2, history.isBelow(t, 2));
+                if (count > 0 && count >= doubleAverage * 2) {
+                    placedOften.add(t);
+                }
+            }
+            assertEquals(placedOften, new HashSet<>(history.getPlacedAtLeast(2)));
+        }
+    }
+
+}
@@ -3,6 +3,7 @@ package test.romhandlers;
 import com.dabomstew.pkrandom.gbspace.BankDividedFreedSpace;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 
@@ -15,7 +16,7 @@ public class BankDividedFreedSpaceTest {
         fs.free(4, 4);
         fs.free(12, 4);
         fs.free(8, 4);
-        System.out.println(fs);
+        assertChunks(fs, new int[]{0, 3}, new int[]{4, 7}, new int[]{8, 11}, new int[]{12, 15});
         assertEquals(-1, fs.findAndUnfree(5));
     }
 
@@ -23,7 +24,7 @@ public class BankDividedFreedSpaceTest {
     public void canUnfreeFromReservedBankIfSpecified() {
         BankDividedFreedSpace fs = new BankDividedFreedSpace(4, 4, new int[]{0});
         fs.free(0, 4);
-        System.out.println(fs);
+        assertChunks(fs, new int[]{0, 3});
         assertNotEquals(-1, fs.findAndUnfreeInBank(4, 0));
     }
 
@@ -31,7 +32,7 @@ public class BankDividedFreedSpaceTest {
     public void canNotUnfreeFromReservedBankIfNotSpecified() {
         BankDividedFreedSpace fs = new BankDividedFreedSpace(4, 4, new int[]{0});
         fs.free(0, 4);
-        System.out.println(fs);
+        assertChunks(fs, new int[]{0, 3});
         assertEquals(-1, fs.findAndUnfree(4));
     }
 
@@ -40,8 +41,30 @@ public class BankDividedFreedSpaceTest {
         BankDividedFreedSpace fs = new BankDividedFreedSpace(4, 4, new int[]{0, 2, 3});
         fs.free(0, 4);
         fs.free(5, 1);
-        System.out.println(fs);
+        assertChunks(fs, new int[]{0, 3}, new int[]{5, 5});
         assertEquals(5, fs.findAndUnfree(1));
     }
 
+    @Test
+    public void unfreesFirstLongEnoughChunkAndMergesWithinBanks() {
+        BankDividedFreedSpace fs = new BankDividedFreedSpace(8, 4, new int[]{1});
+        fs.free(0, 2);
+        fs.free(8, 8);
+        fs.free(20, 2);
+        fs.free(16, 2);
+        fs.free(18, 2);
+        fs.free(22, 2);
+        assertChunks(fs, new int[]{0, 1}, new int[]{8, 15}, new int[]{16, 23});
+        assertEquals(0, fs.findAndUnfree(2));
+        assertEquals(16, fs.findAndUnfree(6));
+        assertEquals(22, fs.findAndUnfree(2));
+        assertEquals(-1, fs.findAndUnfree(1));
+        assertEquals(8, fs.findAndUnfreeInBank(8, 1));
+        assertChunks(fs);
+    }
+
+    private static void assertChunks(BankDividedFreedSpace fs, int[]... expected) {
+        assertArrayEquals(expected, fs.saveChunks(), fs.toString());
+    }
+
 }
@@ -0,0 +1,125 @@
+package test.romhandlers;
+
+import com.dabomstew.pkrandom.gbspace.FreedChunkTree;
+import com.dabomstew.pkrandom.gbspace.FreedSpace.FreedChunk;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FreedChunkTreeTest {
+
+    private static final int OPERATIONS = 2000;
+
+    @Test
+    public void keepsChunksOrderedByOffset() {
+        FreedChunkTree tree = new FreedChunkTree();
+        FreedChunk a = new FreedChunk(20, 29);
+        FreedChunk b = new FreedChunk(0, 4);
+        FreedChunk c = new FreedChunk(10, 11);
+        tree.add(a);
+        tree.add(b);
+        tree.add(c);
+        assertEquals(3, tree.size());
+        assertEquals(Arrays.asList(b, c, a), tree.toList());
+
+        assertSame(b, tree.floor(9));
+        assertSame(c, tree.floor(10));
+        assertNull(tree.floor(-1));
+        assertSame(c, tree.higher(0));
+        assertNull(tree.higher(20));
+
+        tree.remove(c);
+        assertEquals(Arrays.asList(b, a), tree.toList());
+        assertThrows(IllegalArgumentException.class, () -> tree.remove(c));
+    }
+
+    @Test
+    public void findsFirstLongEnoughChunk() {
+        FreedChunkTree tree = new FreedChunkTree();
+        FreedChunk short1 = new FreedChunk(0, 1);
+        FreedChunk long1 = new FreedChunk(10, 19);
+        FreedChunk short2 = new FreedChunk(30, 32);
+        FreedChunk long2 = new FreedChunk(40, 59);
+        for (FreedChunk fc : Arrays.asList(long2, short1, short2, long1)) {
+            tree.add(fc);
+        }
+        assertSame(short1, tree.findFirst(Integer.MIN_VALUE, 1));
+        assertSame(short2, tree.findFirst(11, 3));
+        assertSame(long1, tree.findFirst(0, 4));
+        assertSame(long2, tree.findFirst(0, 11));
+        assertSame(long2, tree.findFirst(11, 4));
+        assertNull(tree.findFirst(0, 21));
+        assertNull(tree.findFirst(41, 1));
+    }
+
+    /**
+     * Adds and removes chunks at random, like freeing and unfreeing do, including replacing a chunk by a shorter
+     * one, and checks the tree against a sorted list of the same chunks after every change.
+     */
+    @Test
+    public void agreesWithSortedListThroughChanges() {
+        Random random = new Random(1);
+        FreedChunkTree tree = new FreedChunkTree();
+        List<FreedChunk> chunks = new ArrayList<>();
+        for (int i = 0; i < OPERATIONS; i++) {
+            int choice = random.nextInt(3);
+            if (choice == 0 && !chunks.isEmpty()) {
+                tree.remove(chunks.remove(random.nextInt(chunks.size())));
+            } else if (choice == 1 && !chunks.isEmpty()) {
+                // unfreeing the start of a chunk
+                FreedChunk unfreed = chunks.remove(random.nextInt(chunks.size()));
+                tree.remove(unfreed);
+                if (unfreed.getLength() > 1) {
+                    FreedChunk rest = new FreedChunk(unfreed.start + 1 + random.nextInt(unfreed.getLength() - 1),
+                            unfreed.end);
+                    tree.add(rest);
+                    chunks.add(rest);
+                }
+            } else {
+                // in a slot of 100 bytes of its own, so chunks never overlap
+                int slot = random.nextInt(1000);
+                if (chunks.stream().noneMatch(fc -> fc.start / 100 == slot)) {
+                    int start = slot * 100 + random.nextInt(50);
+                    FreedChunk added = new FreedChunk(start, start + random.nextInt(50));
+                    tree.add(added);
+                    chunks.add(added);
+                }
+            }
+            chunks.sort((x, y) -> Integer.compare(x.start, y.start));
+            assertMatches(chunks, tree, random);
+        }
+    }
+
+    private static void assertMatches(List<FreedChunk> chunks, FreedChunkTree tree, Random random) {
+        assertEquals(chunks, tree.toList());
+        assertEquals(chunks.size(), tree.size());
+        int maxLength = chunks.stream().mapToInt(FreedChunk::getLength).max().orElse(0);
+        assertEquals(maxLength, tree.getMaxLength());
+        for (int q = 0; q < 10; q++) {
+            int minStart = random.nextInt(100_000);
+            int length = 1 + random.nextInt(50);
+            FreedChunk expected = null;
+            for (FreedChunk fc : chunks) {
+                if (fc.start >= minStart && fc.getLength() >= length) {
+                    expected = fc;
+                    break;
+                }
+            }
+            assertSame(expected, tree.findFirst(minStart, length), minStart + ", " + length);
+        }
+        int offset = random.nextInt(100_000);
+        FreedChunk floor = null;
+        for (FreedChunk fc : chunks) {
+            if (fc.start <= offset) {
+                floor = fc;
+            }
+        }
+        assertSame(floor, tree.floor(offset));
+    }
+
+}
@@ -0,0 +1,87 @@
+package test.romhandlers;
+
+import com.dabomstew.pkrandom.gamedata.Move;
+import com.dabomstew.pkrandom.gamedata.MoveSynergy;
+import com.dabomstew.pkrandom.gamedata.MoveSynergyIndex;
+import com.dabomstew.pkrandom.gamedata.Type;
+import com.dabomstew.pkrandom.gamedata.TypeTable;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RomHandlerMoveSynergyTest extends RomHandlerTest {
+
+    private static final int POOLS_PER_QUERY = 3;
+    private static final int MAX_POOL_SIZE = 40;
+
+    @ParameterizedTest
+    @MethodSource("getRomNames")
+    public void moveSynergyIndexMatchesMoveSynergy(String romName) {
+        loadROM(romName);
+        List<Move> allMoves = romHandler.getMoves().stream().filter(Objects::nonNull).collect(Collectors.toList());
+        int generation = romHandler.generationOfPokemon();
+        TypeTable typeTable = romHandler.getTypeTable();
+        int perfectAccuracy = romHandler.getPerfectAccuracy();
+        MoveSynergyIndex index = new MoveSynergyIndex(romHandler.getMoves(), generation, typeTable, perfectAccuracy);
+
+        for (Move mv : allMoves) {
+            for (List<Move> pool : randomPools(allMoves)) {
+                String message = mv.name + " in " + pool;
+                assertEquals(MoveSynergy.getMoveSynergy(mv, pool, generation),
+                        index.getMoveSynergy(mv, pool), message);
+                assertEquals(MoveSynergy.getSoftMoveSynergy(mv, pool, typeTable),
+                        index.getSoftMoveSynergy(mv, pool), message);
+                assertEquals(MoveSynergy.getHardMoveAntiSynergy(mv, pool),
+                        index.getHardMoveAntiSynergy(mv, pool), message);
+                assertEquals(MoveSynergy.getSoftMoveAntiSynergy(mv, pool),
+                        index.getSoftMoveAntiSynergy(mv, pool), message);
+                List<Move> required = MoveSynergy.requiresOtherMove(mv, pool);
+                assertEquals(required, index.requiresOtherMove(mv, pool), message);
+                assertEquals(!required.isEmpty(), index.hasRequiredMove(mv, pool), message);
+            }
+        }
+
+        List<Type> types = Type.getAllTypes(generation);
+        for (int ability = 1; ability <= romHandler.highestAbilityIndex(); ability++) {
+            for (List<Move> pool : randomPools(allMoves)) {
+                Type type1 = types.get(RND.nextInt(types.size()));
+                Type type2 = RND.nextBoolean() ? null : types.get(RND.nextInt(types.size()));
+                String message = "ability " + ability + ", " + type1 + "/" + type2 + " in " + pool;
+                assertEquals(MoveSynergy.getHardAbilityMoveSynergy(ability, type1, type2, pool, generation,
+                                perfectAccuracy),
+                        index.getHardAbilityMoveSynergy(ability, type1, type2, pool), message);
+                assertEquals(MoveSynergy.getSoftAbilityMoveSynergy(ability, pool, type1, type2),
+                        index.getSoftAbilityMoveSynergy(ability, pool, type1, type2), message);
+                assertEquals(MoveSynergy.getHardAbilityMoveAntiSynergy(ability, pool),
+                        index.getHardAbilityMoveAntiSynergy(ability, pool), message);
+                assertEquals(MoveSynergy.getSoftAbilityMoveAntiSynergy(ability, pool),
+                        index.getSoftAbilityMoveAntiSynergy(ability, pool), message);
+            }
+        }
+    }
+
+    /**
+     * Random move pools like the ones trainer movesets are picked from, duplicates included,
+     * plus the full move list.
+     */
+    private List<List<Move>> randomPools(List<Move> allMoves) {
+        List<List<Move>> pools = new ArrayList<>();
+        pools.add(allMoves);
+        for (int i = 0; i < POOLS_PER_QUERY; i++) {
+            int size = 1 + RND.nextInt(MAX_POOL_SIZE);
+            List<Move> pool = new ArrayList<>(size);
+            for (int j = 0; j < size; j++) {
+                pool.add(allMoves.get(RND.nextInt(allMoves.size())));
+            }
+            pools.add(pool);
+        }
+        return pools;
+    }
+
+}
@@ -0,0 +1,134 @@
+package test.romhandlers;
+
+import com.dabomstew.pkrandom.FileFunctions;
+import com.dabomstew.pkrandom.ctr.NCCH;
+import com.dabomstew.pkrandom.gamedata.Species;
+import com.dabomstew.pkrandom.romhandlers.Abstract3DSRomHandler;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class RomHandlerRomfsTest extends RomHandlerTest {
+
+    private static final int MEDIA_UNIT_SIZE = 0x200;
+    private static final int HASH_SIZE = 0x20;
+
+    @ParameterizedTest
+    @MethodSource("getRomNames")
+    public void incrementalRebuildReusesSomeBlocks(String romName) throws IOException, NoSuchAlgorithmException {
+        assumeTrue(getGenerationNumberOf(romName) >= 6);
+        NCCH.RomfsRebuildStats stats = saveWithChangedSpecies(romName, true);
+
+        assertTrue(stats.getLevel3BlocksReused() > 0);
+        assertTrue(stats.getLevel3BlocksReused() < stats.getLevel3Blocks());
+        assertTrue(stats.getLevel2BlocksReused() > 0);
+        assertTrue(stats.getLevel2BlocksReused() <= stats.getLevel2Blocks());
+    }
+
+    @ParameterizedTest
+    @MethodSource("getRomNames")
+    public void fullRebuildReusesNoBlocks(String romName) throws IOException, NoSuchAlgorithmException {
+        assumeTrue(getGenerationNumberOf(romName) >= 6);
+        NCCH.RomfsRebuildStats stats = saveWithChangedSpecies(romName, false);
+
+        assertEquals(0, stats.getLevel3BlocksReused());
+        assertEquals(0, stats.getLevel2BlocksReused());
+    }
+
+    /**
+     * Loads the ROM, changes the stats of a Species so at least one file of the romfs changes, and saves it.
+     * The saved romfs must have the same hashes as hashing all of it again; otherwise the 3DS won't accept it.
+     */
+    private NCCH.RomfsRebuildStats saveWithChangedSpecies(String romName, boolean incremental)
+            throws IOException, NoSuchAlgorithmException {
+        loadROM(romName);
+        Abstract3DSRomHandler handler = (Abstract3DSRomHandler) romHandler;
+        handler.setIncrementalRomfsRebuild(incremental);
+        Species pk = romHandler.getSpecies().get(1);
+        pk.setHp(pk.getHp() + 1);
+
+        File output = File.createTempFile("romfs", "." + romHandler.getDefaultExtension());
+        output.deleteOnExit();
+        try {
+            assertTrue(romHandler.saveRom(output.getPath(), 0, false));
+            assertRomfsHashesMatchFullRehash(output);
+        } finally {
+            output.delete();
+        }
+        NCCH.RomfsRebuildStats stats = handler.getLastRomfsRebuildStats();
+        assertNotNull(stats);
+        return stats;
+    }
+
+    private static void assertRomfsHashesMatchFullRehash(File ncch) throws IOException, NoSuchAlgorithmException {
+        try (RandomAccessFile file = new RandomAccessFile(ncch, "r")) {
+            long romfsOffset = (long) FileFunctions.readIntFromFile(file, 0x1B0) * MEDIA_UNIT_SIZE;
+            byte[] header = read(file, romfsOffset, 0x60);
+            assertEquals("IVFC", new String(header, 0, 4, "US-ASCII"));
+
+            int masterHashSize = FileFunctions.readFullInt(header, 0x08);
+            long level1Size = FileFunctions.readFullLong(header, 0x14);
+            int level1BlockSize = 1 << FileFunctions.readFullInt(header, 0x1C);
+            long level2Size = FileFunctions.readFullLong(header, 0x2C);
+            int level2BlockSize = 1 << FileFunctions.readFullInt(header, 0x34);
+            long level3Size = FileFunctions.readFullLong(header, 0x44);
+            int level3BlockSize = 1 << FileFunctions.readFullInt(header, 0x4C);
+
+            // level 3 comes first, then level 1, then level 2, each aligned to its own block size
+            long level3Offset = romfsOffset + align(0x60 + masterHashSize, level3BlockSize);
+            long level1Offset = level3Offset + align(level3Size, level3BlockSize);
+            long level2Offset = level1Offset + align(level1Size, level1BlockSize);
+
+            byte[] masterHash = read(file, romfsOffset + 0x60, masterHashSize);
+            byte[] level1 = read(file, level1Offset, (int) level1Size);
+            byte[] level2 = read(file, level2Offset, (int) level2Size);
+            assertArrayEquals(masterHash, hashBlocks(level1, level1BlockSize));
+            assertArrayEquals(level1, hashBlocks(level2, level2BlockSize));
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] block = new byte[level3BlockSize];
+            for (long offset = 0; offset < level3Size; offset += level3BlockSize) {
+                int inBlock = (int) Math.min(level3BlockSize, level3Size - offset);
+                Arrays.fill(block, (byte) 0);
+                file.seek(level3Offset + offset);
+                file.readFully(block, 0, inBlock);
+                int hashOffset = (int) (offset / level3BlockSize * HASH_SIZE);
+                assertArrayEquals(digest.digest(block), Arrays.copyOfRange(level2, hashOffset,
+                        hashOffset + HASH_SIZE), "level 3 block at " + offset);
+            }
+        }
+    }
+
+    // hashes each block of data, padding the last one with zeros up to blockSize
+    private static byte[] hashBlocks(byte[] data, int blockSize) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        int blocks = (data.length + blockSize - 1) / blockSize;
+        byte[] hashes = new byte[blocks * HASH_SIZE];
+        for (int i = 0; i < blocks; i++) {
+            byte[] block = Arrays.copyOfRange(data, i * blockSize, (i + 1) * blockSize);
+            System.arraycopy(digest.digest(block), 0, hashes, i * HASH_SIZE, HASH_SIZE);
+        }
+        return hashes;
+    }
+
+    private static byte[] read(RandomAccessFile file, long offset, int length) throws IOException {
+        byte[] data = new byte[length];
+        file.seek(offset);
+        file.readFully(data);
+        return data;
+    }
+
+    private static long align(long value, int alignment) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+
+}
@@ -0,0 +1,201 @@
+package test.romhandlers;
+
+import com.dabomstew.pkrandom.FileFunctions;
+import com.dabomstew.pkrandom.GameRandomizer;
+import com.dabomstew.pkrandom.RomFunctions;
+import com.dabomstew.pkrandom.Settings;
+import com.dabomstew.pkrandom.gamedata.Move;
+import com.dabomstew.pkrandom.gamedata.Species;
+import com.dabomstew.pkrandom.gamedata.Trainer;
+import com.dabomstew.pkrandom.gamedata.TrainerPokemon;
+import com.dabomstew.pkrandom.romhandlers.RomHandler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.ResourceBundle;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RomHandlerSnapshotTest extends RomHandlerTest {
+
+    private static final ResourceBundle BUNDLE = ResourceBundle.getBundle("com/dabomstew/pkrandom/gui/Bundle");
+
+    @ParameterizedTest
+    @MethodSource("getRomNames")
+    public void speciesStatsAreRestored(String romName) {
+        loadROM(romName);
+        Species pk = romHandler.getSpecies().get(1);
+        int hpBefore = pk.getHp();
+        RomHandler.Snapshot snapshot = romHandler.createSnapshot();
+
+        pk.setHp(hpBefore + 1);
+        romHandler.restoreSnapshot(snapshot);
+        assertEquals(hpBefore, pk.getHp());
+    }
+
+    @ParameterizedTest
+    @MethodSource("getRomNames")
+    public void movesAreRestored(String romName) {
+        loadROM(romName);
+        Move move = romHandler.getMoves().get(1);
+        int powerBefore = move.power;
+        RomHandler.Snapshot snapshot = romHandler.createSnapshot();
+
+        move.power = powerBefore + 1;
+        romHandler.restoreSnapshot(snapshot);
+        assertEquals(powerBefore, move.power);
+    }
+
+    @ParameterizedTest
+    @MethodSource("getRomNames")
+    public void trainersAreRestored(String romName) {
+        loadROM(romName);
+        List<String> before = toStrings(romHandler.getTrainers());
+        RomHandler.Snapshot snapshot = romHandler.createSnapshot();
+
+        List<Trainer> trainers = romHandler.getTrainers();
+        Species replacement = romHandler.getSpecies().get(1);
+        for (Trainer tr : trainers) {
+            for (TrainerPokemon tp : tr.pokemon) {
+                tp.species = replacement;
+                tp.level = 1;
+            }
+        }
+        romHandler.setTrainers(trainers);
+        romHandler.restoreSnapshot(snapshot);
+        assertEquals(before, toStrings(romHandler.getTrainers()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("getRomNames")
+    public void snapshotCanBeRestoredMoreThanOnce(String romName) {
+        loadROM(romName);
+        Species pk = romHandler.getSpecies().get(1);
+        int hpBefore = pk.getHp();
+        RomHandler.Snapshot snapshot = romHandler.createSnapshot();
+
+        for (int i = 1; i <= 3; i++) {
+            pk.setHp(hpBefore + i);
+            romHandler.restoreSnapshot(snapshot);
+            assertEquals(hpBefore, pk.getHp());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("getRomNames")
+    public void snapshotCanNotBeRestoredToOtherRomHandler(String romName) {
+        loadROM(romName);
+        RomHandler.Snapshot snapshot = romHandler.createSnapshot();
+        RomHandler first = romHandler;
+        loadROM(romName);
+        assertNotSame(first, romHandler);
+        assertThrows(IllegalArgumentException.class, () -> romHandler.restoreSnapshot(snapshot));
+    }
+
+    @ParameterizedTest
+    @MethodSource("getRomNames")
+    public void romContentsAreRestored(String romName) throws IOException {
+        loadROM(romName);
+        RomHandler.Snapshot snapshot = romHandler.createSnapshot();
+        byte[] before = saveToBytes();
+
+        // saving writes the Species and Moves to the ROM bytes/archives, and setting the trainers writes them
+        Species pk = romHandler.getSpecies().get(1);
+        pk.setHp(pk.getHp() + 1);
+        romHandler.getMoves().get(1).power++;
+        List<Trainer> trainers = romHandler.getTrainers();
+        for (Trainer tr : trainers) {
+            for (TrainerPokemon tp : tr.pokemon) {
+                tp.level = 1;
+            }
+        }
+        romHandler.setTrainers(trainers);
+        assertFalse(Arrays.equals(before, saveToBytes()));
+
+        romHandler.restoreSnapshot(snapshot);
+        assertArrayEquals(before, saveToBytes());
+    }
+
+    @Test
+    public void restoringBytesOnlyCopiesChangedBlocks() {
+        byte[] saved = new byte[64 * 1024];
+        new Random(0).nextBytes(saved);
+        byte[] live = saved.clone();
+        live[5000] ^= 1; // in the second block
+        live[20000] ^= 1; // in the fifth block
+        live[20001] ^= 1;
+
+        assertEquals(2 * 4096, RomFunctions.copyChangedBlocks(saved, live, 4096));
+        assertArrayEquals(saved, live);
+        assertEquals(0, RomFunctions.copyChangedBlocks(saved, live, 4096));
+    }
+
+    private byte[] saveToBytes() throws IOException {
+        File output = File.createTempFile("snapshot", "." + romHandler.getDefaultExtension());
+        output.deleteOnExit();
+        assertTrue(romHandler.saveRom(output.getPath(), 0, false));
+        byte[] bytes = Files.readAllBytes(output.toPath());
+        output.delete();
+        return bytes;
+    }
+
+    @ParameterizedTest
+    @MethodSource("getRomNames")
+    public void reusedRomHandlerLogsSameAsFreshOne(String romName) throws IOException {
+        Settings settings = new Settings();
+        settings.setChangeImpossibleEvolutions(true);
+        settings.setMakeEvolutionsEasier(true);
+        settings.setRemoveTimeBasedEvolutions(true);
+
+        loadROM(romName);
+        RomHandler.Snapshot snapshot = romHandler.createSnapshot();
+        randomizeAndLog(settings, 1);
+        romHandler.restoreSnapshot(snapshot);
+        String reusedLog = randomizeAndLog(settings, 2);
+
+        loadROM(romName);
+        String freshLog = randomizeAndLog(settings, 2);
+        assertEquals(freshLog, reusedLog);
+    }
+
+    private String randomizeAndLog(Settings settings, long seed) throws IOException {
+        settings.setCustomNames(FileFunctions.getCustomNames());
+        settings.tweakForRom(romHandler);
+        File output = File.createTempFile("snapshot", "." + romHandler.getDefaultExtension());
+        output.deleteOnExit();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream log = new PrintStream(baos, true, "UTF-8");
+        new GameRandomizer(settings, romHandler, BUNDLE, false).randomize(output.getPath(), log, seed);
+        log.close();
+        output.delete();
+
+        // the time taken differs between runs
+        StringBuilder withoutTime = new StringBuilder();
+        for (String line : baos.toString("UTF-8").split("\\R")) {
+            if (!line.startsWith("Time elapsed:")) {
+                withoutTime.append(line).append('\n');
+            }
+        }
+        return withoutTime.toString();
+    }
+
+    private static List<String> toStrings(List<Trainer> trainers) {
+        List<String> strings = new ArrayList<>();
+        for (Trainer tr : trainers) {
+            strings.add(tr.toString());
+        }
+        return strings;
+    }
+
+}
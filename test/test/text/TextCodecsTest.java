@@ -0,0 +1,418 @@
+package test.text;
+
+import com.dabomstew.pkrandom.FileFunctions;
+import com.dabomstew.pkrandom.TokenTrie;
+import com.dabomstew.pkrandom.constants.N3DSConstants;
+import com.dabomstew.pkrandom.romhandlers.GBTextCodec;
+import org.junit.jupiter.api.Test;
+import pptxt.N3DSTxtHandler;
+import pptxt.PPTxtHandler;
+import thenewpoketext.TextToPoke;
+import thenewpoketext.UnicodeParser;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks the text codecs give byte-for-byte the same results as they did before they used {@link TokenTrie},
+ * on random texts made from the real text tables.
+ */
+public class TextCodecsTest {
+
+    private static final int ROUNDS = 200;
+    private static final String GOLDEN_PATH = "test/resources/text";
+    // the text tables the Gen 1 and 2 handlers load, in order
+    private static final List<List<String>> GBC_TABLE_NAMES = Arrays.asList(
+            Collections.singletonList("gameboy_jpn"),
+            Arrays.asList("gameboy_jpn", "green_translation"),
+            Arrays.asList("gameboy_jpn", "rby_english"),
+            Arrays.asList("gameboy_jpn", "rby_espita"),
+            Arrays.asList("gameboy_jpn", "rby_freger"),
+            Arrays.asList("gameboy_jpn", "gsc_english"),
+            Arrays.asList("gameboy_jpn", "gsc_espita"),
+            Arrays.asList("gameboy_jpn", "gsc_freger"),
+            Arrays.asList("vietcrystal", "gameboy_jpn"));
+    private static final String[] GBA_TABLE_NAMES = new String[]{"gba_english", "gba_jpn"};
+    private static final int[] N3DS_ROM_TYPES = new int[]{N3DSConstants.Type_XY, N3DSConstants.Type_ORAS,
+            N3DSConstants.Type_SM, N3DSConstants.Type_USUM};
+
+    @Test
+    public void tokenTrieFindsLongestToken() {
+        Random random = new Random(1);
+        Map<String, Integer> tokens = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            tokens.put(randomString(random, 1 + random.nextInt(5), "abc"), i);
+        }
+        TokenTrie trie = new TokenTrie(tokens);
+        for (int round = 0; round < ROUNDS; round++) {
+            String text = randomString(random, 20, "abcd");
+            for (int start = 0; start < text.length(); start++) {
+                int end = start + random.nextInt(text.length() - start + 1);
+                String longest = null;
+                for (int tokenEnd = end; tokenEnd > start && longest == null; tokenEnd--) {
+                    if (tokens.containsKey(text.substring(start, tokenEnd))) {
+                        longest = text.substring(start, tokenEnd);
+                    }
+                }
+                int match = trie.match(text, start, end);
+                if (longest == null) {
+                    assertEquals(-1, match);
+                } else {
+                    assertEquals(longest.length(), trie.getLength(match));
+                    assertEquals((int) tokens.get(longest), trie.getValue(match));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void gbcEncodesAndDecodesSameAsBefore() throws IOException {
+        GoldenOutputs golden = new GoldenOutputs("gbc.txt");
+        Random random = new Random(5);
+        for (List<String> tableNames : GBC_TABLE_NAMES) {
+            List<String> tokens = new ArrayList<>();
+            for (String name : tableNames) {
+                tokens.addAll(readTableTexts(name));
+            }
+            GBTextCodec codec = GBTextCodec.forGBC(tableNames);
+            StringBuilder buffer = new StringBuilder();
+            for (int round = 0; round < ROUNDS; round++) {
+                byte[] data = randomBytes(random, 40);
+                int offset = random.nextInt(8);
+                int maxLength = random.nextInt(data.length - offset);
+                boolean textEngineMode = random.nextBoolean();
+                String decoded = codec.decode(data, offset, maxLength, textEngineMode, buffer);
+                golden.check(decoded, tableNames.toString());
+
+                String text = randomGBText(random, tokens, new String[]{"\\x%02X"});
+                checkEncodes(golden, codec, text);
+            }
+        }
+        golden.checkAllSeen();
+    }
+
+    @Test
+    public void gen3EncodesAndDecodesSameAsBefore() throws IOException {
+        GoldenOutputs golden = new GoldenOutputs("gen3.txt");
+        Random random = new Random(6);
+        for (String tableName : GBA_TABLE_NAMES) {
+            List<String> tokens = readTableTexts(tableName);
+            GBTextCodec codec = GBTextCodec.forGBA(tableName);
+            StringBuilder buffer = new StringBuilder();
+            for (int round = 0; round < ROUNDS; round++) {
+                byte[] data = randomBytes(random, 40);
+                int offset = random.nextInt(8);
+                // one byte to spare, for a variable at the end
+                int maxLength = random.nextInt(data.length - offset);
+                String decoded = codec.decode(data, offset, maxLength, false, buffer);
+                golden.check(decoded, tableName);
+
+                String text = randomGBText(random, tokens, new String[]{"\\x%02X", "\\v%02X"});
+                checkEncodes(golden, codec, text);
+            }
+        }
+        golden.checkAllSeen();
+    }
+
+    /**
+     * Checks the codec encodes the text to the same bytes as before, or throws the same exception if it did then,
+     * since the texts are made from whole table texts, which may run into malformed escapes.
+     */
+    private static void checkEncodes(GoldenOutputs golden, GBTextCodec codec, String text) {
+        byte[] buffer = new byte[text.length()];
+        int length;
+        try {
+            length = codec.encode(text, buffer);
+        } catch (RuntimeException e) {
+            golden.checkThrows(e, text);
+            return;
+        }
+        golden.check(Arrays.copyOf(buffer, length), text);
+    }
+
+    private static String randomGBText(Random random, List<String> tokens, String[] escapeFormats) {
+        StringBuilder sb = new StringBuilder();
+        int parts = random.nextInt(30);
+        for (int j = 0; j < parts; j++) {
+            int kind = random.nextInt(8);
+            if (kind == 0) {
+                sb.append(String.format(escapeFormats[random.nextInt(escapeFormats.length)], random.nextInt(0x100)));
+            } else if (kind == 1) {
+                // chars which may be in no table
+                sb.append(randomString(random, 1, "abcXYZ 0123.,!?#~"));
+            } else {
+                sb.append(tokens.get(random.nextInt(tokens.size())));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void gen4EncodesSameAsBefore() throws IOException {
+        GoldenOutputs golden = new GoldenOutputs("gen4.txt");
+        Random random = new Random(2);
+        List<String> tokens = new ArrayList<>(UnicodeParser.d.keySet());
+        Collections.sort(tokens);
+        String[] escapes = new String[]{"\\n", "\\p", "\\l", "\\and", "\\x1234", "\\vABCD", "\\z0001\\z0F0F"};
+        for (int round = 0; round < ROUNDS; round++) {
+            List<String> texts = new ArrayList<>();
+            int count = 1 + random.nextInt(10);
+            for (int i = 0; i < count; i++) {
+                StringBuilder sb = new StringBuilder();
+                int parts = random.nextInt(30);
+                for (int j = 0; j < parts; j++) {
+                    sb.append(random.nextInt(8) == 0 ? escapes[random.nextInt(escapes.length)]
+                            : tokens.get(random.nextInt(tokens.size())));
+                }
+                texts.add(sb.toString());
+            }
+            boolean compressed = random.nextBoolean();
+            byte[] made = TextToPoke.MakeFile(new ArrayList<>(texts), compressed);
+            golden.check(made, texts.toString());
+        }
+        golden.checkAllSeen();
+    }
+
+    @Test
+    public void gen5EncodesAndDecodesSameAsBefore() throws IOException {
+        // which chars are decoded as themselves depends on the Unicode version of the JDK
+        assumeTrue(System.getProperty("java.specification.version").equals("1.8"),
+                "the Gen 5 outputs were recorded with Java 8");
+        GoldenOutputs golden = new GoldenOutputs("gen5.txt");
+        Random random = new Random(3);
+        List<String> tokens = readTableTexts("Generation5");
+        PPTxtHandler handler = new PPTxtHandler();
+        for (int round = 0; round < ROUNDS; round++) {
+            int count = 1 + random.nextInt(10);
+            byte[] original = makeGen5File(random, count, 1 + random.nextInt(2));
+            List<String> read = handler.readTexts(original);
+            golden.check(read, "round " + round);
+
+            List<String> texts = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                StringBuilder sb = new StringBuilder();
+                int parts = random.nextInt(30);
+                for (int j = 0; j < parts; j++) {
+                    int kind = random.nextInt(8);
+                    if (kind == 0) {
+                        sb.append(String.format("\\x%04X", random.nextInt(0x10000)));
+                    } else if (kind == 1) {
+                        // a lone backslash would start an escape
+                        sb.append(randomString(random, 1, "abcXYZ 0123.,!?[]()"));
+                    } else {
+                        sb.append(tokens.get(random.nextInt(tokens.size())));
+                    }
+                }
+                texts.add(sb.toString());
+            }
+            byte[] saved = handler.saveEntry(original, new ArrayList<>(texts));
+            golden.check(saved, texts.toString());
+            List<String> reread = handler.readTexts(saved);
+            golden.check(reread, texts.toString());
+        }
+        golden.checkAllSeen();
+    }
+
+    @Test
+    public void n3dsEncodesAndDecodesSameAsBefore() throws IOException {
+        GoldenOutputs golden = new GoldenOutputs("n3ds.txt");
+        Random random = new Random(4);
+        for (int romType : N3DS_ROM_TYPES) {
+            List<String> variables = new ArrayList<>(N3DSConstants.getTextVariableCodes(romType).values());
+            Collections.sort(variables);
+            for (boolean remapChars : new boolean[]{false, true}) {
+                N3DSTxtHandler handler = new N3DSTxtHandler(remapChars, romType);
+                for (int round = 0; round < ROUNDS; round++) {
+                    List<String> texts = new ArrayList<>();
+                    int count = 1 + random.nextInt(10);
+                    for (int i = 0; i < count; i++) {
+                        texts.add(randomN3DSText(random, variables));
+                    }
+
+                    byte[] saved = handler.saveEntry(null, new ArrayList<>(texts));
+                    golden.check(saved, texts.toString());
+                    List<String> read = handler.readTexts(saved);
+                    golden.check(read, texts.toString());
+                }
+            }
+        }
+        golden.checkAllSeen();
+    }
+
+    private static String randomN3DSText(Random random, List<String> variables) {
+        String[] escapes = new String[]{"\\n", "\\\\", "\\[", "\\r", "\\c"};
+        String chars = "abcXYZ 0123.,!?é …♂♀";
+        StringBuilder sb = new StringBuilder();
+        int parts = random.nextInt(30);
+        for (int j = 0; j < parts; j++) {
+            switch (random.nextInt(8)) {
+                case 0:
+                    sb.append(escapes[random.nextInt(escapes.length)]);
+                    break;
+                case 1:
+                    sb.append("[WAIT ").append(random.nextInt(100)).append(']');
+                    break;
+                case 2:
+                    sb.append("[~ ").append(random.nextInt(100)).append(']');
+                    break;
+                case 3:
+                    sb.append("[VAR ").append(variables.get(random.nextInt(variables.size())));
+                    int args = random.nextInt(3);
+                    if (args > 0) {
+                        sb.append('(');
+                        for (int a = 0; a < args; a++) {
+                            sb.append(a == 0 ? "" : ",").append(String.format("%04X", random.nextInt(0x10000)));
+                        }
+                        sb.append(')');
+                    }
+                    sb.append(']');
+                    break;
+                default:
+                    sb.append(chars.charAt(random.nextInt(chars.length())));
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static List<String> readTableTexts(String tableName) throws FileNotFoundException {
+        Set<String> texts = new TreeSet<>();
+        Scanner sc = new Scanner(FileFunctions.openConfig(tableName + ".tbl"), "UTF-8");
+        while (sc.hasNextLine()) {
+            String q = sc.nextLine();
+            if (!q.trim().isEmpty()) {
+                texts.add(q.split("=", 2)[1]);
+            }
+        }
+        sc.close();
+        return new ArrayList<>(texts);
+    }
+
+    /**
+     * Makes a Gen 5 text file with random encrypted words and unknowns, and sometimes a second section.
+     */
+    private static byte[] makeGen5File(Random random, int numEntries, int numSections) {
+        int sectionOffset = 12 + 4 * numSections;
+        int[] wordCounts = new int[numEntries];
+        int words = 0;
+        for (int i = 0; i < numEntries; i++) {
+            wordCounts[i] = 1 + random.nextInt(8);
+            words += wordCounts[i];
+        }
+        int sectionSize = 4 + 8 * numEntries + 2 * words;
+        int secondSize = numSections == 2 ? 4 + 4 * random.nextInt(4) : 0;
+        byte[] file = new byte[sectionOffset + sectionSize + secondSize];
+        writeWord(file, 0, numSections);
+        writeWord(file, 2, numEntries);
+        writeLong(file, 4, sectionSize);
+        writeLong(file, 12, sectionOffset);
+        if (numSections == 2) {
+            writeLong(file, 16, sectionOffset + sectionSize);
+            writeLong(file, sectionOffset + sectionSize, secondSize);
+            for (int i = 4; i < secondSize; i++) {
+                file[sectionOffset + sectionSize + i] = (byte) random.nextInt(256);
+            }
+        }
+        writeLong(file, sectionOffset, sectionSize);
+        int dataOffset = 4 + 8 * numEntries;
+        for (int i = 0; i < numEntries; i++) {
+            int entry = sectionOffset + 4 + 8 * i;
+            writeLong(file, entry, dataOffset);
+            writeWord(file, entry + 4, wordCounts[i]);
+            writeWord(file, entry + 6, random.nextInt(0x10000));
+            for (int j = 0; j < wordCounts[i]; j++) {
+                writeWord(file, sectionOffset + dataOffset + 2 * j, random.nextInt(0x10000));
+            }
+            dataOffset += 2 * wordCounts[i];
+        }
+        return file;
+    }
+
+    private static String randomString(Random random, int length, String chars) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return sb.toString();
+    }
+
+    private static void writeWord(byte[] data, int offset, int value) {
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >> 8);
+    }
+
+    private static void writeLong(byte[] data, int offset, int value) {
+        writeWord(data, offset, value);
+        writeWord(data, offset + 2, value >> 16);
+    }
+
+    /**
+     * The outputs the codecs gave before they used {@link TokenTrie}, for the random inputs of one test, as one MD5
+     * digest per output (or the exception thrown instead) in a file in {@link #GOLDEN_PATH}. Checked in the order the
+     * test makes them.<br>
+     * Recorded with Java 8, which the randomizer targets.
+     */
+    private static class GoldenOutputs {
+
+        private final Iterator<String> digests;
+
+        GoldenOutputs(String fileName) throws IOException {
+            digests = Files.readAllLines(Paths.get(GOLDEN_PATH, fileName), StandardCharsets.UTF_8).iterator();
+        }
+
+        void check(byte[] output, String message) {
+            checkLine(digest(output), message);
+        }
+
+        void check(String output, String message) {
+            check(output.getBytes(StandardCharsets.UTF_8), message);
+        }
+
+        void check(List<String> output, String message) {
+            check(String.join("\n", output), message);
+        }
+
+        void checkThrows(RuntimeException e, String message) {
+            checkLine("throws " + e.getClass().getName(), message);
+        }
+
+        private void checkLine(String line, String message) {
+            assertTrue(digests.hasNext(), "more outputs than before: " + message);
+            assertEquals(digests.next(), line, message);
+        }
+
+        void checkAllSeen() {
+            assertFalse(digests.hasNext(), "fewer outputs than before");
+        }
+
+        private static String digest(byte[] output) {
+            try {
+                byte[] digest = MessageDigest.getInstance("MD5").digest(output);
+                StringBuilder sb = new StringBuilder();
+                for (byte b : digest) {
+                    sb.append(String.format("%02x", b));
+                }
+                return sb.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+    }
+
+}